@@ -4,6 +4,8 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.opensrp.web.dto.ResponseDto;
 import org.opensrp.web.exceptions.MissingTeamAssignmentException;
+import org.opensrp.web.exceptions.ResponseAbortedException;
+import org.opensrp.web.exceptions.UploadQueueFullException;
 import org.opensrp.web.exceptions.UploadValidationException;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
@@ -112,6 +114,21 @@ public class GlobalExceptionHandler {
 	}
 	
 
+	@ResponseBody
+	@ExceptionHandler(UploadQueueFullException.class)
+	@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+	public ResponseDto<?> exceptionHandler(UploadQueueFullException exception) {
+		logger.warn("Upload rejected, server busy : ", exception);
+		return buildErrorResponseForBadRequest(HttpStatus.SERVICE_UNAVAILABLE, "Server busy, try again later");
+	}
+	
+	@ExceptionHandler(ResponseAbortedException.class)
+	public void exceptionHandler(ResponseAbortedException exception) {
+		logger.error("Response aborted : ", exception);
+		// the response is committed, so it is left to the container to close the connection
+		throw exception;
+	}
+	
 	@ResponseBody
 	@ExceptionHandler(AccessDeniedException.class)
 	@ResponseStatus(HttpStatus.FORBIDDEN)
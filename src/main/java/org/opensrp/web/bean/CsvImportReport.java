@@ -0,0 +1,59 @@
+package org.opensrp.web.bean;
+
+import java.io.File;
+
+public class CsvImportReport {
+
+	private long numberOfCsvRows;
+
+	private long numberOfRowsProcessed;
+
+	private long numberOfFailedRows;
+
+	private File reportFile;
+
+	private String completedRowRanges;
+
+	public long getNumberOfCsvRows() {
+		return numberOfCsvRows;
+	}
+
+	public void setNumberOfCsvRows(long numberOfCsvRows) {
+		this.numberOfCsvRows = numberOfCsvRows;
+	}
+
+	public long getNumberOfRowsProcessed() {
+		return numberOfRowsProcessed;
+	}
+
+	public void setNumberOfRowsProcessed(long numberOfRowsProcessed) {
+		this.numberOfRowsProcessed = numberOfRowsProcessed;
+	}
+
+	public long getNumberOfFailedRows() {
+		return numberOfFailedRows;
+	}
+
+	public void setNumberOfFailedRows(long numberOfFailedRows) {
+		this.numberOfFailedRows = numberOfFailedRows;
+	}
+
+	public File getReportFile() {
+		return reportFile;
+	}
+
+	public void setReportFile(File reportFile) {
+		this.reportFile = reportFile;
+	}
+
+	/**
+	 * @return the row ranges whose chunks completed when a chunk failed and stopped the import, otherwise null
+	 */
+	public String getCompletedRowRanges() {
+		return completedRowRanges;
+	}
+
+	public void setCompletedRowRanges(String completedRowRanges) {
+		this.completedRowRanges = completedRowRanges;
+	}
+}
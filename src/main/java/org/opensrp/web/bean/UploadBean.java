@@ -30,4 +30,7 @@ public class UploadBean {
 
 	@JsonProperty
 	private String url;
+
+	@JsonProperty
+	private String status;
 }
@@ -0,0 +1,52 @@
+package org.opensrp.web.bean;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import lombok.ToString;
+
+import java.util.Date;
+import java.util.Map;
+
+@Getter
+@Setter
+@NoArgsConstructor
+@ToString
+public class UploadJobStatus {
+
+	public enum Status {QUEUED, RUNNING, COMPLETED, FAILED}
+
+	@JsonProperty
+	private String identifier;
+
+	@JsonProperty
+	private String fileName;
+
+	@JsonProperty
+	private String providerID;
+
+	@JsonProperty
+	private Status status;
+
+	@JsonProperty
+	private long totalRows;
+
+	@JsonProperty
+	private long processedRows;
+
+	@JsonProperty
+	private double rowsPerSecond;
+
+	@JsonProperty
+	private Date uploadDate;
+
+	@JsonProperty
+	private Date completionDate;
+
+	@JsonProperty
+	private Map<String, Object> details;
+
+	@JsonProperty
+	private String errors;
+}
@@ -0,0 +1,84 @@
+package org.opensrp.web.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.builder.ReflectionToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holds the total number of clients matching register search criteria so that paging through a register, or several
+ * users opening the same register, does not count the matching clients again for every page. Entries are keyed by a
+ * hash of the search criteria without the paging and ordering fields, and expire after
+ * {@code client.count.cache.expiry.seconds}, which bounds how stale a total can be after clients are saved.
+ */
+@Component
+public class ClientCountCache {
+
+	private static final String KEY_SEPARATOR = "|";
+
+	private static final String[] EXCLUDED_FIELDS = { "pageNumber", "pageSize", "orderByField", "orderByType" };
+
+	private final Cache<String, Integer> counts;
+
+	@Autowired
+	public ClientCountCache(@Value("#{opensrp['client.count.cache.expiry.seconds'] ?: 60}") long expirySeconds,
+			@Value("#{opensrp['client.count.cache.max.entries'] ?: 1000}") long maxEntries) {
+		this.counts = CacheBuilder.newBuilder()
+				.expireAfterWrite(expirySeconds, TimeUnit.SECONDS)
+				.maximumSize(maxEntries)
+				.build();
+	}
+
+	/**
+	 * Builds a cache key from the fields of the search beans, leaving out the page and the order, which do not change
+	 * the total
+	 *
+	 * @param countType the kind of count, such as the client type
+	 * @param beans     the search beans
+	 * @return the cache key
+	 */
+	public static String buildKey(String countType, Object... beans) {
+		StringBuilder key = new StringBuilder(String.valueOf(countType));
+		for (Object bean : beans) {
+			key.append(KEY_SEPARATOR);
+			if (bean != null) {
+				key.append(new ReflectionToStringBuilder(bean, ToStringStyle.SHORT_PREFIX_STYLE)
+						.setExcludeFieldNames(EXCLUDED_FIELDS).toString());
+			}
+		}
+		return DigestUtils.sha256Hex(key.toString());
+	}
+
+	/**
+	 * Returns the count for the key, counting and storing it on a miss. Concurrent requests for the same key wait for
+	 * a single count.
+	 *
+	 * @param key    the key built with {@link #buildKey(String, Object...)}
+	 * @param loader counts the matching clients
+	 * @return the count
+	 */
+	public int get(String key, Supplier<Integer> loader) {
+		try {
+			return counts.get(key, loader::get);
+		}
+		catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	public void invalidateAll() {
+		counts.invalidateAll();
+	}
+
+	public long size() {
+		return counts.size();
+	}
+}
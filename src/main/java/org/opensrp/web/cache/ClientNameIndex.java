@@ -0,0 +1,335 @@
+package org.opensrp.web.cache;
+
+import org.apache.commons.codec.language.DoubleMetaphone;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensrp.service.ClientService;
+import org.smartregister.domain.Client;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Indexes client names by their Double Metaphone codes and trigrams so that a name search finds spelling variants
+ * of local names without a LIKE query over every client. Searches return the base entity ids of the candidates
+ * ranked by similarity, which is the trigram overlap of each searched name part with the closest name part of the
+ * client, or a fixed {@link #PHONETIC_SIMILARITY} when only their sounds match.
+ * <p>
+ * When {@code search.name.index.enabled} is set the index is filled in the background by paging through clients
+ * by serverVersion and is then topped up every {@code search.name.index.refresh.seconds}, which picks up clients
+ * saved on other nodes. Clients saved on this node are indexed as soon as they are saved. Searches should only use
+ * the index once {@link #isReady()}.
+ */
+@Component
+public class ClientNameIndex {
+
+	private static final Logger logger = LogManager.getLogger(ClientNameIndex.class.toString());
+
+	public static final double PHONETIC_SIMILARITY = 0.8;
+
+	private static final int TRIGRAM_LENGTH = 3;
+
+	private static final DoubleMetaphone DOUBLE_METAPHONE = new DoubleMetaphone();
+
+	private final Map<String, List<String>> names = new ConcurrentHashMap<>();
+
+	private final Map<String, Set<String>> phoneticPostings = new ConcurrentHashMap<>();
+
+	private final Map<String, Set<String>> trigramPostings = new ConcurrentHashMap<>();
+
+	@Value("#{opensrp['search.name.index.enabled'] ?: false}")
+	private boolean enabled;
+
+	@Value("#{opensrp['search.name.index.min.similarity'] ?: 0.5}")
+	private double minSimilarity = 0.5;
+
+	@Value("#{opensrp['search.name.index.max.results'] ?: 100}")
+	private int maxResults = 100;
+
+	@Value("#{opensrp['search.name.index.page.size'] ?: 1000}")
+	private int pageSize = 1000;
+
+	@Value("#{opensrp['search.name.index.refresh.seconds'] ?: 60}")
+	private long refreshSeconds = 60;
+
+	private ClientService clientService;
+
+	private ScheduledExecutorService refreshExecutor;
+
+	private volatile long serverVersion;
+
+	private volatile boolean ready;
+
+	@Autowired
+	public void setClientService(ClientService clientService) {
+		this.clientService = clientService;
+	}
+
+	/**
+	 * Starts filling the index in the background when it is enabled
+	 */
+	@PostConstruct
+	public void start() {
+		if (!enabled) {
+			return;
+		}
+		refreshExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "client-name-index");
+			thread.setDaemon(true);
+			return thread;
+		});
+		refreshExecutor.scheduleWithFixedDelay(this::refresh, 0, refreshSeconds, TimeUnit.SECONDS);
+	}
+
+	@PreDestroy
+	public void stop() {
+		if (refreshExecutor != null) {
+			refreshExecutor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Indexes the clients saved since the last refresh. The index is ready once it has caught up with all clients.
+	 */
+	public void refresh() {
+		try {
+			List<Client> clients;
+			do {
+				clients = clientService.findByServerVersion(serverVersion, pageSize);
+				long maxServerVersion = serverVersion;
+				for (Client client : clients) {
+					index(client);
+					if (client.getServerVersion() != null) {
+						maxServerVersion = Math.max(maxServerVersion, client.getServerVersion() + 1);
+					}
+				}
+				if (maxServerVersion == serverVersion) {
+					break;
+				}
+				serverVersion = maxServerVersion;
+			} while (clients.size() >= pageSize);
+			if (!ready) {
+				ready = true;
+				logger.info("Client name index ready with " + size() + " clients");
+			}
+		}
+		catch (RuntimeException e) {
+			logger.error("Could not refresh the client name index", e);
+		}
+	}
+
+	public boolean isReady() {
+		return ready;
+	}
+
+	public int size() {
+		return names.size();
+	}
+
+	/**
+	 * Indexes the names of a client, replacing the names indexed for it before
+	 *
+	 * @param client the saved client
+	 */
+	public synchronized void index(Client client) {
+		if (client == null || client.getBaseEntityId() == null) {
+			return;
+		}
+		String baseEntityId = client.getBaseEntityId();
+		List<String> tokens = tokenize(client.getFirstName(), client.getMiddleName(), client.getLastName());
+		List<String> previousTokens = tokens.isEmpty() ? names.remove(baseEntityId) : names.put(baseEntityId, tokens);
+		if (tokens.equals(previousTokens)) {
+			return;
+		}
+		if (previousTokens != null) {
+			for (String token : previousTokens) {
+				removePosting(phoneticPostings, phoneticCodes(token), baseEntityId);
+				removePosting(trigramPostings, trigrams(token), baseEntityId);
+			}
+		}
+		for (String token : tokens) {
+			for (String code : phoneticCodes(token)) {
+				phoneticPostings.computeIfAbsent(code, key -> ConcurrentHashMap.newKeySet()).add(baseEntityId);
+			}
+			for (String trigram : trigrams(token)) {
+				trigramPostings.computeIfAbsent(trigram, key -> ConcurrentHashMap.newKeySet()).add(baseEntityId);
+			}
+		}
+	}
+
+	/**
+	 * Finds the clients whose names are similar to the searched name
+	 *
+	 * @param name the name to search for, in any order of first, middle and last names
+	 * @return the base entity ids of at most {@code search.name.index.max.results} clients, most similar first
+	 */
+	public List<String> search(String name) {
+		List<String> queryTokens = tokenize(name);
+		if (queryTokens.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		Set<String> candidates = new LinkedHashSet<>();
+		for (String token : queryTokens) {
+			for (String code : phoneticCodes(token)) {
+				candidates.addAll(phoneticPostings.getOrDefault(code, Collections.emptySet()));
+			}
+			Set<String> queryTrigrams = trigrams(token);
+			Map<String, Integer> sharedTrigrams = new HashMap<>();
+			for (String trigram : queryTrigrams) {
+				for (String baseEntityId : trigramPostings.getOrDefault(trigram, Collections.emptySet())) {
+					sharedTrigrams.merge(baseEntityId, 1, Integer::sum);
+				}
+			}
+			// the trigram similarity of a client can only reach the minimum if it shares enough trigrams
+			double minShared = minSimilarity * queryTrigrams.size() / 2;
+			sharedTrigrams.forEach((baseEntityId, shared) -> {
+				if (shared >= minShared) {
+					candidates.add(baseEntityId);
+				}
+			});
+		}
+
+		Map<String, Double> scores = new HashMap<>();
+		for (String baseEntityId : candidates) {
+			List<String> tokens = names.get(baseEntityId);
+			if (tokens != null) {
+				double score = similarity(queryTokens, tokens);
+				if (score >= minSimilarity) {
+					scores.put(baseEntityId, score);
+				}
+			}
+		}
+
+		List<String> ranked = new ArrayList<>(scores.keySet());
+		ranked.sort(Comparator.comparing((String baseEntityId) -> scores.get(baseEntityId)).reversed()
+				.thenComparing(Comparator.naturalOrder()));
+		return ranked.size() > maxResults ? new ArrayList<>(ranked.subList(0, maxResults)) : ranked;
+	}
+
+	/**
+	 * Finds the clients whose names are similar to the searched name and loads them in ranked order
+	 *
+	 * @param name   the name to search for
+	 * @param loader loads the clients with the given base entity ids
+	 * @return the clients, most similar first
+	 */
+	public List<Client> findClients(String name, Function<List<String>, List<Client>> loader) {
+		List<String> baseEntityIds = search(name);
+		if (baseEntityIds.isEmpty()) {
+			return new ArrayList<>();
+		}
+		Map<String, Integer> ranks = new HashMap<>();
+		for (int i = 0; i < baseEntityIds.size(); i++) {
+			ranks.put(baseEntityIds.get(i), i);
+		}
+		List<Client> clients = new ArrayList<>(loader.apply(baseEntityIds));
+		clients.sort(Comparator.comparing(client -> ranks.getOrDefault(client.getBaseEntityId(), Integer.MAX_VALUE)));
+		return clients;
+	}
+
+	/**
+	 * Averages, over the searched name parts, the similarity to the closest name part of the client
+	 */
+	static double similarity(List<String> queryTokens, List<String> tokens) {
+		double total = 0;
+		for (String queryToken : queryTokens) {
+			double best = 0;
+			for (String token : tokens) {
+				best = Math.max(best, similarity(queryToken, token));
+			}
+			total += best;
+		}
+		return total / queryTokens.size();
+	}
+
+	private static double similarity(String queryToken, String token) {
+		if (queryToken.equals(token)) {
+			return 1;
+		}
+		Set<String> queryTrigrams = trigrams(queryToken);
+		Set<String> trigrams = trigrams(token);
+		int shared = 0;
+		for (String trigram : queryTrigrams) {
+			if (trigrams.contains(trigram)) {
+				shared++;
+			}
+		}
+		double dice = 2d * shared / (queryTrigrams.size() + trigrams.size());
+		if (dice < PHONETIC_SIMILARITY && !Collections.disjoint(phoneticCodes(queryToken), phoneticCodes(token))) {
+			return PHONETIC_SIMILARITY;
+		}
+		return dice;
+	}
+
+	/**
+	 * Splits names into lower case parts without accents
+	 */
+	static List<String> tokenize(String... names) {
+		List<String> tokens = new ArrayList<>();
+		for (String name : names) {
+			if (StringUtils.isBlank(name)) {
+				continue;
+			}
+			String plain = Normalizer.normalize(name, Normalizer.Form.NFD).replaceAll("\\p{M}", "")
+					.toLowerCase(Locale.ROOT);
+			Arrays.stream(plain.split("[^\\p{L}]+")).filter(token -> !token.isEmpty()).forEach(tokens::add);
+		}
+		return tokens;
+	}
+
+	private static Set<String> phoneticCodes(String token) {
+		Set<String> codes = new LinkedHashSet<>();
+		String primary = DOUBLE_METAPHONE.doubleMetaphone(token);
+		String alternate = DOUBLE_METAPHONE.doubleMetaphone(token, true);
+		if (StringUtils.isNotEmpty(primary)) {
+			codes.add(primary);
+		}
+		if (StringUtils.isNotEmpty(alternate)) {
+			codes.add(alternate);
+		}
+		return codes;
+	}
+
+	/**
+	 * Returns the trigrams of a name part padded with two spaces in front and one behind, so that short parts and
+	 * their first letters still count
+	 */
+	private static Set<String> trigrams(String token) {
+		String padded = "  " + token + " ";
+		Set<String> trigrams = new LinkedHashSet<>();
+		for (int i = 0; i + TRIGRAM_LENGTH <= padded.length(); i++) {
+			trigrams.add(padded.substring(i, i + TRIGRAM_LENGTH));
+		}
+		return trigrams;
+	}
+
+	private static void removePosting(Map<String, Set<String>> postings, Set<String> keys, String baseEntityId) {
+		for (String key : keys) {
+			postings.computeIfPresent(key, (k, ids) -> {
+				ids.remove(baseEntityId);
+				return ids.isEmpty() ? null : ids;
+			});
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package org.opensrp.web.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalNotification;
+import org.apache.commons.lang3.StringUtils;
+import org.smartregister.domain.Event;
+import org.smartregister.domain.Obs;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Maps contact phone numbers to the base entity ids of the clients whose events record them, so that searching by
+ * contact phone number does not scan event obs and load whole events for every request. A phone number is looked up
+ * exactly as the event scan matches it, loaded from the events the first time it is searched for and dropped
+ * whenever an event of one of its clients, or an event recording it, is saved on this node through the event, sync,
+ * upload, rapid or XLS import endpoints.
+ * <p>
+ * Saves on other nodes, or made outside those endpoints, are not seen, so the index is only used when
+ * {@code search.phone.index.enabled} is set, which suits deployments with a single node. Otherwise every search scans
+ * the events.
+ */
+@Component
+public class ContactPhoneNumberIndex {
+
+	public static final String CONTACT_PHONE_NUMBER_CONCEPT = "159635AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA";
+
+	private final boolean enabled;
+
+	private final Cache<String, Set<String>> baseEntityIds;
+
+	private final Map<String, Set<String>> phoneNumbers = new HashMap<>();
+
+	private long invalidations;
+
+	@Autowired
+	public ContactPhoneNumberIndex(@Value("#{opensrp['search.phone.index.enabled'] ?: false}") boolean enabled,
+			@Value("#{opensrp['search.phone.index.expiry.minutes'] ?: 60}") long expiryMinutes,
+			@Value("#{opensrp['search.phone.index.max.entries'] ?: 100000}") long maxEntries) {
+		this.enabled = enabled;
+		this.baseEntityIds = CacheBuilder.newBuilder()
+				.expireAfterWrite(expiryMinutes, TimeUnit.MINUTES)
+				.maximumSize(maxEntries)
+				.removalListener(this::unmapPhoneNumber)
+				.build();
+	}
+
+	/**
+	 * Returns the base entity ids recorded against the phone number, loading them on a miss. The loader is called on
+	 * every search when the index is disabled.
+	 *
+	 * @param phoneNumber the phone number to look up
+	 * @param loader      finds the base entity ids from the events when the phone number is not indexed
+	 * @return the base entity ids in the order they were found
+	 */
+	public List<String> get(String phoneNumber, Function<String, List<String>> loader) {
+		if (StringUtils.isBlank(phoneNumber)) {
+			return new ArrayList<>();
+		}
+		if (!enabled) {
+			List<String> ids = loader.apply(phoneNumber);
+			return ids == null ? new ArrayList<>() : ids;
+		}
+
+		long invalidationsBeforeLoad;
+		synchronized (this) {
+			Set<String> ids = baseEntityIds.getIfPresent(phoneNumber);
+			if (ids != null) {
+				return new ArrayList<>(ids);
+			}
+			invalidationsBeforeLoad = invalidations;
+		}
+
+		List<String> loadedIds = loader.apply(phoneNumber);
+		Set<String> ids = loadedIds == null ? new LinkedHashSet<>() : new LinkedHashSet<>(loadedIds);
+		synchronized (this) {
+			// an event saved while loading may not be in the loaded ids, so they are only returned
+			if (invalidations == invalidationsBeforeLoad) {
+				baseEntityIds.put(phoneNumber, ids);
+				for (String id : ids) {
+					phoneNumbers.computeIfAbsent(id, key -> new HashSet<>()).add(phoneNumber);
+				}
+			}
+		}
+		return new ArrayList<>(ids);
+	}
+
+	/**
+	 * Drops the phone numbers a saved event records and every phone number indexed for its client, so that they are
+	 * loaded from the events again on their next search
+	 *
+	 * @param event the saved event
+	 */
+	public synchronized void index(Event event) {
+		if (!enabled || event == null) {
+			return;
+		}
+		invalidations++;
+		Set<String> savedPhoneNumbers = getContactPhoneNumbers(event);
+		if (event.getBaseEntityId() != null && phoneNumbers.containsKey(event.getBaseEntityId())) {
+			savedPhoneNumbers.addAll(phoneNumbers.get(event.getBaseEntityId()));
+		}
+		baseEntityIds.invalidateAll(savedPhoneNumbers);
+	}
+
+	public synchronized long size() {
+		return baseEntityIds.size();
+	}
+
+	/**
+	 * Removes a dropped phone number from the phone numbers of its clients, called while holding the lock of this
+	 * index since the cache is only changed while holding it
+	 */
+	private void unmapPhoneNumber(RemovalNotification<String, Set<String>> notification) {
+		if (notification.getValue() == null) {
+			return;
+		}
+		for (String id : notification.getValue()) {
+			Set<String> clientPhoneNumbers = phoneNumbers.get(id);
+			if (clientPhoneNumbers != null) {
+				clientPhoneNumbers.remove(notification.getKey());
+				if (clientPhoneNumbers.isEmpty()) {
+					phoneNumbers.remove(id);
+				}
+			}
+		}
+	}
+
+	private static Set<String> getContactPhoneNumbers(Event event) {
+		Set<String> phoneNumbers = new HashSet<>();
+		if (event.getObs() == null) {
+			return phoneNumbers;
+		}
+		for (Obs obs : event.getObs()) {
+			if (obs != null && CONTACT_PHONE_NUMBER_CONCEPT.equals(obs.getFieldCode()) && obs.getValues() != null) {
+				for (Object value : obs.getValues()) {
+					if (value != null && StringUtils.isNotBlank(value.toString())) {
+						phoneNumbers.add(value.toString());
+					}
+				}
+			}
+		}
+		return phoneNumbers;
+	}
+}
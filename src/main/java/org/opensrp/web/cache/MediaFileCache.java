@@ -0,0 +1,327 @@
+package org.opensrp.web.cache;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensrp.service.multimedia.MultimediaFileManager;
+import org.opensrp.service.multimedia.S3MultimediaFileManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Keeps media downloaded from S3 in an {@code opensrp-media-cache} folder under {@code multimedia.cache.directory}
+ * (the temporary directory by default) so that the same profile images are not fetched from the bucket for
+ * every request. Files are evicted least recently used first once their total size goes over
+ * {@code multimedia.cache.max.bytes} and are fetched again after {@code multimedia.cache.expiry.minutes}. The size
+ * and modification time of each file are recorded when it is stored and checked before a cached copy is served, so a
+ * truncated or modified copy is fetched again rather than returned.
+ * <p>
+ * Each instance keeps its files in its own folder, locked while the instance runs, so that instances sharing the
+ * directory never serve or delete each other's files. Folders left unlocked by instances that have stopped are
+ * deleted when the next instance starts.
+ * <p>
+ * Files returned by this cache belong to it and must not be deleted by the caller. A dropped file may still be being
+ * served, possibly by the container's sendfile after the request has returned, so it is only deleted from disk
+ * {@code multimedia.cache.delete.delay.seconds} after it was dropped.
+ */
+@Component
+public class MediaFileCache {
+
+	private static final Logger logger = LogManager.getLogger(MediaFileCache.class.toString());
+
+	public static final String HITS_METRIC = "opensrp.multimedia.cache.hits";
+
+	public static final String MISSES_METRIC = "opensrp.multimedia.cache.misses";
+
+	public static final String BYTES_SAVED_METRIC = "opensrp.multimedia.cache.bytes.saved";
+
+	public static final String HIT_RATIO_METRIC = "opensrp.multimedia.cache.hit.ratio";
+
+	public static final String SIZE_METRIC = "opensrp.multimedia.cache.size.bytes";
+
+	private static final String CACHE_DIRECTORY = "opensrp-media-cache";
+
+	private static final String LOCK_FILE = ".lock";
+
+	private final File directory;
+
+	private final FileChannel lockChannel;
+
+	private final long maxBytes;
+
+	private final long expiryMillis;
+
+	private final long deleteDelayMillis;
+
+	private final LinkedHashMap<String, CachedFile> files = new LinkedHashMap<>(16, 0.75f, true);
+
+	private final Deque<DroppedFile> droppedFiles = new ArrayDeque<>();
+
+	private long totalBytes;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong bytesSaved = new AtomicLong();
+
+	@Autowired
+	public MediaFileCache(@Value("#{opensrp['multimedia.cache.directory'] ?: ''}") String directory,
+			@Value("#{opensrp['multimedia.cache.max.bytes'] ?: 536870912}") long maxBytes,
+			@Value("#{opensrp['multimedia.cache.expiry.minutes'] ?: 60}") long expiryMinutes,
+			@Value("#{opensrp['multimedia.cache.delete.delay.seconds'] ?: 300}") long deleteDelaySeconds)
+			throws IOException {
+		File cacheDirectory = new File(
+				StringUtils.isBlank(directory) ? System.getProperty("java.io.tmpdir") : directory, CACHE_DIRECTORY);
+		Files.createDirectories(cacheDirectory.toPath());
+		deleteUnlockedFolders(cacheDirectory);
+		this.directory = Files.createTempDirectory(cacheDirectory.toPath(), "instance-").toFile();
+		this.lockChannel = FileChannel.open(new File(this.directory, LOCK_FILE).toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		this.lockChannel.lock();
+		this.maxBytes = maxBytes;
+		this.expiryMillis = TimeUnit.MINUTES.toMillis(expiryMinutes);
+		this.deleteDelayMillis = TimeUnit.SECONDS.toMillis(deleteDelaySeconds);
+	}
+
+	@Autowired(required = false)
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		FunctionCounter.builder(HITS_METRIC, hits, AtomicLong::get).register(meterRegistry);
+		FunctionCounter.builder(MISSES_METRIC, misses, AtomicLong::get).register(meterRegistry);
+		FunctionCounter.builder(BYTES_SAVED_METRIC, bytesSaved, AtomicLong::get).baseUnit("bytes").register(meterRegistry);
+		Gauge.builder(HIT_RATIO_METRIC, this, MediaFileCache::getHitRatio).register(meterRegistry);
+		Gauge.builder(SIZE_METRIC, this, MediaFileCache::getSizeInBytes).baseUnit("bytes").register(meterRegistry);
+	}
+
+	/**
+	 * @param fileManager the file manager in use
+	 * @return whether files retrieved by the file manager are downloaded copies that are worth caching
+	 */
+	public static boolean isCacheable(MultimediaFileManager fileManager) {
+		return fileManager instanceof S3MultimediaFileManager;
+	}
+
+	/**
+	 * Returns the cached copy of the file, retrieving and storing it on a miss
+	 *
+	 * @param filePath the path of the file in the file manager
+	 * @param loader   retrieves the file into a temporary file that the cache may move
+	 * @return the cached file or null if the loader did not find it
+	 */
+	public File get(String filePath, Function<String, File> loader) {
+		CachedFile cachedFile;
+		synchronized (this) {
+			cachedFile = files.get(filePath);
+		}
+		if (cachedFile != null && isValid(cachedFile)) {
+			hits.incrementAndGet();
+			bytesSaved.addAndGet(cachedFile.size);
+			return cachedFile.file;
+		}
+		if (cachedFile != null) {
+			logger.info("Dropping stale cached copy of " + filePath);
+			remove(filePath, cachedFile);
+		}
+
+		misses.incrementAndGet();
+		File downloaded = loader.apply(filePath);
+		if (downloaded == null || !downloaded.isFile()) {
+			return downloaded;
+		}
+		try {
+			return put(filePath, downloaded);
+		}
+		catch (IOException e) {
+			logger.warn("Could not cache " + filePath, e);
+			return downloaded;
+		}
+	}
+
+	/**
+	 * Drops the cached files whose path starts with the prefix, called when files are replaced
+	 *
+	 * @param filePathPrefix the start of the file paths to drop
+	 */
+	public synchronized void invalidateByPrefix(String filePathPrefix) {
+		Iterator<Map.Entry<String, CachedFile>> iterator = files.entrySet().iterator();
+		while (iterator.hasNext()) {
+			Map.Entry<String, CachedFile> entry = iterator.next();
+			if (entry.getKey().startsWith(filePathPrefix)) {
+				iterator.remove();
+				delete(entry.getValue());
+			}
+		}
+		deleteDroppedFiles();
+	}
+
+	public double getHitRatio() {
+		long requests = hits.get() + misses.get();
+		return requests == 0 ? 0 : hits.get() / (double) requests;
+	}
+
+	public long getBytesSaved() {
+		return bytesSaved.get();
+	}
+
+	public synchronized long getSizeInBytes() {
+		return totalBytes;
+	}
+
+	/**
+	 * Releases the folder of this instance and deletes it with the files in it
+	 */
+	@PreDestroy
+	public synchronized void close() {
+		files.clear();
+		droppedFiles.clear();
+		totalBytes = 0;
+		try {
+			lockChannel.close();
+		}
+		catch (IOException e) {
+			logger.warn("Could not release media cache folder " + directory.getAbsolutePath(), e);
+		}
+		FileUtils.deleteQuietly(directory);
+	}
+
+	private File put(String filePath, File downloaded) throws IOException {
+		// each file gets its own folder so that it keeps the name it is served and zipped under
+		File target = new File(new File(directory, UUID.randomUUID().toString()), downloaded.getName());
+		Files.createDirectories(target.getParentFile().toPath());
+		Files.move(downloaded.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		CachedFile cachedFile = new CachedFile(target, target.length(), target.lastModified(), System.currentTimeMillis());
+
+		synchronized (this) {
+			CachedFile previous = files.put(filePath, cachedFile);
+			if (previous != null) {
+				delete(previous);
+			}
+			totalBytes += cachedFile.size;
+			Iterator<Map.Entry<String, CachedFile>> iterator = files.entrySet().iterator();
+			while (totalBytes > maxBytes && files.size() > 1 && iterator.hasNext()) {
+				CachedFile eldest = iterator.next().getValue();
+				if (eldest == cachedFile) {
+					continue;
+				}
+				iterator.remove();
+				delete(eldest);
+			}
+			deleteDroppedFiles();
+		}
+		return target;
+	}
+
+	private synchronized void remove(String filePath, CachedFile cachedFile) {
+		if (files.remove(filePath, cachedFile)) {
+			delete(cachedFile);
+		}
+		deleteDroppedFiles();
+	}
+
+	/**
+	 * Takes a dropped file out of the cache size and schedules it for deletion once it can no longer be being served
+	 */
+	private void delete(CachedFile cachedFile) {
+		totalBytes -= cachedFile.size;
+		droppedFiles.add(new DroppedFile(cachedFile.file.getParentFile(), System.currentTimeMillis() + deleteDelayMillis));
+	}
+
+	private void deleteDroppedFiles() {
+		long now = System.currentTimeMillis();
+		while (!droppedFiles.isEmpty() && droppedFiles.peek().deleteAfter <= now) {
+			File folder = droppedFiles.poll().folder;
+			if (!FileUtils.deleteQuietly(folder)) {
+				logger.warn("Could not delete cached file folder " + folder.getAbsolutePath());
+			}
+		}
+	}
+
+	private boolean isValid(CachedFile cachedFile) {
+		return System.currentTimeMillis() - cachedFile.created <= expiryMillis
+				&& cachedFile.file.length() == cachedFile.size && cachedFile.file.lastModified() == cachedFile.lastModified;
+	}
+
+	/**
+	 * Deletes the folders of instances that are no longer running, which are the folders whose lock can be taken.
+	 * The index of cached files is only kept in memory, so the files in them can never be served again.
+	 */
+	private static void deleteUnlockedFolders(File cacheDirectory) {
+		File[] folders = cacheDirectory.listFiles(File::isDirectory);
+		if (folders == null) {
+			return;
+		}
+		for (File folder : folders) {
+			File lockFile = new File(folder, LOCK_FILE);
+			if (!lockFile.isFile()) {
+				// an instance that is starting may not have created its lock yet
+				continue;
+			}
+			boolean unlocked;
+			try (FileChannel channel = FileChannel.open(lockFile.toPath(), StandardOpenOption.WRITE);
+					FileLock lock = channel.tryLock()) {
+				unlocked = lock != null;
+			}
+			catch (IOException | OverlappingFileLockException e) {
+				unlocked = false;
+			}
+			if (unlocked) {
+				FileUtils.deleteQuietly(folder);
+			}
+		}
+	}
+
+	private static class CachedFile {
+
+		private final File file;
+
+		private final long size;
+
+		private final long lastModified;
+
+		private final long created;
+
+		private CachedFile(File file, long size, long lastModified, long created) {
+			this.file = file;
+			this.size = size;
+			this.lastModified = lastModified;
+			this.created = created;
+		}
+	}
+
+	private static class DroppedFile {
+
+		private final File folder;
+
+		private final long deleteAfter;
+
+		private DroppedFile(File folder, long deleteAfter) {
+			this.folder = folder;
+			this.deleteAfter = deleteAfter;
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package org.opensrp.web.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.smartregister.domain.PlanDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Holds plan definitions looked up by identifier so that the plans every device reads on login and during sync are
+ * not fetched and projected again for each request. Each plan is cached on its own, keyed by its identifier together
+ * with the requested field projection, so requests for overlapping sets of plans share entries and only the plans
+ * not yet cached are fetched. Plans are always fetched with their identifier, which is dropped again when it was not
+ * requested, so that every projection can be cached. A plan is dropped whenever it is saved on this node and an older
+ * serverVersion never replaces a newer one. The expiry bounds staleness for saves made on other nodes.
+ */
+@Component
+public class PlanDefinitionCache {
+
+	private static final String KEY_SEPARATOR = "|";
+
+	private static final String ALL_FIELDS = "*";
+
+	private static final String IDENTIFIER = "identifier";
+
+	private final Cache<String, PlanDefinition> plans;
+
+	@Autowired
+	public PlanDefinitionCache(@Value("#{opensrp['plan.cache.expiry.seconds'] ?: 300}") long expirySeconds,
+			@Value("#{opensrp['plan.cache.max.entries'] ?: 1000}") long maxEntries) {
+		this.plans = CacheBuilder.newBuilder()
+				.expireAfterWrite(expirySeconds, TimeUnit.SECONDS)
+				.maximumSize(maxEntries)
+				.build();
+	}
+
+	/**
+	 * Builds the cache key of a plan that does not depend on the order or duplication of the fields
+	 *
+	 * @param identifier the plan identifier
+	 * @param fields     the fields to return, null or empty for all fields
+	 * @param isTemplate whether template plans are requested
+	 * @return the cache key
+	 */
+	public static String buildKey(String identifier, List<String> fields, boolean isTemplate) {
+		String projection = fields == null || fields.isEmpty() ? ALL_FIELDS
+				: StringUtils.join(new TreeSet<>(fields), ",");
+		return isTemplate + KEY_SEPARATOR + projection + KEY_SEPARATOR + identifier;
+	}
+
+	/**
+	 * Returns the plans for the identifiers and field projection. Plans that are not cached are loaded with one call
+	 * to the loader and stored by their identifier.
+	 *
+	 * @param identifiers the plan identifiers
+	 * @param fields      the fields to return, null or empty for all fields
+	 * @param isTemplate  whether template plans are requested
+	 * @param loader      fetches the plans with the given identifiers and fields, which include the identifier
+	 * @return the plans found, cached plans first in the order requested; the plans must not be modified by the
+	 *         caller
+	 */
+	public List<PlanDefinition> get(List<String> identifiers, List<String> fields, boolean isTemplate,
+			BiFunction<List<String>, List<String>, List<PlanDefinition>> loader) {
+		Set<String> uniqueIdentifiers = new LinkedHashSet<>(identifiers);
+		List<PlanDefinition> foundPlans = new ArrayList<>();
+		List<String> missingIdentifiers = new ArrayList<>();
+		for (String identifier : uniqueIdentifiers) {
+			PlanDefinition plan = plans.getIfPresent(buildKey(identifier, fields, isTemplate));
+			if (plan == null) {
+				missingIdentifiers.add(identifier);
+			} else {
+				foundPlans.add(plan);
+			}
+		}
+		if (missingIdentifiers.isEmpty()) {
+			return foundPlans;
+		}
+
+		boolean identifierRequested = fields == null || fields.isEmpty() || fields.contains(IDENTIFIER);
+		List<String> loadedFields = fields;
+		if (!identifierRequested) {
+			loadedFields = new ArrayList<>(fields);
+			loadedFields.add(IDENTIFIER);
+		}
+		List<PlanDefinition> loadedPlans = loader.apply(missingIdentifiers, loadedFields);
+		if (loadedPlans == null) {
+			return foundPlans.isEmpty() ? null : foundPlans;
+		}
+		for (PlanDefinition plan : loadedPlans) {
+			String identifier = plan.getIdentifier();
+			if (!identifierRequested) {
+				plan.setIdentifier(null);
+			}
+			if (identifier != null && uniqueIdentifiers.contains(identifier)) {
+				plans.asMap().merge(buildKey(identifier, fields, isTemplate), plan, PlanDefinitionCache::newer);
+			}
+			foundPlans.add(plan);
+		}
+		return foundPlans;
+	}
+
+	/**
+	 * Drops a plan in every projection, called whenever the plan is created or updated
+	 *
+	 * @param identifier the identifier of the plan saved
+	 */
+	public void invalidate(String identifier) {
+		if (identifier == null) {
+			invalidateAll();
+			return;
+		}
+		String suffix = KEY_SEPARATOR + identifier;
+		plans.asMap().keySet().removeIf(key -> key.endsWith(suffix));
+	}
+
+	/**
+	 * Drops all plans
+	 */
+	public void invalidateAll() {
+		plans.invalidateAll();
+	}
+
+	public long size() {
+		return plans.size();
+	}
+
+	private static PlanDefinition newer(PlanDefinition cachedPlan, PlanDefinition loadedPlan) {
+		Long cachedVersion = cachedPlan.getServerVersion();
+		Long loadedVersion = loadedPlan.getServerVersion();
+		if (cachedVersion != null && loadedVersion != null && cachedVersion > loadedVersion) {
+			return cachedPlan;
+		}
+		return loadedPlan;
+	}
+}
@@ -0,0 +1,81 @@
+package org.opensrp.web.cache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.lang3.StringUtils;
+import org.opensrp.domain.setting.SettingConfiguration;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Holds settings that have already been resolved against a location hierarchy so that settings sync does not
+ * rebuild the location tree and re-run settings inheritance for every device. Entries are keyed by the location
+ * together with the rest of the sync query (including the settings serverVersion) and are dropped whenever settings
+ * are saved on this node. The expiry bounds staleness for saves made on other nodes.
+ */
+@Component
+public class ResolvedSettingsCache {
+
+	private static final String KEY_SEPARATOR = "|";
+
+	private final Cache<String, List<SettingConfiguration>> resolvedSettings;
+
+	@Autowired
+	public ResolvedSettingsCache(@Value("#{opensrp['settings.resolved.cache.expiry.seconds'] ?: 300}") long expirySeconds,
+			@Value("#{opensrp['settings.resolved.cache.max.entries'] ?: 1000}") long maxEntries) {
+		this.resolvedSettings = CacheBuilder.newBuilder()
+				.expireAfterWrite(expirySeconds, TimeUnit.SECONDS)
+				.maximumSize(maxEntries)
+				.build();
+	}
+
+	/**
+	 * Builds a cache key from the settings query parameters
+	 *
+	 * @param locationId    the location the settings are resolved for
+	 * @param serverVersion the settings serverVersion the device is syncing from
+	 * @param parameters    the remaining query parameters that affect the result
+	 * @return the cache key
+	 */
+	public static String buildKey(String locationId, long serverVersion, Object... parameters) {
+		StringBuilder key = new StringBuilder(locationId).append(KEY_SEPARATOR).append(serverVersion);
+		for (Object parameter : parameters) {
+			key.append(KEY_SEPARATOR).append(parameter == null ? StringUtils.EMPTY : parameter);
+		}
+		return key.toString();
+	}
+
+	/**
+	 * Returns the resolved settings for the key, loading and storing them on a miss
+	 *
+	 * @param key    the key built with {@link #buildKey(String, long, Object...)}
+	 * @param loader resolves the settings when they are not cached
+	 * @return the resolved settings
+	 */
+	public List<SettingConfiguration> get(String key, Supplier<List<SettingConfiguration>> loader) {
+		List<SettingConfiguration> settings = resolvedSettings.getIfPresent(key);
+		if (settings == null) {
+			settings = loader.get();
+			if (settings != null) {
+				resolvedSettings.put(key, settings);
+			}
+		}
+		return settings;
+	}
+
+	/**
+	 * Drops all resolved settings, called whenever settings are saved or deleted
+	 */
+	public void invalidateAll() {
+		resolvedSettings.invalidateAll();
+	}
+
+	public long size() {
+		return resolvedSettings.size();
+	}
+}
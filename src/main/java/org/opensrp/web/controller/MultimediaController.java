@@ -1,35 +1,50 @@
 package org.opensrp.web.controller;
 
 import static org.opensrp.web.rest.RestUtils.zipFiles;
+import static org.opensrp.web.utils.FileServingUtil.serveFile;
+import static org.opensrp.web.utils.ImageRenditionUtil.parseSizes;
+import static org.opensrp.web.utils.ImageRenditionUtil.selectSize;
+import static org.opensrp.web.utils.ImageRenditionUtil.writeRendition;
 import static org.opensrp.web.utils.MultimediaUtil.hasSpecialCharacters;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URLConnection;
 import java.nio.charset.Charset;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.zip.ZipOutputStream;
 
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.http.util.TextUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.opensrp.domain.Multimedia;
 import org.opensrp.dto.form.MultimediaDTO;
 import org.opensrp.service.MultimediaService;
+import org.opensrp.service.multimedia.S3MultimediaFileManager;
+import org.opensrp.web.cache.MediaFileCache;
+import org.opensrp.web.service.MultimediaUploadService;
+import org.opensrp.web.utils.ImageRenditionUtil;
+import org.opensrp.web.utils.MultimediaZipWriter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
-import org.springframework.util.FileCopyUtils;
 import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -54,19 +69,46 @@ public class MultimediaController {
 
 	@Value("#{opensrp['multimedia.file.manager']}")
 	private String fileManager;
+
+	@Value("#{opensrp['multimedia.rendition.sizes'] ?: '48,96,192,384'}")
+	private String renditionSizes;
+
+	@Value("#{opensrp['multimedia.rendition.max.age.seconds'] ?: 86400}")
+	private long renditionMaxAge;
+
+	@Value("#{opensrp['multimedia.zip.prefetch.threads'] ?: 8}")
+	private int zipPrefetchThreads = 8;
+
+	private volatile ExecutorService zipPrefetchExecutor;
 	
 	private MultimediaService multimediaService;
+
+	private MediaFileCache mediaFileCache;
+
+	private MultimediaUploadService multimediaUploadService;
 	
 	public final static String FILE_NAME_ERROR_MESSAGE = "Sorry. File Name should not contain any special character";
 	
 	private final static String ENTITY_ID_ERROR_MESSAGE = "Sorry. Entity Id should not contain any special character";
 
 	private final static String FILE_SYSTEM_MULTIMEDIA_MANAGER = "FileSystemMultimediaFileManager";
-	
+
+	private final static String SIZE_ERROR_MESSAGE = "Sorry. Size should be a positive number of pixels";
+
 	@Autowired
 	public void setMultimediaService(MultimediaService multimediaService) {
 		this.multimediaService = multimediaService;
 	}
+
+	@Autowired
+	public void setMediaFileCache(MediaFileCache mediaFileCache) {
+		this.mediaFileCache = mediaFileCache;
+	}
+
+	@Autowired
+	public void setMultimediaUploadService(MultimediaUploadService multimediaUploadService) {
+		this.multimediaUploadService = multimediaUploadService;
+	}
 	
 	/**
 	 * Download a file from the multimedia directory. The method also assumes two file types mp4 and
@@ -79,8 +121,8 @@ public class MultimediaController {
 	 * @throws IOException
 	 */
 	@RequestMapping(value = "/download/{fileName:.+}", method = RequestMethod.GET)
-	public void downloadFileWithAuth(HttpServletResponse response, @PathVariable("fileName") String fileName)
-	        throws IOException {
+	public void downloadFileWithAuth(HttpServletResponse response, @PathVariable("fileName") String fileName,
+	        HttpServletRequest request) throws IOException {
 		
 		if (hasSpecialCharacters(fileName)) {
 			specialCharactersError(response, FILE_NAME_ERROR_MESSAGE);
@@ -92,31 +134,41 @@ public class MultimediaController {
 			if (fileName.endsWith("mp4")) {
 				file = new File(multiMediaDir + File.separator + "videos" + File.separator + fileName.trim());
 			}
-			downloadFile(file, response);
+			downloadFile(file, request, response);
 		} else {
 			writeFileNotFound(response);
 		}
-		downloadFile(file, response);
 	}
 	
 	/**
 	 * Downloads a file from the server given the client id. A search is made to the multimedia repo
-	 * to see if any file exists mapped to the user whereby the filepath is recorded
+	 * to see if any file exists mapped to the user whereby the filepath is recorded. When a size is given a JPEG
+	 * rendition that fits within size x size pixels is returned instead of the original photo
 	 *
 	 * @param response
 	 * @param baseEntityId
+	 * @param size the size in pixels of the rendition, rounded up to the next configured rendition size
 	 * @throws IOException
 	 * @throws Exception
 	 */
 	@RequestMapping(value = "/profileimage/{baseEntityId}", method = RequestMethod.GET)
-	public void downloadFileByClientId(HttpServletResponse response, @PathVariable("baseEntityId") String baseEntityId)
-	        throws IOException {
+	public void downloadFileByClientId(HttpServletResponse response, @PathVariable("baseEntityId") String baseEntityId,
+	        @RequestParam(value = "size", required = false) Integer size, HttpServletRequest request) throws IOException {
 		
 		if (hasSpecialCharacters(baseEntityId)) {
 			specialCharactersError(response, ENTITY_ID_ERROR_MESSAGE);
 			return;
 		}
-		downloadFileWithAuth(baseEntityId, response);
+		if (size != null && size <= 0) {
+			specialCharactersError(response, SIZE_ERROR_MESSAGE);
+			return;
+		}
+		Integer renditionSize = size == null ? null : selectSize(size, parseSizes(renditionSizes));
+		if (renditionSize != null) {
+			downloadRendition(baseEntityId, renditionSize, request, response);
+		} else {
+			downloadFileWithAuth(baseEntityId, request, response);
+		}
 		
 	}
 	
@@ -135,7 +187,8 @@ public class MultimediaController {
 	@RequestMapping(value = "/media/{entity-id}", method = RequestMethod.GET)
 	public void downloadFiles(HttpServletResponse response, @PathVariable("entity-id") String entityId,
 	        @RequestParam(value = "content-type", required = false) String contentType,
-	        @RequestParam(value = "file-category", required = false) String fileCategory) throws IOException {
+	        @RequestParam(value = "file-category", required = false) String fileCategory, HttpServletRequest request)
+	        throws IOException {
 		
 		// todo: change this to a common repo constant
 		if (!TextUtils.isBlank(fileCategory) && "multi_version".equals(fileCategory)) {
@@ -144,11 +197,12 @@ public class MultimediaController {
 			response.setContentType("image/jpeg/zip");
 			response.setHeader("Content-Disposition", "attachment; filename=images.zip");
 			ZipOutputStream zipOutputStream = new ZipOutputStream(new BufferedOutputStream(response.getOutputStream()));
-			zipFiles(zipOutputStream, multimediaFiles, multimediaService.getFileManager());
+			zipFiles(zipOutputStream, multimediaFiles, multimediaService.getFileManager(), mediaFileCache,
+			    getZipPrefetchExecutor());
 			zipOutputStream.close();
 		} else {
 			// default to single profile image retrieval logic
-			downloadFileWithAuth(entityId, response);
+			downloadFileWithAuth(entityId, request, response);
 		}
 	}
 	
@@ -172,8 +226,17 @@ public class MultimediaController {
 		MultimediaDTO multimediaDTO = new MultimediaDTO(entityId.trim(), providerId.trim(), file.getContentType().trim(), null, fileCategory.trim());
 		multimediaDTO.withOriginalFileName(file.getOriginalFilename()).withDateUploaded(new Date());
 
+		Multimedia previous = mediaFileCache == null ? null : multimediaService.findByCaseId(entityId.trim());
 		logger.info("Saving multimedia file...");
-		String status = multimediaService.saveFile(multimediaDTO, file.getBytes(), file.getOriginalFilename());
+		String status = multimediaUploadService.saveFile(multimediaDTO, file,
+				entityId.trim() + "|" + fileCategory.trim() + "|" + file.getOriginalFilename());
+		if (mediaFileCache != null) {
+			// drops the profile image, whatever its extension, and its renditions
+			mediaFileCache.invalidateByPrefix(getProfileImagePathPrefix(entityId) + ".");
+			if (previous != null && StringUtils.hasText(previous.getFilePath())) {
+				mediaFileCache.invalidateByPrefix(previous.getFilePath());
+			}
+		}
 
 		return new ResponseEntity<>(new Gson().toJson(status), HttpStatus.OK);
 	}
@@ -182,36 +245,166 @@ public class MultimediaController {
 	 * Downloads file on successful authentication
 	 *
 	 * @param baseEntityId
+	 * @param request
 	 * @param response
 	 * @throws Exception
 	 */
-	private void downloadFileWithAuth(String baseEntityId, HttpServletResponse response) throws IOException {
+	private void downloadFileWithAuth(String baseEntityId, HttpServletRequest request, HttpServletResponse response)
+	        throws IOException {
+		File file = retrieveProfileImage(getProfileImageLocation(baseEntityId));
+		if (file != null) {
+			downloadFile(file, request, response);
+		} else {
+			writeFileNotFound(response);
+		}
+	}
+	
+	/**
+	 * Downloads a rendition of the profile image, creating it on the first request. Renditions are stored through
+	 * the file manager next to the original, named after the time the original was uploaded, so that every node
+	 * serves the same copy and a new upload is never answered with the rendition of the previous photo. The original
+	 * is served if it is not an image that can be scaled.
+	 *
+	 * @param baseEntityId
+	 * @param size
+	 * @param request
+	 * @param response
+	 * @throws IOException
+	 */
+	private void downloadRendition(String baseEntityId, int size, HttpServletRequest request,
+	        HttpServletResponse response) throws IOException {
 		Multimedia multimedia = multimediaService.findByCaseId(String.valueOf(baseEntityId));
+		String renditionLocation = getRenditionLocation(baseEntityId, multimedia, size);
+		File rendition = renditionLocation == null ? null : retrieveProfileImage(renditionLocation);
+		if (rendition != null) {
+			response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=" + renditionMaxAge);
+			downloadFile(rendition, request, response, true);
+			return;
+		}
+		
+		String fileLocation = getProfileImageLocation(baseEntityId, multimedia);
+		File renditionDirectory = Files.createTempDirectory("opensrp-rendition").toFile();
+		try {
+			rendition = createRendition(fileLocation, baseEntityId.trim(), size, renditionDirectory);
+			if (rendition == null) {
+				downloadFileWithAuth(baseEntityId, request, response);
+				return;
+			}
+			if (renditionLocation != null) {
+				storeRendition(renditionLocation, rendition);
+			}
+			response.setHeader(HttpHeaders.CACHE_CONTROL, "private, max-age=" + renditionMaxAge);
+			// the temporary rendition is deleted below, before the container would open it for sendfile
+			downloadFile(rendition, request, response, false);
+		}
+		finally {
+			FileUtils.deleteQuietly(renditionDirectory);
+		}
+	}
+	
+	private File createRendition(String fileLocation, String baseEntityId, int size, File renditionDirectory) {
+		File original = retrieveProfileImage(fileLocation);
+		if (original == null) {
+			return null;
+		}
+		try {
+			File rendition = new File(renditionDirectory,
+			    baseEntityId + "-" + size + "." + ImageRenditionUtil.RENDITION_FORMAT);
+			logger.info("Creating " + size + "px rendition of " + fileLocation);
+			return writeRendition(original, rendition, size) ? rendition : null;
+		}
+		catch (IOException e) {
+			logger.warn("Could not create rendition of " + fileLocation, e);
+			return null;
+		}
+		finally {
+			if (!isProfileImageCached() && multimediaService.getFileManager() instanceof S3MultimediaFileManager) {
+				// the file manager downloaded a temporary copy for the rendition
+				FileUtils.deleteQuietly(original);
+			}
+		}
+	}
+	
+	private void storeRendition(String renditionLocation, File rendition) {
+		try {
+			multimediaService.getFileManager().persistFileToStorage(renditionLocation,
+			    FileUtils.readFileToByteArray(rendition));
+		}
+		catch (IOException e) {
+			// the rendition is still served and will be created again on the next request
+			logger.warn("Could not store rendition " + renditionLocation, e);
+		}
+	}
+	
+	/**
+	 * Returns where the rendition of the profile image is stored, or null if the profile image has no upload time to
+	 * tell its versions apart, in which case renditions are created on each request
+	 *
+	 * @param baseEntityId
+	 * @param multimedia the multimedia record of the profile image
+	 * @param size
+	 * @return the rendition location
+	 */
+	private String getRenditionLocation(String baseEntityId, Multimedia multimedia, int size) {
+		if (multimedia == null || multimedia.getDateUploaded() == null || multimediaService.getFileManager() == null) {
+			return null;
+		}
+		return getProfileImagePathPrefix(baseEntityId) + "-" + multimedia.getDateUploaded().getTime() + "-" + size + "."
+		        + ImageRenditionUtil.RENDITION_FORMAT;
+	}
+	
+	private String getProfileImageLocation(String baseEntityId) {
+		return getProfileImageLocation(baseEntityId, multimediaService.findByCaseId(String.valueOf(baseEntityId)));
+	}
+	
+	private String getProfileImageLocation(String baseEntityId, Multimedia multimedia) {
 		String extension = "";
 		if (multimedia != null && multimedia.getContentType() != null) {
 			extension = getFileExtension(multimedia);
 		}
 		String fileExtension = StringUtils.isEmpty(extension) ? ".jpg" : extension;
-		String fileLocation = !FILE_SYSTEM_MULTIMEDIA_MANAGER.equals(fileManager)?
-				MultimediaService.IMAGES_DIR + File.separator + baseEntityId.trim() + fileExtension :
-				multiMediaDir + File.separator + MultimediaService.IMAGES_DIR + File.separator + baseEntityId.trim() + fileExtension;
-
-		File file = multimediaService.retrieveFile(fileLocation);
-		if (file != null) {
-			downloadFile(file, response);
-		} else {
-			writeFileNotFound(response);
-		}
+		return getProfileImagePathPrefix(baseEntityId) + fileExtension;
+	}
+	
+	private String getProfileImagePathPrefix(String baseEntityId) {
+		return !FILE_SYSTEM_MULTIMEDIA_MANAGER.equals(fileManager)?
+				MultimediaService.IMAGES_DIR + File.separator + baseEntityId.trim() :
+				multiMediaDir + File.separator + MultimediaService.IMAGES_DIR + File.separator + baseEntityId.trim();
+	}
+	
+	private File retrieveProfileImage(String fileLocation) {
+		return isProfileImageCached() ? mediaFileCache.get(fileLocation, multimediaService::retrieveFile) :
+				multimediaService.retrieveFile(fileLocation);
+	}
+	
+	private boolean isProfileImageCached() {
+		return mediaFileCache != null && MediaFileCache.isCacheable(multimediaService.getFileManager());
 	}
 	
 	/**
-	 * Retrieves file and writes content to response (downloads file)
+	 * Retrieves file and writes content to response (downloads file). Byte ranges and conditional requests are
+	 * honoured so that interrupted downloads can resume and unchanged files are not sent again.
 	 *
 	 * @param file
+	 * @param request
 	 * @param response
 	 * @throws Exception
 	 */
-	private void downloadFile(File file, HttpServletResponse response) throws IOException {
+	private void downloadFile(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		downloadFile(file, request, response, true);
+	}
+	
+	/**
+	 * Retrieves file and writes content to response (downloads file)
+	 *
+	 * @param file
+	 * @param request
+	 * @param response
+	 * @param allowSendfile false if the file is deleted once this method returns
+	 * @throws IOException
+	 */
+	private void downloadFile(File file, HttpServletRequest request, HttpServletResponse response,
+	        boolean allowSendfile) throws IOException {
 		
 		if (hasSpecialCharacters(file.getName())) {
 			specialCharactersError(response, FILE_NAME_ERROR_MESSAGE);
@@ -240,12 +433,7 @@ public class MultimediaController {
 		/* "Content-Disposition : attachment" will be directly download, may provide save as popup, based on your browser setting*/
 		//response.setHeader("Content-Disposition", String.format("attachment; filename=\"%s\"", file.getName()));
 		
-		response.setContentLength((int) file.length());
-		
-		InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
-		
-		//Copy bytes from source to destination(outputstream in this example), closes both streams.
-		FileCopyUtils.copy(inputStream, response.getOutputStream());
+		serveFile(file, request, response, allowSendfile);
 	}
 	
 	/**
@@ -294,4 +482,35 @@ public class MultimediaController {
 		}
 		return fileExt;
 	}
+
+	/**
+	 * Returns the executor S3 files of all zip downloads are prefetched on, creating it on first use. When all its
+	 * threads are busy and its queue is full a file is downloaded on the request thread instead.
+	 */
+	private ExecutorService getZipPrefetchExecutor() {
+		if (zipPrefetchExecutor == null) {
+			synchronized (this) {
+				if (zipPrefetchExecutor == null) {
+					AtomicInteger threadCount = new AtomicInteger();
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(zipPrefetchThreads, zipPrefetchThreads, 60,
+					        TimeUnit.SECONDS, new ArrayBlockingQueue<>(zipPrefetchThreads * MultimediaZipWriter.PREFETCH_SIZE),
+					        runnable -> {
+						        Thread thread = new Thread(runnable, "zip-prefetch-" + threadCount.incrementAndGet());
+						        thread.setDaemon(true);
+						        return thread;
+					        }, new ThreadPoolExecutor.CallerRunsPolicy());
+					executor.allowCoreThreadTimeOut(true);
+					zipPrefetchExecutor = executor;
+				}
+			}
+		}
+		return zipPrefetchExecutor;
+	}
+
+	@PreDestroy
+	public void shutdownZipPrefetchExecutor() {
+		if (zipPrefetchExecutor != null) {
+			zipPrefetchExecutor.shutdownNow();
+		}
+	}
 }
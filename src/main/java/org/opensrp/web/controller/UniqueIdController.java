@@ -2,19 +2,29 @@ package org.opensrp.web.controller;
 
 import static org.opensrp.web.rest.RestUtils.getStringFilter;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.output.TeeOutputStream;
 import org.apache.commons.lang.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -26,6 +36,9 @@ import org.opensrp.domain.IdentifierSource;
 import org.opensrp.service.IdentifierSourceService;
 import org.opensrp.service.OpenmrsIDService;
 import org.opensrp.service.UniqueIdentifierService;
+import org.opensrp.web.exceptions.ResponseAbortedException;
+import org.opensrp.web.uniqueid.UniqueIdentifierPool;
+import org.opensrp.web.utils.AsyncFileOutputStream;
 import org.opensrp.web.utils.PdfUtil;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,6 +56,8 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.gson.Gson;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 @Controller
 @RequestMapping("/uniqueids")
 public class UniqueIdController extends OpenmrsService {
@@ -67,13 +82,45 @@ public class UniqueIdController extends OpenmrsService {
 	@Autowired
 	protected ObjectMapper objectMapper;
 	
+	@Autowired(required = false)
+	private MeterRegistry meterRegistry;
+	
+	/**
+	 * The number of identifiers each node leases from an identifier source at a time. Leasing is off when this is 0.
+	 * <p>
+	 * Leased identifiers are stored as used by {@code lease:<host>} rather than by the user they are issued to, since
+	 * the block is generated before it is known who takes each identifier. The user and the identifiers issued to them
+	 * are written to the log instead, so the audit of who used an identifier moves from the database to the logs when
+	 * leasing is turned on.
+	 */
+	@Value("#{opensrp['uniqueids.lease.block.size'] ?: 0}")
+	private int leaseBlockSize;
+	
+	private final Map<String, UniqueIdentifierPool> leasedIdentifiers = new ConcurrentHashMap<>();
+	
+	private static final String LEASE_USED_BY_PREFIX = "lease:";
+	
+	private static final int ARCHIVE_BUFFER_SIZE = 64 * 1024;
+	
+	/**
+	 * The number of archive copies written on their own thread at a time. Further copies are written on the request
+	 * thread.
+	 */
+	@Value("#{opensrp['qrcode.archive.threads'] ?: 4}")
+	private int archiveThreads = 4;
+	
+	private volatile ExecutorService archiveExecutor;
+	
 	/**
 	 * Download extra ids from openmrs if less than the specified batch size, convert the ids to qr
-	 * and print to a pdf
+	 * and print to a pdf. The pdf is streamed to the response, so nothing else is returned once it
+	 * has been written. If writing the pdf fails before the response is committed the response is
+	 * reset and the error message is returned instead; after that the request fails so that the
+	 * container aborts the connection rather than ending a truncated pdf normally.
 	 *
 	 * @param request
 	 * @param response
-	 * @return
+	 * @return the error message, or null once the pdf has been written
 	 * @throws JSONException
 	 */
 	@RequestMapping(method = RequestMethod.GET, value = "/print", produces = { MediaType.APPLICATION_JSON_VALUE })
@@ -88,30 +135,57 @@ public class UniqueIdController extends OpenmrsService {
 		String currentPrincipalName = authentication.getName();
 		String fileName = "QRCodes_".concat(df.format(new Date())).concat("_").concat(currentPrincipalName)
 		        .concat("_" + numberToGenerate + ".pdf");
-		response.setHeader("Expires", "0");
-		response.setHeader("Cache-Control", "must-revalidate, post-check=0, pre-check=0");
-		response.setHeader("Pragma", "public");
-		response.setContentType("application/pdf");
-		response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
 		
-		try (ByteArrayOutputStream byteArrayOutputStream = PdfUtil.generatePdf(idsToPrint, 140, 140, 1, 5);
-		        FileOutputStream fileOutputStream = new FileOutputStream(qrCodesDir + File.separator + fileName);
-		        OutputStream os = response.getOutputStream();) {
+		try {
 			user = openmrsUserService.getUser(currentPrincipalName);
 			if (!checkRoleIfRoleExitst(user.getRoles(), "opensrp-generate-qr-code")) {
 				return new ResponseEntity<>("Sorry, insufficient privileges to generate ID QR codes", HttpStatus.OK);
 			}
 			
 			openmrsIdService.downloadAndSaveIds(numberToGenerate, currentPrincipalName);
-			if (byteArrayOutputStream.size() > 0) {
-				//mark ids as used
-				fileOutputStream.write(byteArrayOutputStream.toByteArray());
-				openmrsIdService.markIdsAsUsed(idsToPrint);
-				byteArrayOutputStream.writeTo(os);
+			response.setHeader("Expires", "0");
+			response.setHeader("Cache-Control", "must-revalidate, post-check=0, pre-check=0");
+			response.setHeader("Pragma", "public");
+			response.setContentType("application/pdf");
+			response.setHeader("Content-Disposition", "attachment; filename=" + fileName);
+			// the pdf is streamed to the client while the archive copy is written on another thread
+			File archiveFile = new File(qrCodesDir + File.separator + fileName);
+			AsyncFileOutputStream archive = new AsyncFileOutputStream(archiveFile, getArchiveExecutor());
+			boolean written = false;
+			OutputStream os = new TeeOutputStream(response.getOutputStream(),
+			        new BufferedOutputStream(archive, ARCHIVE_BUFFER_SIZE));
+			try {
+				PdfUtil.writePdf(idsToPrint, 140, 140, 1, 5, os);
+				os.close();
+				written = true;
+			}
+			catch (Exception e) {
+				// only the archive is closed, closing the response would end the truncated pdf normally
+				IOUtils.closeQuietly(archive);
+				if (response.isCommitted()) {
+					throw new ResponseAbortedException("Could not finish streaming " + fileName, e);
+				}
+				response.reset();
+				throw e;
 			}
-			message = "Successfully generated the ID QR codes";
+			finally {
+				boolean archived = written;
+				archive.getCompletion().whenComplete((result, e) -> {
+					if (e != null || !archived) {
+						logger.error("Could not archive " + archiveFile.getAbsolutePath(), e);
+						archiveFile.delete();
+					}
+				});
+			}
+			//mark ids as used
+			openmrsIdService.markIdsAsUsed(idsToPrint);
+			logger.info("Successfully generated the ID QR codes");
+			return null;
 			
 		}
+		catch (ResponseAbortedException e) {
+			throw e;
+		}
 		catch (Exception e) {
 			logger.error("", e);
 			message = "Sorry, an error occured when generating the qr code pdf";
@@ -144,8 +218,14 @@ public class UniqueIdController extends OpenmrsService {
 		IdentifierSource identifierSource = identifierSourceService.findByIdentifier(source);
 		
 		if (identifierSource != null) {
-			List<String> identifiers = uniqueIdentifierService.generateIdentifiers(identifierSource,
-			    Integer.parseInt(numberToGenerate), usedBy);
+			List<String> identifiers;
+			if (leaseBlockSize > 0) {
+				identifiers = getLeasedIdentifiers(source).take(Integer.parseInt(numberToGenerate));
+				logger.info("Issued leased identifiers " + identifiers + " from source " + source + " to " + usedBy);
+			} else {
+				identifiers = uniqueIdentifierService.generateIdentifiers(identifierSource,
+				    Integer.parseInt(numberToGenerate), usedBy);
+			}
 			map.put("identifiers", identifiers);
 			
 			return new ResponseEntity<>(objectMapper.writeValueAsString(map), HttpStatus.OK);
@@ -158,4 +238,68 @@ public class UniqueIdController extends OpenmrsService {
 		
 	}
 	
+	/**
+	 * Returns the identifiers this node has leased from the source. Each lease generates a block of identifiers in one
+	 * call, which advances the source's sequence once for the whole block, and the block is then issued from memory
+	 * so that nodes only contend for the sequence once per block.
+	 *
+	 * @param source the identifier of the identifier source
+	 * @return the pool of leased identifiers
+	 */
+	private UniqueIdentifierPool getLeasedIdentifiers(String source) {
+		return leasedIdentifiers.computeIfAbsent(source, key -> {
+			UniqueIdentifierPool pool = new UniqueIdentifierPool(uniqueIdentifierService, identifierSourceService, key,
+			        LEASE_USED_BY_PREFIX + getNodeName(), leaseBlockSize / 4, leaseBlockSize);
+			if (meterRegistry != null) {
+				UniqueIdentifierPool.registerMetrics(meterRegistry, pool, Function.identity(), "lease", key);
+			}
+			return pool;
+		});
+	}
+	
+	private static String getNodeName() {
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		}
+		catch (UnknownHostException e) {
+			return "unknown";
+		}
+	}
+	
+	/**
+	 * Returns the executor archive copies are written on, creating it on first use. It has no queue, so when all its
+	 * threads are busy it rejects the copy, which is then written on the request thread.
+	 */
+	private ExecutorService getArchiveExecutor() {
+		if (archiveExecutor == null) {
+			synchronized (this) {
+				if (archiveExecutor == null) {
+					archiveExecutor = new ThreadPoolExecutor(0, Math.max(archiveThreads, 1), 60, TimeUnit.SECONDS,
+					        new SynchronousQueue<>(), runnable -> {
+						        Thread thread = new Thread(runnable, "qrcode-archive");
+						        thread.setDaemon(true);
+						        return thread;
+					        }, new ThreadPoolExecutor.AbortPolicy());
+				}
+			}
+		}
+		return archiveExecutor;
+	}
+	
+	public void closeLeasedIdentifiers() {
+		leasedIdentifiers.values().forEach(UniqueIdentifierPool::close);
+		leasedIdentifiers.clear();
+	}
+	
+	/**
+	 * Stops identifier leasing and lets archive copies that are still being written finish
+	 */
+	@PreDestroy
+	public void close() {
+		closeLeasedIdentifiers();
+		if (archiveExecutor != null) {
+			archiveExecutor.shutdown();
+		}
+	}
+	
 }
@@ -49,6 +49,7 @@ import org.opensrp.service.OrganizationService;
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.PlanService;
 import org.opensrp.service.PractitionerService;
+import org.opensrp.web.cache.PlanDefinitionCache;
 import org.opensrp.web.exceptions.MissingTeamAssignmentException;
 import org.opensrp.web.rest.RestUtils;
 import org.slf4j.LoggerFactory;
@@ -73,6 +74,8 @@ public class UserController {
 	
 	private static Logger logger = LogManager.getLogger(UserController.class.toString());
 	
+	public static final String IDENTIFIER="identifier";
+
 	public static final String JURISDICTION="jurisdiction";
 	
 	public static final String STATUS="status";
@@ -88,6 +91,8 @@ public class UserController {
 	
 	private PlanService planService;
 	
+	private PlanDefinitionCache planDefinitionCache;
+	
 	@Value("#{opensrp['openmrs.version']}")
 	protected String OPENMRS_VERSION;
 	
@@ -136,6 +141,14 @@ public class UserController {
 		this.planService = planService;
 	}
 	
+	/**
+	 * @param planDefinitionCache the planDefinitionCache to set
+	 */
+	@Autowired
+	public void setPlanDefinitionCache(PlanDefinitionCache planDefinitionCache) {
+		this.planDefinitionCache = planDefinitionCache;
+	}
+	
 	@RequestMapping(method = RequestMethod.GET, value = "/authenticate-user")
 	public ResponseEntity<HttpStatus> authenticateUser() {
 		return new ResponseEntity<>(null, allowOrigin(opensrpAllowedSources), OK);
@@ -214,9 +227,11 @@ public class UserController {
 			
 			if (!planIdentifiers.isEmpty()) {
 				/** @formatter:off*/
-				Set<String> planLocationIds = planService
-				        .getPlansByIdsReturnOptionalFields(new ArrayList<>(planIdentifiers),
-				        	Arrays.asList(UserController.JURISDICTION,UserController.STATUS), false)
+				List<String> planIds = new ArrayList<>(planIdentifiers);
+				List<String> planFields = Arrays.asList(UserController.IDENTIFIER,UserController.JURISDICTION,UserController.STATUS);
+				Set<String> planLocationIds = planDefinitionCache
+				        .get(planIds, planFields, false,
+				        	(missingPlanIds, loadedFields) -> planService.getPlansByIdsReturnOptionalFields(missingPlanIds, loadedFields, false))
 				        .stream()
 				        .filter(plan -> PlanStatus.ACTIVE.equals(plan.getStatus()))
 				        .flatMap(plan -> plan.getJurisdiction().stream())
@@ -7,18 +7,34 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PreDestroy;
 
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.lang3.StringUtils;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
+import org.opensrp.web.cache.ContactPhoneNumberIndex;
 import org.opensrp.web.rest.RestUtils;
 import org.smartregister.domain.Address;
 import org.smartregister.domain.Client;
@@ -27,16 +43,20 @@ import org.smartregister.domain.Obs;
 import org.opensrp.service.ClientService;
 import org.opensrp.service.EventService;
 import org.opensrp.service.OpenmrsIDService;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.stereotype.Controller;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 
 @Controller
@@ -70,6 +90,17 @@ public class XlsDataImportController {
 	private ClientService clientService;
 	private EventService eventService;
 	private OpenmrsIDService openmrsIDService;
+	private TransactionTemplate transactionTemplate;
+
+	private ContactPhoneNumberIndex contactPhoneNumberIndex;
+
+	@Value("#{opensrp['import.batch.size'] ?: 500}")
+	private int batchSize = 500;
+
+	@Value("#{opensrp['import.parallelism'] ?: 4}")
+	private int parallelism = 4;
+
+	private ExecutorService executorService;
 	 
 	private DateTimeFormatter parseDate = DateTimeFormat.forPattern(DATE_FORMAT);
 
@@ -80,6 +111,18 @@ public class XlsDataImportController {
 		this.eventService = eventService;
 		this.openmrsIDService = openmrsIDService;
 	}
+
+	@Autowired
+	public void setTransactionManager(ObjectProvider<PlatformTransactionManager> transactionManager) {
+		PlatformTransactionManager platformTransactionManager = transactionManager.getIfUnique();
+		this.transactionTemplate =
+				platformTransactionManager == null ? null : new TransactionTemplate(platformTransactionManager);
+	}
+
+	@Autowired(required = false)
+	public void setContactPhoneNumberIndex(ContactPhoneNumberIndex contactPhoneNumberIndex) {
+		this.contactPhoneNumberIndex = contactPhoneNumberIndex;
+	}
 	
 	@RequestMapping(headers = { "Accept=multipart/form-data" }, method = POST, value = "/file")
 	public ResponseEntity<String> importXlsData(@RequestParam("file") MultipartFile file, Authentication authentication) throws SQLException {
@@ -89,106 +132,50 @@ public class XlsDataImportController {
 			return new ResponseEntity<String>("MIME Type is not allowed", HttpStatus.BAD_REQUEST);
 		}
 		Map<String, Object> stats = new HashMap<>();
-
-
-		int eventCount = 0;
-		int clientCount = 0;
-		CSVParser parser;
-		try(Reader reader = new InputStreamReader(file.getInputStream())) {
-			parser = new CSVParser(reader, CSVFormat.EXCEL.withHeader());
-			List<CSVRecord> records = parser.getRecords();
-			int recordCount = records.size();
-			int openmrsIdsToBeDownloaded = recordCount * 2;
-
-			List<String> openmrsIds = this.openmrsIDService.downloadOpenmrsIds(openmrsIdsToBeDownloaded);
-			List<String> openmrsChildIds = openmrsIds.subList(0, openmrsIdsToBeDownloaded/2);
-			List<String> openmrsMotherIds = openmrsIds.subList(openmrsIdsToBeDownloaded/2, openmrsIdsToBeDownloaded);
-
-			int counter = 0;
-
-			for (CSVRecord record : records) {
-				int eventCounter = 0;
-			    Address address = this.buildAddress(record);
-			    ArrayList<Address> addressList = new ArrayList<Address>();
-			    addressList.add(address);
-
-			    // Create child record
-			    Client childClient = this.createChildClient(record, addressList);
-			    
-			    if(!openmrsIDService.checkIfClientExists(childClient)) {
-			    	// Assign zeir and m_zeir ids
-				    String zeirId = openmrsChildIds.get(counter);
-				    String motherZeirId = openmrsMotherIds.get(counter);
-
-				    // Create mother record
-				    Client motherClient = this.createMotherClient(record, addressList);
-				    motherClient.addIdentifier(M_ZEIR_ID, motherZeirId);
-
-				    openmrsIDService.assignOpenmrsIdToClient(zeirId, childClient);
-
-				    // Create mother relationship
-				    childClient.addRelationship("mother", motherClient.getBaseEntityId());
-
-				    // Create common observations to all events
-				    // 2017-03-20T12:40:02.000+02:00
-				    DateTimeFormatter parseDate = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
-				    
-					// start
-					String start = record.get("start");
-					DateTime startDate = parseDate.parseDateTime(start);
-					
-					Obs startObs = buildObservation("concept", "start", "163137AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA", startDate.toString(DATE_TIME_FORMAT), "start");
-
-					// end
-					String end = record.get("end");
-					DateTime endDate = parseDate.parseDateTime(end);
-					Obs endObs = buildObservation("concept", "end", "163138AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA", endDate.toString(DATE_TIME_FORMAT), "end");
-
-					// deviceid
-					String deviceid = record.get("deviceid");
-					Obs deviceIdObs = buildObservation("concept", "deviceid", "163149AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA", deviceid, "deviceid");
-
-					List<Obs> defaultObs = new ArrayList<Obs>();
-					defaultObs.add(startObs);
-					defaultObs.add(endObs);
-					defaultObs.add(deviceIdObs);
-				    
-				    // Create Birth Registration Event
-				    Event birthRegistrationEvent = this.buildBirthRegistrationEvent(record, childClient);
-				    this.addMultipleObs(birthRegistrationEvent, defaultObs);
-
-				    eventService.addEvent(birthRegistrationEvent, RestUtils.currentUser(authentication).getUsername());
-				    eventCounter++;
-
-				    // Create New Woman Registration Event
-				    Event womanRegistrationEvent = this.buildNewWomanRegistrationEvent(record, motherClient);
-				    this.addMultipleObs(womanRegistrationEvent, defaultObs);
-
-				    eventService.addEvent(womanRegistrationEvent, RestUtils.currentUser(authentication).getUsername());
-				    eventCounter++;
-
-				    // Create vaccination events
-				    for(Event e: this.buildVaccinationEvents(record, childClient)) {
-						this.addMultipleObs(e, defaultObs);
-				    	eventService.addEvent(e, RestUtils.currentUser(authentication).getUsername());
-				    	eventCounter++;
-				    }
-				    
-				    //Create growth monitoring events
-				    for(Event e: this.buildGrowthMonitoringEvents(record, childClient)) {
-				    	this.addMultipleObs(e, defaultObs);
-				    	eventService.addEvent(e, RestUtils.currentUser(authentication).getUsername());
-				    	eventCounter++;
-				    }
-
-				    clientService.addorUpdate(motherClient);
-				    clientService.addorUpdate(childClient);
-				    eventCount += eventCounter;
-				    clientCount +=2;
-				    counter++;
-			    }
+		ImportSummary summary = new ImportSummary();
+		long importStart = System.nanoTime();
+
+		String username = RestUtils.currentUser(authentication).getUsername();
+		ExecutorService executorService = getExecutorService();
+		try(Reader reader = new InputStreamReader(file.getInputStream());
+				CSVParser parser = new CSVParser(reader, CSVFormat.EXCEL.withHeader())) {
+			Iterator<CSVRecord> records = parser.iterator();
+			List<Future<?>> pendingWrites = new ArrayList<>();
+			while (true) {
+				long stageStart = System.nanoTime();
+				List<ImportRecord> batch = new ArrayList<>(batchSize);
+				while (batch.size() < batchSize && records.hasNext()) {
+					CSVRecord record = records.next();
+					ArrayList<Address> addressList = new ArrayList<Address>();
+					addressList.add(this.buildAddress(record));
+					batch.add(new ImportRecord(record, addressList, this.createChildClient(record, addressList)));
+				}
+				summary.parseNanos += System.nanoTime() - stageStart;
+				if (batch.isEmpty()) {
+					break;
+				}
+
+				// Rows of this batch may duplicate rows of the previous batch, so its writes must land before the check
+				awaitAll(pendingWrites);
+				pendingWrites.clear();
+				List<ImportRecord> newRecords = findNewRecords(batch, executorService, summary);
+
+				stageStart = System.nanoTime();
+				List<String> openmrsIds = newRecords.isEmpty() ? new ArrayList<>()
+						: this.openmrsIDService.downloadOpenmrsIds(newRecords.size() * 2);
+				for (int i = 0; i < newRecords.size(); i++) {
+					newRecords.get(i).zeirId = openmrsIds.get(i);
+					newRecords.get(i).motherZeirId = openmrsIds.get(newRecords.size() + i);
+				}
+				summary.idAllocationNanos += System.nanoTime() - stageStart;
+
+				// The next batch is parsed while this batch is written
+				int chunkSize = Math.max((newRecords.size() + parallelism - 1) / Math.max(parallelism, 1), 1);
+				for (List<ImportRecord> chunk : Lists.partition(newRecords, chunkSize)) {
+					pendingWrites.add(executorService.submit(() -> saveRecords(chunk, username, summary)));
+				}
 			}
-			parser.close();
+			awaitAll(pendingWrites);
 		} catch (IOException e) {
 			// TODO Auto-generated catch block
 			e.printStackTrace();
@@ -198,12 +185,202 @@ public class XlsDataImportController {
 		// loop through all the records creating a client and entity information for each patient
 		// respond with success response and summary statistics of data imported
 		
-		stats.put("summary_client_count", clientCount);
-		stats.put("summary_event_count", eventCount);
+		stats.put("summary_client_count", summary.clientCount.get());
+		stats.put("summary_event_count", summary.eventCount.get());
+		stats.put("summary_skipped_count", summary.skippedCount);
+		Map<String, Long> stageTimings = new LinkedHashMap<>();
+		stageTimings.put("parse", TimeUnit.NANOSECONDS.toMillis(summary.parseNanos));
+		stageTimings.put("existence_check", TimeUnit.NANOSECONDS.toMillis(summary.existenceCheckNanos));
+		stageTimings.put("id_allocation", TimeUnit.NANOSECONDS.toMillis(summary.idAllocationNanos));
+		stageTimings.put("write", TimeUnit.NANOSECONDS.toMillis(summary.writeNanos.get()));
+		stageTimings.put("total", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - importStart));
+		stats.put("summary_stage_timings_ms", stageTimings);
 
 		return new ResponseEntity<>(new Gson().toJson(stats), HttpStatus.OK);
 	}
 
+	@PreDestroy
+	public synchronized void shutdown() {
+		if (executorService != null) {
+			executorService.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the pool of {@code import.parallelism} threads shared by all imports, created on first use
+	 */
+	private synchronized ExecutorService getExecutorService() {
+		if (executorService == null) {
+			AtomicInteger threadCount = new AtomicInteger();
+			executorService = Executors.newFixedThreadPool(Math.max(parallelism, 1), runnable -> {
+				Thread thread = new Thread(runnable, "xls-import-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+		return executorService;
+	}
+
+	/**
+	 * Checks the rows of a batch against the existing clients concurrently. As rows are only written after the whole
+	 * batch is checked, a row that repeats the child of an earlier row in the batch is skipped here rather than
+	 * checked, the same as it would be if the earlier row had been written first.
+	 */
+	private List<ImportRecord> findNewRecords(List<ImportRecord> batch, ExecutorService executorService,
+			ImportSummary summary) {
+		long stageStart = System.nanoTime();
+		Set<String> childKeys = new HashSet<>();
+		List<ImportRecord> uniqueRecords = new ArrayList<>(batch.size());
+		for (ImportRecord importRecord : batch) {
+			if (childKeys.add(childKey(importRecord.childClient))) {
+				uniqueRecords.add(importRecord);
+			} else {
+				summary.skippedCount++;
+			}
+		}
+		List<Future<Boolean>> exists = new ArrayList<>(uniqueRecords.size());
+		for (ImportRecord importRecord : uniqueRecords) {
+			exists.add(executorService.submit(() -> openmrsIDService.checkIfClientExists(importRecord.childClient)));
+		}
+		List<ImportRecord> newRecords = new ArrayList<>(uniqueRecords.size());
+		for (int i = 0; i < uniqueRecords.size(); i++) {
+			if (Boolean.TRUE.equals(await(exists.get(i)))) {
+				summary.skippedCount++;
+			} else {
+				newRecords.add(uniqueRecords.get(i));
+			}
+		}
+		summary.existenceCheckNanos += System.nanoTime() - stageStart;
+		return newRecords;
+	}
+
+	private String childKey(Client childClient) {
+		return StringUtils.join(Arrays.asList(StringUtils.lowerCase(StringUtils.trim(childClient.getFirstName())),
+				StringUtils.lowerCase(StringUtils.trim(childClient.getLastName())),
+				StringUtils.lowerCase(childClient.getGender()), childClient.getBirthdate()), "|");
+	}
+
+	/**
+	 * Saves a chunk of records, in one transaction when there is a transaction manager. The contact phone numbers of
+	 * the saved events are dropped from the index once the chunk is written so that a search in between cannot load
+	 * them again from uncommitted events.
+	 */
+	private void saveRecords(List<ImportRecord> importRecords, String username, ImportSummary summary) {
+		long start = System.nanoTime();
+		List<Event> savedEvents = new ArrayList<>();
+		if (transactionTemplate == null) {
+			importRecords.forEach(importRecord -> saveRecord(importRecord, username, summary, savedEvents));
+		} else {
+			transactionTemplate.execute(status -> {
+				importRecords.forEach(importRecord -> saveRecord(importRecord, username, summary, savedEvents));
+				return null;
+			});
+		}
+		if (contactPhoneNumberIndex != null) {
+			savedEvents.forEach(contactPhoneNumberIndex::index);
+		}
+		summary.writeNanos.addAndGet(System.nanoTime() - start);
+	}
+
+	private void saveRecord(ImportRecord importRecord, String username, ImportSummary summary,
+			List<Event> savedEvents) {
+		CSVRecord record = importRecord.record;
+		Client childClient = importRecord.childClient;
+		int eventCounter = 0;
+
+		// Create mother record
+		Client motherClient = this.createMotherClient(record, importRecord.addressList);
+		motherClient.addIdentifier(M_ZEIR_ID, importRecord.motherZeirId);
+
+		openmrsIDService.assignOpenmrsIdToClient(importRecord.zeirId, childClient);
+
+		// Create mother relationship
+		childClient.addRelationship("mother", motherClient.getBaseEntityId());
+
+		// Create common observations to all events
+		// 2017-03-20T12:40:02.000+02:00
+		DateTimeFormatter parseDate = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ss.SSSZ");
+
+		// start
+		String start = record.get("start");
+		DateTime startDate = parseDate.parseDateTime(start);
+
+		Obs startObs = buildObservation("concept", "start", "163137AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA", startDate.toString(DATE_TIME_FORMAT), "start");
+
+		// end
+		String end = record.get("end");
+		DateTime endDate = parseDate.parseDateTime(end);
+		Obs endObs = buildObservation("concept", "end", "163138AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA", endDate.toString(DATE_TIME_FORMAT), "end");
+
+		// deviceid
+		String deviceid = record.get("deviceid");
+		Obs deviceIdObs = buildObservation("concept", "deviceid", "163149AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA", deviceid, "deviceid");
+
+		List<Obs> defaultObs = new ArrayList<Obs>();
+		defaultObs.add(startObs);
+		defaultObs.add(endObs);
+		defaultObs.add(deviceIdObs);
+
+		// Create Birth Registration Event
+		Event birthRegistrationEvent = this.buildBirthRegistrationEvent(record, childClient);
+		this.addMultipleObs(birthRegistrationEvent, defaultObs);
+
+		eventService.addEvent(birthRegistrationEvent, username);
+		savedEvents.add(birthRegistrationEvent);
+		eventCounter++;
+
+		// Create New Woman Registration Event
+		Event womanRegistrationEvent = this.buildNewWomanRegistrationEvent(record, motherClient);
+		this.addMultipleObs(womanRegistrationEvent, defaultObs);
+
+		eventService.addEvent(womanRegistrationEvent, username);
+		savedEvents.add(womanRegistrationEvent);
+		eventCounter++;
+
+		// Create vaccination events
+		for(Event e: this.buildVaccinationEvents(record, childClient)) {
+			this.addMultipleObs(e, defaultObs);
+			eventService.addEvent(e, username);
+			savedEvents.add(e);
+			eventCounter++;
+		}
+
+		//Create growth monitoring events
+		for(Event e: this.buildGrowthMonitoringEvents(record, childClient)) {
+			this.addMultipleObs(e, defaultObs);
+			eventService.addEvent(e, username);
+			savedEvents.add(e);
+			eventCounter++;
+		}
+
+		clientService.addorUpdate(motherClient);
+		clientService.addorUpdate(childClient);
+		summary.eventCount.addAndGet(eventCounter);
+		summary.clientCount.addAndGet(2);
+	}
+
+	private void awaitAll(List<Future<?>> futures) {
+		for (Future<?> future : futures) {
+			await(future);
+		}
+	}
+
+	private <T> T await(Future<T> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Import interrupted", e);
+		}
+		catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
 	private Address buildAddress(CSVRecord record) {
 		// Address data
 	    String startDate = record.get("today");
@@ -806,4 +983,40 @@ public class XlsDataImportController {
 
 		return growthMonitoringObs;
 	}
+
+	private static class ImportRecord {
+
+		private final CSVRecord record;
+
+		private final ArrayList<Address> addressList;
+
+		private final Client childClient;
+
+		private String zeirId;
+
+		private String motherZeirId;
+
+		private ImportRecord(CSVRecord record, ArrayList<Address> addressList, Client childClient) {
+			this.record = record;
+			this.addressList = addressList;
+			this.childClient = childClient;
+		}
+	}
+
+	private static class ImportSummary {
+
+		private final AtomicInteger clientCount = new AtomicInteger();
+
+		private final AtomicInteger eventCount = new AtomicInteger();
+
+		private final AtomicLong writeNanos = new AtomicLong();
+
+		private int skippedCount;
+
+		private long parseNanos;
+
+		private long existenceCheckNanos;
+
+		private long idAllocationNanos;
+	}
 }
@@ -0,0 +1,15 @@
+package org.opensrp.web.exceptions;
+
+/**
+ * Thrown when writing a response fails after it has been committed. The exception is left to the
+ * container, which closes the connection so that the client sees the response as incomplete
+ * rather than as a truncated body ended normally.
+ */
+public class ResponseAbortedException extends RuntimeException {
+
+	private static final long serialVersionUID = -3160413585146429432L;
+	
+	public ResponseAbortedException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
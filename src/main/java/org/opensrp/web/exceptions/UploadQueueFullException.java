@@ -0,0 +1,16 @@
+package org.opensrp.web.exceptions;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Thrown when an upload is rejected because too many uploads are already waiting to be processed. It is reported to
+ * the client as a busy server so that the upload is tried again later.
+ */
+public class UploadQueueFullException extends RejectedExecutionException {
+
+	private static final long serialVersionUID = 2871546236930412585L;
+
+	public UploadQueueFullException(String message, Throwable cause) {
+		super(message, cause);
+	}
+}
@@ -10,6 +10,7 @@ import static org.opensrp.common.AllConstants.BaseEntity.STATE_PROVINCE;
 import static org.opensrp.common.AllConstants.BaseEntity.SUB_DISTRICT;
 import static org.opensrp.common.AllConstants.BaseEntity.SUB_TOWN;
 import static org.opensrp.common.AllConstants.BaseEntity.TOWN;
+import static org.opensrp.common.AllConstants.CLIENTS_FETCH_BATCH_SIZE;
 import static org.opensrp.common.AllConstants.Client.BIRTH_DATE;
 import static org.opensrp.common.AllConstants.Client.CLIENTTYPE;
 import static org.opensrp.common.AllConstants.Client.DEATH_DATE;
@@ -21,10 +22,13 @@ import static org.opensrp.common.AllConstants.Client.PROVIDERID;
 import static org.opensrp.common.AllConstants.Client.SEARCHTEXT;
 import static org.opensrp.common.AllConstants.Event.LOCATION_ID;
 
+import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
+import java.util.function.Supplier;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
@@ -38,6 +42,10 @@ import org.opensrp.search.ClientSearchBean;
 import org.opensrp.service.ClientService;
 import org.opensrp.web.bean.ClientSyncBean;
 import org.opensrp.web.bean.Identifier;
+import org.opensrp.web.cache.ClientCountCache;
+import org.opensrp.web.cache.ClientNameIndex;
+import org.opensrp.web.utils.MultiGetUtil;
+import org.opensrp.web.utils.SearchHelper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -45,6 +53,8 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -66,6 +76,10 @@ public class ClientResource extends RestResource<Client> {
 
 	private final ClientService clientService;
 
+	private ClientNameIndex clientNameIndex;
+
+	private ClientCountCache clientCountCache;
+
 	public static final String RELATIONSHIPS = "relationships";
 
 	public static final String SEARCH_RELATIONSHIP = "searchRelationship";
@@ -84,8 +98,6 @@ public class ClientResource extends RestResource<Client> {
 
 	public static final int NO_TOTAL_COUNT = 0;
 
-	public int total = 0;
-
 	public static final String ANC = "anc";
 
 	public static final String CHILD = "child";
@@ -103,6 +115,16 @@ public class ClientResource extends RestResource<Client> {
 		this.clientService = clientService;
 	}
 
+	@Autowired(required = false)
+	public void setClientNameIndex(ClientNameIndex clientNameIndex) {
+		this.clientNameIndex = clientNameIndex;
+	}
+
+	@Autowired(required = false)
+	public void setClientCountCache(ClientCountCache clientCountCache) {
+		this.clientCountCache = clientCountCache;
+	}
+
 	@Override
 	public Client getByUniqueId(String uniqueId) {
 		return clientService.find(uniqueId);
@@ -110,7 +132,7 @@ public class ClientResource extends RestResource<Client> {
 
 	@Override
 	public Client create(Client o) {
-		return clientService.addClient(o);
+		return indexName(clientService.addClient(o));
 	}
 
 	@Override
@@ -125,7 +147,14 @@ public class ClientResource extends RestResource<Client> {
 
 	@Override
 	public Client update(Client entity) {//TODO check if send property and id matches
-		return clientService.mergeClient(entity);//TODO update should only be based on baseEntityId
+		return indexName(clientService.mergeClient(entity));//TODO update should only be based on baseEntityId
+	}
+
+	private Client indexName(Client client) {
+		if (clientNameIndex != null) {
+			clientNameIndex.index(client);
+		}
+		return client;
 	}
 
 	@Override
@@ -156,8 +185,15 @@ public class ClientResource extends RestResource<Client> {
 			searchBean.setLocations(Arrays.asList(locationIds.split(",")));
 		}
 
-		clients = clientService.findByCriteria(searchBean, addressSearchBean, lastEdit == null ? null : lastEdit[0],
-				lastEdit == null ? null : lastEdit[1]);
+		if (clientNameIndex != null && clientNameIndex.isReady() && StringUtils.isNotBlank(searchBean.getNameLike())
+				&& SearchHelper.hasOnlyFilters(request, "name", RELATIONSHIPS, SEARCH_RELATIONSHIP)) {
+			// name only searches are ranked by similarity and include spelling variants
+			clients = clientNameIndex.findClients(searchBean.getNameLike(),
+					baseEntityIds -> clientService.findByFieldValue(BASE_ENTITY_ID, baseEntityIds));
+		} else {
+			clients = clientService.findByCriteria(searchBean, addressSearchBean, lastEdit == null ? null : lastEdit[0],
+					lastEdit == null ? null : lastEdit[1]);
+		}
 
 		includeClientRelatives(request, clients);
 
@@ -222,7 +258,7 @@ public class ClientResource extends RestResource<Client> {
 	 */
 	private List<Client> getDependants(List<Client> clients, String searchRelationship) {
 		List<Client> dependantClients = new ArrayList<>();
-		List<Client> clientsToRemove = new ArrayList<>();
+		Set<Client> clientsToRemove = Collections.newSetFromMap(new IdentityHashMap<>());
 		for (Client client : clients) {
 			List<Client> dependants = clientService.findByRelationshipIdAndType(searchRelationship, client.getBaseEntityId());
 			if (dependants.size() > 0) {
@@ -244,24 +280,44 @@ public class ClientResource extends RestResource<Client> {
 	 * @return a list client relationship objects
 	 */
 	private List<Client> getRelationships(List<Client> clients, List<String> relationshipTypes) {
-		List<Client> relationshipClients = new ArrayList<>();
-		HashSet<String> fetchedRelationships = new HashSet<>();
+		Set<String> types = new HashSet<>(relationshipTypes);
+		Set<String> clientIds = new HashSet<>();
+		for (Client client : clients) {
+			if (client != null) {
+				clientIds.add(client.getBaseEntityId());
+			}
+		}
+		// collect the relatives not already in the result so that they are fetched in batches rather than one by one
+		Set<String> relationalIds = new LinkedHashSet<>();
 		for (Client client : clients) {
-			if (client.getRelationships() != null) {
+			if (client != null && client.getRelationships() != null) {
 				for (Map.Entry<String, List<String>> relationshipEntry : client.getRelationships().entrySet())
-					if (relationshipTypes.contains(relationshipEntry.getKey())) {
-						relationshipEntry.getValue().forEach(relationalId -> {
-									if (!fetchedRelationships.contains(relationalId)) {
-										Client clientRelative = clientService.find(relationalId);
-										if (!clients.contains(clientRelative))
-											relationshipClients.add(clientRelative);
-										fetchedRelationships.add(relationalId);
-									}
-								}
-						);
+					if (types.contains(relationshipEntry.getKey()) && relationshipEntry.getValue() != null) {
+						for (String relationalId : relationshipEntry.getValue()) {
+							if (relationalId != null && !clientIds.contains(relationalId)) {
+								relationalIds.add(relationalId);
+							}
+						}
 					}
 			}
 		}
+
+		List<String> ids = new ArrayList<>(relationalIds);
+		Map<String, Client> relatives = new HashMap<>();
+		for (int i = 0; i < ids.size(); i = i + CLIENTS_FETCH_BATCH_SIZE) {
+			int end = Math.min(i + CLIENTS_FETCH_BATCH_SIZE, ids.size());
+			for (Client relative : clientService.findGlobalByFieldValue(BASE_ENTITY_ID, ids.subList(i, end))) {
+				relatives.putIfAbsent(relative.getBaseEntityId(), relative);
+			}
+		}
+
+		List<Client> relationshipClients = new ArrayList<>();
+		for (String relationalId : ids) {
+			Client relative = relatives.get(relationalId);
+			if (relative != null) {
+				relationshipClients.add(relative);
+			}
+		}
 		return relationshipClients;
 	}
 
@@ -351,9 +407,8 @@ public class ClientResource extends RestResource<Client> {
 
 		List<Client> clients = clientService.findAllClientsByCriteria(clientSearchBean, addressSearchBean);
 
-		total = getTotal(clientSearchBean, addressSearchBean);
 		response.setClients(clients);
-		response.setTotal(total);
+		response.setTotal(getTotal(clientSearchBean, addressSearchBean));
 		return new ResponseEntity<>(objectMapper.writeValueAsString((response)), HttpStatus.OK);
 	}
 
@@ -362,32 +417,40 @@ public class ClientResource extends RestResource<Client> {
 		ClientSyncBean response = new ClientSyncBean();
 		List<Client> clients = clientService.findHouseholdByCriteria(clientSearchBean, addressSearchBean,
 				clientSearchBean.getLastEditFrom(), clientSearchBean.getLastEditTo());
-		total = getTotal(clientSearchBean, addressSearchBean);
 		response.setClients(clients);
-		response.setTotal(total);
+		response.setTotal(getTotal(clientSearchBean, addressSearchBean));
 		return new ResponseEntity<>(objectMapper.writeValueAsString((response)), HttpStatus.OK);
 	}
 
+	/**
+	 * Counts the clients matching the criteria on any page. Counts are shared through the client count cache by
+	 * requests with the same criteria, whatever their page and order.
+	 */
 	private int getTotal(ClientSearchBean clientSearchBean, AddressSearchBean addressSearchBean) {
 
 		String clientType = clientSearchBean.getClientType();
-		int pageNumber = clientSearchBean.getPageNumber();
-		if (pageNumber == FIRST_PAGE) {
-			if (HOUSEHOLD.equalsIgnoreCase(clientType)) {
-				total = clientService.findTotalCountHouseholdByCriteria(clientSearchBean, addressSearchBean).getTotalCount();
-			} else if (ALLCLIENTS.equalsIgnoreCase(clientType)) {
-				total = clientService.findTotalCountAllClientsByCriteria(clientSearchBean, addressSearchBean).getTotalCount();
-			} else if (ANC.equalsIgnoreCase(clientType)) {
+		Supplier<Integer> count;
+		if (HOUSEHOLD.equalsIgnoreCase(clientType)) {
+			count = () -> clientService.findTotalCountHouseholdByCriteria(clientSearchBean, addressSearchBean).getTotalCount();
+		} else if (ALLCLIENTS.equalsIgnoreCase(clientType)) {
+			count = () -> clientService.findTotalCountAllClientsByCriteria(clientSearchBean, addressSearchBean).getTotalCount();
+		} else if (ANC.equalsIgnoreCase(clientType)) {
+			count = () -> {
 				clientSearchBean.setClientType(null);
-				total = clientService.findCountANCByCriteria(clientSearchBean, addressSearchBean);
-			} else if (CHILD.equalsIgnoreCase(clientType)) {
+				return clientService.findCountANCByCriteria(clientSearchBean, addressSearchBean);
+			};
+		} else if (CHILD.equalsIgnoreCase(clientType)) {
+			count = () -> {
 				clientSearchBean.setClientType(null);
-				total = clientService.findCountChildByCriteria(clientSearchBean, addressSearchBean);
-			} else {
-				total = NO_TOTAL_COUNT;
-			}
+				return clientService.findCountChildByCriteria(clientSearchBean, addressSearchBean);
+			};
+		} else {
+			return NO_TOTAL_COUNT;
+		}
+		if (clientCountCache == null) {
+			return count.get();
 		}
-		return total;
+		return clientCountCache.get(ClientCountCache.buildKey(clientType, clientSearchBean, addressSearchBean), count);
 	}
 
 	public ResponseEntity<String> getAllANC(ClientSearchBean clientSearchBean, AddressSearchBean addressSearchBean)
@@ -397,9 +460,8 @@ public class ClientResource extends RestResource<Client> {
 		clientSearchBean.setClientType(null);
 		List<Client> clients = clientService.findAllANCByCriteria(clientSearchBean, addressSearchBean);
 		clientSearchBean.setClientType(ANC);
-		total = getTotal(clientSearchBean, addressSearchBean);
 		response.setClients(clients);
-		response.setTotal(total);
+		response.setTotal(getTotal(clientSearchBean, addressSearchBean));
 		return new ResponseEntity<>(objectMapper.writeValueAsString((response)), HttpStatus.OK);
 	}
 
@@ -410,9 +472,8 @@ public class ClientResource extends RestResource<Client> {
 		clientSearchBean.setClientType(null);
 		List<Client> clients = clientService.findAllChildByCriteria(clientSearchBean, addressSearchBean);
 		clientSearchBean.setClientType(CHILD);
-		total = getTotal(clientSearchBean, addressSearchBean);
 		response.setClients(clients);
-		response.setTotal(total);
+		response.setTotal(getTotal(clientSearchBean, addressSearchBean));
 		return new ResponseEntity<>(objectMapper.writeValueAsString((response)), HttpStatus.OK);
 	}
 
@@ -476,4 +537,17 @@ public class ClientResource extends RestResource<Client> {
 	public Client getById(@RequestParam("id") String clientId) {
 		return clientService.findById(clientId);
 	}
+
+	/**
+	 * Get the clients with the given base entity ids, looked up a batch at a time
+	 *
+	 * @param baseEntityIds the base entity ids, at most {@link MultiGetUtil#MAX_IDS}
+	 * @param response      receives {@code {"clients": [...], "missing": [...]}}, missing listing the ids not found
+	 */
+	@PostMapping(value = "/findByIds", consumes = { MediaType.APPLICATION_JSON_VALUE }, produces = {
+			MediaType.APPLICATION_JSON_VALUE })
+	public void getByIds(@RequestBody List<String> baseEntityIds, HttpServletResponse response) throws IOException {
+		MultiGetUtil.write(response, "clients", Client.class, baseEntityIds, CLIENTS_FETCH_BATCH_SIZE,
+				ids -> clientService.findGlobalByFieldValue(BASE_ENTITY_ID, ids), Client::getBaseEntityId);
+	}
 }
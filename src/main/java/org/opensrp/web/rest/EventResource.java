@@ -28,8 +28,11 @@ import org.opensrp.web.Constants;
 import org.opensrp.web.bean.EventSyncBean;
 import org.opensrp.web.bean.Identifier;
 import org.opensrp.web.bean.SyncParam;
+import org.opensrp.web.cache.ClientNameIndex;
+import org.opensrp.web.cache.ContactPhoneNumberIndex;
 import org.opensrp.web.config.Role;
 import org.opensrp.web.utils.MaskingUtils;
+import org.opensrp.web.utils.MultiGetUtil;
 import org.opensrp.web.utils.Utils;
 import org.smartregister.domain.Client;
 import org.smartregister.domain.Event;
@@ -47,6 +50,7 @@ import org.springframework.ui.ModelMap;
 import org.springframework.web.bind.annotation.*;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -83,6 +87,10 @@ public class EventResource extends RestResource<Event> {
 
 	private MultimediaService multimediaService;
 
+	private ContactPhoneNumberIndex contactPhoneNumberIndex;
+
+	private ClientNameIndex clientNameIndex;
+
 	Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
 			.registerTypeAdapter(DateTime.class, new DateTimeTypeConverter()).create();
 
@@ -102,6 +110,16 @@ public class EventResource extends RestResource<Event> {
 		this.multimediaService = multimediaService;
 	}
 
+	@Autowired(required = false)
+	public void setContactPhoneNumberIndex(ContactPhoneNumberIndex contactPhoneNumberIndex) {
+		this.contactPhoneNumberIndex = contactPhoneNumberIndex;
+	}
+
+	@Autowired(required = false)
+	public void setClientNameIndex(ClientNameIndex clientNameIndex) {
+		this.clientNameIndex = clientNameIndex;
+	}
+
 	@Override
 	public Event getByUniqueId(String uniqueId) {
 		return eventService.find(uniqueId);
@@ -118,6 +136,19 @@ public class EventResource extends RestResource<Event> {
 		return eventService.findById(eventId);
 	}
 
+	/**
+	 * Get the events with the given form submission ids, looked up a batch at a time
+	 *
+	 * @param formSubmissionIds the form submission ids, at most {@link MultiGetUtil#MAX_IDS}
+	 * @param response          receives {@code {"events": [...], "missing": [...]}}, missing listing the ids not found
+	 */
+	@PostMapping(value = "/findByIds", consumes = { MediaType.APPLICATION_JSON_VALUE }, produces = {
+			MediaType.APPLICATION_JSON_VALUE })
+	public void getByIds(@RequestBody List<String> formSubmissionIds, HttpServletResponse response) throws IOException {
+		MultiGetUtil.write(response, "events", Event.class, formSubmissionIds, CLIENTS_FETCH_BATCH_SIZE,
+				MultiGetUtil.oneAtATime(eventService::findByFormSubmissionId), Event::getFormSubmissionId);
+	}
+
 	/**
 	 * Fetch events ordered by serverVersion ascending order and return the clients associated with
 	 * the events
@@ -507,6 +538,9 @@ public class EventResource extends RestResource<Event> {
 				for (Client client : clients) {
 					try {
 						clientService.addorUpdate(client);
+						if (clientNameIndex != null) {
+							clientNameIndex.index(client);
+						}
 					}
 					catch (Exception e) {
 						logger.error("[SYNC_INFO] Sync failed for client {}; identifiers: {}", client.getBaseEntityId(), gson.toJson(client.getIdentifiers()), e);
@@ -527,6 +561,7 @@ public class EventResource extends RestResource<Event> {
 					try {
 						event = eventService.processOutOfArea(event);
 						eventService.addorUpdateEvent(event, username);
+						indexContactPhoneNumbers(event);
 
 						logger.info("[SYNC_INFO] Event {} of type {} saved", event.getFormSubmissionId(), event.getEventType());
 					}
@@ -571,7 +606,15 @@ public class EventResource extends RestResource<Event> {
 	@Override
 	public Event create(Event o) {
 		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-		return eventService.addEvent(o, currentUser(authentication).getUsername());
+		Event event = eventService.addEvent(o, currentUser(authentication).getUsername());
+		indexContactPhoneNumbers(event);
+		return event;
+	}
+
+	private void indexContactPhoneNumbers(Event event) {
+		if (contactPhoneNumberIndex != null) {
+			contactPhoneNumberIndex.index(event);
+		}
 	}
 
 	@Override
@@ -585,7 +628,9 @@ public class EventResource extends RestResource<Event> {
 
 	@Override
 	public Event update(Event entity) {
-		return eventService.mergeEvent(entity);
+		Event event = eventService.mergeEvent(entity);
+		indexContactPhoneNumbers(event == null ? entity : event);
+		return event;
 	}
 
 	@Override
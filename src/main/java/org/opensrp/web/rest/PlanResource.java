@@ -15,6 +15,7 @@ import static org.opensrp.web.rest.RestUtils.getStringFilter;
 import java.lang.reflect.Field;
 import java.sql.Time;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.servlet.http.HttpServletRequest;
 
@@ -30,6 +31,7 @@ import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.PlanService;
 import org.opensrp.util.DateTypeConverter;
 import org.opensrp.web.bean.Identifier;
+import org.opensrp.web.cache.PlanDefinitionCache;
 import org.opensrp.web.utils.Utils;
 import org.smartregister.domain.PlanDefinition;
 import org.smartregister.utils.TaskDateTimeTypeConverter;
@@ -72,6 +74,10 @@ public class PlanResource {
 	private PlanService planService;
 	
 	private PhysicalLocationService locationService;
+	
+	private PlanDefinitionCache planDefinitionCache;
+	
+	private static final Map<Class<?>, Set<String>> SERIALIZED_FIELD_NAMES = new ConcurrentHashMap<>();
 
 	private static final String IS_DELETED = "is_deleted";
 
@@ -103,6 +109,11 @@ public class PlanResource {
 		this.locationService = locationService;
 	}
 	
+	@Autowired
+	public void setPlanDefinitionCache(PlanDefinitionCache planDefinitionCache) {
+		this.planDefinitionCache = planDefinitionCache;
+	}
+	
 	@RequestMapping(value = "/{identifier}", method = RequestMethod.GET, produces = { MediaType.APPLICATION_JSON_VALUE })
 	public ResponseEntity<String> getPlanByUniqueId(@PathVariable("identifier") String identifier,
 	        @RequestParam(value = FIELDS, required = false) List<String> fields , @RequestParam(value = IS_TEMPLATE, required = false) boolean isTemplateParam) {
@@ -111,7 +122,7 @@ public class PlanResource {
 		}
 
 		return new ResponseEntity<>(
-		        gson.toJson(planService.getPlansByIdsReturnOptionalFields(Collections.singletonList(identifier), fields, isTemplateParam)),
+		        gson.toJson(getPlansByIdsReturnOptionalFields(Collections.singletonList(identifier), fields, isTemplateParam)),
 		        RestUtils.getJSONUTF8Headers(), HttpStatus.OK);
 
 	}
@@ -151,6 +162,7 @@ public class PlanResource {
 			}
 				
 			planService.addPlan(plan, RestUtils.currentUser(authentication).getUsername());
+			planDefinitionCache.invalidate(plan.getIdentifier());
 			return new ResponseEntity<>(HttpStatus.CREATED);
 		}
 		catch (JsonSyntaxException e) {
@@ -165,6 +177,7 @@ public class PlanResource {
 		try {
 			PlanDefinition plan = gson.fromJson(entity, PlanDefinition.class);
 			planService.updatePlan(plan, RestUtils.currentUser(authentication).getUsername());
+			planDefinitionCache.invalidate(plan.getIdentifier());
 			return new ResponseEntity<>(HttpStatus.CREATED);
 		}
 		catch (JsonSyntaxException e) {
@@ -254,12 +267,12 @@ public class PlanResource {
 
 		if (fields != null && !fields.isEmpty()) {
 			for (String fieldName : fields) {
-				if (!doesObjectContainField(new PlanDefinition(), fieldName)) {
+				if (!getSerializedFieldNames(PlanDefinition.class).contains(fieldName)) {
 					return new ResponseEntity<>(fieldName + " field is invalid", HttpStatus.BAD_REQUEST);
 				}
 			}
 		}
-		return new ResponseEntity<>(gson.toJson(planService.getPlansByIdsReturnOptionalFields(identifiers, fields, isTemplateParam)),
+		return new ResponseEntity<>(gson.toJson(getPlansByIdsReturnOptionalFields(identifiers, fields, isTemplateParam)),
 		        RestUtils.getJSONUTF8Headers(), HttpStatus.OK);
 	}
 	
@@ -364,17 +377,32 @@ public class PlanResource {
 
 	}
 	
+	private List<PlanDefinition> getPlansByIdsReturnOptionalFields(List<String> identifiers, List<String> fields,
+	        boolean isTemplate) {
+		return planDefinitionCache.get(identifiers, fields, isTemplate,
+		    (missingIdentifiers, loadedFields) -> planService.getPlansByIdsReturnOptionalFields(missingIdentifiers,
+		        loadedFields, isTemplate));
+	}
+	
 	public boolean doesObjectContainField(Object object, String fieldName) {
-		Class<?> objectClass = object.getClass();
-		for (Field field : objectClass.getDeclaredFields()) {
-			SerializedName sName = field.getAnnotation(SerializedName.class);
-			if (sName != null && sName.value().equals(fieldName))
-				return true;
-			else if (sName == null && field.getName().equals(fieldName)) {
-				return true;
+		return getSerializedFieldNames(object.getClass()).contains(fieldName);
+	}
+	
+	/**
+	 * Returns the names the fields of a class are serialized with, computed once per class
+	 * 
+	 * @param objectClass the class to inspect
+	 * @return the serialized field names
+	 */
+	public static Set<String> getSerializedFieldNames(Class<?> objectClass) {
+		return SERIALIZED_FIELD_NAMES.computeIfAbsent(objectClass, clazz -> {
+			Set<String> fieldNames = new HashSet<>();
+			for (Field field : clazz.getDeclaredFields()) {
+				SerializedName sName = field.getAnnotation(SerializedName.class);
+				fieldNames.add(sName != null ? sName.value() : field.getName());
 			}
-		}
-		return false;
+			return Collections.unmodifiableSet(fieldNames);
+		});
 	}
 	
 	static class PlanSyncRequestWrapper {
@@ -9,6 +9,7 @@ import org.opensrp.dto.form.MultimediaDTO;
 import org.opensrp.search.ProductCatalogueSearchBean;
 import org.opensrp.service.MultimediaService;
 import org.opensrp.service.ProductCatalogueService;
+import org.opensrp.web.service.MultimediaUploadService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -41,6 +42,9 @@ public class ProductCatalogueResource {
 	@Autowired
 	private MultimediaService multimediaService;
 
+	@Autowired
+	private MultimediaUploadService multimediaUploadService;
+
 	private static Logger logger = LogManager.getLogger(ProductCatalogueResource.class.toString());
 
 	private static final String DOWNLOAD_PHOTO_END_POINT = "/multimedia/media/";
@@ -115,7 +119,7 @@ public class ProductCatalogueResource {
 					multimediaDTO.withOriginalFileName(file.getOriginalFilename()).withDateUploaded(new Date());
 
 					logger.info("Saving multimedia file...");
-					multimediaService.saveFile(multimediaDTO, file.getBytes(), file.getOriginalFilename());
+					multimediaUploadService.saveFile(multimediaDTO, file, null);
 				}
 				createdProductCatalogue.setPhotoURL(DOWNLOAD_PHOTO_END_POINT + createdProductCatalogue.getUniqueId());
 				productCatalogueService.update(createdProductCatalogue);
@@ -156,7 +160,7 @@ public class ProductCatalogueResource {
 				multimediaDTO.withOriginalFileName(file.getOriginalFilename()).withDateUploaded(new Date());
 
 				logger.info("Saving multimedia file...");
-				multimediaService.saveFile(multimediaDTO, file.getBytes(), file.getOriginalFilename());
+				multimediaUploadService.saveFile(multimediaDTO, file, null);
 			}
 			return new ResponseEntity<>(HttpStatus.CREATED);
 		}
@@ -10,21 +10,21 @@ import org.keycloak.representations.AccessToken;
 import org.opensrp.api.domain.User;
 import org.opensrp.domain.Multimedia;
 import org.opensrp.service.multimedia.MultimediaFileManager;
-import org.opensrp.service.multimedia.S3MultimediaFileManager;
+import org.opensrp.web.cache.MediaFileCache;
+import org.opensrp.web.utils.MultimediaZipWriter;
 import org.springframework.http.HttpHeaders;
 import org.springframework.security.core.Authentication;
 
 import javax.servlet.http.HttpServletRequest;
-import java.io.BufferedInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.FileNotFoundException;
 import java.lang.reflect.Field;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 import java.util.stream.Collectors;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -135,35 +135,24 @@ public class RestUtils {
      */
 	public static void zipFiles(ZipOutputStream zipOutputStream, List<Multimedia> multimediaFiles, MultimediaFileManager fileManager) throws
 			IOException {
-		for (Multimedia multiMedia : multimediaFiles) {
-			FileInputStream inputStream;
-			File file = fileManager.retrieveFile(multiMedia.getFilePath());
-			if (file != null) {
-				logger.info("Adding " + file.getName());
-				zipOutputStream.putNextEntry(new ZipEntry(file.getName()));
-				try {
-					inputStream = new FileInputStream(file);
-				} catch (FileNotFoundException e) {
-					logger.warn("Could not find file " + file.getAbsolutePath());
-					continue;
-				}
-
-				// Write the contents of the file
-				BufferedInputStream bufferedInputStream = new BufferedInputStream(inputStream);
-				int data;
-				while ((data = bufferedInputStream.read()) != -1) {
-					zipOutputStream.write(data);
-				}
-				bufferedInputStream.close();
-				zipOutputStream.closeEntry();
-				logger.info("Done downloading file " + file.getName());
+		zipFiles(zipOutputStream, multimediaFiles, fileManager, null, null);
+	}
 
-				// clean up temp files (may want to cache in future)
-				if (fileManager instanceof S3MultimediaFileManager) {
-					file.delete();
-				}
-			}
-		}
+	/**
+	 * Zips multimedia files and writes content to {@param zipOutputStream}, keeping files downloaded from S3 in
+	 * {@param mediaFileCache} and downloading them ahead of their entries on {@param prefetchExecutor}
+	 *
+	 * @param zipOutputStream
+	 * @param multimediaFiles
+	 * @param fileManager
+	 * @param mediaFileCache
+	 * @param prefetchExecutor
+	 * @throws IOException
+	 */
+	public static void zipFiles(ZipOutputStream zipOutputStream, List<Multimedia> multimediaFiles,
+			MultimediaFileManager fileManager, MediaFileCache mediaFileCache, ExecutorService prefetchExecutor)
+			throws IOException {
+		new MultimediaZipWriter(fileManager, mediaFileCache, prefetchExecutor).write(zipOutputStream, multimediaFiles);
 	}
 	
 	public static User currentUser(Authentication authentication) {
@@ -1,5 +1,7 @@
 package org.opensrp.web.rest;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
@@ -9,24 +11,39 @@ import org.opensrp.search.ClientSearchBean;
 import org.opensrp.service.ClientService;
 import org.opensrp.service.EventService;
 import org.opensrp.service.SearchService;
+import org.opensrp.web.cache.ClientNameIndex;
+import org.opensrp.web.cache.ContactPhoneNumberIndex;
 import org.opensrp.web.utils.ChildMother;
 import org.opensrp.web.utils.SearchEntityWrapper;
 import org.opensrp.web.utils.SearchHelper;
 import org.smartregister.domain.Client;
 import org.smartregister.domain.Event;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 
+import javax.annotation.PreDestroy;
 import javax.servlet.http.HttpServletRequest;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import static org.opensrp.common.AllConstants.BaseEntity.LAST_UPDATE;
 import static org.opensrp.common.AllConstants.Client.ALT_NAME;
@@ -54,12 +71,46 @@ public class SearchResource extends RestResource<Client> {
 	
 	private EventService eventService;
 	
+	public static final String BRANCH_TIMER = "opensrp.search.path.branch";
+	
+	@Value("#{opensrp['search.executor.threads'] ?: 16}")
+	private int searchThreads = 16;
+	
+	@Value("#{opensrp['search.executor.queue.capacity'] ?: 100}")
+	private int searchQueueCapacity = 100;
+	
+	@Value("#{opensrp['search.branch.timeout.millis'] ?: 10000}")
+	private long branchTimeoutMillis = 10000;
+	
+	private volatile ExecutorService searchExecutor;
+	
+	private MeterRegistry meterRegistry;
+	
+	private ContactPhoneNumberIndex contactPhoneNumberIndex;
+	
+	private ClientNameIndex clientNameIndex;
+	
 	@Autowired
 	public SearchResource(SearchService searchService, ClientService clientService, EventService eventService) {
 		this.searchService = searchService;
 		this.clientService = clientService;
 		this.eventService = eventService;
 	}
+	
+	@Autowired(required = false)
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+	
+	@Autowired(required = false)
+	public void setContactPhoneNumberIndex(ContactPhoneNumberIndex contactPhoneNumberIndex) {
+		this.contactPhoneNumberIndex = contactPhoneNumberIndex;
+	}
+	
+	@Autowired(required = false)
+	public void setClientNameIndex(ClientNameIndex clientNameIndex) {
+		this.clientNameIndex = clientNameIndex;
+	}
 
 	/**
 	 * @param request
@@ -67,6 +118,8 @@ public class SearchResource extends RestResource<Client> {
 	 * 1. search?attributes=phone_number:072700000
 	 * or search parameter without attribute and without colon e.g
 	 * 2. search?phone_number=072700000
+	 * Searches by name only are answered from the client name index when it is ready, ranked by
+	 * similarity so that spelling variants are found too.
 	 * @throws ParseException
 	 */
 	@Override
@@ -74,6 +127,15 @@ public class SearchResource extends RestResource<Client> {
 		String firstName = getStringFilter(FIRST_NAME, request);
 		String middleName = getStringFilter(MIDDLE_NAME, request);
 		String lastName = getStringFilter(LAST_NAME, request);
+		if (clientNameIndex != null && clientNameIndex.isReady()
+		        && SearchHelper.hasOnlyFilters(request, NAME, FIRST_NAME, MIDDLE_NAME, LAST_NAME)) {
+			String name = StringUtils.normalizeSpace(
+			    StringUtils.joinWith(" ", getStringFilter(NAME, request), firstName, middleName, lastName));
+			if (!StringUtils.isBlank(name)) {
+				return clientNameIndex.findClients(name,
+				    baseEntityIds -> clientService.findByFieldValue(BaseEntity.BASE_ENTITY_ID, baseEntityIds));
+			}
+		}
 		Optional<String> phoneNumber = Optional.ofNullable(getStringFilter(PHONE_NUMBER, request));
 		Optional<String> altPhoneNumber = Optional.ofNullable(getStringFilter(ALT_PHONE_NUMBER, request));
 		Optional<String> alternateName = Optional.ofNullable(getStringFilter(ALT_NAME, request));
@@ -121,96 +183,179 @@ public class SearchResource extends RestResource<Client> {
 		return searchService.searchClient(searchBean, firstName, middleName, lastName, null);
 	}
 
+	/**
+	 * Searches children and their mothers. The child, mother and contact phone number searches are
+	 * independent of each other and run concurrently on the search executor, as do the lookups of
+	 * the mothers of the children found and of the children of the mothers found. Each branch has
+	 * to finish within {@code search.branch.timeout.millis} and its latency is recorded in the
+	 * {@value #BRANCH_TIMER} timer.
+	 */
 	@RequestMapping(method = RequestMethod.GET, value = "/path", produces = { MediaType.APPLICATION_JSON_VALUE })
 	private List<ChildMother> searchPathBy(HttpServletRequest request) throws ParseException {
 		//Process clients search via demographics
 
-		ClientSearchBean searchBean = new ClientSearchBean();
-		List<Client> children = new ArrayList<Client>();
-
 		SearchEntityWrapper childSearchEntity = SearchHelper.childSearchParamProcessor(request);
-
-		if (childSearchEntity.isValid()) {
-			searchBean = childSearchEntity.getClientSearchBean();
-			children = searchService.searchGlobalClient(searchBean, searchBean.getFirstName(), searchBean.getMiddleName(),
+		CompletableFuture<List<Client>> childSearch = supplyBranch("child", () -> {
+			if (!childSearchEntity.isValid()) {
+				return new ArrayList<Client>();
+			}
+			ClientSearchBean searchBean = childSearchEntity.getClientSearchBean();
+			return searchService.searchGlobalClient(searchBean, searchBean.getFirstName(), searchBean.getMiddleName(),
 			    searchBean.getLastName(), childSearchEntity.getLimit());
-		}
+		});
 
 		//Process mothers search via mother demographics
 
 		SearchEntityWrapper motherSearchEntity = SearchHelper.motherSearchParamProcessor(request);
-		ClientSearchBean motherSearchBean = new ClientSearchBean();
-		List<Client> mothers = new ArrayList<Client>();
-
-		if (motherSearchEntity.isValid()) {
-			motherSearchBean = motherSearchEntity.getClientSearchBean();
-			mothers = searchService.searchGlobalClient(motherSearchBean, motherSearchBean.getFirstName(),
+		CompletableFuture<List<Client>> motherSearch = supplyBranch("mother", () -> {
+			if (!motherSearchEntity.isValid()) {
+				return new ArrayList<Client>();
+			}
+			ClientSearchBean motherSearchBean = motherSearchEntity.getClientSearchBean();
+			return searchService.searchGlobalClient(motherSearchBean, motherSearchBean.getFirstName(),
 			    motherSearchBean.getMiddleName(), motherSearchBean.getLastName(), motherSearchEntity.getLimit());
-		}
+		});
 
 		//Process clients search via contact phone number
 
 		String contactPhoneNumber = SearchHelper.getContactPhoneNumberParam(request);
-
-		List<String> clientBaseEntityIds = getClientBaseEntityIdsByContactPhoneNumber(contactPhoneNumber);
-
-		List<Client> eventChildren = clientService.findGlobalByFieldValue(BaseEntity.BASE_ENTITY_ID, clientBaseEntityIds);
-
-		children = SearchHelper.intersection(children, eventChildren);// Search conjunction is "AND" find intersection
-
-		List<Client> linkedMothers = new ArrayList<Client>();
+		CompletableFuture<List<Client>> phoneNumberSearch = supplyBranch("phone_number",
+		    () -> clientService.findGlobalByFieldValue(BaseEntity.BASE_ENTITY_ID,
+		        getClientBaseEntityIdsByContactPhoneNumber(contactPhoneNumber)));
 
 		String RELATIONSHIP_KEY = "mother";
-		if (!children.isEmpty()) {
-			List<String> clientIds = new ArrayList<String>();
+		// Search conjunction is "AND" find intersection
+		CompletableFuture<List<Client>> matchedChildren = childSearch.thenCombine(phoneNumberSearch,
+		    SearchHelper::intersection);
+
+		CompletableFuture<List<Client>> linkedMothersSearch = matchedChildren.thenCompose(children -> {
+			if (children.isEmpty()) {
+				return CompletableFuture.completedFuture(new ArrayList<Client>());
+			}
+			Set<String> clientIds = new LinkedHashSet<String>();
 			for (Client c : children) {
 				String relationshipId = SearchHelper.getRelationalId(c, RELATIONSHIP_KEY);
-				if (relationshipId != null && !clientIds.contains(relationshipId)) {
+				if (relationshipId != null) {
 					clientIds.add(relationshipId);
 				}
 			}
+			return supplyBranch("linked_mothers", () -> clientService.findGlobalByFieldValue(BaseEntity.BASE_ENTITY_ID,
+			    new ArrayList<String>(clientIds)));
+		});
+
+		CompletableFuture<List<Client>> linkedChildrenSearch = motherSearch.thenCompose(mothers -> {
+			if (mothers.isEmpty()) {
+				return CompletableFuture.completedFuture(new ArrayList<Client>());
+			}
+			return supplyBranch("linked_children", () -> {
+				List<Client> linkedChildren = new ArrayList<Client>();
+				for (Client client : mothers) {
+					linkedChildren.addAll(clientService.findGlobalByRelationship(client.getBaseEntityId()));
+				}
+				return linkedChildren;
+			});
+		});
 
-			linkedMothers = clientService.findGlobalByFieldValue(BaseEntity.BASE_ENTITY_ID, clientIds);
+		List<Client> children = SearchHelper.intersection(await(matchedChildren, childSearch, phoneNumberSearch),
+		    await(linkedChildrenSearch, motherSearch, linkedMothersSearch));// Search conjunction is "AND" find intersection
 
-		}
+		List<Client> mothers = new ArrayList<Client>(await(motherSearch));
+		SearchHelper.addMissing(mothers, await(linkedMothersSearch));
 
-		List<Client> linkedChildren = new ArrayList<Client>();
+		return SearchHelper.processSearchResult(children, mothers, RELATIONSHIP_KEY);
+	}
 
-		if (!mothers.isEmpty()) {
-			for (Client client : mothers) {
-				linkedChildren.addAll(clientService.findGlobalByRelationship(client.getBaseEntityId()));
+	/**
+	 * Runs a branch of a search on the search executor, timing it and failing it if it does not
+	 * finish in time
+	 */
+	private <T> CompletableFuture<T> supplyBranch(String branch, Supplier<T> search) {
+		Timer timer = meterRegistry == null ? null : meterRegistry.timer(BRANCH_TIMER, "branch", branch);
+		return CompletableFuture.supplyAsync(() -> timer == null ? search.get() : timer.record(search),
+		    getSearchExecutor()).orTimeout(branchTimeoutMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Waits for a search branch. If it failed, the other branches are cancelled and the failure is
+	 * thrown, unwrapped if it is a runtime exception, so that partial results are never returned.
+	 */
+	@SafeVarargs
+	private static <T> T await(CompletableFuture<T> branch, CompletableFuture<?>... others) {
+		try {
+			return branch.join();
+		}
+		catch (CompletionException | CancellationException e) {
+			branch.cancel(true);
+			for (CompletableFuture<?> other : others) {
+				other.cancel(true);
 			}
+			Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException && !(cause instanceof CompletionException)) {
+				throw (RuntimeException) cause;
+			}
+			throw e;
 		}
+	}
 
-		children = SearchHelper.intersection(children, linkedChildren);// Search conjunction is "AND" find intersection
-
-		for (Client linkedMother : linkedMothers) {
-			if (!SearchHelper.contains(mothers, linkedMother)) {
-				mothers.add(linkedMother);
+	/**
+	 * Returns the executor the branches of searches run on, creating it on first use. When all its
+	 * threads are busy and its queue is full a branch runs on the request thread instead.
+	 */
+	private ExecutorService getSearchExecutor() {
+		if (searchExecutor == null) {
+			synchronized (this) {
+				if (searchExecutor == null) {
+					AtomicInteger threadCount = new AtomicInteger();
+					ThreadPoolExecutor executor = new ThreadPoolExecutor(searchThreads, searchThreads, 60,
+					        TimeUnit.SECONDS, new ArrayBlockingQueue<>(searchQueueCapacity), runnable -> {
+						        Thread thread = new Thread(runnable, "search-" + threadCount.incrementAndGet());
+						        thread.setDaemon(true);
+						        return thread;
+					        }, new ThreadPoolExecutor.CallerRunsPolicy());
+					executor.allowCoreThreadTimeOut(true);
+					searchExecutor = executor;
+				}
 			}
 		}
+		return searchExecutor;
+	}
 
-		return SearchHelper.processSearchResult(children, mothers, RELATIONSHIP_KEY);
+	@PreDestroy
+	public void shutdownSearchExecutor() {
+		if (searchExecutor != null) {
+			searchExecutor.shutdown();
+		}
 	}
 	
+	/**
+	 * Finds the clients whose events record the contact phone number, through the contact phone
+	 * number index when it is available
+	 */
 	public List<String> getClientBaseEntityIdsByContactPhoneNumber(String motherGuardianPhoneNumber) {
-		List<String> clientBaseEntityIds = new ArrayList<String>();
+		if (StringUtils.isBlank(motherGuardianPhoneNumber)) {
+			return new ArrayList<String>();
+		}
+		if (contactPhoneNumberIndex != null) {
+			return contactPhoneNumberIndex.get(motherGuardianPhoneNumber,
+			    this::findClientBaseEntityIdsByContactPhoneNumber);
+		}
+		return findClientBaseEntityIdsByContactPhoneNumber(motherGuardianPhoneNumber);
+	}
+	
+	private List<String> findClientBaseEntityIdsByContactPhoneNumber(String motherGuardianPhoneNumber) {
+		Set<String> clientBaseEntityIds = new LinkedHashSet<String>();
 		
-		if (!StringUtils.isBlank(motherGuardianPhoneNumber)) {
-			
-			List<Event> events = eventService.findEventsByConceptAndValue("159635AAAAAAAAAAAAAAAAAAAAAAAAAAAAAA",
-			    motherGuardianPhoneNumber);
-			if (events != null && !events.isEmpty()) {
-				for (Event event : events) {
-					String entityId = event.getBaseEntityId();
-					if (entityId != null && !clientBaseEntityIds.contains(entityId)) {
-						clientBaseEntityIds.add(entityId);
-					}
+		List<Event> events = eventService.findEventsByConceptAndValue(
+		    ContactPhoneNumberIndex.CONTACT_PHONE_NUMBER_CONCEPT, motherGuardianPhoneNumber);
+		if (events != null) {
+			for (Event event : events) {
+				String entityId = event.getBaseEntityId();
+				if (entityId != null) {
+					clientBaseEntityIds.add(entityId);
 				}
-				
 			}
 		}
-		return clientBaseEntityIds;
+		return new ArrayList<String>(clientBaseEntityIds);
 	}
 	
 	@Override
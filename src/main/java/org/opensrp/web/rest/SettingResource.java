@@ -15,6 +15,7 @@ import org.opensrp.repository.postgres.handler.SettingTypeHandler;
 import org.opensrp.search.SettingSearchBean;
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.SettingService;
+import org.opensrp.web.cache.ResolvedSettingsCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
@@ -44,6 +45,8 @@ public class SettingResource {
 
 	private PhysicalLocationService physicalLocationService;
 
+	private ResolvedSettingsCache resolvedSettingsCache;
+
 	private static final Logger logger = LogManager.getLogger(SettingResource.class.toString());
 
 	@Autowired
@@ -52,6 +55,11 @@ public class SettingResource {
 		this.physicalLocationService = physicalLocationService;
 	}
 
+	@Autowired
+	public void setResolvedSettingsCache(ResolvedSettingsCache resolvedSettingsCache) {
+		this.resolvedSettingsCache = resolvedSettingsCache;
+	}
+
 	private Map<String, TreeNode<String, Location>> getChildParentLocationTree(String locationId) {
 		LocationTree locationTree = physicalLocationService.buildLocationTreeHierachyWithAncestors(locationId, false);
 		Map<String, TreeNode<String, Location>> treeNodeHashMap = new HashMap<>();
@@ -79,7 +87,6 @@ public class SettingResource {
 			boolean resolveSettings = RestUtils.getBooleanFilter(AllConstants.Event.RESOLVE_SETTINGS, request);
 			String identifier = RestUtils.getStringFilter(AllConstants.Stock.IDENTIFIER, request);
 			List<SettingConfiguration> SettingConfigurations;
-			Map<String, TreeNode<String, Location>> treeNodeHashMap = null;
 
 			if (StringUtils.isBlank(serverVersion)) {
 				return new ResponseEntity<>(response.toString(), responseHeaders, HttpStatus.BAD_REQUEST);
@@ -90,18 +97,27 @@ public class SettingResource {
 			settingQueryBean.setTeamId(teamId);
 			settingQueryBean.setProviderId(providerId);
 			settingQueryBean.setLocationId(locationId);
-			settingQueryBean.setServerVersion(Long.parseLong(serverVersion) + 1);
+			long lastSyncedServerVersion = Long.parseLong(serverVersion) + 1;
+			settingQueryBean.setServerVersion(lastSyncedServerVersion);
 			settingQueryBean.setV1Settings(true);
-			if (StringUtils.isNotBlank(locationId)) {
-				settingQueryBean.setResolveSettings(resolveSettings);
-				treeNodeHashMap = getChildParentLocationTree(locationId);
-			}
-
 			if (StringUtils.isNotBlank(identifier)) {
 				settingQueryBean.setIdentifier(identifier);
 			}
 
-			SettingConfigurations = settingService.findSettings(settingQueryBean, treeNodeHashMap);
+			if (StringUtils.isNotBlank(locationId)) {
+				settingQueryBean.setResolveSettings(resolveSettings);
+				if (resolveSettings) {
+					String cacheKey = ResolvedSettingsCache.buildKey(locationId, lastSyncedServerVersion,
+							"v1", team, teamId, providerId, identifier);
+					SettingConfigurations = resolvedSettingsCache.get(cacheKey,
+							() -> settingService.findSettings(settingQueryBean, getChildParentLocationTree(locationId)));
+				} else {
+					SettingConfigurations = settingService.findSettings(settingQueryBean,
+							getChildParentLocationTree(locationId));
+				}
+			} else {
+				SettingConfigurations = settingService.findSettings(settingQueryBean, null);
+			}
 
 			SettingTypeHandler settingTypeHandler = new SettingTypeHandler();
 			String settingsArrayString = settingTypeHandler.mapper.writeValueAsString(SettingConfigurations);
@@ -134,10 +150,15 @@ public class SettingResource {
 			JSONArray clientSettings = settingObject.getJSONArray(AllConstants.Event.SETTING_CONFIGURATIONS);
 			JSONArray settingsArray = new JSONArray();
 
-			for (int i = 0; i < clientSettings.length(); i++) {
-				settingsArray.put(settingService.saveSetting(clientSettings.get(i).toString()));
+			try {
+				for (int i = 0; i < clientSettings.length(); i++) {
+					settingsArray.put(settingService.saveSetting(clientSettings.get(i).toString()));
+				}
+			}
+			finally {
+				// settings saved before a failing one are kept, so they must not be served from the cache either
+				resolvedSettingsCache.invalidateAll();
 			}
-
 			response.put("validated_records", settingsArray);
 
 		}
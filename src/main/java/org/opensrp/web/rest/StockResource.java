@@ -2,23 +2,19 @@ package org.opensrp.web.rest;
 
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
-import com.google.gson.JsonArray;
 import com.google.gson.reflect.TypeToken;
-import org.apache.commons.csv.CSVFormat;
-import org.apache.commons.csv.CSVParser;
-import org.apache.commons.csv.CSVPrinter;
-import org.apache.commons.csv.CSVRecord;
+import com.google.gson.stream.JsonWriter;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joda.time.DateTime;
 import org.json.JSONObject;
 import org.opensrp.common.AllConstants.BaseEntity;
-import org.opensrp.dto.CsvBulkImportDataSummary;
-import org.opensrp.dto.FailedRecordSummary;
 import org.opensrp.search.StockSearchBean;
 import org.opensrp.service.StockService;
 import org.opensrp.web.Constants;
+import org.opensrp.web.bean.CsvImportReport;
+import org.opensrp.web.service.CsvImportService;
 import org.smartregister.domain.Inventory;
 import org.smartregister.domain.Stock;
 import org.smartregister.utils.DateTimeTypeConverter;
@@ -34,10 +30,10 @@ import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import java.io.*;
-import java.net.URI;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
-import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.*;
 
@@ -57,10 +53,12 @@ public class StockResource extends RestResource<Stock> {
 
 	private StockService stockService;
 
-	Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
+	private CsvImportService csvImportService;
+
+	private static final Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
 			.registerTypeAdapter(DateTime.class, new DateTimeTypeConverter()).create();
 
-	private static final String SAMPLE_CSV_FILE = "/importsummaryreport.csv";
+	private static final String STOCKS = "stocks";
 
 	private static final String RETURN_PRODUCT = "returnProduct";
 
@@ -69,6 +67,11 @@ public class StockResource extends RestResource<Stock> {
 		this.stockService = stockService;
 	}
 
+	@Autowired
+	public void setCsvImportService(CsvImportService csvImportService) {
+		this.csvImportService = csvImportService;
+	}
+
 	@Override
 	public Stock getByUniqueId(String uniqueId) {
 		return stockService.find(uniqueId);
@@ -82,28 +85,20 @@ public class StockResource extends RestResource<Stock> {
 	 */
 
 	@RequestMapping(value = "/getall", method = RequestMethod.GET)
-	protected ResponseEntity<String> getAll(@RequestParam(required = false, value = "serverVersion") String serverVersion,
-			@RequestParam(required = false) Integer limit) {
-		Map<String, Object> response = new HashMap<String, Object>();
+	protected void getAll(@RequestParam(required = false, value = "serverVersion") String serverVersion,
+			@RequestParam(required = false) Integer limit, HttpServletResponse response) throws IOException {
 		try {
 			Long lastSyncedServerVersion = null;
 			if (serverVersion != null) {
 				lastSyncedServerVersion = Long.parseLong(serverVersion);
 			}
-			List<Stock> stocks = new ArrayList<Stock>();
 			StockSearchBean stockSearchBean = new StockSearchBean();
 			stockSearchBean.setServerVersion(lastSyncedServerVersion);
-			stocks = stockService.findStocks(stockSearchBean, BaseEntity.SERVER_VERSIOIN, "asc", limit);
-			JsonArray stocksArray = (JsonArray) gson.toJsonTree(stocks, new TypeToken<List<Stock>>() {
-
-			}.getType());
-			response.put("stocks", stocksArray);
-			return new ResponseEntity<>(gson.toJson(response), RestUtils.getJSONUTF8Headers(), HttpStatus.OK);
+			writeStocks(stockService.findStocks(stockSearchBean, BaseEntity.SERVER_VERSIOIN, "asc", limit), response);
 		}
 		catch (Exception e) {
-			response.put("msg", "Error occurred");
 			logger.error("", e);
-			return new ResponseEntity<>(new Gson().toJson(response), HttpStatus.INTERNAL_SERVER_ERROR);
+			writeError(response);
 		}
 	}
 
@@ -133,9 +128,7 @@ public class StockResource extends RestResource<Stock> {
 	 * occurs
 	 */
 	@RequestMapping(value = "/sync", method = RequestMethod.GET)
-	protected ResponseEntity<String> sync(HttpServletRequest request) {
-		Map<String, Object> response = new HashMap<String, Object>();
-
+	protected void sync(HttpServletRequest request, HttpServletResponse response) throws IOException {
 		try {
 			StockSearchBean searchBean = populateSearchBean(request);
 			String serverVersion = getStringFilter(BaseEntity.SERVER_VERSIOIN, request);
@@ -144,13 +137,11 @@ public class StockResource extends RestResource<Stock> {
 			}
 			Integer limit = getIntegerFilter("limit", request);
 			searchBean.setLimit(limit);
-			return syncStocks(searchBean);
-
+			syncStocks(searchBean, response);
 		}
 		catch (Exception e) {
-			response.put("msg", "Error occurred");
 			logger.error("", e);
-			return new ResponseEntity<>(new Gson().toJson(response), HttpStatus.INTERNAL_SERVER_ERROR);
+			writeError(response);
 		}
 	}
 
@@ -271,23 +262,17 @@ public class StockResource extends RestResource<Stock> {
 			MediaType.APPLICATION_JSON_VALUE }, value = "/inventory/validate")
 	public ResponseEntity validateBulkInventoryData(@RequestParam("file") MultipartFile file)
 			throws IOException {
-		List<Map<String, String>> csvClients = readCSVFile(file);
-		CsvBulkImportDataSummary csvBulkImportDataSummary = stockService.validateBulkInventoryData(csvClients);
-
-		String timestamp = String.valueOf(new Date().getTime());
-		URI uri = File.createTempFile(SAMPLE_CSV_FILE + "-" + timestamp, "").toURI();
-		generateCSV(csvBulkImportDataSummary, uri);
-		File csvFile = new File(uri);
-
-		if (csvBulkImportDataSummary != null && csvBulkImportDataSummary.getFailedRecordSummaryList().size() > 0) {
-			return ResponseEntity.badRequest()
-					.header("Content-Disposition", "attachment; filename=" + "importsummaryreport-" + timestamp + ".csv")
-					.contentLength(csvFile.length())
-					.contentType(MediaType.parseMediaType("text/csv"))
-					.body(new FileSystemResource(csvFile));
+		CsvImportReport csvImportReport;
+		try (InputStream inputStream = file.getInputStream()) {
+			csvImportReport = csvImportService.process(inputStream, stockService::validateBulkInventoryData, true);
+		}
+
+		if (csvImportReport.getNumberOfFailedRows() > 0) {
+			return csvReportResponse(ResponseEntity.badRequest(), csvImportReport.getReportFile());
 		} else {
+			Files.deleteIfExists(csvImportReport.getReportFile().toPath());
 			Map<String, Object> response = new HashMap<String, Object>();
-			response.put("rowCount", csvBulkImportDataSummary.getNumberOfCsvRows());
+			response.put("rowCount", csvImportReport.getNumberOfCsvRows());
 			return new ResponseEntity<>(gson.toJson(response), RestUtils.getJSONUTF8Headers(), HttpStatus.OK);
 		}
 	}
@@ -298,88 +283,88 @@ public class StockResource extends RestResource<Stock> {
 			throws IOException {
 		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
 		String userName = authentication.getName();
-		List<Map<String, String>> csvClients = readCSVFile(file);
-		CsvBulkImportDataSummary csvBulkImportDataSummary = stockService
-				.convertandPersistInventorydata(csvClients, userName);
-
-		String timestamp = String.valueOf(new Date().getTime());
-		URI uri = File.createTempFile(SAMPLE_CSV_FILE + "-" + timestamp, "").toURI();
-		generateCSV(csvBulkImportDataSummary, uri);
-		File csvFile = new File(uri);
-
-		if (csvBulkImportDataSummary != null && csvBulkImportDataSummary.getFailedRecordSummaryList().size() > 0) {
-			return ResponseEntity.badRequest()
-					.header("Content-Disposition", "attachment; filename=" + "importsummaryreport-" + timestamp + ".csv")
-					.contentLength(csvFile.length())
-					.contentType(MediaType.parseMediaType("text/csv"))
-					.body(new FileSystemResource(csvFile));
+		CsvImportReport csvImportReport;
+		try (InputStream inputStream = file.getInputStream()) {
+			csvImportReport = csvImportService.process(inputStream,
+					rows -> stockService.convertandPersistInventorydata(rows, userName), false);
+		}
+
+		if (csvImportReport.getNumberOfFailedRows() > 0) {
+			return csvReportResponse(ResponseEntity.badRequest(), csvImportReport.getReportFile());
 		} else {
-			return ResponseEntity.ok()
-					.header("Content-Disposition", "attachment; filename=" + "importsummaryreport-" + timestamp + ".csv")
-					.contentLength(csvFile.length())
-					.contentType(MediaType.parseMediaType("text/csv"))
-					.body(new FileSystemResource(csvFile));
+			return csvReportResponse(ResponseEntity.ok(), csvImportReport.getReportFile());
 		}
 	}
 
+	private ResponseEntity<FileSystemResource> csvReportResponse(ResponseEntity.BodyBuilder responseBuilder, File csvFile) {
+		return responseBuilder
+				.header("Content-Disposition",
+						"attachment; filename=" + "importsummaryreport-" + new Date().getTime() + ".csv")
+				.contentLength(csvFile.length())
+				.contentType(MediaType.parseMediaType("text/csv"))
+				.body(new FileSystemResource(csvFile));
+	}
+
 	@PostMapping(value = "/sync", consumes = MediaType.APPLICATION_JSON_VALUE, produces = MediaType.APPLICATION_JSON_VALUE)
-	protected ResponseEntity<String> syncV2(@RequestBody StockSearchBean stockSearchBean) {
-		Map<String, Object> response = new HashMap<>();
+	protected void syncV2(@RequestBody StockSearchBean stockSearchBean, HttpServletResponse response)
+			throws IOException {
 		try {
-			return syncStocks(stockSearchBean);
+			syncStocks(stockSearchBean, response);
 		}
 		catch (Exception e) {
-			response.put("msg", "Error occurred");
 			logger.error("", e);
-			return new ResponseEntity<>(new Gson().toJson(response), HttpStatus.INTERNAL_SERVER_ERROR);
+			writeError(response);
 		}
 	}
 
-	private ResponseEntity<String> syncStocks(StockSearchBean stockSearchBean) {
-		Map<String, Object> response = new HashMap<String, Object>();
-		List<Stock> stocks = new ArrayList<>();
+	private void syncStocks(StockSearchBean stockSearchBean, HttpServletResponse response) throws IOException {
 		Integer limit = stockSearchBean.getLimit();
 		if (limit == null || limit.intValue() == 0) {
 			limit = 25;
 		}
 		stockSearchBean.setLimit(limit);
-		stocks = stockService.findStocks(stockSearchBean, BaseEntity.SERVER_VERSIOIN, "asc", stockSearchBean.getLimit());
-		JsonArray stocksArray = (JsonArray) gson.toJsonTree(stocks, new TypeToken<List<Stock>>() {
-
-		}.getType());
-
-		response.put("stocks", stocksArray);
-
-		return new ResponseEntity<>(gson.toJson(response), RestUtils.getJSONUTF8Headers(), HttpStatus.OK);
-
+		writeStocks(stockService.findStocks(stockSearchBean, BaseEntity.SERVER_VERSIOIN, "asc", stockSearchBean.getLimit()),
+				response);
 	}
 
-	private List<Map<String, String>> readCSVFile(MultipartFile file) throws IOException {
-		List<Map<String, String>> csvClients = new ArrayList<>();
-		try (Reader reader = new InputStreamReader(file.getInputStream());
-		     CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withHeader())) {
-
-			List<CSVRecord> records = parser.getRecords();
-			for (CSVRecord record : records) {
-				csvClients.add(record.toMap());
-			}
+	/**
+	 * Writes the stocks straight to the response as {@code {"stocks": [...]}} without first building a JSON tree
+	 * or string of the whole page
+	 *
+	 * @param stocks   the page of stocks ordered by serverVersion
+	 * @param response the response to write to
+	 */
+	private void writeStocks(List<Stock> stocks, HttpServletResponse response) throws IOException {
+		if (stocks == null) {
+			throw new IllegalStateException("Stocks could not be retrieved");
 		}
-		return csvClients;
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		JsonWriter jsonWriter = gson.newJsonWriter(
+				new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)));
+		jsonWriter.beginObject();
+		jsonWriter.name(STOCKS);
+		jsonWriter.beginArray();
+		for (Stock stock : stocks) {
+			gson.toJson(stock, Stock.class, jsonWriter);
+		}
+		jsonWriter.endArray();
+		jsonWriter.endObject();
+		jsonWriter.flush();
 	}
 
-	private void generateCSV(CsvBulkImportDataSummary csvBulkImportDataSummary, URI uri) throws IOException {
-		BufferedWriter writer = Files.newBufferedWriter(Paths.get(uri));
-		CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT);
-		csvPrinter.printRecord("Total Number of Rows in the CSV ", csvBulkImportDataSummary.getNumberOfCsvRows());
-		csvPrinter.printRecord("Rows processed ", csvBulkImportDataSummary.getNumberOfRowsProcessed());
-		csvPrinter.printRecord("\n");
-
-		csvPrinter.printRecord("Row Number", "Reason of Failure");
-		for (FailedRecordSummary failedRecordSummary : csvBulkImportDataSummary.getFailedRecordSummaryList()) {
-			csvPrinter.printRecord(failedRecordSummary.getRowNumber(), failedRecordSummary.getReasonOfFailure());
+	private void writeError(HttpServletResponse response) throws IOException {
+		if (response.isCommitted()) {
+			return;
 		}
-		writer.flush();
-		csvPrinter.flush();
+		response.resetBuffer();
+		response.setStatus(HttpStatus.INTERNAL_SERVER_ERROR.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		Map<String, Object> error = new HashMap<>();
+		error.put("msg", ERROR_OCCURRED);
+		response.getOutputStream().write(gson.toJson(error).getBytes(StandardCharsets.UTF_8));
 	}
 
 	private StockSearchBean createSearchBeanToGetStocksOfServicePoint(Integer pageNumber, Integer pageSize,
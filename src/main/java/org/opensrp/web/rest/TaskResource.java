@@ -8,7 +8,11 @@ import static org.opensrp.web.Constants.RETURN_COUNT;
 import static org.opensrp.web.Constants.TOTAL_RECORDS;
 import static org.opensrp.web.rest.RestUtils.getStringFilter;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -17,6 +21,7 @@ import java.util.HashMap;
 import java.util.stream.Collectors;
 
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 
 import org.apache.commons.lang3.StringUtils;
@@ -31,7 +36,9 @@ import org.opensrp.search.TaskSearchBean;
 import org.opensrp.service.TaskService;
 import org.opensrp.web.bean.Identifier;
 import org.opensrp.web.dto.TaskDto;
+import org.opensrp.web.utils.TaskV1TypeAdapter;
 import org.opensrp.web.dto.TaskSyncRequestWrapper;
+import org.opensrp.web.service.TaskBatchService;
 import org.opensrp.web.utils.Utils;
 import org.smartregister.domain.Period;
 import org.smartregister.domain.Task;
@@ -58,6 +65,7 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonSyntaxException;
 import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * Task V1 API that returns {@link TaskPriority} as enum ordinal and execution collapsed
@@ -73,19 +81,34 @@ public class TaskResource {
 	public Gson gson = new GsonBuilder().registerTypeAdapter(DateTime.class, new TaskDateTimeTypeConverter())
 	        .registerTypeAdapter(TaskPriority.class, new PriorityOrdinalConverter()).create();
 	
+	private volatile TaskV1TypeAdapter taskV1Adapter;
+	
 	public static final String PLAN = "plan";
 	
 	public static final String GROUP = "group";
 	
 	public static final String OWNER = "owner";
 	
+	public static final String EXECUTION_PERIOD = "executionPeriod";
+	
+	public static final String EXECUTION_START_DATE = "executionStartDate";
+	
+	public static final String EXECUTION_END_DATE = "executionEndDate";
+	
 	private TaskService taskService;
 	
+	private TaskBatchService taskBatchService;
+	
 	@Autowired
 	public void setTaskService(TaskService taskService) {
 		this.taskService = taskService;
 	}
 	
+	@Autowired
+	public void setTaskBatchService(TaskBatchService taskBatchService) {
+		this.taskBatchService = taskBatchService;
+	}
+	
 	/**
 	 * @param gson the gson to set
 	 */
@@ -101,7 +124,8 @@ public class TaskResource {
 	
 	@RequestMapping(value = "/sync", method = RequestMethod.POST, consumes = {
 	        MediaType.APPLICATION_JSON_VALUE }, produces = { MediaType.APPLICATION_JSON_VALUE })
-	public ResponseEntity<String> getTasksByTaskAndGroup(@RequestBody TaskSyncRequestWrapper taskSyncRequestWrapper) {
+	public void getTasksByTaskAndGroup(@RequestBody TaskSyncRequestWrapper taskSyncRequestWrapper,
+	        HttpServletResponse response) throws IOException {
 		String plan = StringUtils.join(taskSyncRequestWrapper.getPlan(), ",");
 		String group = StringUtils.join(taskSyncRequestWrapper.getGroup(), ",");
 		String owner = taskSyncRequestWrapper.getOwner();
@@ -115,12 +139,13 @@ public class TaskResource {
 		catch (NumberFormatException e) {
 			logger.error("server version not a number");
 		}
-		return getTaskSyncResponse(plan, group, owner, currentServerVersion, returnCount);
+		writeTaskSyncResponse(plan, group, owner, currentServerVersion, returnCount, response);
 	}
 	
 	// here for backward compatibility
 	@RequestMapping(value = "/sync", method = RequestMethod.GET, produces = { MediaType.APPLICATION_JSON_VALUE })
-	public ResponseEntity<String> getTasksByTaskAndGroupTwo(HttpServletRequest request) {
+	public void getTasksByTaskAndGroupTwo(HttpServletRequest request, HttpServletResponse response)
+	        throws IOException {
 		String plan = getStringFilter(PLAN, request);
 		String group = getStringFilter(GROUP, request);
 		String serverVersion = getStringFilter(BaseEntity.SERVER_VERSIOIN, request);
@@ -134,37 +159,38 @@ public class TaskResource {
 		catch (NumberFormatException e) {
 			logger.error("server version not a number");
 		}
-		return getTaskSyncResponse(plan, group, owner, currentServerVersion, returnCount);
+		writeTaskSyncResponse(plan, group, owner, currentServerVersion, returnCount, response);
 	}
 	
-	private ResponseEntity<String> getTaskSyncResponse(String plan, String group, String owner, long currentServerVersion,
-	        boolean returnCount) {
+	private void writeTaskSyncResponse(String plan, String group, String owner, long currentServerVersion,
+	        boolean returnCount, HttpServletResponse response) throws IOException {
 		if (StringUtils.isBlank(plan)) {
 			logger.error("Plan Identifier is missing");
-			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			response.setStatus(HttpStatus.BAD_REQUEST.value());
+			return;
 		}
 		
 		if (!StringUtils.isBlank(group)) {
-			String tasks = gson.toJson(convertToDTO(taskService.getTasksByTaskAndGroup(plan, group, currentServerVersion)));
+			List<Task> tasks = taskService.getTasksByTaskAndGroup(plan, group, currentServerVersion);
 			HttpHeaders headers = RestUtils.getJSONUTF8Headers();
 			if (returnCount) {
 				Long taskCount = taskService.countTasksByPlanAndGroup(plan, group, currentServerVersion);
 				headers.add(TOTAL_RECORDS, String.valueOf(taskCount));
 			}
 			
-			return new ResponseEntity<>(tasks, headers, HttpStatus.OK);
+			writeTasks(tasks, headers, response);
 		} else if (!StringUtils.isBlank(owner)) {
-			String tasks = gson.toJson(convertToDTO(taskService.getTasksByPlanAndOwner(plan, owner, currentServerVersion)));
+			List<Task> tasks = taskService.getTasksByPlanAndOwner(plan, owner, currentServerVersion);
 			HttpHeaders headers = RestUtils.getJSONUTF8Headers();
 			if (returnCount) {
 				Long taskCount = taskService.countTasksByPlanAndOwner(plan, owner, currentServerVersion);
 				headers.add(TOTAL_RECORDS, String.valueOf(taskCount));
 			}
 			
-			return new ResponseEntity<>(tasks, headers, HttpStatus.OK);
+			writeTasks(tasks, headers, response);
 		} else {
 			logger.error("Either owner or group identifier field is missing");
-			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
+			response.setStatus(HttpStatus.BAD_REQUEST.value());
 		}
 	}
 	
@@ -202,7 +228,7 @@ public class TaskResource {
 		try {
 			Type listType = new TypeToken<List<TaskDto>>() {}.getType();
 			List<TaskDto> tasks = gson.fromJson(entity, listType);
-			Set<String> tasksWithErrors = taskService.saveTasks(convertToDomain(tasks));
+			Set<String> tasksWithErrors = taskBatchService.saveTasks(convertToDomain(tasks));
 			if (tasksWithErrors.isEmpty())
 				return new ResponseEntity<>("All Tasks  processed", HttpStatus.CREATED);
 			else
@@ -222,7 +248,7 @@ public class TaskResource {
 		try {
 			Type listType = new TypeToken<List<TaskUpdate>>() {}.getType();
 			List<TaskUpdate> taskUpdates = gson.fromJson(entity, listType);
-			List<String> updateTasks = taskService.updateTaskStatus(taskUpdates);
+			List<String> updateTasks = taskBatchService.updateTaskStatus(taskUpdates);
 			if (updateTasks.size() > 0) {
 				JSONObject json = new JSONObject();
 				json.put("task_ids", updateTasks);
@@ -266,12 +292,12 @@ public class TaskResource {
 	 * @return A list of tasks
 	 */
 	@RequestMapping(value = "/getAll", method = RequestMethod.GET, produces = { MediaType.APPLICATION_JSON_VALUE })
-	public ResponseEntity<String> getAll(@RequestParam(value = SERVER_VERSION) long serverVersion,
-	        @RequestParam(value = LIMIT, required = false) Integer limit) {
+	public void getAll(@RequestParam(value = SERVER_VERSION) long serverVersion,
+	        @RequestParam(value = LIMIT, required = false) Integer limit, HttpServletResponse response)
+	        throws IOException {
 		
 		Integer pageLimit = limit == null ? DEFAULT_LIMIT : limit;
-		return new ResponseEntity<>(gson.toJson(convertToDTO(taskService.getAllTasks(serverVersion, pageLimit))),
-		        RestUtils.getJSONUTF8Headers(), HttpStatus.OK);
+		writeTasks(taskService.getAllTasks(serverVersion, pageLimit), RestUtils.getJSONUTF8Headers(), response);
 		
 	}
 	
@@ -307,6 +333,43 @@ public class TaskResource {
 		return new ResponseEntity<>(gson.toJson(response), headers, HttpStatus.OK);
 	}
 	
+	/**
+	 * Writes tasks to the response as a JSON array one task at a time so that the serialized tasks are never
+	 * held in memory as a whole
+	 * @param tasks the tasks to write
+	 * @param headers the headers to add to the response
+	 * @param response the response to write to
+	 * @throws IOException if writing to the response fails
+	 */
+	protected void writeTasks(List<Task> tasks, HttpHeaders headers, HttpServletResponse response) throws IOException {
+		response.setStatus(HttpStatus.OK.value());
+		headers.forEach((name, values) -> values.forEach(value -> response.addHeader(name, value)));
+		JsonWriter jsonWriter = gson.newJsonWriter(
+		    new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)));
+		jsonWriter.beginArray();
+		for (Task task : tasks) {
+			writeTask(task, jsonWriter);
+		}
+		jsonWriter.endArray();
+		jsonWriter.flush();
+	}
+	
+	/**
+	 * Writes a task using the V1 API data model, collapsing the execution period into the execution start
+	 * and end dates while serializing instead of copying the task to a {@link TaskDto}
+	 * @param task the task to write
+	 * @param jsonWriter the writer to write the task to
+	 * @throws IOException if the task could not be written
+	 */
+	public void writeTask(Task task, JsonWriter jsonWriter) throws IOException {
+		TaskV1TypeAdapter adapter = taskV1Adapter;
+		if (adapter == null || !adapter.isFor(gson)) {
+			adapter = new TaskV1TypeAdapter(gson);
+			taskV1Adapter = adapter;
+		}
+		adapter.write(jsonWriter, task);
+	}
+	
 	/**
 	 * Converts a Task to DTO object so that data model for V1 API is maintained
 	 * @param task the task to convert
@@ -1,6 +1,9 @@
 package org.opensrp.web.rest;
 
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
@@ -11,6 +14,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.joda.time.DateTime;
 import org.json.JSONObject;
+import org.opensrp.common.AllConstants.BaseEntity;
 import org.opensrp.domain.CSVRowConfig;
 import org.opensrp.dto.form.MultimediaDTO;
 import org.opensrp.repository.MultimediaRepository;
@@ -24,19 +28,26 @@ import org.opensrp.service.UniqueIdentifierService;
 import org.opensrp.service.UploadService;
 import org.opensrp.util.JSONCSVUtil;
 import org.opensrp.web.bean.UploadBean;
+import org.opensrp.web.bean.UploadJobStatus;
+import org.opensrp.web.cache.ClientNameIndex;
+import org.opensrp.web.cache.ContactPhoneNumberIndex;
 import org.opensrp.web.exceptions.UploadValidationException;
+import org.opensrp.web.service.UploadJobService;
 import org.opensrp.web.uniqueid.UniqueIDProvider;
+import org.opensrp.web.uniqueid.UniqueIdentifierPool;
 import org.opensrp.web.uniqueid.UniqueIdentifierProvider;
+import org.opensrp.web.utils.FileServingUtil;
+import org.opensrp.web.utils.JsonFieldAccessor;
 import org.smartregister.domain.Client;
 import org.smartregister.domain.Event;
 import org.smartregister.domain.PhysicalLocation;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Controller;
-import org.springframework.util.FileCopyUtils;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
@@ -44,10 +55,12 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.multipart.MultipartFile;
 
+import javax.annotation.PreDestroy;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -110,6 +123,26 @@ public class UploadController {
 
 	private PhysicalLocationService physicalLocationService;
 
+	private UploadJobService uploadJobService;
+
+	private ContactPhoneNumberIndex contactPhoneNumberIndex;
+
+	private ClientNameIndex clientNameIndex;
+
+	@Value("#{opensrp['upload.job.chunk.size'] ?: 500}")
+	private int chunkSize = 500;
+
+	@Value("#{opensrp['upload.template.location.page.size'] ?: 100}")
+	private int templateLocationPageSize = 100;
+
+	@Value("#{opensrp['upload.id.pool.low.watermark'] ?: 50}")
+	private int idPoolLowWatermark = 50;
+
+	@Value("#{opensrp['upload.id.pool.high.watermark'] ?: 500}")
+	private int idPoolHighWatermark = 500;
+
+	private volatile UniqueIdentifierPool identifierPool;
+
 	@Autowired
 	public void setObjectMapper(ObjectMapper objectMapper) {
 		this.objectMapper = objectMapper;
@@ -133,11 +166,13 @@ public class UploadController {
 	@Autowired
 	public void setIdentifierSourceService(IdentifierSourceService identifierSourceService) {
 		this.identifierSourceService = identifierSourceService;
+		closeIdentifierPool();
 	}
 
 	@Autowired
 	public void setUniqueIdentifierService(UniqueIdentifierService uniqueIdentifierService) {
 		this.uniqueIdentifierService = uniqueIdentifierService;
+		closeIdentifierPool();
 	}
 
 	@Autowired
@@ -155,9 +190,53 @@ public class UploadController {
 		this.physicalLocationService = physicalLocationService;
 	}
 
+	@Autowired
+	public void setUploadJobService(UploadJobService uploadJobService) {
+		this.uploadJobService = uploadJobService;
+	}
+
+	@Autowired(required = false)
+	public void setContactPhoneNumberIndex(ContactPhoneNumberIndex contactPhoneNumberIndex) {
+		this.contactPhoneNumberIndex = contactPhoneNumberIndex;
+	}
+
+	@Autowired(required = false)
+	public void setClientNameIndex(ClientNameIndex clientNameIndex) {
+		this.clientNameIndex = clientNameIndex;
+	}
+
+	@Autowired(required = false)
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		UniqueIdentifierPool.registerMetrics(meterRegistry, this, controller -> controller.identifierPool, "upload",
+				IDSource);
+	}
+
+	/**
+	 * Returns the pool that identifiers for new clients are taken from, creating it on first use
+	 */
+	private synchronized UniqueIdentifierPool getIdentifierPool() {
+		if (identifierPool == null) {
+			identifierPool = new UniqueIdentifierPool(uniqueIdentifierService, identifierSourceService, IDSource,
+					"uploadService", idPoolLowWatermark, idPoolHighWatermark);
+		}
+		return identifierPool;
+	}
+
+	@PreDestroy
+	public synchronized void closeIdentifierPool() {
+		if (identifierPool != null) {
+			identifierPool.close();
+			identifierPool = null;
+		}
+	}
+
 	private List<Map<String, String>> readCSVFile(MultipartFile file) throws IOException {
+		return readCSVFile(file.getInputStream());
+	}
+
+	private List<Map<String, String>> readCSVFile(InputStream inputStream) throws IOException {
 		List<Map<String, String>> csvClients = new ArrayList<>();
-		try (Reader reader = new InputStreamReader(file.getInputStream());
+		try (Reader reader = new InputStreamReader(inputStream);
 		     CSVParser parser = new CSVParser(reader, CSVFormat.DEFAULT.withHeader())) {
 
 			List<CSVRecord> records = parser.getRecords();
@@ -168,6 +247,11 @@ public class UploadController {
 		return csvClients;
 	}
 
+	/**
+	 * Uploads a CSV of clients. When {@code async} is set the file is processed in the background and the job
+	 * identifier is returned straight away; the job can be followed through {@code /status/{identifier}} and the
+	 * upload history.
+	 */
 	@PostMapping(headers = { "Accept=multipart/form-data" }, produces = {
 			MediaType.APPLICATION_JSON_VALUE })
 	public Map<String, Object> uploadCSV(@RequestParam("event_name") String eventName,
@@ -175,6 +259,7 @@ public class UploadController {
 			@RequestParam(value = "team_id", required = false) String teamID,
 			@RequestParam(value = "team_name", required = false) String teamName,
 			@RequestParam(value = "location_id", required = false) String locationID,
+			@RequestParam(value = "async", required = false) boolean async,
 			Authentication authentication
 	) throws IOException,
 			UploadValidationException {
@@ -187,46 +272,106 @@ public class UploadController {
 		String providerId = authentication.getName();
 		MultimediaDTO multimediaDTO = new MultimediaDTO(entityId.trim(), providerId, file.getContentType().trim(), null,
 				FILE_CATEGORY);
+		String fileName = file.getOriginalFilename();
+		multimediaDTO.withOriginalFileName(fileName);
+		String userName = RestUtils.currentUser(authentication) != null ?
+				RestUtils.currentUser(authentication).getUsername() :
+				"";
+		byte[] fileBytes = file.getBytes();
+
+		if (async) {
+			UploadJobStatus jobStatus = uploadJobService.submit(entityId, fileName, providerId,
+					progress -> importCSV(fileBytes, fileName, multimediaDTO, providerId, eventName, teamID, teamName,
+							locationID, userName, progress));
+			Map<String, Object> details = new HashMap<>();
+			details.put("identifier", jobStatus.getIdentifier());
+			details.put("status", jobStatus.getStatus());
+			return details;
+		}
 
-		List<Map<String, String>> csvClients = readCSVFile(file);
+		return importCSV(fileBytes, fileName, multimediaDTO, providerId, eventName, teamID, teamName, locationID,
+				userName, null);
+	}
 
-		UploadValidationBean validationBean = uploadService.validateFieldValues(csvClients, eventName, globalID);
+	/**
+	 * Returns the progress of an upload to the user who submitted it. Uploads of other users are reported as not found.
+	 */
+	@GetMapping(value = "/status/{identifier}", produces = { MediaType.APPLICATION_JSON_VALUE })
+	public ResponseEntity<UploadJobStatus> getUploadStatus(@PathVariable("identifier") String identifier,
+			Authentication authentication) {
+		UploadJobStatus jobStatus = uploadJobService.getStatus(identifier);
+		if (jobStatus == null || !jobStatus.getProviderID().equals(authentication.getName())) {
+			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<>(jobStatus, HttpStatus.OK);
+	}
+
+	private Map<String, Object> importCSV(byte[] fileBytes, String fileName, MultimediaDTO multimediaDTO,
+			String providerId, String eventName, String teamID, String teamName, String locationID, String userName,
+			UploadJobService.UploadProgress progress) throws IOException, UploadValidationException {
+		UploadValidationBean validationBean;
+		try (InputStream inputStream = new ByteArrayInputStream(fileBytes)) {
+			validationBean = uploadService.validateFieldValues(readCSVFile(inputStream), eventName, globalID);
+		}
 		if (validationBean.getErrors() != null && validationBean.getErrors().size() > 0) {
 			validationBean.setAnalyzedData(null);
 			throw new UploadValidationException(objectMapper.writeValueAsString(validationBean));
 		}
 
-		saveClients(validationBean,locationID,providerId,eventName,teamID,teamName);
+		List<Pair<Client, Event>> analyzedData = validationBean.getAnalyzedData();
+		if (progress != null) {
+			progress.setTotalRows(analyzedData.size());
+		}
+		UniqueIDProvider uniqueIDProvider = new UniqueIdentifierProvider(getIdentifierPool(),
+				validationBean.getRowsToCreate());
+		for (List<Pair<Client, Event>> chunk : Lists.partition(analyzedData, chunkSize)) {
+			saveClients(chunk, uniqueIDProvider, locationID, providerId, eventName, teamID, teamName, userName);
+			if (progress != null) {
+				progress.addProcessedRows(chunk.size());
+			}
+		}
 
 		Map<String, Object> details = new HashMap<>();
-		details.put("size", Long.toString(file.getSize()));
+		details.put("size", Long.toString(fileBytes.length));
 		details.put("imported", Integer.toString(validationBean.getRowsToCreate()));
 		details.put("updated", Integer.toString(validationBean.getRowsToUpdate()));
-		multimediaDTO.withOriginalFileName(file.getOriginalFilename())
-				.withDateUploaded(new Date())
+		multimediaDTO.withDateUploaded(new Date())
 				.withSummary(objectMapper.writeValueAsString(details));
 
-		String saved = multimediaService.saveFile(multimediaDTO, file.getBytes(), file.getOriginalFilename());
+		String saved = multimediaService.saveFile(multimediaDTO, fileBytes, fileName);
 		if(saved.equals("fail")) throw new UploadValidationException("Error saving file on server");
 
 		return details;
 	}
 
-	private void saveClients(UploadValidationBean validationBean,
+	/**
+	 * Saves a chunk of analyzed rows. Existing clients of the chunk are looked up together by base entity id and only
+	 * clients that are not found that way are matched one at a time.
+	 */
+	private void saveClients(List<Pair<Client, Event>> analyzedData,
+			UniqueIDProvider uniqueIDProvider,
 			String locationID,
 			String providerId,
 			String eventName,
 			String teamID,
-			String teamName){
-		UniqueIDProvider uniqueIDProvider = new UniqueIdentifierProvider(uniqueIdentifierService, identifierSourceService,
-				IDSource,
-				validationBean.getRowsToCreate());
-		Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+			String teamName,
+			String userName){
+		List<String> baseEntityIds = analyzedData.stream().map(eventClient -> eventClient.getLeft().getBaseEntityId())
+				.filter(StringUtils::isNotBlank).distinct().collect(Collectors.toList());
+		Map<String, Client> existingClients = new HashMap<>();
+		if (!baseEntityIds.isEmpty()) {
+			for (Client existingClient : clientService.findGlobalByFieldValue(BaseEntity.BASE_ENTITY_ID, baseEntityIds)) {
+				existingClients.put(existingClient.getBaseEntityId(), existingClient);
+			}
+		}
 
-		for (Pair<Client, Event> eventClient : validationBean.getAnalyzedData()) {
+		for (Pair<Client, Event> eventClient : analyzedData) {
 			Client client = eventClient.getLeft();
 
-			Client found = clientService.findClient(client);
+			Client found = existingClients.get(client.getBaseEntityId());
+			if (found == null) {
+				found = clientService.findClient(client);
+			}
 			if(found != null) {
 				client.setBaseEntityId(found.getBaseEntityId());
 			}
@@ -240,6 +385,9 @@ public class UploadController {
 
 			assignClientUniqueID(client, globalID, uniqueIDProvider);
 			clientService.addorUpdate(client);
+			if (clientNameIndex != null) {
+				clientNameIndex.index(client);
+			}
 
 			// update event details
 			Event event = (eventClient.getRight() == null) ? new Event() : eventClient.getRight();
@@ -251,8 +399,10 @@ public class UploadController {
 			event.setLocationId(StringUtils.defaultIfBlank(locationID,event.getLocationId()));
 
 			// save the event
-			String userName = RestUtils.currentUser(authentication) != null ? RestUtils.currentUser(authentication).getUsername() : "";
 			eventService.addorUpdateEvent(event, userName);
+			if (contactPhoneNumberIndex != null) {
+				contactPhoneNumberIndex.index(event);
+			}
 		}
 	}
 
@@ -294,13 +444,29 @@ public class UploadController {
 		}
 	}
 
+	/**
+	 * Returns the uploads of the user. The first page also lists background uploads that are still running or that
+	 * failed on this node.
+	 */
 	@GetMapping(value = "/history", produces = { MediaType.APPLICATION_JSON_VALUE })
 	public List<UploadBean> getUploadHistory(
 			@RequestParam(value = "batch_size", required = false, defaultValue = "50") Integer batchSize,
 			@RequestParam(value = "offset", required = false, defaultValue = "0") Integer offset,
 			Authentication authentication
 	) {
-		return multimediaRepository.getByProviderID(authentication.getName(), FILE_CATEGORY, offset, batchSize)
+		List<UploadBean> uploads = new ArrayList<>();
+		if (offset == 0) {
+			for (UploadJobStatus jobStatus : uploadJobService.getIncompleteJobs(authentication.getName())) {
+				UploadBean uploadBean = new UploadBean();
+				uploadBean.setFileName(jobStatus.getFileName());
+				uploadBean.setIdentifier(jobStatus.getIdentifier());
+				uploadBean.setProviderID(jobStatus.getProviderID());
+				uploadBean.setUploadDate(jobStatus.getUploadDate());
+				uploadBean.setStatus(jobStatus.getStatus().name());
+				uploads.add(uploadBean);
+			}
+		}
+		multimediaRepository.getByProviderID(authentication.getName(), FILE_CATEGORY, offset, batchSize)
 				.stream()
 				.map(multimedia -> {
 					UploadBean uploadBean = new UploadBean();
@@ -309,9 +475,11 @@ public class UploadController {
 					uploadBean.setProviderID(multimedia.getProviderId());
 					uploadBean.setUploadDate(multimedia.getDateUploaded());
 					uploadBean.setUrl(multimedia.getCaseId() + "." + FILE_CATEGORY);
+					uploadBean.setStatus(UploadJobStatus.Status.COMPLETED.name());
 					return uploadBean;
 				})
-				.collect(Collectors.toList());
+				.forEach(uploads::add);
+		return uploads;
 	}
 
 	@GetMapping(value = "/template")
@@ -352,21 +520,31 @@ public class UploadController {
 		for (PhysicalLocation location : structureIds)
 			locations.add(location.getId());
 
-		List<Client> clients = new ArrayList<>(clientService.findAllByAttributes(DEFAULT_RESIDENCE, new ArrayList<>(locations)));
-
-		try (CSVPrinter printer = new CSVPrinter(response.getWriter(), CSVFormat.DEFAULT
+		JsonFieldAccessor fieldAccessor = JsonFieldAccessor.compile(fieldMappings);
+		try (CSVPrinter printer = new CSVPrinter(new BufferedWriter(response.getWriter()), CSVFormat.DEFAULT
 				.withHeader(HEADERS))) {
-			for (Client client : clients) {
-
-				JSONObject jsonObject = new JSONObject();
-				jsonObject.put("client", new JSONObject(objectMapper.writeValueAsString(client)));
-				printer.printRecord(JSONCSVUtil.jsonToString(jsonObject, fieldMappings));
+			for (List<String> locationPage : Lists.partition(new ArrayList<>(locations), templateLocationPageSize)) {
+				for (Client client : clientService.findAllByAttributes(DEFAULT_RESIDENCE, locationPage)) {
+					printer.printRecord((Object[]) toTemplateRow(client, fieldAccessor, fieldMappings));
+				}
+				printer.flush();
 			}
 		}
 	}
 
+	private String[] toTemplateRow(Client client, JsonFieldAccessor fieldAccessor, List<String> fieldMappings) {
+		ObjectNode root = objectMapper.createObjectNode();
+		root.set("client", objectMapper.valueToTree(client));
+		String[] row = fieldAccessor.extract(root);
+		if (row == null) {
+			row = JSONCSVUtil.jsonToString(new JSONObject(root.toString()), fieldMappings);
+		}
+		return row;
+	}
+
 	@GetMapping(value = "/download/{fileName:.+}")
-	public void downloadFile(@PathVariable("fileName") String fileName, HttpServletResponse response) throws IOException {
+	public void downloadFile(@PathVariable("fileName") String fileName, HttpServletRequest request,
+			HttpServletResponse response) throws IOException {
 		if (StringUtils.isBlank(fileName))
 			throw new IllegalArgumentException("Missing file name");
 
@@ -390,9 +568,7 @@ public class UploadController {
 			String headerValue = String.format("attachment; filename=\"%s\"",
 					fileName);
 			response.setHeader(headerKey, headerValue);
-			response.setContentLength((int) file.length());
-			InputStream inputStream = new BufferedInputStream(new FileInputStream(file));
-			FileCopyUtils.copy(inputStream, response.getOutputStream());
+			FileServingUtil.serveFile(file, request, response);
 		} else {
 			String errorMessage = "Sorry. The file you are looking for does not exist";
 			logger.info(errorMessage);
@@ -1,5 +1,6 @@
 package org.opensrp.web.rest;
 
+import com.google.common.collect.Lists;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.google.gson.JsonArray;
@@ -11,9 +12,9 @@ import org.joda.time.DateTime;
 import org.json.JSONObject;
 import org.opensrp.service.ClientService;
 import org.opensrp.service.EventService;
+import org.opensrp.web.utils.MultiGetUtil;
 import org.opensrp.web.utils.Utils;
 import org.smartregister.domain.Client;
-import org.smartregister.domain.Event;
 import org.smartregister.utils.DateTimeTypeConverter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
@@ -26,8 +27,11 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.function.Function;
 
 import static java.text.MessageFormat.format;
+import static org.opensrp.common.AllConstants.BaseEntity.BASE_ENTITY_ID;
+import static org.opensrp.common.AllConstants.CLIENTS_FETCH_BATCH_SIZE;
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.web.bind.annotation.RequestMethod.POST;
 
@@ -74,32 +78,17 @@ public class ValidateResource {
 				List<String> clientIds = gson.fromJson(Utils.getStringFromJSON(syncData,"clients"),
 						new TypeToken<ArrayList<String>>() {
 						}.getType());
-				for (String clientId : clientIds) {
-					try {
-						Client client = clientService.getByBaseEntityId(clientId);
-						if (client == null) {
-							missingClientIds.add(clientId);
-						}
-					} catch (Exception e) {
-						logger.error("Client Sync Validation Failed, BaseEntityId: " + clientId, e);
-					}
-				}
+				missingClientIds = findMissingIds(clientIds,
+						ids -> clientService.findGlobalByFieldValue(BASE_ENTITY_ID, ids), Client::getBaseEntityId,
+						clientService::getByBaseEntityId, "Client Sync Validation Failed, BaseEntityId: ");
 			}
 
 			List<String> missingEventIds = new ArrayList<>();
 			if (syncData.has("events")) {
 				List<String> eventIds = gson.fromJson(Utils.getStringFromJSON(syncData,"events"), new TypeToken<ArrayList<String>>() {
 				}.getType());
-				for (String eventId : eventIds) {
-					try {
-						Event event = eventService.findByFormSubmissionId(eventId);
-						if (event == null) {
-							missingEventIds.add(eventId);
-						}
-					} catch (Exception e) {
-						logger.error("Event Sync Validation Failed, FormSubmissionId: " + eventId, e);
-					}
-				}
+				missingEventIds = findMissingIds(eventIds, eventService::findByFormSubmissionId,
+						"Event Sync Validation Failed, FormSubmissionId: ");
 			}
 
 			JsonArray clientsArray = (JsonArray) gson.toJsonTree(missingClientIds, new TypeToken<List<String>>() {
@@ -119,4 +108,43 @@ public class ValidateResource {
 			return new ResponseEntity<>(new Gson().toJson(response), HttpStatus.INTERNAL_SERVER_ERROR);
 		}
 	}
+
+	/**
+	 * Looks up the ids a batch at a time, as the multi-get endpoints do, and returns those not found. The ids of a
+	 * batch that could not be looked up are looked up one at a time instead.
+	 */
+	private <T> List<String> findMissingIds(List<String> ids, Function<List<String>, List<T>> batchFinder,
+			Function<T, String> idOf, Function<String, T> finder, String failureMessage) {
+		List<String> missingIds = new ArrayList<>();
+		for (List<String> batch : Lists.partition(ids, CLIENTS_FETCH_BATCH_SIZE)) {
+			try {
+				missingIds.addAll(MultiGetUtil.findAll(batch, CLIENTS_FETCH_BATCH_SIZE, batchFinder, idOf, record -> {
+				}));
+			}
+			catch (Exception e) {
+				logger.error("Sync validation batch failed, looking up one at a time: " + batch, e);
+				missingIds.addAll(findMissingIds(batch, finder, failureMessage));
+			}
+		}
+		return missingIds;
+	}
+
+	/**
+	 * Looks up the ids one at a time and returns those not found. Ids that could not be looked up are logged and not
+	 * reported as missing.
+	 */
+	private <T> List<String> findMissingIds(List<String> ids, Function<String, T> finder, String failureMessage) {
+		List<String> missingIds = new ArrayList<>();
+		for (String id : ids) {
+			try {
+				if (finder.apply(id) == null) {
+					missingIds.add(id);
+				}
+			}
+			catch (Exception e) {
+				logger.error(failureMessage + id, e);
+			}
+		}
+		return missingIds;
+	}
 }
@@ -18,6 +18,7 @@ import org.joda.time.Weeks;
 import org.json.JSONException;
 import org.opensrp.connector.openmrs.service.EncounterService;
 import org.opensrp.connector.openmrs.service.PatientService;
+import org.opensrp.web.cache.ContactPhoneNumberIndex;
 import org.opensrp.web.rest.RestUtils;
 import org.smartregister.domain.Client;
 import org.smartregister.domain.Event;
@@ -39,6 +40,7 @@ private ClientService clientService;
 private EventService eventService;
 private PatientService ps;
 private EncounterService es;
+private ContactPhoneNumberIndex contactPhoneNumberIndex;
 
 static Map<String, String[]> vs = new HashMap<String, String[]>(){{
 	put("0", new String[]{"bcg"});
@@ -59,6 +61,11 @@ static Map<String, String[]> vs = new HashMap<String, String[]>(){{
 		this.es = es;
 	}
 
+	@Autowired(required = false)
+	public void setContactPhoneNumberIndex(ContactPhoneNumberIndex contactPhoneNumberIndex) {
+		this.contactPhoneNumberIndex = contactPhoneNumberIndex;
+	}
+
 	@RequestMapping(value="/cv", method= RequestMethod.POST, produces = { MediaType.APPLICATION_JSON_VALUE })
 	public Map<String, Object> createChild(HttpServletRequest req) {
 		Map<String, Object> res = new HashMap<>();
@@ -177,6 +184,9 @@ static Map<String, String[]> vs = new HashMap<String, String[]>(){{
 			e.addObs(new Obs("concept", "txt", "1025AAAAAAAAAAAAAAAA", null, values , "", vaccine));
 
 			eventService.addEvent(e, RestUtils.currentUser(authentication).getUsername());
+			if (contactPhoneNumberIndex != null) {
+				contactPhoneNumberIndex.index(e);
+			}
 			resp.put("SUCCESS", Boolean.toString(true));
 			return resp;
 		}
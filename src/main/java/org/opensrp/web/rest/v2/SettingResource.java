@@ -19,6 +19,7 @@ import org.opensrp.search.SettingSearchBean;
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.SettingService;
 import org.opensrp.web.Constants;
+import org.opensrp.web.cache.ResolvedSettingsCache;
 import org.opensrp.web.rest.RestUtils;
 import org.smartregister.utils.DateTimeTypeConverter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -63,6 +64,8 @@ public class SettingResource {
 
 	private PhysicalLocationService physicalLocationService;
 
+	private ResolvedSettingsCache resolvedSettingsCache;
+
 	@Autowired
 	public void setObjectMapper(ObjectMapper objectMapper) {
 		this.objectMapper = objectMapper;
@@ -74,6 +77,11 @@ public class SettingResource {
 		this.physicalLocationService = openmrsLocationService;
 	}
 
+	@Autowired
+	public void setResolvedSettingsCache(ResolvedSettingsCache resolvedSettingsCache) {
+		this.resolvedSettingsCache = resolvedSettingsCache;
+	}
+
 	/**
 	 * Gets settings by the unique is
 	 *
@@ -116,7 +124,6 @@ public class SettingResource {
 		boolean resolveSettings = RestUtils.getBooleanFilter(AllConstants.Event.RESOLVE_SETTINGS, request);
 		String metadataVersion = RestUtils.getStringFilter(METADATA_VERSION, request);
 		String limit = RestUtils.getStringFilter(LIMIT, request);
-		Map<String, TreeNode<String, Location>> treeNodeHashMap = null;
 
 		if (StringUtils.isBlank(team) && StringUtils.isBlank(providerId) && StringUtils.isBlank(locationId)
 				&& StringUtils.isBlank(teamId) && StringUtils.isBlank(team) && StringUtils.isBlank(serverVersion)
@@ -151,13 +158,21 @@ public class SettingResource {
 		if (StringUtils.isNotBlank(identifier)) {
 			settingQueryBean.setIdentifier(identifier);
 		}
+		List<SettingConfiguration> settingConfigurations;
 		if (StringUtils.isNotBlank(locationId)) {
 			settingQueryBean.setResolveSettings(resolveSettings);
-			treeNodeHashMap = getChildParentLocationTree(locationId);
+			if (resolveSettings) {
+				String cacheKey = ResolvedSettingsCache.buildKey(locationId, lastSyncedServerVersion, "v2", team, teamId,
+						providerId, identifier, lastMetadataVersion, pageLimit);
+				settingConfigurations = resolvedSettingsCache.get(cacheKey,
+						() -> settingService.findSettings(settingQueryBean, getChildParentLocationTree(locationId)));
+			} else {
+				settingConfigurations = settingService.findSettings(settingQueryBean,
+						getChildParentLocationTree(locationId));
+			}
+		} else {
+			settingConfigurations = settingService.findSettings(settingQueryBean, null);
 		}
-
-		List<SettingConfiguration> settingConfigurations = settingService.findSettings(settingQueryBean,
-				treeNodeHashMap);
 		List<Setting> settingList = extractSettings(settingConfigurations);
 
 		return new ResponseEntity<>(gson.toJson(settingList), RestUtils.getJSONUTF8Headers(), HttpStatus.OK);
@@ -205,7 +220,13 @@ public class SettingResource {
 				setting.setSettingMetadataId(String.valueOf(id));
 			}
 			setting.setV1Settings(false); //used to differentiate the payload from the two endpoints
-			String responseSettings = settingService.addOrUpdateSettings(setting);
+			String responseSettings;
+			try {
+				responseSettings = settingService.addOrUpdateSettings(setting);
+			}
+			finally {
+				resolvedSettingsCache.invalidateAll();
+			}
 			String response = "Settings created or updated successfully.";
 			if (StringUtils.isNotBlank(responseSettings)) {
 				response = responseSettings + String.format("%s%s", " The following settings might not be saved ",
@@ -232,7 +253,12 @@ public class SettingResource {
 			return new ResponseEntity<>("Settings id is required", RestUtils.getJSONUTF8Headers(),
 					HttpStatus.BAD_REQUEST);
 		} else {
-			settingService.deleteSetting(id);
+			try {
+				settingService.deleteSetting(id);
+			}
+			finally {
+				resolvedSettingsCache.invalidateAll();
+			}
 			return new ResponseEntity<>("Settings deleted successfully", RestUtils.getJSONUTF8Headers(),
 					HttpStatus.NO_CONTENT);
 		}
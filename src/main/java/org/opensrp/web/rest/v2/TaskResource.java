@@ -18,6 +18,7 @@ import org.springframework.web.bind.annotation.RequestMapping;
 
 import com.google.common.annotations.VisibleForTesting;
 import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
 
 /**
  * @author Samuel Githengi created on 11/12/20 Task V2 API that returns {@link TaskPriority} as enum
@@ -33,6 +34,11 @@ public class TaskResource extends org.opensrp.web.rest.TaskResource {
 		setGson(new GsonBuilder().registerTypeAdapter(DateTime.class, new TaskDateTimeTypeConverter()).create());
 	}
 	
+	@Override
+	public void writeTask(Task task, JsonWriter jsonWriter) {
+		gson.toJson(task, Task.class, jsonWriter);
+	}
+	
 	@Override
 	public Task convertToDTO(Task task) {
 		return task;
@@ -0,0 +1,32 @@
+package org.opensrp.web.service;
+
+import org.opensrp.dto.CsvBulkImportDataSummary;
+import org.opensrp.web.bean.CsvImportReport;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Imports large CSV files in chunks without holding the whole file or its failures in memory
+ */
+public interface CsvImportService {
+
+	/**
+	 * Parses the CSV incrementally and hands each chunk of rows to the chunk processor. Failed rows of every chunk are
+	 * written to the import summary report as soon as the chunk completes, with row numbers relative to the file. A
+	 * chunk that throws stops the import: its row range is reported as failed together with the row ranges of the
+	 * chunks that completed, and the rest of the file is not read.
+	 *
+	 * @param csv            the CSV file with a header row
+	 * @param chunkProcessor validates or imports one chunk of rows
+	 * @param parallel       whether chunks may be processed concurrently, only for processors without side effects
+	 * @return the totals of the import and the summary report
+	 * @throws IOException if the CSV cannot be read or the report cannot be written
+	 */
+	CsvImportReport process(InputStream csv,
+			Function<List<Map<String, String>>, CsvBulkImportDataSummary> chunkProcessor, boolean parallel)
+			throws IOException;
+}
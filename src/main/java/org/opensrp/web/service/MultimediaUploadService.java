@@ -0,0 +1,25 @@
+package org.opensrp.web.service;
+
+import org.opensrp.dto.form.MultimediaDTO;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+
+/**
+ * Saves uploaded multimedia files that the multipart resolver has spooled to disk
+ */
+public interface MultimediaUploadService {
+
+	/**
+	 * Reads the upload, computing its SHA-256 while it is read, and saves it
+	 *
+	 * @param multimediaDTO    the multimedia details
+	 * @param file             the uploaded file
+	 * @param deduplicationKey identifies what the file replaces, for example the entity and file category. An upload
+	 *                         with the same key and content as the last one saved is not saved again. Null to always
+	 *                         save the file
+	 * @return the status returned by the multimedia service
+	 * @throws IOException if the upload could not be read completely
+	 */
+	String saveFile(MultimediaDTO multimediaDTO, MultipartFile file, String deduplicationKey) throws IOException;
+}
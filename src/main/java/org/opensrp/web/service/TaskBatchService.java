@@ -0,0 +1,29 @@
+package org.opensrp.web.service;
+
+import org.opensrp.domain.TaskUpdate;
+import org.smartregister.domain.Task;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes large lists of tasks in chunks, each chunk in a single transaction
+ */
+public interface TaskBatchService {
+
+	/**
+	 * Saves tasks in chunks of the configured batch size
+	 *
+	 * @param tasks the tasks to save
+	 * @return identifiers of the tasks that could not be saved
+	 */
+	Set<String> saveTasks(List<Task> tasks);
+
+	/**
+	 * Updates the status of tasks in chunks of the configured batch size
+	 *
+	 * @param taskUpdates the task status updates
+	 * @return identifiers of the tasks that were updated
+	 */
+	List<String> updateTaskStatus(List<TaskUpdate> taskUpdates);
+}
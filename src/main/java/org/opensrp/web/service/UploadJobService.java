@@ -0,0 +1,54 @@
+package org.opensrp.web.service;
+
+import org.opensrp.web.bean.UploadJobStatus;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs CSV uploads as background jobs and keeps their progress for polling
+ */
+public interface UploadJobService {
+
+	/**
+	 * Processes an upload in the background
+	 *
+	 * @param identifier the identifier of the upload, also used for the stored file
+	 * @param fileName   the original file name
+	 * @param providerId the user who uploaded the file
+	 * @param job        processes the upload, reporting progress as it goes
+	 * @return the status of the queued job
+	 * @throws org.opensrp.web.exceptions.UploadQueueFullException when too many uploads are already waiting
+	 */
+	UploadJobStatus submit(String identifier, String fileName, String providerId, UploadJob job);
+
+	/**
+	 * @param identifier the identifier of the upload
+	 * @return a snapshot of the job status, including the user who submitted it, or null if the job is unknown to
+	 * this node
+	 */
+	UploadJobStatus getStatus(String identifier);
+
+	/**
+	 * @param providerId the user who uploaded the files
+	 * @return the jobs of the user that have not completed, most recent first
+	 */
+	List<UploadJobStatus> getIncompleteJobs(String providerId);
+
+	interface UploadJob {
+
+		/**
+		 * @param progress receives the total and processed row counts
+		 * @return the upload details to report when the job completes
+		 * @throws Exception when the upload fails; the message is reported as the job errors
+		 */
+		Map<String, Object> run(UploadProgress progress) throws Exception;
+	}
+
+	interface UploadProgress {
+
+		void setTotalRows(long totalRows);
+
+		void addProcessedRows(long processedRows);
+	}
+}
@@ -0,0 +1,248 @@
+package org.opensrp.web.serviceimpl;
+
+import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.apache.commons.csv.CSVRecord;
+import org.apache.commons.io.IOUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensrp.dto.CsvBulkImportDataSummary;
+import org.opensrp.dto.FailedRecordSummary;
+import org.opensrp.web.bean.CsvImportReport;
+import org.opensrp.web.service.CsvImportService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Reads CSV rows into chunks of {@code csv.import.chunk.size} while the file is still being parsed and processes the
+ * chunks on a bounded pool of {@code csv.import.parallelism} threads. At most two chunks per thread are held in memory
+ * at a time. Failed rows are spooled to a temporary file as each chunk completes and copied behind the totals once the
+ * whole file has been read. Each chunk is saved on its own, so when a chunk throws no further rows are read, the chunks
+ * already submitted are completed and the report lists the row ranges whose chunks completed along with the range of
+ * the chunk that failed.
+ */
+@Service
+public class CsvImportServiceImpl implements CsvImportService {
+
+	private static final Logger logger = LogManager.getLogger(CsvImportServiceImpl.class.toString());
+
+	private static final String REPORT_FILE_PREFIX = "importsummaryreport-";
+
+	private static final String CHUNK_FAILED = "Chunk failed, the import stopped after this row range: ";
+
+	private final int chunkSize;
+
+	private final int maxChunksInFlight;
+
+	private final ExecutorService executorService;
+
+	@Autowired
+	public CsvImportServiceImpl(@Value("#{opensrp['csv.import.chunk.size'] ?: 1000}") int chunkSize,
+			@Value("#{opensrp['csv.import.parallelism'] ?: 4}") int parallelism) {
+		this.chunkSize = chunkSize;
+		this.maxChunksInFlight = parallelism * 2;
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executorService = Executors.newFixedThreadPool(parallelism, runnable -> {
+			Thread thread = new Thread(runnable, "csv-import-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public CsvImportReport process(InputStream csv,
+			Function<List<Map<String, String>>, CsvBulkImportDataSummary> chunkProcessor, boolean parallel)
+			throws IOException {
+		CsvImportReport report = new CsvImportReport();
+		File failures = File.createTempFile(REPORT_FILE_PREFIX, ".failures");
+		try {
+			try (CSVParser parser = new CSVParser(new BufferedReader(new InputStreamReader(csv, StandardCharsets.UTF_8)),
+					CSVFormat.DEFAULT.withHeader());
+					CSVPrinter failurePrinter = new CSVPrinter(Files.newBufferedWriter(failures.toPath()),
+							CSVFormat.DEFAULT)) {
+				// sequential chunks are already done when submitted, so they are completed straight away
+				int chunksInFlight = parallel ? maxChunksInFlight : 1;
+				Deque<Chunk> pending = new ArrayDeque<>();
+				RowRanges completedRows = new RowRanges();
+				boolean failed = false;
+				List<Map<String, String>> rows = new ArrayList<>(chunkSize);
+				int rowOffset = 0;
+				Iterator<CSVRecord> records = parser.iterator();
+				while (!failed && records.hasNext()) {
+					rows.add(records.next().toMap());
+					if (rows.size() == chunkSize) {
+						pending.add(submit(rows, rowOffset, chunkProcessor, parallel));
+						rowOffset += rows.size();
+						rows = new ArrayList<>(chunkSize);
+						while (!failed && pending.size() >= chunksInFlight) {
+							failed = !complete(pending.poll(), report, failurePrinter, completedRows);
+						}
+					}
+				}
+				if (!failed && !rows.isEmpty()) {
+					pending.add(submit(rows, rowOffset, chunkProcessor, parallel));
+				}
+				while (!pending.isEmpty()) {
+					failed = !complete(pending.poll(), report, failurePrinter, completedRows) || failed;
+				}
+				if (failed) {
+					report.setCompletedRowRanges(completedRows.toString());
+				}
+			}
+			report.setReportFile(writeReport(report, failures));
+			return report;
+		}
+		finally {
+			Files.deleteIfExists(failures.toPath());
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executorService.shutdownNow();
+	}
+
+	private Chunk submit(List<Map<String, String>> rows, int rowOffset,
+			Function<List<Map<String, String>>, CsvBulkImportDataSummary> chunkProcessor, boolean parallel) {
+		Future<CsvBulkImportDataSummary> summary;
+		if (parallel) {
+			summary = executorService.submit(() -> chunkProcessor.apply(rows));
+		} else {
+			CompletableFuture<CsvBulkImportDataSummary> completedSummary = new CompletableFuture<>();
+			try {
+				completedSummary.complete(chunkProcessor.apply(rows));
+			}
+			catch (RuntimeException e) {
+				completedSummary.completeExceptionally(e);
+			}
+			summary = completedSummary;
+		}
+		return new Chunk(rowOffset, rows.size(), summary);
+	}
+
+	/**
+	 * Adds the results of a chunk to the report once it is done
+	 *
+	 * @return false if the chunk failed, in which case its whole row range is reported as failed
+	 */
+	private boolean complete(Chunk chunk, CsvImportReport report, CSVPrinter failurePrinter, RowRanges completedRows)
+			throws IOException {
+		CsvBulkImportDataSummary summary;
+		try {
+			summary = chunk.summary.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("CSV import interrupted", e);
+		}
+		catch (ExecutionException e) {
+			logger.error("CSV import chunk starting at row " + chunk.rowOffset + " failed", e.getCause());
+			report.setNumberOfCsvRows(report.getNumberOfCsvRows() + chunk.rowCount);
+			report.setNumberOfFailedRows(report.getNumberOfFailedRows() + chunk.rowCount);
+			failurePrinter.printRecord((chunk.rowOffset + 1) + "-" + (chunk.rowOffset + chunk.rowCount),
+					Collections.singletonList(CHUNK_FAILED + e.getCause().getMessage()));
+			return false;
+		}
+		completedRows.add(chunk.rowOffset + 1, chunk.rowOffset + chunk.rowCount);
+		if (summary == null) {
+			return true;
+		}
+
+		report.setNumberOfCsvRows(report.getNumberOfCsvRows() + summary.getNumberOfCsvRows());
+		report.setNumberOfRowsProcessed(report.getNumberOfRowsProcessed() + summary.getNumberOfRowsProcessed());
+		if (summary.getFailedRecordSummaryList() != null) {
+			for (FailedRecordSummary failedRecordSummary : summary.getFailedRecordSummaryList()) {
+				failurePrinter.printRecord(failedRecordSummary.getRowNumber() + chunk.rowOffset,
+						failedRecordSummary.getReasonOfFailure());
+			}
+			report.setNumberOfFailedRows(report.getNumberOfFailedRows() + summary.getFailedRecordSummaryList().size());
+		}
+		return true;
+	}
+
+	private File writeReport(CsvImportReport report, File failures) throws IOException {
+		File reportFile = File.createTempFile(REPORT_FILE_PREFIX + System.currentTimeMillis(), ".csv");
+		try (BufferedWriter writer = Files.newBufferedWriter(reportFile.toPath());
+				BufferedReader failureReader = Files.newBufferedReader(failures.toPath())) {
+			CSVPrinter csvPrinter = new CSVPrinter(writer, CSVFormat.DEFAULT);
+			csvPrinter.printRecord("Total Number of Rows in the CSV ", report.getNumberOfCsvRows());
+			csvPrinter.printRecord("Rows processed ", report.getNumberOfRowsProcessed());
+			if (report.getCompletedRowRanges() != null) {
+				csvPrinter.printRecord("Row ranges completed before the import stopped ", report.getCompletedRowRanges());
+			}
+			csvPrinter.printRecord("\n");
+
+			csvPrinter.printRecord("Row Number", "Reason of Failure");
+			csvPrinter.flush();
+			IOUtils.copy(failureReader, writer);
+		}
+		return reportFile;
+	}
+
+	private static class Chunk {
+
+		private final int rowOffset;
+
+		private final int rowCount;
+
+		private final Future<CsvBulkImportDataSummary> summary;
+
+		private Chunk(int rowOffset, int rowCount, Future<CsvBulkImportDataSummary> summary) {
+			this.rowOffset = rowOffset;
+			this.rowCount = rowCount;
+			this.summary = summary;
+		}
+	}
+
+	/**
+	 * Row ranges of completed chunks, added in file order and merged when adjacent
+	 */
+	private static class RowRanges {
+
+		private final List<int[]> ranges = new ArrayList<>();
+
+		private void add(int firstRow, int lastRow) {
+			int[] last = ranges.isEmpty() ? null : ranges.get(ranges.size() - 1);
+			if (last != null && last[1] + 1 == firstRow) {
+				last[1] = lastRow;
+			} else {
+				ranges.add(new int[] { firstRow, lastRow });
+			}
+		}
+
+		@Override
+		public String toString() {
+			List<String> formattedRanges = new ArrayList<>();
+			for (int[] range : ranges) {
+				formattedRanges.add(range[0] + "-" + range[1]);
+			}
+			return formattedRanges.isEmpty() ? "none" : String.join(";", formattedRanges);
+		}
+	}
+}
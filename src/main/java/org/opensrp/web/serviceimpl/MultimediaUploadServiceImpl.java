@@ -0,0 +1,168 @@
+package org.opensrp.web.serviceimpl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensrp.dto.form.MultimediaDTO;
+import org.opensrp.service.MultimediaService;
+import org.opensrp.web.service.MultimediaUploadService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.commons.CommonsMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hashes uploads while they are read into the byte array the multimedia service saves. The multimedia service only
+ * accepts file content as a byte array, so each upload is held in memory once: small parts kept in memory by the
+ * multipart resolver are used as they are, and larger parts are read from the resolver's spool file. The number of
+ * upload bytes held in memory at the same time is capped at {@code multimedia.upload.max.buffered.bytes}; uploads
+ * over the cap wait for earlier ones to be saved instead of exhausting the heap. The hash of the last upload saved for
+ * each deduplication key is kept for {@code multimedia.upload.deduplication.minutes} so that a client retrying an
+ * upload that already succeeded does not store the same file again. Failed saves are not remembered.
+ */
+@Service
+public class MultimediaUploadServiceImpl implements MultimediaUploadService {
+
+	private static final Logger logger = LogManager.getLogger(MultimediaUploadServiceImpl.class.toString());
+
+	private static final int PERMIT_BYTES = 1024;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * The status the multimedia service returns when a file could not be saved
+	 */
+	private static final String FAILED_STATUS = "fail";
+
+	private final Semaphore bufferedKilobytes;
+
+	private final int maxPermits;
+
+	private final Cache<String, SavedUpload> savedUploads;
+
+	private MultimediaService multimediaService;
+
+	@Autowired
+	public MultimediaUploadServiceImpl(
+			@Value("#{opensrp['multimedia.upload.max.buffered.bytes'] ?: 268435456}") long maxBufferedBytes,
+			@Value("#{opensrp['multimedia.upload.deduplication.minutes'] ?: 60}") long deduplicationMinutes) {
+		this.maxPermits = (int) Math.max(Math.min(maxBufferedBytes / PERMIT_BYTES, Integer.MAX_VALUE), 1);
+		this.bufferedKilobytes = new Semaphore(maxPermits, true);
+		this.savedUploads = CacheBuilder.newBuilder().expireAfterWrite(deduplicationMinutes, TimeUnit.MINUTES)
+				.maximumSize(10000).build();
+	}
+
+	@Autowired
+	public void setMultimediaService(MultimediaService multimediaService) {
+		this.multimediaService = multimediaService;
+	}
+
+	@Override
+	public String saveFile(MultimediaDTO multimediaDTO, MultipartFile file, String deduplicationKey)
+			throws IOException {
+		long size = file.getSize();
+		if (size > Integer.MAX_VALUE) {
+			throw new IOException("File " + file.getOriginalFilename() + " is too large to be saved");
+		}
+		int permits = (int) Math.min(Math.max((size + PERMIT_BYTES - 1) / PERMIT_BYTES, 1), maxPermits);
+		try {
+			bufferedKilobytes.acquire(permits);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while waiting to save " + file.getOriginalFilename(), e);
+		}
+
+		try {
+			MessageDigest digest = newDigest();
+			byte[] content;
+			if (isInMemory(file)) {
+				content = file.getBytes();
+				digest.update(content);
+			} else {
+				content = read(file, (int) size, digest);
+			}
+			String sha256 = Hex.encodeHexString(digest.digest());
+
+			SavedUpload savedUpload = deduplicationKey == null ? null : savedUploads.getIfPresent(deduplicationKey);
+			if (savedUpload != null && savedUpload.sha256.equals(sha256)) {
+				logger.info("Skipping upload of " + file.getOriginalFilename() + ", identical to the last upload with sha256 "
+						+ sha256);
+				return savedUpload.status;
+			}
+
+			logger.info("Saving multimedia file " + file.getOriginalFilename() + " with sha256 " + sha256);
+			String status = multimediaService.saveFile(multimediaDTO, content, file.getOriginalFilename());
+			if (deduplicationKey != null) {
+				if (status == null || FAILED_STATUS.equals(status)) {
+					// a retry of a failed save must reach the multimedia service
+					savedUploads.invalidate(deduplicationKey);
+				} else {
+					savedUploads.put(deduplicationKey, new SavedUpload(sha256, status));
+				}
+			}
+			return status;
+		}
+		finally {
+			bufferedKilobytes.release(permits);
+		}
+	}
+
+	/**
+	 * @return whether the resolver holds the part in memory, in which case getBytes returns its content without a copy
+	 */
+	private static boolean isInMemory(MultipartFile file) {
+		return file instanceof CommonsMultipartFile && ((CommonsMultipartFile) file).getFileItem().isInMemory();
+	}
+
+	private byte[] read(MultipartFile file, int size, MessageDigest digest) throws IOException {
+		byte[] content = new byte[size];
+		try (InputStream inputStream = new DigestInputStream(file.getInputStream(), digest)) {
+			int offset = 0;
+			while (offset < size) {
+				int read = inputStream.read(content, offset, Math.min(BUFFER_SIZE, size - offset));
+				if (read == -1) {
+					throw new IOException(
+							"Upload of " + file.getOriginalFilename() + " ended after " + offset + " of " + size + " bytes");
+				}
+				offset += read;
+			}
+			if (inputStream.read() != -1) {
+				throw new IOException("Upload of " + file.getOriginalFilename() + " is longer than " + size + " bytes");
+			}
+		}
+		return content;
+	}
+
+	private static MessageDigest newDigest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class SavedUpload {
+
+		private final String sha256;
+
+		private final String status;
+
+		private SavedUpload(String sha256, String status) {
+			this.sha256 = sha256;
+			this.status = status;
+		}
+	}
+}
@@ -0,0 +1,182 @@
+package org.opensrp.web.serviceimpl;
+
+import com.google.common.collect.Lists;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensrp.domain.TaskUpdate;
+import org.opensrp.service.TaskService;
+import org.opensrp.web.service.TaskBatchService;
+import org.smartregister.domain.Task;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * Splits bulk task writes into chunks of {@code task.batch.size} and writes each chunk in one transaction so that
+ * thousands of tasks are not committed one row at a time. When a chunk throws, a save reports failed tasks, or the
+ * chunk transaction was marked rollback-only by a failure the task service caught, the chunk transaction is rolled
+ * back and the chunk is replayed one task per transaction so that one bad task cannot abort the rest of the chunk and
+ * failed identifiers are still reported individually. Only identifiers reported by committed transactions are
+ * returned.
+ */
+@Service
+public class TaskBatchServiceImpl implements TaskBatchService {
+
+	private static final Logger logger = LogManager.getLogger(TaskBatchServiceImpl.class.toString());
+
+	public static final String ROWS_METRIC = "opensrp.task.batch.rows";
+
+	public static final String THROUGHPUT_METRIC = "opensrp.task.batch.throughput";
+
+	public static final String OPERATION_TAG = "operation";
+
+	public static final String SAVE_OPERATION = "save";
+
+	public static final String UPDATE_STATUS_OPERATION = "update_status";
+
+	private TaskService taskService;
+
+	private MeterRegistry meterRegistry;
+
+	private TransactionTemplate transactionTemplate;
+
+	@Value("#{opensrp['task.batch.size'] ?: 500}")
+	private int batchSize = 500;
+
+	@Autowired
+	public void setTaskService(TaskService taskService) {
+		this.taskService = taskService;
+	}
+
+	@Autowired
+	public void setMeterRegistry(MeterRegistry meterRegistry) {
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Autowired
+	public void setTransactionManager(ObjectProvider<PlatformTransactionManager> transactionManager) {
+		PlatformTransactionManager platformTransactionManager = transactionManager.getIfUnique();
+		if (platformTransactionManager == null) {
+			logger.warn("No unique transaction manager found, task batches will be written without transactions");
+		}
+		this.transactionTemplate =
+				platformTransactionManager == null ? null : new TransactionTemplate(platformTransactionManager);
+	}
+
+	public void setTransactionTemplate(TransactionTemplate transactionTemplate) {
+		this.transactionTemplate = transactionTemplate;
+	}
+
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	@Override
+	public Set<String> saveTasks(List<Task> tasks) {
+		Set<String> tasksWithErrors = new HashSet<>();
+		for (List<Task> chunk : Lists.partition(tasks, Math.max(batchSize, 1))) {
+			long start = System.nanoTime();
+			writeChunk(chunk, taskService::saveTasks, Set::isEmpty, Task::getIdentifier, tasksWithErrors::addAll,
+					tasksWithErrors::add);
+			recordThroughput(SAVE_OPERATION, chunk.size(), System.nanoTime() - start);
+		}
+		return tasksWithErrors;
+	}
+
+	@Override
+	public List<String> updateTaskStatus(List<TaskUpdate> taskUpdates) {
+		List<String> updatedTasks = new ArrayList<>();
+		for (List<TaskUpdate> chunk : Lists.partition(taskUpdates, Math.max(batchSize, 1))) {
+			long start = System.nanoTime();
+			// tasks the service did not update, for example unknown ones, are left out of its result without failing the chunk
+			writeChunk(chunk, taskService::updateTaskStatus, updated -> updated != null, TaskUpdate::getIdentifier,
+					updatedTasks::addAll, identifier -> {
+					});
+			recordThroughput(UPDATE_STATUS_OPERATION, chunk.size(), System.nanoTime() - start);
+		}
+		return updatedTasks;
+	}
+
+	/**
+	 * Writes the chunk in one transaction, replaying it one item per transaction when the write throws, its result
+	 * does not pass {@code succeeded} or its transaction was marked rollback-only
+	 *
+	 * @param chunk        the items to write
+	 * @param writer       writes items and returns the task identifiers it reports
+	 * @param succeeded    whether the chunk result can be committed
+	 * @param identifierOf returns the task identifier of an item
+	 * @param results      receives the identifiers reported by each committed write
+	 * @param failed       receives the identifiers of the items whose own write threw or was rolled back
+	 */
+	private <T, R extends Collection<String>> void writeChunk(List<T> chunk, Function<List<T>, R> writer,
+			Predicate<R> succeeded, Function<T, String> identifierOf, Consumer<R> results, Consumer<String> failed) {
+		if (transactionTemplate == null) {
+			results.accept(writer.apply(chunk));
+			return;
+		}
+
+		R result;
+		try {
+			result = transactionTemplate.execute(status -> {
+				R chunkResult = writer.apply(chunk);
+				if (status.isRollbackOnly() || !succeeded.test(chunkResult)) {
+					status.setRollbackOnly();
+					return null;
+				}
+				return chunkResult;
+			});
+		}
+		catch (RuntimeException e) {
+			logger.warn(String.format("Batch write of %d tasks failed", chunk.size()), e);
+			result = null;
+		}
+		if (result != null) {
+			results.accept(result);
+			return;
+		}
+
+		logger.warn(String.format("Replaying chunk of %d tasks one task per transaction", chunk.size()));
+		for (T item : chunk) {
+			try {
+				R itemResult = transactionTemplate.execute(status -> {
+					R written = writer.apply(Collections.singletonList(item));
+					return status.isRollbackOnly() ? null : written;
+				});
+				if (itemResult != null) {
+					results.accept(itemResult);
+				} else {
+					logger.error("Write of task " + identifierOf.apply(item) + " was not committed");
+					failed.accept(identifierOf.apply(item));
+				}
+			}
+			catch (RuntimeException e) {
+				logger.error("Could not write task " + identifierOf.apply(item), e);
+				failed.accept(identifierOf.apply(item));
+			}
+		}
+	}
+
+	private void recordThroughput(String operation, int rows, long elapsedNanos) {
+		Counter.builder(ROWS_METRIC).tag(OPERATION_TAG, operation).register(meterRegistry).increment(rows);
+		double elapsedSeconds = Math.max(elapsedNanos, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+		DistributionSummary.builder(THROUGHPUT_METRIC).baseUnit("rows_per_second").tag(OPERATION_TAG, operation)
+				.register(meterRegistry).record(rows / elapsedSeconds);
+	}
+}
@@ -0,0 +1,179 @@
+package org.opensrp.web.serviceimpl;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensrp.web.bean.UploadJobStatus;
+import org.opensrp.web.bean.UploadJobStatus.Status;
+import org.opensrp.web.exceptions.UploadQueueFullException;
+import org.opensrp.web.service.UploadJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Runs uploads on a pool of {@code upload.job.parallelism} threads so that large files are not processed on the
+ * request thread. Each waiting job holds its upload in memory, so at most {@code upload.job.queue.size} jobs wait for
+ * a thread and further uploads are rejected with an {@link UploadQueueFullException} until one starts. Job progress is kept in memory on the node that accepted the upload for
+ * {@code upload.job.retention.hours}; completed uploads remain available from the upload history afterwards.
+ */
+@Service
+public class UploadJobServiceImpl implements UploadJobService {
+
+	private static final Logger logger = LogManager.getLogger(UploadJobServiceImpl.class.toString());
+
+	private final Cache<String, Job> jobs;
+
+	private final ThreadPoolExecutor executorService;
+
+	@Autowired
+	public UploadJobServiceImpl(@Value("#{opensrp['upload.job.parallelism'] ?: 2}") int parallelism,
+			@Value("#{opensrp['upload.job.retention.hours'] ?: 24}") long retentionHours,
+			@Value("#{opensrp['upload.job.queue.size'] ?: 4}") int queueSize) {
+		this.jobs = CacheBuilder.newBuilder().expireAfterWrite(retentionHours, TimeUnit.HOURS).build();
+		AtomicInteger threadCount = new AtomicInteger();
+		this.executorService = new ThreadPoolExecutor(parallelism, parallelism, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), runnable -> {
+			Thread thread = new Thread(runnable, "upload-job-" + threadCount.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}, new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	/**
+	 * {@inheritDoc}
+	 *
+	 * @throws UploadQueueFullException when all threads are busy and the queue is full
+	 */
+	@Override
+	public UploadJobStatus submit(String identifier, String fileName, String providerId, UploadJob uploadJob) {
+		Job job = new Job(identifier, fileName, providerId);
+		jobs.put(identifier, job);
+		try {
+			executorService.execute(() -> job.run(uploadJob));
+		}
+		catch (RejectedExecutionException e) {
+			jobs.invalidate(identifier);
+			logger.warn("Upload " + identifier + " rejected, " + executorService.getQueue().size() + " uploads queued");
+			throw new UploadQueueFullException("Too many uploads are waiting to be processed", e);
+		}
+		return job.getStatus();
+	}
+
+	@Override
+	public UploadJobStatus getStatus(String identifier) {
+		Job job = jobs.getIfPresent(identifier);
+		return job == null ? null : job.getStatus();
+	}
+
+	@Override
+	public List<UploadJobStatus> getIncompleteJobs(String providerId) {
+		return jobs.asMap().values().stream()
+				.filter(job -> job.providerId.equals(providerId) && job.status != Status.COMPLETED)
+				.map(Job::getStatus)
+				.sorted(Comparator.comparing(UploadJobStatus::getUploadDate).reversed())
+				.collect(Collectors.toList());
+	}
+
+	@PreDestroy
+	public void shutdown() {
+		executorService.shutdownNow();
+	}
+
+	private static class Job implements UploadProgress {
+
+		private final String identifier;
+
+		private final String fileName;
+
+		private final String providerId;
+
+		private final Date uploadDate = new Date();
+
+		private final AtomicLong processedRows = new AtomicLong();
+
+		private volatile long totalRows;
+
+		private volatile Status status = Status.QUEUED;
+
+		private volatile long startNanos;
+
+		private volatile long endNanos;
+
+		private volatile Date completionDate;
+
+		private volatile Map<String, Object> details;
+
+		private volatile String errors;
+
+		private Job(String identifier, String fileName, String providerId) {
+			this.identifier = identifier;
+			this.fileName = fileName;
+			this.providerId = providerId;
+		}
+
+		private void run(UploadJob uploadJob) {
+			startNanos = System.nanoTime();
+			status = Status.RUNNING;
+			try {
+				details = uploadJob.run(this);
+				status = Status.COMPLETED;
+			}
+			catch (Exception e) {
+				logger.error("Upload " + identifier + " failed", e);
+				errors = e.getMessage();
+				status = Status.FAILED;
+			}
+			finally {
+				endNanos = System.nanoTime();
+				completionDate = new Date();
+			}
+		}
+
+		@Override
+		public void setTotalRows(long totalRows) {
+			this.totalRows = totalRows;
+		}
+
+		@Override
+		public void addProcessedRows(long rows) {
+			processedRows.addAndGet(rows);
+		}
+
+		private UploadJobStatus getStatus() {
+			UploadJobStatus jobStatus = new UploadJobStatus();
+			jobStatus.setIdentifier(identifier);
+			jobStatus.setFileName(fileName);
+			jobStatus.setProviderID(providerId);
+			jobStatus.setStatus(status);
+			jobStatus.setTotalRows(totalRows);
+			jobStatus.setProcessedRows(processedRows.get());
+			jobStatus.setUploadDate(uploadDate);
+			jobStatus.setCompletionDate(completionDate);
+			jobStatus.setDetails(details);
+			jobStatus.setErrors(errors);
+
+			long start = startNanos;
+			if (start > 0) {
+				long end = endNanos > 0 ? endNanos : System.nanoTime();
+				double seconds = Math.max(end - start, 1) / (double) TimeUnit.SECONDS.toNanos(1);
+				jobStatus.setRowsPerSecond(processedRows.get() / seconds);
+			}
+			return jobStatus;
+		}
+	}
+}
@@ -0,0 +1,222 @@
+package org.opensrp.web.uniqueid;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.FunctionTimer;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensrp.domain.IdentifierSource;
+import org.opensrp.service.IdentifierSourceService;
+import org.opensrp.service.UniqueIdentifierService;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * A thread-safe pool of identifiers generated from one identifier source. Whenever an identifier is taken and fewer
+ * than the low watermark are left, the pool is topped up to the high watermark in the background with a single
+ * {@link UniqueIdentifierService#generateIdentifiers} call, so that callers rarely wait for the database. A caller
+ * only has to wait, counted as a stall, when the pool is empty.
+ * <p>
+ * Identifiers are reserved when they are added to the pool, so those still in the pool when it is closed are not
+ * used.
+ */
+public class UniqueIdentifierPool {
+
+	private static final Logger logger = LogManager.getLogger(UniqueIdentifierPool.class.toString());
+
+	public static final String DEPTH_METRIC = "opensrp.uniqueid.pool.depth";
+
+	public static final String REFILL_METRIC = "opensrp.uniqueid.pool.refill";
+
+	public static final String STALLS_METRIC = "opensrp.uniqueid.pool.stalls";
+
+	private final UniqueIdentifierService uniqueIdentifierService;
+
+	private final IdentifierSourceService identifierSourceService;
+
+	private final String source;
+
+	private final String usedBy;
+
+	private final int lowWatermark;
+
+	private final int highWatermark;
+
+	private final LinkedBlockingQueue<String> availableIDs = new LinkedBlockingQueue<>();
+
+	private final Object refillLock = new Object();
+
+	private final AtomicBoolean refillScheduled = new AtomicBoolean();
+
+	private final ExecutorService refillExecutor;
+
+	private final AtomicLong refills = new AtomicLong();
+
+	private final AtomicLong refillNanos = new AtomicLong();
+
+	private final AtomicLong stalls = new AtomicLong();
+
+	/**
+	 * @param uniqueIdentifierService the service generating identifiers
+	 * @param identifierSourceService the service looking up the identifier source
+	 * @param source                  the identifier of the identifier source
+	 * @param usedBy                  recorded against the generated identifiers
+	 * @param lowWatermark            the depth below which the pool is refilled
+	 * @param highWatermark           the depth the pool is refilled to
+	 */
+	public UniqueIdentifierPool(UniqueIdentifierService uniqueIdentifierService,
+			IdentifierSourceService identifierSourceService, String source, String usedBy, int lowWatermark,
+			int highWatermark) {
+		this.uniqueIdentifierService = uniqueIdentifierService;
+		this.identifierSourceService = identifierSourceService;
+		this.source = source;
+		this.usedBy = usedBy;
+		this.lowWatermark = Math.max(lowWatermark, 0);
+		this.highWatermark = Math.max(highWatermark, this.lowWatermark + 1);
+		this.refillExecutor = Executors.newSingleThreadExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "uniqueid-pool-" + source);
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Registers the depth, refill and stall metrics of whichever pool the owner currently holds, so that a pool can be
+	 * replaced without registering its meters again
+	 *
+	 * @param meterRegistry the registry to add the meters to
+	 * @param owner         the long lived object holding the pool, referenced weakly by the meters
+	 * @param pool          returns the owner's current pool, which may be null
+	 * @param ownerName     added as the {@code owner} tag
+	 * @param source        the identifier source, added as the {@code source} tag
+	 */
+	public static <T> void registerMetrics(MeterRegistry meterRegistry, T owner, Function<T, UniqueIdentifierPool> pool,
+			String ownerName, String source) {
+		Tags tags = Tags.of("owner", ownerName, "source", String.valueOf(source));
+		Gauge.builder(DEPTH_METRIC, owner, o -> pool.apply(o) == null ? 0 : pool.apply(o).getDepth()).tags(tags)
+				.register(meterRegistry);
+		FunctionCounter.builder(STALLS_METRIC, owner, o -> pool.apply(o) == null ? 0 : pool.apply(o).stalls.get())
+				.tags(tags).register(meterRegistry);
+		FunctionTimer.builder(REFILL_METRIC, owner, o -> pool.apply(o) == null ? 0 : pool.apply(o).refills.get(),
+				o -> pool.apply(o) == null ? 0 : pool.apply(o).refillNanos.get(), TimeUnit.NANOSECONDS).tags(tags)
+				.register(meterRegistry);
+	}
+
+	/**
+	 * @return the next identifier
+	 * @throws IllegalStateException if the identifier source did not generate any identifiers
+	 */
+	public String take() {
+		String id = availableIDs.poll();
+		if (id == null) {
+			stalls.incrementAndGet();
+			synchronized (refillLock) {
+				id = availableIDs.poll();
+				if (id == null) {
+					refill(0);
+					id = availableIDs.poll();
+				}
+			}
+		}
+		if (id == null) {
+			throw new IllegalStateException("No available IDs");
+		}
+		scheduleRefill();
+		return id;
+	}
+
+	/**
+	 * Takes identifiers in bulk. Identifiers missing from the pool are generated in the same call that tops the pool up.
+	 *
+	 * @param count the number of identifiers wanted
+	 * @return up to count identifiers, fewer only if the identifier source did not generate enough
+	 */
+	public List<String> take(int count) {
+		List<String> ids = new ArrayList<>(Math.max(count, 0));
+		availableIDs.drainTo(ids, count);
+		if (ids.size() < count) {
+			stalls.incrementAndGet();
+			synchronized (refillLock) {
+				availableIDs.drainTo(ids, count - ids.size());
+				if (ids.size() < count) {
+					refill(count - ids.size());
+					availableIDs.drainTo(ids, count - ids.size());
+				}
+			}
+		}
+		scheduleRefill();
+		return ids;
+	}
+
+	public int getDepth() {
+		return availableIDs.size();
+	}
+
+	public long getStalls() {
+		return stalls.get();
+	}
+
+	/**
+	 * Stops background refills
+	 */
+	public void close() {
+		refillExecutor.shutdownNow();
+	}
+
+	private void scheduleRefill() {
+		if (availableIDs.size() >= lowWatermark || !refillScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			refillExecutor.execute(() -> {
+				try {
+					synchronized (refillLock) {
+						if (availableIDs.size() < lowWatermark) {
+							refill(0);
+						}
+					}
+				}
+				catch (RuntimeException e) {
+					logger.error("Could not refill identifiers from source " + source, e);
+				}
+				finally {
+					refillScheduled.set(false);
+				}
+			});
+		}
+		catch (RuntimeException e) {
+			refillScheduled.set(false);
+			logger.warn("Could not schedule refill of identifiers from source " + source, e);
+		}
+	}
+
+	/**
+	 * Generates enough identifiers to reach the high watermark after {@code extra} identifiers are taken. Must be
+	 * called holding the refill lock.
+	 */
+	private void refill(int extra) {
+		int size = highWatermark - availableIDs.size() + extra;
+		if (size <= 0) {
+			return;
+		}
+		long start = System.nanoTime();
+		IdentifierSource identifierSource = identifierSourceService.findByIdentifier(source);
+		List<String> ids = uniqueIdentifierService.generateIdentifiers(identifierSource, size, usedBy);
+		if (ids != null) {
+			availableIDs.addAll(ids);
+		}
+		refills.incrementAndGet();
+		refillNanos.addAndGet(System.nanoTime() - start);
+		logger.info("Generated " + (ids == null ? 0 : ids.size()) + " identifiers from source " + source);
+	}
+}
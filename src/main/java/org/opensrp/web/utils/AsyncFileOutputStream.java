@@ -0,0 +1,189 @@
+package org.opensrp.web.utils;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes to a file on another thread so that the caller, for example a request streaming the same bytes to a client,
+ * does not wait for the disk. Written bytes are copied and queued; the caller only blocks when
+ * {@link #QUEUE_CAPACITY} writes are waiting. Writing to the file stops at the first error, which completes
+ * {@link #getCompletion()} exceptionally, while later writes to this stream are still accepted and discarded.
+ * <p>
+ * When the executor rejects the writes, for example because all its threads are busy, the file is written on the
+ * calling thread instead.
+ */
+public class AsyncFileOutputStream extends OutputStream {
+
+	public static final int QUEUE_CAPACITY = 64;
+
+	private static final byte[] END = new byte[0];
+
+	private final BlockingQueue<byte[]> chunks = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+	private final CompletableFuture<Void> completion;
+
+	private final boolean asynchronous;
+
+	private OutputStream callerOutputStream;
+
+	private boolean closed;
+
+	/**
+	 * @param file     the file to write, which is replaced if it exists
+	 * @param executor runs the writes, one thread for as long as the stream is open
+	 */
+	public AsyncFileOutputStream(File file, Executor executor) {
+		CompletableFuture<Void> drainCompletion;
+		boolean drained;
+		try {
+			drainCompletion = CompletableFuture.runAsync(() -> drain(file), executor);
+			drained = true;
+		}
+		catch (RejectedExecutionException e) {
+			drainCompletion = new CompletableFuture<>();
+			drained = false;
+			try {
+				callerOutputStream = new BufferedOutputStream(new FileOutputStream(file));
+			}
+			catch (IOException ioException) {
+				drainCompletion.completeExceptionally(new UncheckedIOException(ioException));
+			}
+		}
+		this.completion = drainCompletion;
+		this.asynchronous = drained;
+	}
+
+	/**
+	 * @return completes once all bytes have been written and the file has been closed
+	 */
+	public CompletableFuture<Void> getCompletion() {
+		return completion;
+	}
+
+	@Override
+	public void write(int b) throws IOException {
+		write(new byte[] { (byte) b }, 0, 1);
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if (closed) {
+			throw new IOException("Stream closed");
+		}
+		if (len > 0 && !completion.isDone()) {
+			if (asynchronous) {
+				put(Arrays.copyOfRange(b, off, off + len));
+			} else {
+				try {
+					callerOutputStream.write(b, off, len);
+				}
+				catch (IOException e) {
+					closeOutputStream(e);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void close() throws IOException {
+		if (!closed) {
+			closed = true;
+			if (!completion.isDone()) {
+				if (asynchronous) {
+					put(END);
+				} else {
+					closeOutputStream(null);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes the file written on the calling thread and completes with the first error, if any
+	 */
+	private void closeOutputStream(IOException failure) {
+		try {
+			callerOutputStream.close();
+		}
+		catch (IOException e) {
+			if (failure == null) {
+				failure = e;
+			}
+		}
+		if (failure == null) {
+			completion.complete(null);
+		} else {
+			completion.completeExceptionally(new UncheckedIOException(failure));
+		}
+	}
+
+	private void put(byte[] chunk) throws IOException {
+		try {
+			while (!chunks.offer(chunk, 100, TimeUnit.MILLISECONDS)) {
+				if (completion.isDone()) {
+					return;
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while queueing write");
+		}
+	}
+
+	private void drain(File file) {
+		IOException failure = null;
+		OutputStream outputStream = null;
+		try {
+			outputStream = new BufferedOutputStream(new FileOutputStream(file));
+		}
+		catch (IOException e) {
+			failure = e;
+		}
+		try {
+			for (byte[] chunk = chunks.take(); chunk != END; chunk = chunks.take()) {
+				if (failure == null) {
+					try {
+						outputStream.write(chunk);
+					}
+					catch (IOException e) {
+						failure = e;
+					}
+				}
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			if (failure == null) {
+				failure = new InterruptedIOException("Interrupted while writing " + file.getAbsolutePath());
+			}
+		}
+		finally {
+			if (outputStream != null) {
+				try {
+					outputStream.close();
+				}
+				catch (IOException e) {
+					if (failure == null) {
+						failure = e;
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw new UncheckedIOException(failure);
+		}
+	}
+}
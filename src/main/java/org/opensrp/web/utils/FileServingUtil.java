@@ -0,0 +1,228 @@
+package org.opensrp.web.utils;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.http.HttpHeaders;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Writes files from the file system to a response with support for conditional requests ({@code If-None-Match},
+ * {@code If-Modified-Since}) and single byte ranges ({@code Range}, {@code If-Range}). The file content is sent with
+ * the container's sendfile support when it is available and with {@link FileChannel#transferTo} otherwise so that
+ * the bytes are not copied through the heap.
+ */
+public class FileServingUtil {
+
+	public static final String BYTES_UNIT = "bytes";
+
+	private static final String RANGE_PREFIX = BYTES_UNIT + "=";
+
+	private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+
+	private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+	private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+	private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	/**
+	 * Writes the file, or the requested range of it, to the response. The content type and any other headers such as
+	 * {@code Content-Disposition} should be set before calling this method.
+	 *
+	 * @param file     the file to send, which must exist
+	 * @param request  the request, used for the conditional and range headers
+	 * @param response the response to write to
+	 * @throws IOException if the file could not be read or the response could not be written
+	 */
+	public static void serveFile(File file, HttpServletRequest request, HttpServletResponse response) throws IOException {
+		serveFile(file, request, response, true);
+	}
+
+	/**
+	 * Writes the file, or the requested range of it, to the response. Files that are deleted once this method returns
+	 * must not be handed to sendfile since the container only opens them after the servlet has returned.
+	 *
+	 * @param file          the file to send, which must exist
+	 * @param request       the request, used for the conditional and range headers
+	 * @param response      the response to write to
+	 * @param allowSendfile whether the container may send the file after this method returns
+	 * @throws IOException if the file could not be read or the response could not be written
+	 */
+	public static void serveFile(File file, HttpServletRequest request, HttpServletResponse response,
+			boolean allowSendfile) throws IOException {
+		long length = file.length();
+		long lastModified = file.lastModified();
+		String eTag = getETag(length, lastModified);
+
+		response.setHeader(HttpHeaders.ETAG, eTag);
+		response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+		response.setHeader(HttpHeaders.ACCEPT_RANGES, BYTES_UNIT);
+
+		if (isNotModified(request, eTag, lastModified)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+
+		long start = 0;
+		long end = length - 1;
+		String range = request == null ? null : request.getHeader(HttpHeaders.RANGE);
+		if (range != null && isRangeApplicable(request, eTag, lastModified)) {
+			long[] byteRange = parseRange(range, length);
+			if (byteRange == null) {
+				response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES_UNIT + " */" + length);
+				response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+				return;
+			}
+			if (byteRange.length == 2) {
+				start = byteRange[0];
+				end = byteRange[1];
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setHeader(HttpHeaders.CONTENT_RANGE, BYTES_UNIT + " " + start + "-" + end + "/" + length);
+			}
+		}
+
+		long contentLength = end - start + 1;
+		response.setContentLengthLong(contentLength);
+		if (contentLength <= 0) {
+			return;
+		}
+
+		if (allowSendfile && request != null && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+			request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+			request.setAttribute(SENDFILE_START, start);
+			request.setAttribute(SENDFILE_END, end + 1);
+			return;
+		}
+
+		try (FileChannel fileChannel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			OutputStream outputStream = response.getOutputStream();
+			WritableByteChannel outputChannel = Channels.newChannel(outputStream);
+			long position = start;
+			while (position <= end) {
+				long transferred = fileChannel.transferTo(position, end - position + 1, outputChannel);
+				if (transferred <= 0) {
+					break;
+				}
+				position += transferred;
+			}
+			outputStream.flush();
+		}
+	}
+
+	/**
+	 * @param length       the file length
+	 * @param lastModified the file modification time in milliseconds
+	 * @return a weak entity tag derived from the file length and modification time
+	 */
+	public static String getETag(long length, long lastModified) {
+		return "W/\"" + Long.toHexString(length) + "-" + Long.toHexString(lastModified) + "\"";
+	}
+
+	/**
+	 * Parses a {@code Range} header for a resource of the given length. Only a single range is served, a header with
+	 * several ranges or a unit other than bytes is ignored and the whole file is returned.
+	 *
+	 * @param range  the range header value
+	 * @param length the resource length
+	 * @return the inclusive start and end offsets, an empty array to serve the whole file or null when the range
+	 * 		cannot be satisfied
+	 */
+	public static long[] parseRange(String range, long length) {
+		if (!range.startsWith(RANGE_PREFIX) || range.indexOf(',') >= 0) {
+			return new long[0];
+		}
+		String spec = range.substring(RANGE_PREFIX.length()).trim();
+		int dash = spec.indexOf('-');
+		if (dash < 0) {
+			return new long[0];
+		}
+		try {
+			String first = spec.substring(0, dash).trim();
+			String last = spec.substring(dash + 1).trim();
+			long start;
+			long end;
+			if (first.isEmpty()) {
+				long suffixLength = Long.parseLong(last);
+				if (suffixLength <= 0 || length == 0) {
+					return null;
+				}
+				start = Math.max(length - suffixLength, 0);
+				end = length - 1;
+			} else {
+				start = Long.parseLong(first);
+				end = last.isEmpty() ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+			}
+			if (start < 0 || start >= length || end < start) {
+				return null;
+			}
+			return new long[] { start, end };
+		}
+		catch (NumberFormatException e) {
+			return new long[0];
+		}
+	}
+
+	private static boolean isNotModified(HttpServletRequest request, String eTag, long lastModified) {
+		if (request == null) {
+			return false;
+		}
+		String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			return matchesETag(ifNoneMatch, eTag);
+		}
+		long ifModifiedSince = getDateHeader(request, HttpHeaders.IF_MODIFIED_SINCE);
+		return ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+	}
+
+	private static boolean isRangeApplicable(HttpServletRequest request, String eTag, long lastModified) {
+		String ifRange = request.getHeader(HttpHeaders.IF_RANGE);
+		if (StringUtils.isBlank(ifRange)) {
+			return true;
+		}
+		if (ifRange.trim().startsWith("\"") || ifRange.trim().startsWith("W/")) {
+			return matchesETagStrongly(ifRange.trim(), eTag);
+		}
+		long ifRangeDate = getDateHeader(request, HttpHeaders.IF_RANGE);
+		return ifRangeDate >= 0 && lastModified / 1000 == ifRangeDate / 1000;
+	}
+
+	private static boolean matchesETag(String header, String eTag) {
+		String opaqueTag = stripWeakPrefix(eTag);
+		for (String candidate : header.split(",")) {
+			String tag = candidate.trim();
+			if ("*".equals(tag) || stripWeakPrefix(tag).equals(opaqueTag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * If-Range requires the strong comparison of RFC 7232, under which a weak tag never matches. The tags generated
+	 * here are weak, so a range conditional on an entity tag is always answered with the whole file.
+	 */
+	private static boolean matchesETagStrongly(String tag, String eTag) {
+		return !tag.startsWith("W/") && !eTag.startsWith("W/") && tag.equals(eTag);
+	}
+
+	private static String stripWeakPrefix(String eTag) {
+		return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+	}
+
+	private static long getDateHeader(HttpServletRequest request, String name) {
+		try {
+			return request.getDateHeader(name);
+		}
+		catch (IllegalArgumentException e) {
+			return -1;
+		}
+	}
+}
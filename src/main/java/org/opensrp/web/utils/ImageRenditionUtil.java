@@ -0,0 +1,118 @@
+package org.opensrp.web.utils;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.TreeSet;
+
+/**
+ * Creates scaled down JPEG copies of images, such as the avatars shown in register lists, so that clients do not
+ * have to download the original photo to show it at a small size.
+ */
+public class ImageRenditionUtil {
+
+	public static final String RENDITION_FORMAT = "jpg";
+
+	private static final float JPEG_QUALITY = 0.85f;
+
+	/**
+	 * Parses the configured rendition sizes
+	 *
+	 * @param sizes comma separated sizes in pixels
+	 * @return the sizes in ascending order
+	 */
+	public static TreeSet<Integer> parseSizes(String sizes) {
+		TreeSet<Integer> parsed = new TreeSet<>();
+		if (sizes != null) {
+			Arrays.stream(sizes.split(",")).map(String::trim).filter(size -> !size.isEmpty()).map(Integer::valueOf)
+					.filter(size -> size > 0).forEach(parsed::add);
+		}
+		return parsed;
+	}
+
+	/**
+	 * Returns the smallest configured size that is at least the requested size so that only a few renditions of each
+	 * image are ever created
+	 *
+	 * @param requested the requested size in pixels
+	 * @param sizes     the configured sizes
+	 * @return the size to render or null if no sizes are configured
+	 */
+	public static Integer selectSize(int requested, TreeSet<Integer> sizes) {
+		Integer size = sizes.ceiling(requested);
+		return size != null || sizes.isEmpty() ? size : sizes.last();
+	}
+
+	/**
+	 * Writes a JPEG copy of the image that fits within a square of the given size. Images that are already small
+	 * enough are re-encoded without being scaled up.
+	 *
+	 * @param source the original image
+	 * @param target the file to write the rendition to
+	 * @param size   the maximum width and height in pixels
+	 * @return false if the source could not be read as an image
+	 * @throws IOException if the source could not be read or the rendition could not be written
+	 */
+	public static boolean writeRendition(File source, File target, int size) throws IOException {
+		BufferedImage image = ImageIO.read(source);
+		if (image == null) {
+			return false;
+		}
+
+		double scale = Math.min(1d, Math.min(size / (double) image.getWidth(), size / (double) image.getHeight()));
+		int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+		int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+		BufferedImage rendition = scale(image, width, height);
+
+		ImageWriter writer = ImageIO.getImageWritersByFormatName(RENDITION_FORMAT).next();
+		ImageWriteParam param = writer.getDefaultWriteParam();
+		param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+		param.setCompressionQuality(JPEG_QUALITY);
+		try (ImageOutputStream outputStream = ImageIO.createImageOutputStream(target)) {
+			writer.setOutput(outputStream);
+			writer.write(null, new IIOImage(rendition, null, null), param);
+		}
+		finally {
+			writer.dispose();
+		}
+		return true;
+	}
+
+	/**
+	 * Halves the image until it is close to the target size before the final step so that large photos are not
+	 * aliased by a single bilinear pass. The result has no alpha channel, which JPEG cannot store, and transparent
+	 * areas are drawn white.
+	 */
+	private static BufferedImage scale(BufferedImage image, int width, int height) {
+		BufferedImage current = image;
+		int currentWidth = image.getWidth();
+		int currentHeight = image.getHeight();
+		do {
+			currentWidth = Math.max(width, currentWidth / 2);
+			currentHeight = Math.max(height, currentHeight / 2);
+			BufferedImage next = new BufferedImage(currentWidth, currentHeight, BufferedImage.TYPE_INT_RGB);
+			Graphics2D graphics = next.createGraphics();
+			try {
+				graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				graphics.setColor(Color.WHITE);
+				graphics.fillRect(0, 0, currentWidth, currentHeight);
+				graphics.drawImage(current, 0, 0, currentWidth, currentHeight, null);
+			}
+			finally {
+				graphics.dispose();
+			}
+			current = next;
+		} while (currentWidth != width || currentHeight != height);
+		return current;
+	}
+}
@@ -0,0 +1,63 @@
+package org.opensrp.web.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.apache.commons.lang3.StringUtils;
+
+import java.util.List;
+
+/**
+ * Reads dotted field mappings such as {@code client.identifiers.opensrp_id} from a JSON tree. The mappings are split
+ * once when the accessor is compiled so that extracting a row does not parse the paths again. Only plain dotted paths
+ * that resolve to text, integral or boolean values are read; any other mapping or value is reported as unresolved so
+ * that the caller can fall back to the generic converter.
+ */
+public class JsonFieldAccessor {
+
+	private static final String PATH_SEPARATOR = ".";
+
+	private final String[][] paths;
+
+	private JsonFieldAccessor(String[][] paths) {
+		this.paths = paths;
+	}
+
+	public static JsonFieldAccessor compile(List<String> fieldMappings) {
+		String[][] paths = new String[fieldMappings.size()][];
+		for (int i = 0; i < fieldMappings.size(); i++) {
+			String fieldMapping = fieldMappings.get(i);
+			paths[i] = isPlainPath(fieldMapping) ? StringUtils.split(fieldMapping, PATH_SEPARATOR) : null;
+		}
+		return new JsonFieldAccessor(paths);
+	}
+
+	/**
+	 * @param root the JSON tree to read from
+	 * @return the value of every mapping, empty for missing fields, or null when a mapping could not be resolved
+	 */
+	public String[] extract(JsonNode root) {
+		String[] values = new String[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			if (paths[i] == null) {
+				return null;
+			}
+			JsonNode node = root;
+			for (String segment : paths[i]) {
+				node = node.path(segment);
+			}
+			if (node.isMissingNode()) {
+				values[i] = StringUtils.EMPTY;
+			} else if (node.isTextual() || node.isIntegralNumber() || node.isBoolean()) {
+				values[i] = node.asText();
+			} else {
+				return null;
+			}
+		}
+		return values;
+	}
+
+	private static boolean isPlainPath(String fieldMapping) {
+		return StringUtils.isNotBlank(fieldMapping) && StringUtils.containsNone(fieldMapping, '[', ']', ' ')
+				&& !fieldMapping.startsWith(PATH_SEPARATOR) && !fieldMapping.endsWith(PATH_SEPARATOR)
+				&& !fieldMapping.contains(PATH_SEPARATOR + PATH_SEPARATOR);
+	}
+}
@@ -0,0 +1,139 @@
+package org.opensrp.web.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.stream.JsonWriter;
+import org.apache.commons.lang3.StringUtils;
+import org.joda.time.DateTime;
+import org.smartregister.utils.DateTimeTypeConverter;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Looks up records for a list of ids a batch at a time, so that fetching many records takes one query per batch
+ * rather than one request per id. Results can be streamed to the response as {@code {"<name>": [...], "missing":
+ * [...]}} while the next batch is loaded.
+ */
+public class MultiGetUtil {
+
+	public static final int MAX_IDS = 5000;
+
+	public static final String MISSING = "missing";
+
+	private static final Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
+			.registerTypeAdapter(DateTime.class, new DateTimeTypeConverter()).create();
+
+	/**
+	 * Looks up the ids a batch at a time and hands each record found to the consumer as soon as its batch is loaded.
+	 * Blank and repeated ids are skipped.
+	 *
+	 * @param ids       the ids to look up
+	 * @param batchSize the number of ids looked up together
+	 * @param finder    loads the records with the given ids
+	 * @param idOf      returns the id a record was looked up by
+	 * @param consumer  receives each record found, once
+	 * @return the ids that were not found, in the order they were requested
+	 */
+	public static <T> List<String> findAll(Collection<String> ids, int batchSize, Function<List<String>, List<T>> finder,
+			Function<T, String> idOf, Consumer<T> consumer) {
+		List<String> uniqueIds = distinctIds(ids);
+		List<String> missingIds = new ArrayList<>();
+		for (int i = 0; i < uniqueIds.size(); i = i + batchSize) {
+			List<String> batch = uniqueIds.subList(i, Math.min(i + batchSize, uniqueIds.size()));
+			Set<String> pendingIds = new HashSet<>(batch);
+			List<T> records = finder.apply(batch);
+			if (records != null) {
+				for (T record : records) {
+					if (record != null && pendingIds.remove(idOf.apply(record))) {
+						consumer.accept(record);
+					}
+				}
+			}
+			for (String id : batch) {
+				if (pendingIds.contains(id)) {
+					missingIds.add(id);
+				}
+			}
+		}
+		return missingIds;
+	}
+
+	/**
+	 * Adapts a lookup by a single id for services that have no batch lookup
+	 *
+	 * @param finder loads the record with the given id, or returns null
+	 * @return a batch finder calling the finder for each id
+	 */
+	public static <T> Function<List<String>, List<T>> oneAtATime(Function<String, T> finder) {
+		return ids -> ids.stream().map(finder).filter(Objects::nonNull).collect(Collectors.toList());
+	}
+
+	/**
+	 * Writes the records found for the ids to the response as {@code {"<name>": [...], "missing": [...]}}, a batch
+	 * at a time. Responds with bad request when there are no ids or more than {@link #MAX_IDS}.
+	 *
+	 * @param response  the response to write to
+	 * @param name      the name of the array of records
+	 * @param type      the type of the records
+	 * @param ids       the ids to look up
+	 * @param batchSize the number of ids looked up together
+	 * @param finder    loads the records with the given ids
+	 * @param idOf      returns the id a record was looked up by
+	 */
+	public static <T> void write(HttpServletResponse response, String name, Class<T> type, List<String> ids,
+			int batchSize, Function<List<String>, List<T>> finder, Function<T, String> idOf) throws IOException {
+		List<String> uniqueIds = distinctIds(ids);
+		if (uniqueIds.isEmpty() || uniqueIds.size() > MAX_IDS) {
+			response.sendError(HttpStatus.BAD_REQUEST.value(), "Between 1 and " + MAX_IDS + " ids are required");
+			return;
+		}
+		response.setStatus(HttpStatus.OK.value());
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+		JsonWriter jsonWriter = gson.newJsonWriter(
+				new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)));
+		jsonWriter.beginObject();
+		jsonWriter.name(name);
+		jsonWriter.beginArray();
+		List<String> missingIds = findAll(uniqueIds, batchSize, finder, idOf,
+				record -> gson.toJson(record, type, jsonWriter));
+		jsonWriter.endArray();
+		jsonWriter.name(MISSING);
+		jsonWriter.beginArray();
+		for (String id : missingIds) {
+			jsonWriter.value(id);
+		}
+		jsonWriter.endArray();
+		jsonWriter.endObject();
+		jsonWriter.flush();
+	}
+
+	private static List<String> distinctIds(Collection<String> ids) {
+		if (ids == null) {
+			return new ArrayList<>();
+		}
+		Set<String> uniqueIds = new LinkedHashSet<>();
+		for (String id : ids) {
+			if (StringUtils.isNotBlank(id)) {
+				uniqueIds.add(id);
+			}
+		}
+		return new ArrayList<>(uniqueIds);
+	}
+}
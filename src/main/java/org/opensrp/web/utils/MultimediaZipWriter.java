@@ -0,0 +1,244 @@
+package org.opensrp.web.utils;
+
+import org.apache.commons.io.FilenameUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.opensrp.domain.Multimedia;
+import org.opensrp.service.multimedia.MultimediaFileManager;
+import org.opensrp.service.multimedia.S3MultimediaFileManager;
+import org.opensrp.web.cache.MediaFileCache;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes multimedia files into a zip stream. When a prefetch executor is given, files held in S3 are downloaded on it
+ * {@link #PREFETCH_SIZE} at a time ahead of the entry being written so that the archive is not held up by one download
+ * after another. S3 downloads are kept in the {@link MediaFileCache} when one is given. Formats that are
+ * already compressed are stored rather than deflated again, and files that cannot be retrieved are skipped without
+ * ending the archive.
+ */
+public class MultimediaZipWriter {
+
+	private static final Logger logger = LogManager.getLogger(MultimediaZipWriter.class.toString());
+
+	public static final int PREFETCH_SIZE = 4;
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final Set<String> COMPRESSED_EXTENSIONS = new HashSet<>(
+			Arrays.asList("jpg", "jpeg", "png", "gif", "webp", "mp4", "m4a", "mp3", "3gp", "zip", "gz", "7z"));
+
+	private final MultimediaFileManager fileManager;
+
+	private final MediaFileCache mediaFileCache;
+
+	private final boolean temporaryFiles;
+
+	private final ExecutorService prefetchExecutor;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private final Set<String> entryNames = new HashSet<>();
+
+	public MultimediaZipWriter(MultimediaFileManager fileManager) {
+		this(fileManager, null, null);
+	}
+
+	/**
+	 * @param fileManager      the file manager to retrieve files from
+	 * @param mediaFileCache   the cache to keep S3 downloads in, null to delete them once they have been written
+	 * @param prefetchExecutor the executor, shared between archives, to download S3 files on ahead of their entries;
+	 *                         null to download each file when its entry is written
+	 */
+	public MultimediaZipWriter(MultimediaFileManager fileManager, MediaFileCache mediaFileCache,
+			ExecutorService prefetchExecutor) {
+		this.fileManager = fileManager;
+		this.mediaFileCache = MediaFileCache.isCacheable(fileManager) ? mediaFileCache : null;
+		this.temporaryFiles = this.mediaFileCache == null && fileManager instanceof S3MultimediaFileManager;
+		this.prefetchExecutor = prefetchExecutor;
+	}
+
+	/**
+	 * Adds an entry for each of the multimedia files that can be retrieved
+	 *
+	 * @param zipOutputStream the stream to write to, which is left open
+	 * @param multimediaFiles the files to add
+	 * @throws IOException if the zip stream could not be written
+	 */
+	public void write(ZipOutputStream zipOutputStream, List<Multimedia> multimediaFiles) throws IOException {
+		if (!(fileManager instanceof S3MultimediaFileManager) || prefetchExecutor == null) {
+			for (Multimedia multimedia : multimediaFiles) {
+				File file = retrieveFile(multimedia);
+				try {
+					writeEntry(zipOutputStream, file);
+				}
+				finally {
+					deleteTemporaryFile(file);
+				}
+			}
+			return;
+		}
+
+		Deque<Prefetch> prefetched = new ArrayDeque<>();
+		Iterator<Multimedia> iterator = multimediaFiles.iterator();
+		try {
+			while (iterator.hasNext() || !prefetched.isEmpty()) {
+				while (prefetched.size() < PREFETCH_SIZE && iterator.hasNext()) {
+					Prefetch prefetch = new Prefetch(iterator.next());
+					prefetched.add(prefetch);
+					prefetch.future = prefetchExecutor.submit(prefetch);
+				}
+				File file = await(prefetched.poll().future);
+				try {
+					writeEntry(zipOutputStream, file);
+				}
+				finally {
+					deleteTemporaryFile(file);
+				}
+			}
+		}
+		finally {
+			for (Prefetch prefetch : prefetched) {
+				prefetch.abandon();
+			}
+		}
+	}
+
+	private File retrieveFile(Multimedia multimedia) {
+		try {
+			return mediaFileCache == null ? fileManager.retrieveFile(multimedia.getFilePath())
+					: mediaFileCache.get(multimedia.getFilePath(), fileManager::retrieveFile);
+		}
+		catch (RuntimeException e) {
+			logger.warn("Could not retrieve file " + multimedia.getFilePath(), e);
+			return null;
+		}
+	}
+
+	private File await(Future<File> future) {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		}
+		catch (ExecutionException e) {
+			logger.warn("Could not retrieve file", e.getCause());
+			return null;
+		}
+	}
+
+	private void writeEntry(ZipOutputStream zipOutputStream, File file) throws IOException {
+		if (file == null) {
+			return;
+		}
+		if (!file.isFile()) {
+			logger.warn("Could not find file " + file.getAbsolutePath());
+			return;
+		}
+
+		logger.info("Adding " + file.getName());
+		ZipEntry zipEntry = new ZipEntry(uniqueEntryName(file.getName()));
+		if (COMPRESSED_EXTENSIONS.contains(FilenameUtils.getExtension(file.getName()).toLowerCase())) {
+			zipEntry.setMethod(ZipEntry.STORED);
+			zipEntry.setSize(file.length());
+			zipEntry.setCompressedSize(file.length());
+			zipEntry.setCrc(checksum(file));
+		}
+		zipOutputStream.putNextEntry(zipEntry);
+		try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				zipOutputStream.write(buffer, 0, read);
+			}
+		}
+		zipOutputStream.closeEntry();
+		logger.info("Done downloading file " + file.getName());
+	}
+
+	private long checksum(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		try (InputStream inputStream = Files.newInputStream(file.toPath())) {
+			int read;
+			while ((read = inputStream.read(buffer)) != -1) {
+				crc.update(buffer, 0, read);
+			}
+		}
+		return crc.getValue();
+	}
+
+	private String uniqueEntryName(String fileName) {
+		String entryName = fileName;
+		for (int i = 1; !entryNames.add(entryName); i++) {
+			String extension = FilenameUtils.getExtension(fileName);
+			entryName = FilenameUtils.getBaseName(fileName) + "(" + i + ")" + (extension.isEmpty() ? "" : "." + extension);
+		}
+		return entryName;
+	}
+
+	private void deleteTemporaryFile(File file) {
+		if (temporaryFiles && file != null) {
+			file.delete();
+		}
+	}
+
+	/**
+	 * Downloads one file ahead of its entry. A prefetch abandoned when the archive ends early deletes its download
+	 * whether it finishes before or after it is abandoned.
+	 */
+	private class Prefetch implements Callable<File> {
+
+		private final Multimedia multimedia;
+
+		private Future<File> future;
+
+		private File file;
+
+		private boolean abandoned;
+
+		private Prefetch(Multimedia multimedia) {
+			this.multimedia = multimedia;
+		}
+
+		@Override
+		public File call() {
+			File retrievedFile = retrieveFile(multimedia);
+			synchronized (this) {
+				if (abandoned) {
+					deleteTemporaryFile(retrievedFile);
+					return null;
+				}
+				file = retrievedFile;
+			}
+			return retrievedFile;
+		}
+
+		private void abandon() {
+			synchronized (this) {
+				abandoned = true;
+				deleteTemporaryFile(file);
+			}
+			if (future != null) {
+				future.cancel(true);
+			}
+		}
+	}
+}
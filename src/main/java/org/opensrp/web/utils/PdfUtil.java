@@ -11,18 +11,28 @@ package org.opensrp.web.utils;
 
 import java.awt.Color;
 import java.awt.Graphics2D;
-import java.awt.Toolkit;
 import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
 import java.io.ByteArrayOutputStream;
-import java.util.Hashtable;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
-import com.google.zxing.BarcodeFormat;
+import com.google.common.collect.Lists;
 import com.google.zxing.EncodeHintType;
-import com.google.zxing.common.BitMatrix;
-import com.google.zxing.qrcode.QRCodeWriter;
+import com.google.zxing.WriterException;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
+import com.google.zxing.qrcode.encoder.ByteMatrix;
+import com.google.zxing.qrcode.encoder.Encoder;
+import com.google.zxing.qrcode.encoder.QRCode;
+import com.itextpdf.text.BadElementException;
 import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Element;
 import com.itextpdf.text.Image;
 import com.itextpdf.text.Phrase;
@@ -40,65 +50,73 @@ public class PdfUtil {
 	
 	private static final float TABLE_WIDTH = 100f;
 	
+	/**
+	 * The number of QR codes encoded together before their rows are written to the document
+	 */
+	public static final int ENCODING_BATCH_SIZE = 200;
+	
+	private static final int QUIET_ZONE_SIZE = 4;
+	
+	private static final Map<EncodeHintType, ErrorCorrectionLevel> HINTS = Collections.unmodifiableMap(
+	    new EnumMap<EncodeHintType, ErrorCorrectionLevel>(
+	            Collections.singletonMap(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L)));
+	
+	private static final ThreadLocal<BufferedImage> IMAGE_BUFFER = new ThreadLocal<>();
+	
 	public static ByteArrayOutputStream generatePdf(List<String> data, int width, int height, int copiesImage,
 	                                                int columnLimit) {
 		try {
 			ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
-			Document document = new Document();
-			document.setMargins(MARGINS[0], MARGINS[1], MARGINS[2], MARGINS[3]);
-			
-			PdfWriter.getInstance(document, byteArrayOutputStream);
-			document.open();
-			
-			PdfPTable table = new PdfPTable(columnLimit);
-			table.setTotalWidth(TABLE_WIDTH);
-			table.setHorizontalAlignment(Element.ALIGN_LEFT);
-			
-			int length = 0;
-			int count = 0;
-			
-			for (String str : data) {
-				if (str.length() > 0 && str.length() <= 5) {
-					length = 54;
-				} else if (str.length() >= 6 && str.length() <= 9) {
-					length = 44;
-				} else if (str.length() >= 10 && str.length() <= 11) {
-					length = 36;
-				} else if (str.length() >= 12 && str.length() <= 14) {
-					length = 27;
-				} else if (str.length() >= 15 && str.length() <= 17) {
-					length = 22;
-				} else {
-					length = 15;
-				}
-				Hashtable<EncodeHintType, ErrorCorrectionLevel> hintMap = new Hashtable<EncodeHintType, ErrorCorrectionLevel>();
-				hintMap.put(EncodeHintType.ERROR_CORRECTION, ErrorCorrectionLevel.L);
-				
-				QRCodeWriter qrCodeWriter = new QRCodeWriter();
-				BitMatrix byteMatrix = null;
-				
-				byteMatrix = qrCodeWriter.encode(str, BarcodeFormat.QR_CODE, width, height, hintMap);
-				
-				int matrixWidth = byteMatrix.getWidth();
-				int matrixHeight = byteMatrix.getHeight();
-				BufferedImage image = new BufferedImage(matrixWidth, matrixHeight, BufferedImage.TYPE_INT_RGB);
-				image.createGraphics();
-				Graphics2D graphics = (Graphics2D) image.getGraphics();
-				graphics.setColor(Color.WHITE);
-				graphics.fillRect(0, 0, matrixWidth + 5, matrixHeight + 5);
-				graphics.setFont(graphics.getFont().deriveFont(13f));
-				graphics.setColor(Color.BLACK);
-				graphics.drawString(str, length, height - 10);
-				for (int i = 0; i < matrixHeight; i++) {
-					for (int j = 0; j < matrixHeight; j++) {
-						if (byteMatrix.get(i, j)) {
-							graphics.fillRect((i), j, 1, 1);
-						}
-					}
-				}
-				Image itextImage = null;
-				itextImage = Image.getInstance(Toolkit.getDefaultToolkit().createImage(image.getSource()), null);
-				
+			writePdf(data, width, height, copiesImage, columnLimit, byteArrayOutputStream);
+			return byteArrayOutputStream;
+		}
+		catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes a PDF with a QR code for each of the values. All values are encoded in parallel before
+	 * anything is written, so a value that cannot be encoded fails before the output stream is used.
+	 * The codes are then drawn {@link #ENCODING_BATCH_SIZE} at a time and each page is written to the
+	 * output stream once it is full, so the document is never held in memory as a whole.
+	 *
+	 * @param data the values to encode
+	 * @param width the width of each QR code
+	 * @param height the height of each QR code
+	 * @param copiesImage the number of copies of each QR code
+	 * @param columnLimit the number of QR codes in a row
+	 * @param outputStream the stream to write the PDF to, which is not closed
+	 * @throws DocumentException if the document could not be written
+	 * @throws IllegalArgumentException if a value could not be encoded, before anything is written
+	 */
+	public static void writePdf(List<String> data, int width, int height, int copiesImage, int columnLimit,
+	                            OutputStream outputStream) throws DocumentException {
+		// the encoded matrices hold a byte per module, far less than the drawn images
+		List<QRCode> codes = data.parallelStream().map(PdfUtil::encode).collect(Collectors.toList());
+		
+		Document document = new Document();
+		document.setMargins(MARGINS[0], MARGINS[1], MARGINS[2], MARGINS[3]);
+		
+		PdfWriter writer = PdfWriter.getInstance(document, outputStream);
+		writer.setCloseStream(false);
+		document.open();
+		
+		PdfPTable table = new PdfPTable(columnLimit);
+		table.setTotalWidth(TABLE_WIDTH);
+		table.setHorizontalAlignment(Element.ALIGN_LEFT);
+		// rows are added to the document as they are completed instead of with the whole table
+		table.setComplete(false);
+		
+		int count = 0;
+		List<List<String>> valueBatches = Lists.partition(data, ENCODING_BATCH_SIZE);
+		List<List<QRCode>> codeBatches = Lists.partition(codes, ENCODING_BATCH_SIZE);
+		for (int b = 0; b < valueBatches.size(); b++) {
+			List<String> values = valueBatches.get(b);
+			List<QRCode> batch = codeBatches.get(b);
+			List<Image> images = IntStream.range(0, batch.size()).parallel()
+			        .mapToObj(i -> createQRCode(values.get(i), batch.get(i), width, height)).collect(Collectors.toList());
+			for (Image itextImage : images) {
 				for (int i = 0; i < copiesImage; i++) {
 					PdfPCell cell = new PdfPCell(itextImage);
 					cell.setBorder(Rectangle.NO_BORDER);
@@ -106,21 +124,97 @@ public class PdfUtil {
 					table.addCell(cell);
 				}
 			}
-			for (int i = 0; i < 6; i++) {
-				if (count % columnLimit != 0) {
-					PdfPCell cell = new PdfPCell(new Phrase());
-					cell.setBorder(Rectangle.NO_BORDER);
-					table.addCell(cell);
-					count++;
+			document.add(table);
+		}
+		for (int i = 0; i < 6; i++) {
+			if (count % columnLimit != 0) {
+				PdfPCell cell = new PdfPCell(new Phrase());
+				cell.setBorder(Rectangle.NO_BORDER);
+				table.addCell(cell);
+				count++;
+			}
+		}
+		table.setComplete(true);
+		document.add(table);
+		document.close();
+	}
+	
+	private static QRCode encode(String str) {
+		try {
+			return Encoder.encode(str, ErrorCorrectionLevel.L, HINTS);
+		}
+		catch (WriterException e) {
+			throw new IllegalArgumentException("Could not encode " + str, e);
+		}
+	}
+	
+	/**
+	 * Draws the QR code for the value with the value written below it, scaled and centred as
+	 * {@link com.google.zxing.qrcode.QRCodeWriter} would. The drawing is done on an image buffer
+	 * kept for each thread and the pixels are copied into the PDF image.
+	 */
+	private static Image createQRCode(String str, QRCode code, int width, int height) {
+		ByteMatrix matrix = code.getMatrix();
+		int inputWidth = matrix.getWidth();
+		int inputHeight = matrix.getHeight();
+		int qrWidth = inputWidth + QUIET_ZONE_SIZE * 2;
+		int qrHeight = inputHeight + QUIET_ZONE_SIZE * 2;
+		int imageWidth = Math.max(width, qrWidth);
+		int imageHeight = Math.max(height, qrHeight);
+		int multiple = Math.min(imageWidth / qrWidth, imageHeight / qrHeight);
+		int leftPadding = (imageWidth - inputWidth * multiple) / 2;
+		int topPadding = (imageHeight - inputHeight * multiple) / 2;
+		
+		BufferedImage image = IMAGE_BUFFER.get();
+		if (image == null || image.getWidth() != imageWidth || image.getHeight() != imageHeight) {
+			image = new BufferedImage(imageWidth, imageHeight, BufferedImage.TYPE_BYTE_GRAY);
+			IMAGE_BUFFER.set(image);
+		}
+		
+		Graphics2D graphics = image.createGraphics();
+		try {
+			graphics.setColor(Color.WHITE);
+			graphics.fillRect(0, 0, imageWidth, imageHeight);
+			graphics.setFont(graphics.getFont().deriveFont(13f));
+			graphics.setColor(Color.BLACK);
+			graphics.drawString(str, getTextOffset(str), height - 10);
+		}
+		finally {
+			graphics.dispose();
+		}
+		
+		byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+		for (int inputY = 0, outputY = topPadding; inputY < inputHeight; inputY++, outputY += multiple) {
+			for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
+				if (matrix.get(inputX, inputY) == 1) {
+					for (int y = outputY; y < outputY + multiple; y++) {
+						Arrays.fill(pixels, y * imageWidth + outputX, y * imageWidth + outputX + multiple, (byte) 0);
+					}
 				}
 			}
-			document.add(table);
-			document.close();
-			
-			return byteArrayOutputStream;
 		}
-		catch (Exception e) {
-			return null;
+		
+		try {
+			return Image.getInstance(imageWidth, imageHeight, 1, 8, Arrays.copyOf(pixels, pixels.length));
+		}
+		catch (BadElementException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static int getTextOffset(String str) {
+		if (str.length() > 0 && str.length() <= 5) {
+			return 54;
+		} else if (str.length() >= 6 && str.length() <= 9) {
+			return 44;
+		} else if (str.length() >= 10 && str.length() <= 11) {
+			return 36;
+		} else if (str.length() >= 12 && str.length() <= 14) {
+			return 27;
+		} else if (str.length() >= 15 && str.length() <= 17) {
+			return 22;
+		} else {
+			return 15;
 		}
 	}
 }
@@ -9,9 +9,13 @@ import org.smartregister.domain.Client;
 import javax.servlet.http.HttpServletRequest;
 import java.text.ParseException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import static org.opensrp.common.AllConstants.BaseEntity.LAST_UPDATE;
 import static org.opensrp.common.AllConstants.Client.GENDER;
@@ -195,11 +199,13 @@ public class SearchHelper {
 	}
 
 	/**
-	 * // Method returns the intersection of two lists
+	 * // Method returns the intersection of two lists. An empty or null list does not filter the
+	 * other list. The second list is indexed by base entity id so that each client of the first
+	 * list is matched in constant time.
 	 *
 	 * @param list1_
 	 * @param list2_
-	 * @return merged intersection list
+	 * @return merged intersection list, in the order of the first list
 	 */
 	public static List<Client> intersection(List<Client> list1_, List<Client> list2_) {
 
@@ -222,10 +228,11 @@ public class SearchHelper {
 			return list1;
 		}
 
+		Set<String> baseEntityIds = indexBaseEntityIds(list2);
 		List<Client> list = new ArrayList<Client>();
 
 		for (Client t : list1) {
-			if (contains(list2, t)) {
+			if (t != null && baseEntityIds.contains(t.getBaseEntityId())) {
 				list.add(t);
 			}
 		}
@@ -233,6 +240,59 @@ public class SearchHelper {
 		return list;
 	}
 
+	/**
+	 * Adds the clients that are not yet in the list, matching clients by base entity id
+	 *
+	 * @param clients the list to add to
+	 * @param additions the clients to add
+	 */
+	public static void addMissing(List<Client> clients, List<Client> additions) {
+		if (additions == null || additions.isEmpty()) {
+			return;
+		}
+		Set<String> baseEntityIds = indexBaseEntityIds(clients);
+		for (Client client : additions) {
+			if (client == null || client.getBaseEntityId() == null || baseEntityIds.add(client.getBaseEntityId())) {
+				clients.add(client);
+			}
+		}
+	}
+
+	/**
+	 * @param clients the clients to index
+	 * @return the non null base entity ids of the clients
+	 */
+	public static Set<String> indexBaseEntityIds(List<Client> clients) {
+		Set<String> baseEntityIds = new HashSet<String>();
+		if (clients != null) {
+			for (Client client : clients) {
+				if (client != null && client.getBaseEntityId() != null) {
+					baseEntityIds.add(client.getBaseEntityId());
+				}
+			}
+		}
+		return baseEntityIds;
+	}
+
+	/**
+	 * @param request the search request
+	 * @param filters the filters allowed
+	 * @return whether every non blank parameter of the request is one of the filters
+	 */
+	public static boolean hasOnlyFilters(HttpServletRequest request, String... filters) {
+		Set<String> allowed = new HashSet<String>(Arrays.asList(filters));
+		for (Map.Entry<String, String[]> parameter : request.getParameterMap().entrySet()) {
+			if (!allowed.contains(parameter.getKey()) && parameter.getValue() != null) {
+				for (String value : parameter.getValue()) {
+					if (!StringUtils.isBlank(value)) {
+						return false;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
 	public static List<Client> createClientListIfEmpty(List<Client> list_) {
 		List<Client> list = list_;
 
@@ -271,14 +331,35 @@ public class SearchHelper {
 		return motherGuardianPhoneNumber;
 	}
 
+	/**
+	 * Pairs each child with the mothers its relationship points to. Mothers are indexed by base
+	 * entity id, compared ignoring case, so each child's relationship is looked up once instead of
+	 * once per mother.
+	 *
+	 * @param children the children found
+	 * @param mothers the mothers found
+	 * @param RELATIONSHIP_KEY the relationship of a child to its mother
+	 * @return the children with their mothers, in the order of the children and then the mothers
+	 */
 	public static List<ChildMother> processSearchResult(List<Client> children, List<Client> mothers,
 			String RELATIONSHIP_KEY) {
+		Map<String, List<Client>> mothersById = new HashMap<String, List<Client>>();
+		for (Client mother : mothers) {
+			String motherEntityId = mother.getBaseEntityId();
+			if (motherEntityId != null) {
+				mothersById.computeIfAbsent(relationalKey(motherEntityId), key -> new ArrayList<Client>()).add(mother);
+			}
+		}
+
 		List<ChildMother> childMotherList = new ArrayList<ChildMother>();
+		if (mothersById.isEmpty()) {
+			return childMotherList;
+		}
 		for (Client child : children) {
-			for (Client mother : mothers) {
-				String relationalId = getRelationalId(child, RELATIONSHIP_KEY);
-				String motherEntityId = mother.getBaseEntityId();
-				if (relationalId != null && relationalId.equalsIgnoreCase(motherEntityId)) {
+			String relationalId = getRelationalId(child, RELATIONSHIP_KEY);
+			List<Client> childMothers = relationalId == null ? null : mothersById.get(relationalKey(relationalId));
+			if (childMothers != null) {
+				for (Client mother : childMothers) {
 					childMotherList.add(new ChildMother(child, mother));
 				}
 			}
@@ -287,6 +368,10 @@ public class SearchHelper {
 		return childMotherList;
 	}
 
+	private static String relationalKey(String id) {
+		return id.toLowerCase(Locale.ROOT);
+	}
+
 	public static String getRelationalId(Client c, String relationshipKey) {
 		Map<String, List<String>> relationships = c.getRelationships();
 		if (relationships != null) {
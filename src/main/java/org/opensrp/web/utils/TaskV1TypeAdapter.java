@@ -0,0 +1,147 @@
+package org.opensrp.web.utils;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.TypeAdapter;
+import com.google.gson.annotations.SerializedName;
+import com.google.gson.reflect.TypeToken;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import org.joda.time.DateTime;
+import org.smartregister.domain.Period;
+import org.smartregister.domain.Task;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.opensrp.web.rest.TaskResource.EXECUTION_END_DATE;
+import static org.opensrp.web.rest.TaskResource.EXECUTION_PERIOD;
+import static org.opensrp.web.rest.TaskResource.EXECUTION_START_DATE;
+
+/**
+ * Writes a task in the V1 API data model straight to a {@link JsonWriter}: the fields of the task are written as Gson
+ * would write them, except that the execution period is written as {@code executionStartDate} and
+ * {@code executionEndDate}. The fields and their adapters are looked up once, so writing a task neither copies it to
+ * a DTO nor builds a JSON tree. A V1 task is read back with the task adapter of the gson, after its execution start and
+ * end dates are turned into the execution period.
+ */
+public class TaskV1TypeAdapter extends TypeAdapter<Task> {
+
+	private final Gson gson;
+
+	private final List<BoundField> fields = new ArrayList<>();
+
+	private final TypeAdapter<DateTime> dateTimeAdapter;
+
+	private final TypeAdapter<Task> delegate;
+
+	private final TypeAdapter<JsonElement> jsonElementAdapter;
+
+	/**
+	 * @param gson the gson whose type adapters write the field values
+	 */
+	public TaskV1TypeAdapter(Gson gson) {
+		this.gson = gson;
+		for (Class<?> type = Task.class; type != null && type != Object.class; type = type.getSuperclass()) {
+			for (Field field : type.getDeclaredFields()) {
+				int modifiers = field.getModifiers();
+				if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+						|| EXECUTION_PERIOD.equals(field.getName())) {
+					continue;
+				}
+				field.setAccessible(true);
+				SerializedName serializedName = field.getAnnotation(SerializedName.class);
+				fields.add(new BoundField(serializedName == null ? field.getName() : serializedName.value(), field,
+						gson.getAdapter(TypeToken.get(field.getGenericType()))));
+			}
+		}
+		this.dateTimeAdapter = gson.getAdapter(DateTime.class);
+		this.delegate = gson.getAdapter(Task.class);
+		this.jsonElementAdapter = gson.getAdapter(JsonElement.class);
+	}
+
+	/**
+	 * @param gson a gson instance
+	 * @return whether this adapter writes field values with the given gson
+	 */
+	public boolean isFor(Gson gson) {
+		return this.gson == gson;
+	}
+
+	@Override
+	public void write(JsonWriter out, Task task) throws IOException {
+		if (task == null) {
+			out.nullValue();
+			return;
+		}
+		out.beginObject();
+		for (BoundField field : fields) {
+			field.write(out, task);
+		}
+		Period executionPeriod = task.getExecutionPeriod();
+		if (executionPeriod != null) {
+			if (executionPeriod.getStart() != null) {
+				out.name(EXECUTION_START_DATE);
+				dateTimeAdapter.write(out, executionPeriod.getStart());
+			}
+			if (executionPeriod.getEnd() != null) {
+				out.name(EXECUTION_END_DATE);
+				dateTimeAdapter.write(out, executionPeriod.getEnd());
+			}
+		}
+		out.endObject();
+	}
+
+	@Override
+	public Task read(JsonReader in) throws IOException {
+		JsonElement json = jsonElementAdapter.read(in);
+		if (json == null || !json.isJsonObject()) {
+			return delegate.fromJsonTree(json);
+		}
+		JsonObject taskJson = json.getAsJsonObject();
+		JsonElement start = taskJson.remove(EXECUTION_START_DATE);
+		JsonElement end = taskJson.remove(EXECUTION_END_DATE);
+		Task task = delegate.fromJsonTree(taskJson);
+		if (task != null && (start != null || end != null)) {
+			task.setExecutionPeriod(new Period(start == null ? null : dateTimeAdapter.fromJsonTree(start),
+					end == null ? null : dateTimeAdapter.fromJsonTree(end)));
+		}
+		return task;
+	}
+
+	private static class BoundField {
+
+		private final String name;
+
+		private final Field field;
+
+		@SuppressWarnings("rawtypes")
+		private final TypeAdapter adapter;
+
+		private BoundField(String name, Field field, TypeAdapter<?> adapter) {
+			this.name = name;
+			this.field = field;
+			this.adapter = adapter;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void write(JsonWriter out, Task task) throws IOException {
+			Object value;
+			try {
+				value = field.get(task);
+			}
+			catch (IllegalAccessException e) {
+				throw new IllegalStateException("Could not read task field " + field.getName(), e);
+			}
+			// nulls are left out as gson does unless serializeNulls is set
+			if (value != null) {
+				out.name(name);
+				adapter.write(out, value);
+			}
+		}
+	}
+}
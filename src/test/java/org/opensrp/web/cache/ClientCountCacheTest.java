@@ -0,0 +1,71 @@
+package org.opensrp.web.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensrp.search.ClientSearchBean;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ClientCountCacheTest {
+
+	private ClientCountCache clientCountCache;
+
+	@Before
+	public void setUp() {
+		clientCountCache = new ClientCountCache(60, 10);
+	}
+
+	@Test
+	public void testBuildKeyIgnoresPageAndOrder() {
+		ClientSearchBean firstPage = createSearchBean("male");
+		firstPage.setPageNumber(0);
+		firstPage.setPageSize(10);
+		ClientSearchBean secondPage = createSearchBean("male");
+		secondPage.setPageNumber(1);
+		secondPage.setPageSize(20);
+		secondPage.setOrderByField("firstName");
+		secondPage.setOrderByType("DESC");
+
+		assertEquals(ClientCountCache.buildKey("household", firstPage, null),
+				ClientCountCache.buildKey("household", secondPage, null));
+	}
+
+	@Test
+	public void testBuildKeyDiffersForDifferentCriteria() {
+		String key = ClientCountCache.buildKey("household", createSearchBean("male"), null);
+
+		assertNotEquals(key, ClientCountCache.buildKey("household", createSearchBean("female"), null));
+		assertNotEquals(key, ClientCountCache.buildKey("anc", createSearchBean("male"), null));
+	}
+
+	@Test
+	public void testGetCountsOncePerKey() {
+		AtomicInteger counts = new AtomicInteger();
+		String key = ClientCountCache.buildKey("household", createSearchBean("male"), null);
+
+		assertEquals(5, clientCountCache.get(key, () -> {
+			counts.incrementAndGet();
+			return 5;
+		}));
+		assertEquals(5, clientCountCache.get(key, () -> {
+			counts.incrementAndGet();
+			return 6;
+		}));
+
+		assertEquals(1, counts.get());
+		assertEquals(1, clientCountCache.size());
+
+		clientCountCache.invalidateAll();
+		assertEquals(0, clientCountCache.size());
+	}
+
+	private ClientSearchBean createSearchBean(String gender) {
+		ClientSearchBean searchBean = new ClientSearchBean();
+		searchBean.setGender(gender);
+		searchBean.setNameLike("abc");
+		return searchBean;
+	}
+}
@@ -0,0 +1,95 @@
+package org.opensrp.web.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.opensrp.service.ClientService;
+import org.smartregister.domain.Client;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.when;
+
+public class ClientNameIndexTest {
+
+	private ClientNameIndex clientNameIndex;
+
+	@Before
+	public void setUp() {
+		clientNameIndex = new ClientNameIndex();
+		clientNameIndex.index(createClient("client-1", "Wanjiru", "Mwangi", 1L));
+		clientNameIndex.index(createClient("client-2", "Wanjiku", "Kamau", 2L));
+		clientNameIndex.index(createClient("client-3", "Otieno", "Odhiambo", 3L));
+	}
+
+	@Test
+	public void testSearchFindsSpellingVariantsRankedBySimilarity() {
+		assertEquals(Arrays.asList("client-1", "client-2"), clientNameIndex.search("wanjiru"));
+		assertEquals(Collections.singletonList("client-1"), clientNameIndex.search("Mwangy Wanjiru"));
+		assertEquals(Collections.singletonList("client-3"), clientNameIndex.search("Otyeno"));
+		assertTrue(clientNameIndex.search("Achieng").isEmpty());
+	}
+
+	@Test
+	public void testSearchIgnoresCaseAndAccents() {
+		assertEquals(Collections.singletonList("client-3"), clientNameIndex.search("ODHI\u00C1MBO"));
+	}
+
+	@Test
+	public void testIndexReplacesPreviousNames() {
+		clientNameIndex.index(createClient("client-3", "Akinyi", "Odhiambo", 4L));
+
+		assertTrue(clientNameIndex.search("Otieno").isEmpty());
+		assertEquals(Collections.singletonList("client-3"), clientNameIndex.search("Akinyi"));
+		assertEquals(3, clientNameIndex.size());
+	}
+
+	@Test
+	public void testFindClientsReturnsClientsInRankedOrder() {
+		Client mwangi = createClient("client-1", "Wanjiru", "Mwangi", 1L);
+		Client kamau = createClient("client-2", "Wanjiku", "Kamau", 2L);
+
+		List<Client> clients = clientNameIndex.findClients("Wanjiru", baseEntityIds -> {
+			assertEquals(Arrays.asList("client-1", "client-2"), baseEntityIds);
+			return Arrays.asList(kamau, mwangi);
+		});
+
+		assertEquals(Arrays.asList(mwangi, kamau), clients);
+	}
+
+	@Test
+	public void testRefreshPagesThroughClientsByServerVersion() {
+		ClientService clientService = Mockito.mock(ClientService.class);
+		when(clientService.findByServerVersion(anyLong(), anyInt())).thenReturn(Collections.emptyList());
+		when(clientService.findByServerVersion(eq(0L), anyInt())).thenReturn(
+				Collections.nCopies(1000, createClient("client-4", "Achieng", "Ouma", 10L)));
+		when(clientService.findByServerVersion(eq(11L), anyInt())).thenReturn(
+				Collections.singletonList(createClient("client-5", "Kiprono", "Kirui", 12L)));
+		ClientNameIndex index = new ClientNameIndex();
+		index.setClientService(clientService);
+		assertFalse(index.isReady());
+
+		index.refresh();
+
+		assertTrue(index.isReady());
+		assertEquals(Collections.singletonList("client-4"), index.search("Achieng"));
+		assertEquals(Collections.singletonList("client-5"), index.search("Kiprono"));
+		Mockito.verify(clientService, Mockito.never()).findByServerVersion(eq(13L), anyInt());
+	}
+
+	private Client createClient(String baseEntityId, String firstName, String lastName, long serverVersion) {
+		Client client = new Client(baseEntityId);
+		client.setFirstName(firstName);
+		client.setLastName(lastName);
+		client.setServerVersion(serverVersion);
+		return client;
+	}
+}
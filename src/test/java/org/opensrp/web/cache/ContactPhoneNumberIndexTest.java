@@ -0,0 +1,94 @@
+package org.opensrp.web.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smartregister.domain.Event;
+import org.smartregister.domain.Obs;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+
+public class ContactPhoneNumberIndexTest {
+
+	private ContactPhoneNumberIndex contactPhoneNumberIndex;
+
+	private final AtomicInteger loads = new AtomicInteger();
+
+	@Before
+	public void setUp() {
+		contactPhoneNumberIndex = new ContactPhoneNumberIndex(true, 60, 10);
+		loads.set(0);
+	}
+
+	@Test
+	public void testGetLoadsEachNumberOnceAsSearched() {
+		contactPhoneNumberIndex.get("0727000000", phoneNumber -> load("client-1", "client-2"));
+		List<String> ids = contactPhoneNumberIndex.get("0727000000", phoneNumber -> load());
+		List<String> formattedIds = contactPhoneNumberIndex.get("0727 000 000", phoneNumber -> load("client-3"));
+
+		assertEquals(Arrays.asList("client-1", "client-2"), ids);
+		assertEquals(Collections.singletonList("client-3"), formattedIds);
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testIndexDropsNumbersOfSavedEvents() {
+		contactPhoneNumberIndex.get("0727000000", phoneNumber -> load("client-1"));
+		contactPhoneNumberIndex.get("0711000000", phoneNumber -> load("client-3"));
+
+		contactPhoneNumberIndex.index(createEvent("client-2", "0727000000"));
+
+		assertEquals(1, contactPhoneNumberIndex.size());
+		assertEquals(Arrays.asList("client-1", "client-2"),
+				contactPhoneNumberIndex.get("0727000000", phoneNumber -> load("client-1", "client-2")));
+		assertEquals(3, loads.get());
+	}
+
+	@Test
+	public void testIndexDropsOldNumbersOfTheClient() {
+		contactPhoneNumberIndex.get("0727000000", phoneNumber -> load("client-1", "client-2"));
+
+		contactPhoneNumberIndex.index(createEvent("client-1", "0711000000"));
+
+		assertEquals(Collections.singletonList("client-2"),
+				contactPhoneNumberIndex.get("0727000000", phoneNumber -> load("client-2")));
+	}
+
+	@Test
+	public void testGetDoesNotCacheIdsLoadedWhileAnEventWasSaved() {
+		contactPhoneNumberIndex.get("0727000000", phoneNumber -> {
+			contactPhoneNumberIndex.index(createEvent("client-2", "0727000000"));
+			return load("client-1");
+		});
+
+		assertEquals(0, contactPhoneNumberIndex.size());
+	}
+
+	@Test
+	public void testGetScansEveryTimeWhenDisabled() {
+		contactPhoneNumberIndex = new ContactPhoneNumberIndex(false, 60, 10);
+
+		contactPhoneNumberIndex.get("0727000000", phoneNumber -> load("client-1"));
+		contactPhoneNumberIndex.get("0727000000", phoneNumber -> load("client-1"));
+
+		assertEquals(2, loads.get());
+		assertEquals(0, contactPhoneNumberIndex.size());
+	}
+
+	private List<String> load(String... ids) {
+		loads.incrementAndGet();
+		return Arrays.asList(ids);
+	}
+
+	private Event createEvent(String baseEntityId, String phoneNumber) {
+		Event event = new Event();
+		event.setBaseEntityId(baseEntityId);
+		event.addObs(new Obs("concept", "text", ContactPhoneNumberIndex.CONTACT_PHONE_NUMBER_CONCEPT, null,
+				Collections.singletonList(phoneNumber), null, "phone_number"));
+		return event;
+	}
+}
@@ -0,0 +1,182 @@
+package org.opensrp.web.cache;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MediaFileCacheTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final Map<String, String> bucket = new HashMap<>();
+
+	private final Map<String, Integer> downloads = new HashMap<>();
+
+	private SimpleMeterRegistry meterRegistry;
+
+	private MediaFileCache mediaFileCache;
+
+	@Before
+	public void setUp() throws Exception {
+		bucket.put("images/1.jpg", "0123456789");
+		bucket.put("images/2.jpg", "abcdefghij");
+		bucket.put("images/3.jpg", "ABCDEFGHIJ");
+		meterRegistry = new SimpleMeterRegistry();
+		mediaFileCache = new MediaFileCache(temporaryFolder.getRoot().getAbsolutePath(), 25, 60, 0);
+		mediaFileCache.setMeterRegistry(meterRegistry);
+	}
+
+	@After
+	public void tearDown() {
+		mediaFileCache.close();
+	}
+
+	@Test
+	public void testGetDownloadsOnceAndServesCachedCopy() throws Exception {
+		File first = mediaFileCache.get("images/1.jpg", s3());
+		File second = mediaFileCache.get("images/1.jpg", s3());
+
+		assertEquals(first, second);
+		assertEquals("1.jpg", second.getName());
+		assertEquals("0123456789", new String(Files.readAllBytes(second.toPath()), StandardCharsets.UTF_8));
+		assertEquals(1, downloads.get("images/1.jpg").intValue());
+		assertEquals(10, mediaFileCache.getBytesSaved());
+		assertEquals(0.5, mediaFileCache.getHitRatio(), 0);
+		assertEquals(1, meterRegistry.get(MediaFileCache.HITS_METRIC).functionCounter().count(), 0);
+		assertEquals(0.5, meterRegistry.get(MediaFileCache.HIT_RATIO_METRIC).gauge().value(), 0);
+	}
+
+	@Test
+	public void testGetEvictsLeastRecentlyUsedFilesOverByteCap() {
+		File first = mediaFileCache.get("images/1.jpg", s3());
+		File second = mediaFileCache.get("images/2.jpg", s3());
+		mediaFileCache.get("images/1.jpg", s3());
+		mediaFileCache.get("images/3.jpg", s3());
+
+		assertEquals(20, mediaFileCache.getSizeInBytes());
+		assertTrue(first.exists());
+		assertFalse(second.exists());
+
+		mediaFileCache.get("images/2.jpg", s3());
+		assertEquals(2, downloads.get("images/2.jpg").intValue());
+		assertEquals(1, downloads.get("images/1.jpg").intValue());
+	}
+
+	@Test
+	public void testGetDownloadsAgainWhenCachedCopyChanged() throws Exception {
+		File cached = mediaFileCache.get("images/1.jpg", s3());
+		Files.write(cached.toPath(), "9876543210".getBytes(StandardCharsets.UTF_8));
+		// the rewrite may land within the timestamp resolution of the file system
+		assertTrue(cached.setLastModified(cached.lastModified() + 2000));
+
+		File reloaded = mediaFileCache.get("images/1.jpg", s3());
+
+		assertEquals("0123456789", new String(Files.readAllBytes(reloaded.toPath()), StandardCharsets.UTF_8));
+		assertEquals(2, downloads.get("images/1.jpg").intValue());
+		assertEquals(0, mediaFileCache.getBytesSaved());
+	}
+
+	@Test
+	public void testInvalidateByPrefixDropsMatchingFiles() {
+		bucket.put("images/11.jpg", "0123");
+		File cached = mediaFileCache.get("images/1.jpg", s3());
+		File other = mediaFileCache.get("images/11.jpg", s3());
+
+		mediaFileCache.invalidateByPrefix("images/1.");
+
+		assertFalse(cached.exists());
+		assertTrue(other.exists());
+		assertEquals(4, mediaFileCache.getSizeInBytes());
+		mediaFileCache.get("images/1.jpg", s3());
+		assertEquals(2, downloads.get("images/1.jpg").intValue());
+	}
+
+	@Test
+	public void testDroppedFilesAreKeptUntilDeleteDelayPasses() throws Exception {
+		mediaFileCache = new MediaFileCache(temporaryFolder.getRoot().getAbsolutePath(), 25, 60, 60);
+		File cached = mediaFileCache.get("images/1.jpg", s3());
+
+		mediaFileCache.invalidateByPrefix("images/1.");
+
+		assertTrue(cached.exists());
+		assertEquals(0, mediaFileCache.getSizeInBytes());
+		File reloaded = mediaFileCache.get("images/1.jpg", s3());
+		assertNotEquals(cached, reloaded);
+		assertEquals(2, downloads.get("images/1.jpg").intValue());
+		assertTrue(cached.exists());
+	}
+
+	@Test
+	public void testInstancesSharingDirectoryKeepTheirOwnFiles() throws Exception {
+		File cached = mediaFileCache.get("images/1.jpg", s3());
+		MediaFileCache otherInstance = new MediaFileCache(temporaryFolder.getRoot().getAbsolutePath(), 25, 60, 0);
+		File otherCached = otherInstance.get("images/1.jpg", s3());
+
+		assertNotEquals(cached.getParentFile().getParentFile(), otherCached.getParentFile().getParentFile());
+		otherInstance.close();
+
+		assertFalse(otherCached.exists());
+		assertTrue(cached.exists());
+		assertEquals(cached, mediaFileCache.get("images/1.jpg", s3()));
+	}
+
+	@Test
+	public void testFoldersOfStoppedInstancesAreDeleted() throws Exception {
+		File stoppedInstance = new File(new File(temporaryFolder.getRoot(), "opensrp-media-cache"), "instance-stopped");
+		assertTrue(new File(stoppedInstance, "1").mkdirs());
+		assertTrue(new File(stoppedInstance, ".lock").createNewFile());
+		File cached = mediaFileCache.get("images/1.jpg", s3());
+
+		MediaFileCache otherInstance = new MediaFileCache(temporaryFolder.getRoot().getAbsolutePath(), 25, 60, 0);
+		otherInstance.close();
+
+		assertFalse(stoppedInstance.exists());
+		assertTrue(cached.exists());
+	}
+
+	@Test
+	public void testGetReturnsNullForMissingFiles() {
+		assertNull(mediaFileCache.get("images/missing.jpg", s3()));
+		assertEquals(0, mediaFileCache.getSizeInBytes());
+	}
+
+	/**
+	 * Stands in for the S3 file manager, which downloads each object to a new temporary file
+	 */
+	private Function<String, File> s3() {
+		return filePath -> {
+			String content = bucket.get(filePath);
+			if (content == null) {
+				return null;
+			}
+			downloads.merge(filePath, 1, Integer::sum);
+			try {
+				File download = new File(temporaryFolder.newFolder(), new File(filePath).getName());
+				Files.write(download.toPath(), content.getBytes(StandardCharsets.UTF_8));
+				return download;
+			}
+			catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		};
+	}
+}
@@ -0,0 +1,126 @@
+package org.opensrp.web.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.smartregister.domain.PlanDefinition;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class PlanDefinitionCacheTest {
+
+	private PlanDefinitionCache planDefinitionCache;
+
+	private final List<List<String>> loadedIdentifiers = new ArrayList<>();
+
+	private final List<List<String>> loadedFields = new ArrayList<>();
+
+	@Before
+	public void setUp() {
+		planDefinitionCache = new PlanDefinitionCache(300, 10);
+		loadedIdentifiers.clear();
+		loadedFields.clear();
+	}
+
+	@Test
+	public void testGetLoadsOnlyPlansNotCached() {
+		List<String> fields = Arrays.asList("identifier", "status", "jurisdiction");
+		planDefinitionCache.get(Arrays.asList("plan-1", "plan-2"), fields, false, this::load);
+		List<PlanDefinition> cachedPlans = planDefinitionCache.get(Arrays.asList("plan-2", "plan-3", "plan-1"),
+				Arrays.asList("jurisdiction", "status", "identifier"), false, this::load);
+
+		assertEquals(Arrays.asList(Arrays.asList("plan-1", "plan-2"), Collections.singletonList("plan-3")),
+				loadedIdentifiers);
+		assertEquals(3, cachedPlans.size());
+		assertEquals("plan-2", cachedPlans.get(0).getIdentifier());
+		assertEquals("plan-1", cachedPlans.get(1).getIdentifier());
+		assertEquals("plan-3", cachedPlans.get(2).getIdentifier());
+		assertEquals(3, planDefinitionCache.size());
+	}
+
+	@Test
+	public void testGetCachesPlansWhenIdentifierIsNotRequested() {
+		List<String> fields = Collections.singletonList("status");
+		planDefinitionCache.get(Arrays.asList("plan-1", "plan-2"), fields, false, this::load);
+		List<PlanDefinition> cachedPlans = planDefinitionCache.get(Arrays.asList("plan-1", "plan-2"), fields, false,
+				this::load);
+
+		assertEquals(Collections.singletonList(Arrays.asList("status", "identifier")), loadedFields);
+		assertEquals(1, loadedIdentifiers.size());
+		assertEquals(2, cachedPlans.size());
+		assertNull(cachedPlans.get(0).getIdentifier());
+		assertNull(cachedPlans.get(1).getIdentifier());
+		assertEquals(2, planDefinitionCache.size());
+
+		planDefinitionCache.invalidate("plan-1");
+		assertEquals(1, planDefinitionCache.size());
+	}
+
+	@Test
+	public void testInvalidateDropsOnlyThePlanSaved() {
+		planDefinitionCache.get(Arrays.asList("plan-1", "plan-11"), null, false, this::load);
+		planDefinitionCache.get(Collections.singletonList("plan-1"), Collections.singletonList("status"), false,
+				this::load);
+		assertEquals(3, planDefinitionCache.size());
+
+		planDefinitionCache.invalidate("plan-1");
+
+		assertEquals(1, planDefinitionCache.size());
+		planDefinitionCache.get(Arrays.asList("plan-1", "plan-11"), null, false, this::load);
+		assertEquals(Collections.singletonList("plan-1"), loadedIdentifiers.get(2));
+	}
+
+	@Test
+	public void testSlowLoadDoesNotReplaceNewerServerVersion() {
+		PlanDefinition newerPlan = plan("plan-1", 2L);
+		planDefinitionCache.get(Collections.singletonList("plan-1"), null, false, (identifiers, fields) -> {
+			planDefinitionCache.get(identifiers, null, false,
+					(newerIdentifiers, newerFields) -> Collections.singletonList(newerPlan));
+			return Collections.singletonList(plan("plan-1", 1L));
+		});
+
+		assertSame(newerPlan, planDefinitionCache.get(Collections.singletonList("plan-1"), null, false, this::load).get(0));
+	}
+
+	@Test
+	public void testGetDoesNotCacheNullResult() {
+		assertNull(planDefinitionCache.get(Collections.singletonList("plan-1"), null, false, (identifiers, fields) -> null));
+		assertEquals(0, planDefinitionCache.size());
+	}
+
+	@Test
+	public void testBuildKeyDistinguishesFieldsAndTemplates() {
+		assertEquals(PlanDefinitionCache.buildKey("plan-1", null, false),
+				PlanDefinitionCache.buildKey("plan-1", Collections.emptyList(), false));
+		assertNotEquals(PlanDefinitionCache.buildKey("plan-1", null, false),
+				PlanDefinitionCache.buildKey("plan-1", Collections.singletonList("status"), false));
+		assertNotEquals(PlanDefinitionCache.buildKey("plan-1", null, false),
+				PlanDefinitionCache.buildKey("plan-1", null, true));
+	}
+
+	private List<PlanDefinition> load(List<String> identifiers, List<String> fields) {
+		loadedIdentifiers.add(new ArrayList<>(identifiers));
+		if (fields != null) {
+			loadedFields.add(new ArrayList<>(fields));
+		}
+		List<PlanDefinition> plans = new ArrayList<>();
+		for (String identifier : identifiers) {
+			plans.add(plan(identifier, 1L));
+		}
+		return plans;
+	}
+
+	private static PlanDefinition plan(String identifier, Long serverVersion) {
+		PlanDefinition plan = new PlanDefinition();
+		plan.setIdentifier(identifier);
+		plan.setServerVersion(serverVersion);
+		return plan;
+	}
+}
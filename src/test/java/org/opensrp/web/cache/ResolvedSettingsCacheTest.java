@@ -0,0 +1,67 @@
+package org.opensrp.web.cache;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.opensrp.domain.setting.SettingConfiguration;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class ResolvedSettingsCacheTest {
+
+	private ResolvedSettingsCache resolvedSettingsCache;
+
+	private final List<SettingConfiguration> settings = Collections.singletonList(new SettingConfiguration());
+
+	@Before
+	public void setUp() {
+		resolvedSettingsCache = new ResolvedSettingsCache(300, 10);
+	}
+
+	@Test
+	public void testGetLoadsOnceForSameKey() {
+		AtomicInteger loads = new AtomicInteger();
+		String key = ResolvedSettingsCache.buildKey("location-1", 12L, "team-1");
+
+		assertSame(settings, resolvedSettingsCache.get(key, () -> {
+			loads.incrementAndGet();
+			return settings;
+		}));
+		assertSame(settings, resolvedSettingsCache.get(key, () -> {
+			loads.incrementAndGet();
+			return settings;
+		}));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testInvalidateAllDropsResolvedSettings() {
+		String key = ResolvedSettingsCache.buildKey("location-1", 12L);
+		resolvedSettingsCache.get(key, () -> settings);
+		assertEquals(1, resolvedSettingsCache.size());
+
+		resolvedSettingsCache.invalidateAll();
+
+		assertEquals(0, resolvedSettingsCache.size());
+	}
+
+	@Test
+	public void testGetDoesNotCacheNullResult() {
+		String key = ResolvedSettingsCache.buildKey("location-1", 12L);
+		assertNull(resolvedSettingsCache.get(key, () -> null));
+		assertEquals(0, resolvedSettingsCache.size());
+	}
+
+	@Test
+	public void testBuildKeyDistinguishesServerVersionAndParameters() {
+		assertNotEquals(ResolvedSettingsCache.buildKey("location-1", 1L), ResolvedSettingsCache.buildKey("location-1", 2L));
+		assertNotEquals(ResolvedSettingsCache.buildKey("location-1", 1L, "team-1", null),
+				ResolvedSettingsCache.buildKey("location-1", 1L, null, "team-1"));
+	}
+}
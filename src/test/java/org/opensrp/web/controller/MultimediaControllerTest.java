@@ -1,6 +1,8 @@
 package org.opensrp.web.controller;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
@@ -8,10 +10,15 @@ import static org.mockito.Mockito.verify;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
 
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
+import java.util.Date;
 
+import javax.imageio.ImageIO;
 import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.junit.Before;
@@ -24,10 +31,13 @@ import org.mockito.MockitoAnnotations;
 import org.opensrp.domain.Multimedia;
 import org.opensrp.dto.form.MultimediaDTO;
 import org.opensrp.service.MultimediaService;
+import org.opensrp.service.multimedia.MultimediaFileManager;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
+import org.opensrp.web.serviceimpl.MultimediaUploadServiceImpl;
 import org.powermock.reflect.Whitebox;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
@@ -58,6 +68,9 @@ public class MultimediaControllerTest {
 		mockMvc = MockMvcBuilders.standaloneSetup(multimediaController)
 		        .addFilter(new CrossSiteScriptingPreventionFilter(), "/*").build();
 		ReflectionTestUtils.setField(multimediaController, "allowedMimeTypes", allowedMimeTypes);
+		MultimediaUploadServiceImpl multimediaUploadService = new MultimediaUploadServiceImpl(1024 * 1024, 60);
+		multimediaUploadService.setMultimediaService(multimediaService);
+		multimediaController.setMultimediaUploadService(multimediaUploadService);
 	}
 	
 	@Test
@@ -65,7 +78,8 @@ public class MultimediaControllerTest {
 		MultipartFile multipartFile = Mockito.mock(MultipartFile.class);
 		Mockito.doReturn("originalName").when(multipartFile).getOriginalFilename();
 		Mockito.doReturn("image/jpeg").when(multipartFile).getContentType();
-		Mockito.doReturn(new byte[10]).when(multipartFile).getBytes();
+		Mockito.doReturn(10L).when(multipartFile).getSize();
+		Mockito.doReturn(new ByteArrayInputStream(new byte[10])).when(multipartFile).getInputStream();
 		
 		multimediaController.uploadFiles("providerID", "entity-id", "file-category", multipartFile);
 		
@@ -89,7 +103,7 @@ public class MultimediaControllerTest {
 		Whitebox.setInternalState(controller, "multimediaService", multimediaService);
 		File file= new File("opensrp-server-web/src/main/webapp/resources/opensrp_logo.png");
 		when(multimediaService.retrieveFile(anyString())).thenReturn(file);
-		controller.downloadFileWithAuth(httpServletResponse, "fileName");
+		controller.downloadFileWithAuth(httpServletResponse, "fileName", mock(HttpServletRequest.class));
 		
 		// verify call to the service
 		Mockito.verify(multimediaService).retrieveFile(anyString());
@@ -139,6 +153,78 @@ public class MultimediaControllerTest {
 		assertEquals(result.getResponse().getStatus(), HttpStatus.BAD_REQUEST.value());
 	}
 	
+	@Test
+	public void testDownloadFileByClientIdWithSizeReturnsRendition() throws Exception {
+		File original = File.createTempFile("profile", ".png");
+		original.deleteOnExit();
+		ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB), "png", original);
+		when(multimediaService.retrieveFile(anyString())).thenReturn(original);
+		ReflectionTestUtils.setField(multimediaController, "renditionSizes", "48,96");
+		ReflectionTestUtils.setField(multimediaController, "renditionMaxAge", 3600L);
+		
+		MvcResult result = mockMvc.perform(get(BASE_URL + "/profileimage/{baseEntityId}", "base-entity-id").param("size", "90")
+		        .requestAttr("org.apache.tomcat.sendfile.support", true)).andReturn();
+		
+		assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+		assertEquals("image/jpeg", result.getResponse().getContentType());
+		assertEquals("private, max-age=3600", result.getResponse().getHeader("Cache-Control"));
+		BufferedImage rendition = ImageIO.read(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()));
+		assertEquals(96, rendition.getWidth());
+		assertEquals(48, rendition.getHeight());
+		assertTrue(original.exists());
+	}
+	
+	@Test
+	public void testDownloadFileByClientIdWithSizeStoresRendition() throws Exception {
+		File original = File.createTempFile("profile", ".png");
+		original.deleteOnExit();
+		ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB), "png", original);
+		String renditionLocation = MultimediaService.IMAGES_DIR + File.separator + "base-entity-id-1000-96.jpg";
+		MultimediaFileManager fileManager = mock(MultimediaFileManager.class);
+		when(multimediaService.getFileManager()).thenReturn(fileManager);
+		when(multimediaService.findByCaseId("base-entity-id")).thenReturn(profileImage(new Date(1000L)));
+		when(multimediaService.retrieveFile(MultimediaService.IMAGES_DIR + File.separator + "base-entity-id.png"))
+		        .thenReturn(original);
+		ReflectionTestUtils.setField(multimediaController, "renditionSizes", "48,96");
+		
+		MvcResult result = mockMvc.perform(get(BASE_URL + "/profileimage/{baseEntityId}", "base-entity-id").param("size", "90"))
+		        .andReturn();
+		
+		assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+		ArgumentCaptor<byte[]> renditionCaptor = ArgumentCaptor.forClass(byte[].class);
+		verify(fileManager).persistFileToStorage(Mockito.eq(renditionLocation), renditionCaptor.capture());
+		assertArrayEquals(result.getResponse().getContentAsByteArray(), renditionCaptor.getValue());
+	}
+	
+	@Test
+	public void testDownloadFileByClientIdWithSizeServesStoredRendition() throws Exception {
+		File stored = File.createTempFile("rendition", ".jpg");
+		stored.deleteOnExit();
+		ImageIO.write(new BufferedImage(96, 48, BufferedImage.TYPE_INT_RGB), "jpg", stored);
+		MultimediaFileManager fileManager = mock(MultimediaFileManager.class);
+		when(multimediaService.getFileManager()).thenReturn(fileManager);
+		when(multimediaService.findByCaseId("base-entity-id")).thenReturn(profileImage(new Date(1000L)));
+		when(multimediaService.retrieveFile(MultimediaService.IMAGES_DIR + File.separator + "base-entity-id-1000-96.jpg"))
+		        .thenReturn(stored);
+		ReflectionTestUtils.setField(multimediaController, "renditionSizes", "48,96");
+		
+		MvcResult result = mockMvc.perform(get(BASE_URL + "/profileimage/{baseEntityId}", "base-entity-id").param("size", "90"))
+		        .andReturn();
+		
+		assertEquals(HttpStatus.OK.value(), result.getResponse().getStatus());
+		assertEquals(stored.length(), result.getResponse().getContentAsByteArray().length);
+		verify(multimediaService, Mockito.never())
+		        .retrieveFile(MultimediaService.IMAGES_DIR + File.separator + "base-entity-id.png");
+		verify(fileManager, Mockito.never()).persistFileToStorage(anyString(), Mockito.any(byte[].class));
+	}
+	
+	@Test
+	public void testDownloadFileByClientIdWithInvalidSize() throws Exception {
+		MvcResult result = mockMvc.perform(get(BASE_URL + "/profileimage/{baseEntityId}", "base-entity-id").param("size", "0"))
+		        .andExpect(content().string("Sorry. Size should be a positive number of pixels")).andReturn();
+		assertEquals(result.getResponse().getStatus(), HttpStatus.BAD_REQUEST.value());
+	}
+	
 	@Test
 	public void testDownloadFileWithAuthWithSpecialCharacterFileName() throws Exception {
 		MvcResult result = mockMvc.perform(get(BASE_URL + "/download/{fileName:.+}", "test*.pdf"))
@@ -161,4 +247,28 @@ public class MultimediaControllerTest {
 		verify(multimediaService).findByCaseId(anyString());
 	}
 	
+	@Test
+	public void testUploadShouldSkipIdenticalRepeatUpload() throws Exception {
+		MockMultipartFile first = new MockMultipartFile("file", "photo.jpg", "image/jpeg", new byte[] { 1, 2, 3 });
+		MockMultipartFile repeat = new MockMultipartFile("file", "photo.jpg", "image/jpeg", new byte[] { 1, 2, 3 });
+		MockMultipartFile changed = new MockMultipartFile("file", "photo.jpg", "image/jpeg", new byte[] { 3, 2, 1 });
+		when(multimediaService.saveFile(Mockito.any(MultimediaDTO.class), Mockito.any(byte[].class), anyString()))
+		        .thenReturn("success");
+		
+		multimediaController.uploadFiles("providerID", "entity-id", "profile", first);
+		ResponseEntity<String> response = multimediaController.uploadFiles("providerID", "entity-id", "profile", repeat);
+		multimediaController.uploadFiles("providerID", "entity-id", "profile", changed);
+		
+		assertEquals("\"success\"", response.getBody());
+		verify(multimediaService, Mockito.times(2)).saveFile(Mockito.any(MultimediaDTO.class), Mockito.any(byte[].class),
+		    anyString());
+	}
+	
+	private static Multimedia profileImage(Date dateUploaded) {
+		Multimedia multimedia = new Multimedia();
+		multimedia.setCaseId("base-entity-id");
+		multimedia.setContentType("image/png");
+		multimedia.setDateUploaded(dateUploaded);
+		return multimedia;
+	}
 }
@@ -1,24 +1,39 @@
 package org.opensrp.web.controller;
 
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.startsWith;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.AssertionErrors.fail;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import org.apache.commons.io.FileUtils;
+
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
+import org.opensrp.api.domain.User;
+import org.opensrp.connector.openmrs.service.OpenmrsUserService;
 import org.opensrp.domain.IdentifierSource;
 import org.opensrp.service.IdentifierSourceService;
 import org.opensrp.service.OpenmrsIDService;
@@ -28,6 +43,7 @@ import org.opensrp.web.rest.it.TestWebContextLoader;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.context.SecurityContext;
@@ -58,6 +74,9 @@ public class UniqueIdControllerTest {
 	@Mock
 	private OpenmrsIDService openmrsIdService;
 
+	@Mock
+	private OpenmrsUserService openmrsUserService;
+
 	@Mock
 	private IdentifierSourceService identifierSourceService;
 
@@ -125,6 +144,39 @@ public class UniqueIdControllerTest {
 		assertEquals(actualObj.get("identifiers").size(), 10);
 	}
 
+	@Test
+	public void testGetIdentifiersFromLeasedBlock() throws Exception {
+		List<String> leasedIds = new ArrayList<>();
+		for (int i = 0; i < 25; i++) {
+			leasedIds.add("ID-" + i);
+		}
+		IdentifierSource identifierSource = createIdentifierSource();
+		when(identifierSourceService.findByIdentifier(anyString())).thenReturn(identifierSource);
+		when(uniqueIdentifierService.generateIdentifiers(any(IdentifierSource.class), any(int.class), anyString()))
+				.thenReturn(leasedIds);
+		ReflectionTestUtils.setField(uniqueIdController, "objectMapper", mapper);
+		ReflectionTestUtils.setField(uniqueIdController, "leaseBlockSize", 20);
+		when(authentication.getName()).thenReturn("user");
+
+		MockHttpServletRequest req = new MockHttpServletRequest();
+		req.addParameter("numberToGenerate", "5");
+		req.addParameter("source", "10");
+		try {
+			JsonNode first = mapper.readTree(uniqueIdController.get(req, authentication).getBody());
+			JsonNode second = mapper.readTree(uniqueIdController.get(req, authentication).getBody());
+
+			assertEquals("ID-0", first.get("identifiers").get(0).asText());
+			assertEquals(5, first.get("identifiers").size());
+			assertEquals("ID-5", second.get("identifiers").get(0).asText());
+			assertEquals(5, second.get("identifiers").size());
+			verify(uniqueIdentifierService, times(1)).generateIdentifiers(eq(identifierSource), eq(25),
+					startsWith("lease:"));
+		}
+		finally {
+			uniqueIdController.closeLeasedIdentifiers();
+		}
+	}
+
 	@Test
 	public void testThisMonthDataSendTODHIS2ThrowsException() throws Exception {
 		List<String> mocked_expected_ids = new ArrayList<>();
@@ -146,6 +198,73 @@ public class UniqueIdControllerTest {
 		assertEquals(responseString,ERROR_MESSAGE);
 	}
 
+	@Test
+	public void testThisMonthDataSendTODHIS2StreamsPdfAndArchivesCopy() throws Exception {
+		File qrCodesDir = Files.createTempDirectory("qrcodes").toFile();
+		List<String> idsToPrint = asList("ID-1", "ID-2", "ID-3");
+		SecurityContext securityContext = mock(SecurityContext.class);
+		SecurityContextHolder.setContext(securityContext);
+		when(securityContext.getAuthentication()).thenReturn(getMockedAuthentication());
+		when(openmrsIdService.getNotUsedIdsAsString(3)).thenReturn(idsToPrint);
+		User user = mock(User.class);
+		when(user.getRoles()).thenReturn(Collections.singletonList("opensrp-generate-qr-code"));
+		when(openmrsUserService.getUser("admin")).thenReturn(user);
+		ReflectionTestUtils.setField(uniqueIdController, "qrCodesDir", qrCodesDir.getAbsolutePath());
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addParameter("batchSize", "3");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		try {
+			ResponseEntity<String> result = uniqueIdController.thisMonthDataSendTODHIS2(request, response);
+
+			assertNull(result);
+			byte[] pdf = response.getContentAsByteArray();
+			assertEquals("%PDF", new String(pdf, 0, 4));
+			verify(openmrsIdService).markIdsAsUsed(idsToPrint);
+			File[] archived = qrCodesDir.listFiles();
+			for (int i = 0; i < 100 && (archived.length == 0 || archived[0].length() < pdf.length); i++) {
+				Thread.sleep(50);
+				archived = qrCodesDir.listFiles();
+			}
+			assertEquals(1, archived.length);
+			assertArrayEquals(pdf, Files.readAllBytes(archived[0].toPath()));
+		}
+		finally {
+			uniqueIdController.close();
+			FileUtils.deleteQuietly(qrCodesDir);
+		}
+	}
+
+	@Test
+	public void testThisMonthDataSendTODHIS2ResetsResponseWhenPdfFails() throws Exception {
+		File qrCodesDir = Files.createTempDirectory("qrcodes").toFile();
+		List<String> idsToPrint = asList("ID-1", new String(new char[8000]).replace('\0', 'x'));
+		SecurityContext securityContext = mock(SecurityContext.class);
+		SecurityContextHolder.setContext(securityContext);
+		when(securityContext.getAuthentication()).thenReturn(getMockedAuthentication());
+		when(openmrsIdService.getNotUsedIdsAsString(2)).thenReturn(idsToPrint);
+		User user = mock(User.class);
+		when(user.getRoles()).thenReturn(Collections.singletonList("opensrp-generate-qr-code"));
+		when(openmrsUserService.getUser("admin")).thenReturn(user);
+		ReflectionTestUtils.setField(uniqueIdController, "qrCodesDir", qrCodesDir.getAbsolutePath());
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addParameter("batchSize", "2");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		try {
+			ResponseEntity<String> result = uniqueIdController.thisMonthDataSendTODHIS2(request, response);
+
+			assertEquals(ERROR_MESSAGE, result.getBody());
+			assertEquals(0, response.getContentAsByteArray().length);
+			assertNull(response.getHeader("Content-Disposition"));
+			verify(openmrsIdService, never()).markIdsAsUsed(any());
+		}
+		finally {
+			uniqueIdController.close();
+			FileUtils.deleteQuietly(qrCodesDir);
+		}
+	}
+
 	private Authentication getMockedAuthentication() {
 		Authentication authentication = new Authentication() {
 
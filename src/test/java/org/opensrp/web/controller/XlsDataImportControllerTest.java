@@ -11,6 +11,8 @@ import static org.mockito.MockitoAnnotations.initMocks;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
@@ -110,4 +112,48 @@ public class XlsDataImportControllerTest {
 		verify(clientService, times(4)).addorUpdate(any(Client.class));
 		verify(eventService, times(28)).addEvent(any(Event.class),nullable(String.class));
 	}
+
+	@Test
+	public void shouldAllocateIdsPerBatchForNewClientsOnly() throws IOException, SQLException, JSONException {
+		File csvFile = new File("src/test/java/org/opensrp/fixtures/csv_to_import.csv");
+		FileInputStream fileInputStream = new FileInputStream(csvFile);
+		MockMultipartFile file = new MockMultipartFile("file", "originalFileName", "image/png", IOUtils.toByteArray(fileInputStream));
+		ReflectionTestUtils.setField(xlsDataImportController, "batchSize", 1);
+		List<String> openmrsIds = new ArrayList<String>();
+		openmrsIds.add("12345-1");
+		openmrsIds.add("12345-3");
+
+		when(openmrsIDService.checkIfClientExists(any(Client.class))).thenReturn(true, false);
+		when(openmrsIDService.downloadOpenmrsIds(2)).thenReturn(openmrsIds);
+
+		ResponseEntity<String> response = xlsDataImportController.importXlsData(file, authentication);
+		JSONObject responseJson = new JSONObject(response.getBody());
+
+		assertEquals(2, responseJson.getInt("summary_client_count"));
+		assertEquals(1, responseJson.getInt("summary_skipped_count"));
+		assertEquals(5, responseJson.getJSONObject("summary_stage_timings_ms").length());
+		verify(openmrsIDService, times(1)).downloadOpenmrsIds(2);
+		verify(openmrsIDService).assignOpenmrsIdToClient(nullable(String.class), any(Client.class));
+		verify(clientService, times(2)).addorUpdate(any(Client.class));
+	}
+
+	@Test
+	public void shouldSkipRowsRepeatingAChildInTheSameBatch() throws IOException, SQLException, JSONException {
+		List<String> lines = Files.readAllLines(Paths.get("src/test/java/org/opensrp/fixtures/csv_to_import.csv"));
+		String csv = String.join("\n", lines.get(0), lines.get(1), lines.get(1));
+		MockMultipartFile file = new MockMultipartFile("file", "originalFileName", "image/png", csv.getBytes());
+		List<String> openmrsIds = new ArrayList<String>();
+		openmrsIds.add("12345-1");
+		openmrsIds.add("12345-3");
+
+		when(openmrsIDService.downloadOpenmrsIds(2)).thenReturn(openmrsIds);
+
+		ResponseEntity<String> response = xlsDataImportController.importXlsData(file, authentication);
+		JSONObject responseJson = new JSONObject(response.getBody());
+
+		assertEquals(2, responseJson.getInt("summary_client_count"));
+		assertEquals(1, responseJson.getInt("summary_skipped_count"));
+		verify(openmrsIDService, times(1)).checkIfClientExists(any(Client.class));
+		verify(clientService, times(2)).addorUpdate(any(Client.class));
+	}
 }
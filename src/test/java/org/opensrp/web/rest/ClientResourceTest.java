@@ -23,9 +23,11 @@ import org.opensrp.search.ClientSearchBean;
 import org.opensrp.service.ClientService;
 import org.opensrp.web.bean.ClientSyncBean;
 import org.opensrp.web.bean.Identifier;
+import org.opensrp.web.cache.ClientCountCache;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
 import org.opensrp.web.rest.it.TestWebContextLoader;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 import org.springframework.test.web.servlet.MockMvc;
@@ -39,7 +41,12 @@ import java.util.*;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -54,6 +61,7 @@ import static org.opensrp.common.AllConstants.Client.BIRTH_DATE;
 import static org.opensrp.common.AllConstants.Client.FIRST_NAME;
 import static org.springframework.test.web.AssertionErrors.fail;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 @RunWith(SpringJUnit4ClassRunner.class)
@@ -225,6 +233,43 @@ public class ClientResourceTest {
 
 	}
 
+	@Test
+	public void testGetByIdsReturnsClientsAndMissingIds() throws Exception {
+		Client client = createClient();
+		when(clientService.findGlobalByFieldValue(eq(BASE_ENTITY_ID), anyList())).thenReturn(Collections.singletonList(client));
+
+		MvcResult result = mockMvc.perform(post(BASE_URL + "/findByIds").contentType(MediaType.APPLICATION_JSON)
+				.content(("[\"" + client.getBaseEntityId() + "\",\"missing-id\"]").getBytes()))
+				.andExpect(status().isOk()).andReturn();
+
+		JsonNode actualObj = mapper.readTree(result.getResponse().getContentAsString());
+		assertEquals(1, actualObj.get("clients").size());
+		assertEquals(client.getBaseEntityId(), actualObj.get("clients").get(0).get(BASE_ENTITY_ID).asText());
+		assertEquals("missing-id", actualObj.get("missing").get(0).asText());
+		verify(clientService).findGlobalByFieldValue(BASE_ENTITY_ID, Arrays.asList(client.getBaseEntityId(), "missing-id"));
+	}
+
+	@Test
+	public void testSearchByCriteriaCountsHouseholdsOnceAcrossPages() throws Exception {
+
+		HouseholdClient householdClient = new HouseholdClient();
+		householdClient.setTotalCount(25);
+		clientResource.setClientCountCache(new ClientCountCache(60, 10));
+
+		when(clientService.findHouseholdByCriteria(any(ClientSearchBean.class),any(AddressSearchBean.class), any(DateTime.class),any(DateTime.class))).thenReturn(Collections.singletonList(createClient()));
+		when(clientService.findTotalCountHouseholdByCriteria(any(ClientSearchBean.class),any(AddressSearchBean.class))).thenReturn(householdClient);
+		when(objectMapper.writeValueAsString(any(Object.class))).thenReturn(EXPECTED_CLIENT_SYNC_BEAN_RESPONSE_JSON);
+
+		for (String pageNumber : Arrays.asList("1", "2", "3")) {
+			mockMvc.perform(get(BASE_URL + "/searchByCriteria")
+					.param(PAGE_NUMBER, pageNumber).param(PAGE_SIZE, "10").param(SEARCHTEXT, "abc")
+					.param(CLIENTTYPE, HOUSEHOLD))
+					.andExpect(status().isOk());
+		}
+
+		verify(clientService, times(1)).findTotalCountHouseholdByCriteria(any(ClientSearchBean.class), any(AddressSearchBean.class));
+	}
+
 	@Test
 	public void testSearchByCriteriaWithClientTypeAsHouseholdMember() throws Exception {
 
@@ -358,7 +403,8 @@ public class ClientResourceTest {
 		when(httpServletRequest.getParameter("relationships")).thenReturn("mother");
 
 		when(clientService.find(zeirId)).thenReturn(client);
-		when(clientService.find(motherBaseEntityId)).thenReturn(mother);
+		when(clientService.findGlobalByFieldValue(BASE_ENTITY_ID, Collections.singletonList(motherBaseEntityId)))
+				.thenReturn(Collections.singletonList(mother));
 		List<Client> clients = clientResource.search(httpServletRequest);
 		assertEquals(clients.size(),2);
 		assertEquals(clients.get(0).getFirstName(),client.getFirstName());
@@ -392,13 +438,47 @@ public class ClientResourceTest {
 
 		when(clientService.findByCriteria(any(ClientSearchBean.class),any(AddressSearchBean.class), nullable(DateTime.class),
 				nullable(DateTime.class))).thenReturn(expected);
-		when(clientService.find("client-rel-base-entity-id")).thenReturn(clientRelationship);
+		when(clientService.findGlobalByFieldValue(BASE_ENTITY_ID, Collections.singletonList("client-rel-base-entity-id")))
+				.thenReturn(Collections.singletonList(clientRelationship));
 		List<Client> clients = clientResource.search(httpServletRequest);
 		assertEquals(clients.size(),2);
 		assertEquals(clients.get(0).getFirstName(),client.getFirstName());
 		assertEquals(clients.get(1).getFirstName(), clientRelationship.getFirstName());
 	}
 
+	@Test
+	public void testSearchClientsFetchesRelationshipsInOneQuery() throws ParseException {
+		Client mother = new Client("mother-base-entity-id");
+		Client father = new Client("father-base-entity-id");
+		List<Client> expected = new ArrayList<>();
+		for (int i = 0; i < 3; i++) {
+			Client child = new Client("child-base-entity-id-" + i);
+			Map<String, List<String>> relationships = new HashMap<>();
+			relationships.put("mother", Collections.singletonList(mother.getBaseEntityId()));
+			relationships.put("father", Collections.singletonList(father.getBaseEntityId()));
+			relationships.put("sibling", Collections.singletonList("child-base-entity-id-" + (2 - i)));
+			child.setRelationships(relationships);
+			expected.add(child);
+		}
+
+		HttpServletRequest httpServletRequest = mock(HttpServletRequest.class);
+		when(httpServletRequest.getParameter("name")).thenReturn("Odinga");
+		when(httpServletRequest.getParameter("relationships")).thenReturn("mother,father,sibling");
+		when(clientService.findByCriteria(any(ClientSearchBean.class), any(AddressSearchBean.class), nullable(DateTime.class),
+				nullable(DateTime.class))).thenReturn(expected);
+		when(clientService.findGlobalByFieldValue(eq(BASE_ENTITY_ID), anyList())).thenReturn(Arrays.asList(father, mother));
+
+		List<Client> clients = clientResource.search(httpServletRequest);
+
+		assertEquals(5, clients.size());
+		assertEquals(expected, clients.subList(0, 3));
+		assertEquals(new HashSet<>(Arrays.asList(mother, father)), new HashSet<>(clients.subList(3, 5)));
+		verify(clientService).findGlobalByFieldValue(eq(BASE_ENTITY_ID), argThat(
+				ids -> new HashSet<>(ids).equals(new HashSet<>(Arrays.asList(mother.getBaseEntityId(),
+						father.getBaseEntityId()))) && ids.size() == 2));
+		verify(clientService, never()).find(anyString());
+	}
+
 	@Test
 	public void testSearchClientRelationshipWithDependants() throws ParseException {
 		List<Client> expected = new ArrayList<>();
@@ -532,6 +532,20 @@ public class EventResourceTest extends BaseSecureResourceTest<Event> {
 		verify(multimediaService).findByCaseId(anyString());
 	}
 
+	@Test
+	public void testGetByIdsReturnsEventsAndMissingIds() throws Exception {
+		Event event = createEvent();
+		doReturn(event).when(eventService).findByFormSubmissionId(event.getFormSubmissionId());
+
+		JsonNode data = postRequestWithJsonContent(BASE_URL + "/findByIds",
+				"[\"" + event.getFormSubmissionId() + "\",\"missing-id\"]", status().isOk());
+
+		assertEquals(1, data.get("events").size());
+		assertEquals(event.getFormSubmissionId(), data.get("events").get(0).get("formSubmissionId").asText());
+		assertEquals(1, data.get("missing").size());
+		assertEquals("missing-id", data.get("missing").get(0).asText());
+	}
+
 	private Event createEvent() {
 		Gson gson = new GsonBuilder().setDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSSZ")
 				.registerTypeAdapter(DateTime.class, new DateTimeTypeConverter()).create();
@@ -2,6 +2,7 @@ package org.opensrp.web.rest;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
@@ -15,6 +16,7 @@ import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 import static org.mockito.Mockito.when;
@@ -44,6 +46,7 @@ import org.opensrp.search.PlanSearchBean;
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.PlanService;
 import org.opensrp.web.bean.Identifier;
+import org.opensrp.web.cache.PlanDefinitionCache;
 import org.smartregister.domain.Jurisdiction;
 import org.smartregister.domain.PlanDefinition;
 import org.springframework.http.MediaType;
@@ -115,6 +118,7 @@ public class PlanResourceTest extends BaseSecureResourceTest<PlanDefinition> {
 		PlanResource planResource = webApplicationContext.getBean(PlanResource.class);
 		planResource.setPlanService(planService);
 		planResource.setLocationService(locationService);
+		planResource.setPlanDefinitionCache(new PlanDefinitionCache(300, 1000));
 	}
 	
 	@Test
@@ -179,6 +183,23 @@ public class PlanResourceTest extends BaseSecureResourceTest<PlanDefinition> {
 		assertEquals(actualPlan.getJurisdiction().get(0).getCode(), expectedPlan.getJurisdiction().get(0).getCode());
 	}
 	
+	@Test
+	public void testGetPlanByUniqueIdShouldReusePlanUntilPlanIsUpdated() throws Exception {
+		PlanDefinition expectedPlan = new PlanDefinition();
+		expectedPlan.setIdentifier("plan_1");
+		doReturn(Collections.singletonList(expectedPlan)).when(planService).getPlansByIdsReturnOptionalFields(anyList(),
+		    eq(null), anyBoolean());
+		
+		getResponseAsString(BASE_URL + "plan_1", null, status().isOk());
+		getResponseAsString(BASE_URL + "plan_1", null, status().isOk());
+		verify(planService).getPlansByIdsReturnOptionalFields(Collections.singletonList("plan_1"), null, false);
+		
+		putRequestWithJsonContent(BASE_URL, plansJson, status().isCreated());
+		getResponseAsString(BASE_URL + "plan_1", null, status().isOk());
+		verify(planService, times(2)).getPlansByIdsReturnOptionalFields(Collections.singletonList("plan_1"), null,
+		    false);
+	}
+	
 	@Test
 	public void testCreateShouldCreateNewPlanResource() throws Exception {
 		doReturn(new PlanDefinition()).when(planService).addPlan(any(PlanDefinition.class), anyString());
@@ -419,6 +440,7 @@ public class PlanResourceTest extends BaseSecureResourceTest<PlanDefinition> {
 		List<String> fieldNameList = new ArrayList<>();
 		fieldNameList.add("action");
 		fieldNameList.add("name");
+		fieldNameList.add("identifier");
 		
 		doReturn(Collections.singletonList(expectedPlan)).when(planService).getPlansByIdsReturnOptionalFields(planIdList,
 		    fieldNameList, false);
@@ -433,7 +455,7 @@ public class PlanResourceTest extends BaseSecureResourceTest<PlanDefinition> {
 		assertEquals(1, actualPlanList.size());
 		PlanDefinition actualPlan = actualPlanList.get(0);
 		
-		assertEquals(actualPlan.getIdentifier(), expectedPlan.getIdentifier());
+		assertNull(actualPlan.getIdentifier());
 		assertEquals(actualPlan.getJurisdiction().get(0).getCode(), expectedPlan.getJurisdiction().get(0).getCode());
 	}
 	
@@ -13,6 +13,7 @@ import org.opensrp.service.ProductCatalogueService;
 import org.opensrp.web.GlobalExceptionHandler;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
 import org.opensrp.web.rest.it.TestWebContextLoader;
+import org.opensrp.web.serviceimpl.MultimediaUploadServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mock.web.MockHttpServletRequest;
 import org.springframework.security.core.Authentication;
@@ -21,6 +22,7 @@ import org.springframework.security.core.context.SecurityContext;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.test.web.servlet.request.MockMvcRequestBuilders;
@@ -45,6 +47,7 @@ import static org.mockito.Mockito.when;
 import static org.mockito.Mockito.times;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
 
+import java.io.ByteArrayInputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
@@ -81,6 +84,9 @@ public class ProductCatalogueResourceTest {
 	@Before
 	public void setUp() throws Exception {
 		MockitoAnnotations.initMocks(this);
+		MultimediaUploadServiceImpl multimediaUploadService = new MultimediaUploadServiceImpl(1024 * 1024, 60);
+		multimediaUploadService.setMultimediaService(multimediaService);
+		ReflectionTestUtils.setField(productCatalogueResource, "multimediaUploadService", multimediaUploadService);
 		mockMvc = org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup(productCatalogueResource)
 				.setControllerAdvice(new GlobalExceptionHandler()).
 						addFilter(new CrossSiteScriptingPreventionFilter(), "/*").
@@ -162,7 +168,8 @@ public class ProductCatalogueResourceTest {
 		when(productCatalogueService.getProductCatalogueByName(anyString())).thenReturn(productCatalogue);
 		when(multimediaService.findByCaseId(anyString())).thenReturn(null);
 		when(multipartFile.getContentType()).thenReturn("");
-		when(multipartFile.getBytes()).thenReturn(bytes);
+		when(multipartFile.getSize()).thenReturn((long) bytes.length);
+		when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(bytes));
 		when(multipartFile.getOriginalFilename()).thenReturn("Midwifery kit image");
 		when(multimediaService.saveFile(any(MultimediaDTO.class), any(byte[].class), anyString())).thenReturn("Success");
 
@@ -202,7 +209,8 @@ public class ProductCatalogueResourceTest {
 		when(multimediaService.findByCaseId(anyString())).thenReturn(multimedia);
 		Mockito.doNothing().when(multimediaService).deleteMultimedia(any(Multimedia.class));
 		when(multipartFile.getContentType()).thenReturn("");
-		when(multipartFile.getBytes()).thenReturn(bytes);
+		when(multipartFile.getSize()).thenReturn((long) bytes.length);
+		when(multipartFile.getInputStream()).thenReturn(new ByteArrayInputStream(bytes));
 		when(multipartFile.getOriginalFilename()).thenReturn("Midwifery kit image");
 		when(multimediaService.saveFile(any(MultimediaDTO.class), any(byte[].class), anyString())).thenReturn("Success");
 
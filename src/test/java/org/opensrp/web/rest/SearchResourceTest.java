@@ -1,6 +1,8 @@
 
 package org.opensrp.web.rest;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.joda.time.DateTime;
 import org.joda.time.DateTimeZone;
 import org.junit.Assert;
@@ -8,13 +10,18 @@ import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.mockito.Mockito;
+import org.opensrp.common.AllConstants;
+import org.opensrp.common.AllConstants.BaseEntity;
 import org.opensrp.repository.ClientsRepository;
 import org.opensrp.repository.EventsRepository;
 import org.opensrp.repository.PlanRepository;
 import org.opensrp.repository.SearchRepository;
 import org.opensrp.service.*;
+import org.opensrp.web.cache.ClientNameIndex;
 import org.opensrp.web.rest.it.TestWebContextLoader;
+import org.opensrp.web.utils.ChildMother;
 import org.opensrp.web.utils.SearchHelper;
+import org.powermock.reflect.Whitebox;
 import org.smartregister.domain.Client;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.mock.web.MockHttpServletRequest;
@@ -24,7 +31,16 @@ import org.springframework.web.context.WebApplicationContext;
 
 import java.text.ParseException;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration(loader = TestWebContextLoader.class, locations = { "classpath:test-webmvc-config.xml", })
@@ -100,4 +116,80 @@ public class SearchResourceTest {
 		List<Client> clients = searchResource.search(mockHttpServletRequest);
 		Assert.assertNotNull(clients);
 	}
+
+	@Test
+	public void testSearchPathByJoinsConcurrentBranches() throws Exception {
+		Client child = new Client("child-1");
+		child.addRelationship("mother", "mother-1");
+		Client mother = new Client("mother-1");
+		Mockito.doReturn(Collections.singletonList(child)).when(searchService)
+				.searchGlobalClient(any(), eq("John"), isNull(), isNull(), anyInt());
+		Mockito.doReturn(Collections.singletonList(mother)).when(searchService)
+				.searchGlobalClient(any(), eq("Jane"), isNull(), isNull(), anyInt());
+		Mockito.doReturn(Collections.emptyList()).when(clientService)
+				.findGlobalByFieldValue(BaseEntity.BASE_ENTITY_ID, Collections.emptyList());
+		Mockito.doReturn(Collections.singletonList(mother)).when(clientService)
+				.findGlobalByFieldValue(BaseEntity.BASE_ENTITY_ID, Collections.singletonList("mother-1"));
+		Mockito.doReturn(Collections.singletonList(child)).when(clientService).findGlobalByRelationship("mother-1");
+		mockHttpServletRequest = new MockHttpServletRequest();
+		mockHttpServletRequest.addParameter("first_name", "John");
+		mockHttpServletRequest.addParameter("mother_first_name", "Jane");
+		MeterRegistry meterRegistry = new SimpleMeterRegistry();
+		SearchResource searchResource = new SearchResource(searchService, clientService, eventService);
+		searchResource.setMeterRegistry(meterRegistry);
+
+		List<ChildMother> result = Whitebox.invokeMethod(searchResource, "searchPathBy", mockHttpServletRequest);
+		searchResource.shutdownSearchExecutor();
+
+		Assert.assertEquals(1, result.size());
+		Assert.assertEquals("child-1", result.get(0).getChild().getBaseEntityId());
+		Assert.assertEquals("mother-1", result.get(0).getMother().getBaseEntityId());
+		for (String branch : Arrays.asList("child", "mother", "phone_number", "linked_mothers", "linked_children")) {
+			Assert.assertEquals(branch, 1,
+					meterRegistry.get(SearchResource.BRANCH_TIMER).tag("branch", branch).timer().count());
+		}
+	}
+
+	@Test
+	public void testSearchPathByFailsWhenBranchTimesOut() throws Exception {
+		Mockito.doAnswer(invocation -> {
+			Thread.sleep(2000);
+			return Collections.emptyList();
+		}).when(searchService).searchGlobalClient(any(), anyString(), any(), any(), anyInt());
+		Mockito.doReturn(Collections.emptyList()).when(clientService)
+				.findGlobalByFieldValue(BaseEntity.BASE_ENTITY_ID, Collections.emptyList());
+		mockHttpServletRequest = new MockHttpServletRequest();
+		mockHttpServletRequest.addParameter("first_name", "John");
+		SearchResource searchResource = new SearchResource(searchService, clientService, eventService);
+		Whitebox.setInternalState(searchResource, "branchTimeoutMillis", 100L);
+
+		try {
+			Whitebox.invokeMethod(searchResource, "searchPathBy", mockHttpServletRequest);
+			Assert.fail("Expected the search to time out");
+		}
+		catch (CompletionException e) {
+			Assert.assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		finally {
+			searchResource.shutdownSearchExecutor();
+		}
+	}
+
+	@Test
+	public void testSearchByNameOnlyUsesClientNameIndex() throws ParseException {
+		Client client = new Client("client-1");
+		ClientNameIndex clientNameIndex = Mockito.mock(ClientNameIndex.class);
+		Mockito.doReturn(true).when(clientNameIndex).isReady();
+		Mockito.doReturn(Collections.singletonList(client)).when(clientNameIndex).findClients(eq("Wanjiru"), any());
+		mockHttpServletRequest = new MockHttpServletRequest();
+		mockHttpServletRequest.addParameter(AllConstants.Client.NAME, "Wanjiru");
+		SearchResource searchResource = new SearchResource(searchService, clientService, eventService);
+		searchResource.setClientNameIndex(clientNameIndex);
+
+		Assert.assertEquals(Collections.singletonList(client), searchResource.search(mockHttpServletRequest));
+
+		mockHttpServletRequest.addParameter(AllConstants.Client.GENDER, "female");
+		searchResource.search(mockHttpServletRequest);
+		Mockito.verify(clientNameIndex, Mockito.times(1)).findClients(any(), any());
+	}
 }
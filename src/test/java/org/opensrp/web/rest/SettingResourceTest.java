@@ -16,6 +16,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.opensrp.api.util.LocationTree;
 import org.opensrp.common.AllConstants.BaseEntity;
 import org.opensrp.common.AllConstants.Event;
@@ -25,6 +26,7 @@ import org.opensrp.repository.postgres.handler.SettingTypeHandler;
 import org.opensrp.search.SettingSearchBean;
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.SettingService;
+import org.opensrp.web.cache.ResolvedSettingsCache;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
 import org.opensrp.web.rest.it.TestWebContextLoader;
 import org.smartregister.utils.DateTimeTypeConverter;
@@ -127,6 +129,9 @@ public class SettingResourceTest {
 	@Mock
 	private PhysicalLocationService physicalLocationService;
 
+	@Spy
+	private ResolvedSettingsCache resolvedSettingsCache = new ResolvedSettingsCache(300, 1000);
+
 	@InjectMocks
 	private SettingResource settingResource;
 
@@ -203,6 +208,54 @@ public class SettingResourceTest {
 		assertEquals(actualObj.size(), 1);
 	}
 
+	@Test
+	public void testFindSettingsByVersionReusesResolvedSettings() throws Exception {
+		List<SettingConfiguration> settingConfig = new ArrayList<>();
+		SettingConfiguration config = new SettingConfiguration();
+		config.setTeamId("TEAM-ID-123");
+		config.setIdentifier("ID-123");
+		settingConfig.add(config);
+
+		LocationTree locationTree = new Gson().fromJson(locationTreeString, LocationTree.class);
+		Mockito.when(physicalLocationService.buildLocationTreeHierachyWithAncestors(anyString(), anyBoolean()))
+				.thenReturn(locationTree);
+		Mockito.when(settingService.findSettings(any(SettingSearchBean.class), anyMap())).thenReturn(settingConfig);
+
+		for (int i = 0; i < 2; i++) {
+			MvcResult result = mockMvc.perform(get(BASE_URL + "/sync").param(BaseEntity.SERVER_VERSIOIN, "0")
+					.param(Event.TEAM_ID, "my-team-id").param(Event.LOCATION_ID, "123123")
+					.param(Event.RESOLVE_SETTINGS, "true")).andExpect(status().isOk()).andReturn();
+			JsonNode actualObj = mapper.readTree(result.getResponse().getContentAsString());
+			assertEquals(EXPECTED_IDENTFIER, actualObj.get(0).get("identifier").asText());
+		}
+
+		verify(settingService).findSettings(any(SettingSearchBean.class), anyMap());
+		verify(physicalLocationService).buildLocationTreeHierachyWithAncestors(anyString(), anyBoolean());
+		assertEquals(1, resolvedSettingsCache.size());
+
+		when(settingService.saveSetting(any(String.class))).thenReturn("ID-12345");
+		mockMvc.perform(post(BASE_URL + "/sync").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"settingConfigurations\":[\"Client1\"]}".getBytes()).accept(MediaType.APPLICATION_JSON))
+				.andExpect(status().isOk());
+		assertEquals(0, resolvedSettingsCache.size());
+	}
+
+	@Test
+	public void testSaveSettingInvalidatesResolvedSettingsWhenASaveFails() {
+		when(settingService.saveSetting(any(String.class))).thenReturn("ID-12345")
+				.thenThrow(new IllegalStateException("save failed"));
+
+		try {
+			settingResource.saveSetting("{\"settingConfigurations\":[\"Client1\",\"Client2\"]}");
+			fail("Expected the failing save to be rethrown");
+		}
+		catch (IllegalStateException e) {
+			assertEquals("save failed", e.getMessage());
+		}
+		verify(settingService, Mockito.times(2)).saveSetting(anyString());
+		verify(resolvedSettingsCache).invalidateAll();
+	}
+
 	@Test
 	public void findSettingsByVersionShouldReturn500IfServerVersionIsNotSpecified() throws Exception {
 		MvcResult result = mockMvc.perform(get(BASE_URL + "/sync")).andExpect(status().isBadRequest()).andReturn();
@@ -13,6 +13,7 @@ import org.opensrp.search.StockSearchBean;
 import org.opensrp.service.StockService;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
 import org.opensrp.web.rest.it.TestWebContextLoader;
+import org.opensrp.web.serviceimpl.CsvImportServiceImpl;
 import org.smartregister.domain.Inventory;
 import org.smartregister.domain.Stock;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -99,6 +100,7 @@ public class StockResourceTest {
 		mockMvc = org.springframework.test.web.servlet.setup.MockMvcBuilders.standaloneSetup(stockResource)
 				.addFilter(new CrossSiteScriptingPreventionFilter(), "/*")
 				.build();
+		stockResource.setCsvImportService(new CsvImportServiceImpl(1000, 2));
 	}
 
 	@Test
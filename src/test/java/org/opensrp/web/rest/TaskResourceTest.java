@@ -26,6 +26,7 @@ import java.util.List;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.lang3.tuple.Pair;
 import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
@@ -49,6 +50,7 @@ import org.opensrp.service.TaskService;
 import org.opensrp.web.GlobalExceptionHandler;
 import org.opensrp.web.bean.Identifier;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
+import org.opensrp.web.serviceimpl.TaskBatchServiceImpl;
 import org.opensrp.web.rest.it.TestWebContextLoader;
 import org.opensrp.web.rest.v2.TaskResourceV2Test;
 import org.skyscreamer.jsonassert.JSONAssert;
@@ -112,6 +114,10 @@ public class TaskResourceTest {
 		        .setControllerAdvice(new GlobalExceptionHandler()).addFilter(new CrossSiteScriptingPreventionFilter(), "/*")
 		        .build();
 		taskResourceV2.init();
+		TaskBatchServiceImpl taskBatchService = new TaskBatchServiceImpl();
+		taskBatchService.setTaskService(taskService);
+		taskBatchService.setMeterRegistry(new SimpleMeterRegistry());
+		taskResource.setTaskBatchService(taskBatchService);
 	}
 	
 	@Test
@@ -31,8 +31,11 @@ import org.opensrp.service.UploadService;
 import org.smartregister.utils.DateTimeTypeConverter;
 import org.opensrp.web.bean.UploadBean;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
+import org.opensrp.web.bean.UploadJobStatus;
 import org.opensrp.web.rest.it.TestWebContextLoader;
+import org.opensrp.web.serviceimpl.UploadJobServiceImpl;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.mock.web.MockMultipartFile;
 import org.springframework.security.test.context.support.WithMockUser;
 import org.springframework.test.context.ActiveProfiles;
@@ -49,6 +52,7 @@ import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Random;
@@ -113,6 +117,8 @@ public class UploadControllerTest {
 
 	private final String BASE_URL = "/rest/upload/";
 
+	private final UploadJobServiceImpl uploadJobService = new UploadJobServiceImpl(1, 1, 4);
+
 	@Before
 	public void setUp() {
 		MockitoAnnotations.initMocks(this);
@@ -129,6 +135,7 @@ public class UploadControllerTest {
 		uploadController.setUniqueIdentifierService(uniqueIdentifierService);
 		uploadController.setLocationService(physicalLocationService);
 		uploadController.setObjectMapper(objectMapper);
+		uploadController.setUploadJobService(uploadJobService);
 	}
 
 	@Test
@@ -185,6 +192,69 @@ public class UploadControllerTest {
 		assertTrue(result.getResponse().getContentAsString().contains("updated"));
 	}
 
+	@Test
+	public void testUploadCSVAsynchronously() throws Exception {
+		String path = "src/test/resources/sample/childregistration.csv";
+		MockMultipartFile firstFile = new MockMultipartFile("file", "sampleFile.txt", "text/csv",
+				Files.readAllBytes(Paths.get(path)));
+
+		UploadValidationBean validationBean = new UploadValidationBean();
+		validationBean.setRowsToUpdate(0);
+		validationBean.setRowsToCreate(2);
+		validationBean.setHeaderColumns(4);
+
+		List<Pair<Client, Event>> clients = new ArrayList<>();
+		clients.add(Pair.of(new Client(""), null));
+		clients.add(Pair.of(new Client(""), null));
+		validationBean.setAnalyzedData(clients);
+
+		List<String> results = new ArrayList<>();
+		results.add("10001");
+		results.add("10002");
+		IdentifierSource identifierSource = Mockito.mock(IdentifierSource.class);
+		when(identifierSourceService.findByIdentifier(Mockito.anyString())).thenReturn(identifierSource);
+		when(uniqueIdentifierService.generateIdentifiers(Mockito.any(IdentifierSource.class), Mockito.anyInt(), Mockito.anyString())).thenReturn(results);
+		when(uploadService.validateFieldValues(Mockito.any(), Mockito.anyString(), Mockito.any()))
+				.thenReturn(validationBean);
+		when(multimediaService.saveFile(Mockito.any(),Mockito.any(),Mockito.anyString())).thenReturn("success");
+
+		MvcResult result = mockMvc.perform(
+				MockMvcRequestBuilders
+						.multipart(BASE_URL + "?location_id=12345&event_name=ChildReg&async=true")
+						.file(firstFile)
+		)
+				.andExpect(status().isOk())
+				.andReturn();
+		String identifier = objectMapper.readTree(result.getResponse().getContentAsString()).get("identifier").asText();
+
+		UploadJobStatus jobStatus = uploadJobService.getStatus(identifier);
+		for (int i = 0; i < 100 && jobStatus.getStatus() != UploadJobStatus.Status.COMPLETED; i++) {
+			Thread.sleep(50);
+			jobStatus = uploadJobService.getStatus(identifier);
+		}
+
+		result = mockMvc.perform(get(BASE_URL + "/status/{identifier}", identifier)).andExpect(status().isOk())
+				.andReturn();
+		UploadJobStatus polledStatus = objectMapper.readValue(result.getResponse().getContentAsString(),
+				UploadJobStatus.class);
+		assertEquals(UploadJobStatus.Status.COMPLETED, polledStatus.getStatus());
+		assertEquals(2, polledStatus.getTotalRows());
+		assertEquals(2, polledStatus.getProcessedRows());
+		verify(clientService, times(2)).addorUpdate(Mockito.any(Client.class));
+		verify(multimediaService, times(1)).saveFile(Mockito.any(), Mockito.any(), Mockito.any());
+	}
+
+	@Test
+	public void testGetUploadStatusForUnknownUpload() throws Exception {
+		mockMvc.perform(get(BASE_URL + "/status/{identifier}", "unknown")).andExpect(status().isNotFound());
+	}
+
+	@Test
+	public void testGetUploadStatusOfAnotherUsersUpload() throws Exception {
+		uploadJobService.submit("upload-other", "clients.csv", "other", progress -> Collections.emptyMap());
+		mockMvc.perform(get(BASE_URL + "/status/{identifier}", "upload-other")).andExpect(status().isNotFound());
+	}
+
 	@Test
 	public void testUploadCSVWithErrors() throws Exception {
 		String path = "src/test/resources/sample/childregistration.csv";
@@ -321,6 +391,26 @@ public class UploadControllerTest {
 		assertEquals("text/csv", result.getResponse().getContentType());
 	}
 
+	@Test
+	public void testDownloadFileServesRangesAndConditionalRequests() throws Exception {
+		File file = new File("src/test/resources/sample/childregistration.csv");
+		when(multimediaService.retrieveFile(Mockito.anyString())).thenReturn(file);
+
+		MvcResult result = mockMvc.perform(get(BASE_URL + "/download/{fileName:.+}", "fileName.csv")
+				.header(HttpHeaders.RANGE, "bytes=0-9"))
+				.andExpect(status().isPartialContent())
+				.andReturn();
+		assertEquals(10, result.getResponse().getContentAsByteArray().length);
+		assertEquals("bytes 0-9/" + file.length(), result.getResponse().getHeader(HttpHeaders.CONTENT_RANGE));
+
+		String eTag = result.getResponse().getHeader(HttpHeaders.ETAG);
+		result = mockMvc.perform(get(BASE_URL + "/download/{fileName:.+}", "fileName.csv")
+				.header(HttpHeaders.IF_NONE_MATCH, eTag))
+				.andExpect(status().isNotModified())
+				.andReturn();
+		assertEquals(0, result.getResponse().getContentAsByteArray().length);
+	}
+
 	@Test
 	public void testDownloadFileInUnknownDirectory() throws Exception {
 		String path = "src/test/resources/sample/childregistration.csv";
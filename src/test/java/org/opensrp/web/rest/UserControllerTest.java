@@ -43,6 +43,7 @@ import org.smartregister.domain.Practitioner;
 import org.opensrp.service.OrganizationService;
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.PractitionerService;
+import org.opensrp.web.cache.PlanDefinitionCache;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
 import org.opensrp.web.controller.UserController;
 import org.opensrp.web.exceptions.MissingTeamAssignmentException;
@@ -125,6 +126,7 @@ public class UserControllerTest {
 		userController.setLocationService(locationService);
 		userController.setPractitionerService(practitionerService);
 		userController.setPlanService(planService);
+		userController.setPlanDefinitionCache(new PlanDefinitionCache(300, 1000));
 		when(keycloakPrincipal.getKeycloakSecurityContext()).thenReturn(securityContext);
 		when(securityContext.getToken()).thenReturn(token);
 		when(authentication.getAuthorities()).thenAnswer(a -> roles.stream().map(role -> new GrantedAuthority() {
@@ -216,7 +218,7 @@ public class UserControllerTest {
         when(organizationService.findAssignedLocationsAndPlans(ids)).thenReturn(assignedLocations);
         when(planService.getPlansByIdsReturnOptionalFields(
                 Collections.singletonList(planId),
-                Arrays.asList(UserController.JURISDICTION, UserController.STATUS), false)
+                Arrays.asList(UserController.IDENTIFIER, UserController.JURISDICTION, UserController.STATUS), false)
         ).thenReturn(planDefinitions);
 		
 		PhysicalLocation location = LocationResourceTest.createStructure();
@@ -288,7 +290,7 @@ public class UserControllerTest {
         when(organizationService.findAssignedLocationsAndPlans(ids)).thenReturn(assignedLocations);
         when(planService.getPlansByIdsReturnOptionalFields(
                 Collections.singletonList(planId),
-                Arrays.asList(UserController.JURISDICTION, UserController.STATUS), false)
+                Arrays.asList(UserController.IDENTIFIER, UserController.JURISDICTION, UserController.STATUS), false)
         ).thenReturn(planDefinitions);
 
         PhysicalLocation location = LocationResourceTest.createStructure();
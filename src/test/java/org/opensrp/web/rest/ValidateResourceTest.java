@@ -21,8 +21,16 @@ import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.web.context.WebApplicationContext;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
 import static org.junit.Assert.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+import static org.opensrp.common.AllConstants.BaseEntity.BASE_ENTITY_ID;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
@@ -75,7 +83,7 @@ public class ValidateResourceTest {
 
 	@Test
 	public void testValidateSyncWithBlankData() throws Exception {
-		when(clientService.getByBaseEntityId(any(String.class))).thenReturn(createClient());
+		when(clientService.findGlobalByFieldValue(any(String.class), anyList())).thenReturn(Collections.singletonList(createClient()));
 		when(eventService.findByFormSubmissionId(any(String.class))).thenReturn(createEvent());
 		MvcResult result = mockMvc.perform(post(BASE_URL + "/sync").contentType(MediaType.APPLICATION_JSON)
 				.content("".getBytes()))
@@ -84,7 +92,7 @@ public class ValidateResourceTest {
 
 	@Test
 	public void testValidateSyncWithWrongData() throws Exception {
-		when(clientService.getByBaseEntityId(any(String.class))).thenReturn(createClient());
+		when(clientService.findGlobalByFieldValue(any(String.class), anyList())).thenReturn(Collections.singletonList(createClient()));
 		when(eventService.findByFormSubmissionId(any(String.class))).thenReturn(createEvent());
 		MvcResult result = mockMvc.perform(post(BASE_URL + "/sync").contentType(MediaType.APPLICATION_JSON)
 				.content(INVALID_JSON.getBytes()))
@@ -94,7 +102,7 @@ public class ValidateResourceTest {
 	@Test
 	public void testValidateSync() throws Exception {
 		String expected = "{\"clients\":[\"1\",\"2\"],\"events\":[\"1\",\"2\"]}";
-		when(clientService.getByBaseEntityId(any(String.class))).thenReturn(null);
+		when(clientService.findGlobalByFieldValue(any(String.class), anyList())).thenReturn(new ArrayList<>());
 		when(eventService.findByFormSubmissionId(any(String.class))).thenReturn(null);
 		MvcResult result = mockMvc.perform(post(BASE_URL + "/sync").contentType(MediaType.APPLICATION_JSON)
 				.content(SYNC_REQUEST_PAYLOAD.getBytes()))
@@ -106,7 +114,7 @@ public class ValidateResourceTest {
 	@Test
 	public void testValidateSyncWithStringArray() throws Exception {
 		String expected = "{\"clients\":[\"1\",\"2\"],\"events\":[\"1\",\"2\"]}";
-		when(clientService.getByBaseEntityId(any(String.class))).thenReturn(null);
+		when(clientService.findGlobalByFieldValue(any(String.class), anyList())).thenReturn(new ArrayList<>());
 		when(eventService.findByFormSubmissionId(any(String.class))).thenReturn(null);
 		MvcResult result = mockMvc.perform(post(BASE_URL + "/sync").contentType(MediaType.APPLICATION_JSON)
 				.content(SYNC_REQUEST_STRING_PAYLOAD.getBytes()))
@@ -115,6 +123,50 @@ public class ValidateResourceTest {
 		assertEquals(result.getResponse().getContentAsString(), expected);
 	}
 
+	@Test
+	public void testValidateSyncLooksUpClientsInOneBatch() throws Exception {
+		String expected = "{\"clients\":[\"2\"],\"events\":[\"2\"]}";
+		Client client = new Client("1");
+		Event event = createEvent();
+		event.setFormSubmissionId("1");
+		when(clientService.findGlobalByFieldValue(any(String.class), anyList())).thenReturn(Collections.singletonList(client));
+		when(eventService.findByFormSubmissionId("1")).thenReturn(event);
+		MvcResult result = mockMvc.perform(post(BASE_URL + "/sync").contentType(MediaType.APPLICATION_JSON)
+				.content(SYNC_REQUEST_PAYLOAD.getBytes()))
+				.andExpect(status().isOk()).andReturn();
+
+		assertEquals(expected, result.getResponse().getContentAsString());
+		verify(clientService).findGlobalByFieldValue(eq(BASE_ENTITY_ID), eq(Arrays.asList("1", "2")));
+	}
+
+	@Test
+	public void testValidateSyncLooksUpClientsOneAtATimeWhenABatchFails() throws Exception {
+		String expected = "{\"clients\":[\"2\"],\"events\":[]}";
+		when(clientService.findGlobalByFieldValue(any(String.class), anyList())).thenThrow(new IllegalStateException());
+		when(clientService.getByBaseEntityId("1")).thenReturn(new Client("1"));
+		when(eventService.findByFormSubmissionId(any(String.class))).thenReturn(createEvent());
+		MvcResult result = mockMvc.perform(post(BASE_URL + "/sync").contentType(MediaType.APPLICATION_JSON)
+				.content(SYNC_REQUEST_PAYLOAD.getBytes()))
+				.andExpect(status().isOk()).andReturn();
+
+		assertEquals(expected, result.getResponse().getContentAsString());
+		verify(clientService).getByBaseEntityId("2");
+	}
+
+	@Test
+	public void testValidateSyncReportsOtherEventsWhenALookupFails() throws Exception {
+		String expected = "{\"clients\":[],\"events\":[\"2\"]}";
+		when(clientService.findGlobalByFieldValue(any(String.class), anyList()))
+				.thenReturn(Arrays.asList(new Client("1"), new Client("2")));
+		when(eventService.findByFormSubmissionId("1")).thenThrow(new IllegalStateException());
+		when(eventService.findByFormSubmissionId("2")).thenReturn(null);
+		MvcResult result = mockMvc.perform(post(BASE_URL + "/sync").contentType(MediaType.APPLICATION_JSON)
+				.content(SYNC_REQUEST_PAYLOAD.getBytes()))
+				.andExpect(status().isOk()).andReturn();
+
+		assertEquals(expected, result.getResponse().getContentAsString());
+	}
+
 	private Client createClient() {
 		Client client = new Client("Base-entity-id");
 		client.setFirstName("test");
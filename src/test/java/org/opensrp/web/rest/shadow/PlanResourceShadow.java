@@ -2,6 +2,7 @@ package org.opensrp.web.rest.shadow;
 
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.PlanService;
+import org.opensrp.web.cache.PlanDefinitionCache;
 import org.opensrp.web.rest.PlanResource;
 import org.springframework.stereotype.Component;
 
@@ -20,4 +21,9 @@ public class PlanResourceShadow extends PlanResource {
     public void setLocationService(PhysicalLocationService locationService) {
         super.setLocationService(locationService);
     }
+
+    @Override
+    public void setPlanDefinitionCache(PlanDefinitionCache planDefinitionCache) {
+        super.setPlanDefinitionCache(planDefinitionCache);
+    }
 }
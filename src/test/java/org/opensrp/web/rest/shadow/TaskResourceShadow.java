@@ -2,6 +2,7 @@ package org.opensrp.web.rest.shadow;
 
 import org.opensrp.service.TaskService;
 import org.opensrp.web.rest.TaskResource;
+import org.opensrp.web.service.TaskBatchService;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -12,4 +13,9 @@ public class TaskResourceShadow extends TaskResource {
 		super.setTaskService(taskService);
 	}
 
+	@Override
+	public void setTaskBatchService(TaskBatchService taskBatchService) {
+		super.setTaskBatchService(taskBatchService);
+	}
+
 }
@@ -10,6 +10,7 @@ import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.UniqueIdentifierService;
 import org.opensrp.service.UploadService;
 import org.opensrp.web.rest.UploadController;
+import org.opensrp.web.service.UploadJobService;
 import org.springframework.stereotype.Component;
 
 @Component
@@ -59,4 +60,9 @@ public class UploadControllerShadow extends UploadController {
 	public void setLocationService(PhysicalLocationService locationService) {
 		super.setLocationService(locationService);
 	}
+
+	@Override
+	public void setUploadJobService(UploadJobService uploadJobService) {
+		super.setUploadJobService(uploadJobService);
+	}
 }
@@ -3,6 +3,7 @@ package org.opensrp.web.rest.shadow;
 import org.opensrp.service.OrganizationService;
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.PlanService;
+import org.opensrp.web.cache.PlanDefinitionCache;
 import org.opensrp.service.PractitionerService;
 import org.opensrp.web.controller.UserController;
 import org.springframework.stereotype.Component;
@@ -29,4 +30,9 @@ public class UserControllerShadow extends UserController {
 	public void setPlanService(PlanService planService) {
 		super.setPlanService(planService);
 	}
+
+	@Override
+	public void setPlanDefinitionCache(PlanDefinitionCache planDefinitionCache) {
+		super.setPlanDefinitionCache(planDefinitionCache);
+	}
 }
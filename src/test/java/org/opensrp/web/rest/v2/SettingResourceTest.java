@@ -16,6 +16,7 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
+import org.mockito.Spy;
 import org.opensrp.api.util.LocationTree;
 import org.opensrp.common.AllConstants;
 import org.opensrp.domain.setting.Setting;
@@ -23,6 +24,7 @@ import org.opensrp.domain.setting.SettingConfiguration;
 import org.opensrp.search.SettingSearchBean;
 import org.opensrp.service.PhysicalLocationService;
 import org.opensrp.service.SettingService;
+import org.opensrp.web.cache.ResolvedSettingsCache;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
 import org.opensrp.web.rest.it.TestWebContextLoader;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -63,6 +65,9 @@ public class SettingResourceTest {
 	@Mock
 	private PhysicalLocationService physicalLocationService;
 
+	@Spy
+	private ResolvedSettingsCache resolvedSettingsCache = new ResolvedSettingsCache(300, 1000);
+
 	@InjectMocks
 	private SettingResource settingResource;
 
@@ -79,6 +84,7 @@ public class SettingResourceTest {
 				addFilter(new CrossSiteScriptingPreventionFilter(), "/*").build();
 		settingResource.setSettingService(settingService, physicalLocationService);
 		settingResource.setObjectMapper(mapper);
+		settingResource.setResolvedSettingsCache(resolvedSettingsCache);
 	}
 
 	@Test
@@ -196,6 +202,7 @@ public class SettingResourceTest {
 				.content(EXPECTED_SETTINGS.getBytes())).andExpect(MockMvcResultMatchers.status().isCreated()).andReturn();
 		Mockito.verify(settingService, Mockito.times(1)).addOrUpdateSettings(argumentCaptor.capture());
 		Mockito.verifyNoMoreInteractions(settingService);
+		Mockito.verify(resolvedSettingsCache).invalidateAll();
 		Assert.assertEquals("setting_123", argumentCaptor.getValue().getIdentifier());
 	}
 
@@ -216,6 +223,7 @@ public class SettingResourceTest {
 		mockMvc.perform(MockMvcRequestBuilders.delete(BASE_URL + "/{id}", 1))
 				.andExpect(MockMvcResultMatchers.status().isNoContent()).andReturn();
 		Mockito.verify(settingService, Mockito.times(1)).deleteSetting(argumentCaptor.capture());
+		Mockito.verify(resolvedSettingsCache).invalidateAll();
 		Assert.assertEquals(argumentCaptor.getValue().longValue(), 1);
 	}
 
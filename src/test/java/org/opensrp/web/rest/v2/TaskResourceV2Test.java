@@ -22,6 +22,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.apache.commons.lang3.tuple.Pair;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -42,6 +43,7 @@ import org.opensrp.service.TaskService;
 import org.opensrp.web.GlobalExceptionHandler;
 import org.opensrp.web.bean.Identifier;
 import org.opensrp.web.config.security.filter.CrossSiteScriptingPreventionFilter;
+import org.opensrp.web.serviceimpl.TaskBatchServiceImpl;
 import org.opensrp.web.rest.it.TestWebContextLoader;
 import org.skyscreamer.jsonassert.JSONAssert;
 import org.skyscreamer.jsonassert.JSONCompareMode;
@@ -94,6 +96,10 @@ public class TaskResourceV2Test {
 				.setControllerAdvice(new GlobalExceptionHandler()).
 						addFilter(new CrossSiteScriptingPreventionFilter(), "/*").build();
 		taskResource.init();//call this manually because @PostConstruct is not called by JUnit
+		TaskBatchServiceImpl taskBatchService = new TaskBatchServiceImpl();
+		taskBatchService.setTaskService(taskService);
+		taskBatchService.setMeterRegistry(new SimpleMeterRegistry());
+		taskResource.setTaskBatchService(taskBatchService);
 	}
 
 	@Test
@@ -0,0 +1,110 @@
+package org.opensrp.web.serviceimpl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensrp.dto.CsvBulkImportDataSummary;
+import org.opensrp.dto.FailedRecordSummary;
+import org.opensrp.web.bean.CsvImportReport;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CsvImportServiceImplTest {
+
+	private static final String CSV = "product_id,quantity\n" + "1,10\n" + "2,x\n" + "3,30\n" + "4,y\n" + "5,50\n";
+
+	private CsvImportServiceImpl csvImportService;
+
+	private CsvImportReport csvImportReport;
+
+	@Before
+	public void setUp() {
+		csvImportService = new CsvImportServiceImpl(2, 2);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		csvImportService.shutdown();
+		if (csvImportReport != null) {
+			Files.deleteIfExists(csvImportReport.getReportFile().toPath());
+		}
+	}
+
+	@Test
+	public void testProcessSplitsRowsIntoChunks() throws Exception {
+		AtomicInteger chunks = new AtomicInteger();
+
+		csvImportReport = csvImportService.process(csvStream(), rows -> {
+			chunks.incrementAndGet();
+			return validate(rows);
+		}, true);
+
+		assertEquals(3, chunks.get());
+		assertEquals(5, csvImportReport.getNumberOfCsvRows());
+		assertEquals(3, csvImportReport.getNumberOfRowsProcessed());
+		assertEquals(2, csvImportReport.getNumberOfFailedRows());
+	}
+
+	@Test
+	public void testProcessReportsFailedRowsRelativeToFile() throws Exception {
+		csvImportReport = csvImportService.process(csvStream(), this::validate, false);
+
+		String report = new String(Files.readAllBytes(csvImportReport.getReportFile().toPath()), StandardCharsets.UTF_8);
+		assertTrue(report.startsWith("\"Total Number of Rows in the CSV \",5\r\n\"Rows processed \",3\r\n"));
+		assertTrue(report.endsWith("Row Number,Reason of Failure\r\n2,[quantity should be a number]\r\n"
+				+ "4,[quantity should be a number]\r\n"));
+	}
+
+	@Test
+	public void testProcessReportsCompletedRowRangesWhenChunkFails() throws Exception {
+		AtomicInteger chunks = new AtomicInteger();
+
+		csvImportReport = csvImportService.process(csvStream(), rows -> {
+			if (chunks.incrementAndGet() == 2) {
+				throw new IllegalStateException("database unavailable");
+			}
+			return validate(rows);
+		}, false);
+
+		assertEquals(2, chunks.get());
+		assertEquals("1-2", csvImportReport.getCompletedRowRanges());
+		assertEquals(4, csvImportReport.getNumberOfCsvRows());
+		assertEquals(3, csvImportReport.getNumberOfFailedRows());
+		String report = new String(Files.readAllBytes(csvImportReport.getReportFile().toPath()), StandardCharsets.UTF_8);
+		assertTrue(report.contains("\"Row ranges completed before the import stopped \",1-2\r\n"));
+		assertTrue(report.endsWith("2,[quantity should be a number]\r\n"
+				+ "3-4,\"[Chunk failed, the import stopped after this row range: database unavailable]\"\r\n"));
+	}
+
+	private InputStream csvStream() {
+		return new ByteArrayInputStream(CSV.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private CsvBulkImportDataSummary validate(List<Map<String, String>> rows) {
+		List<FailedRecordSummary> failedRecordSummaryList = new ArrayList<>();
+		for (int i = 0; i < rows.size(); i++) {
+			if (!rows.get(i).get("quantity").matches("\\d+")) {
+				FailedRecordSummary failedRecordSummary = new FailedRecordSummary();
+				failedRecordSummary.setRowNumber(i + 1);
+				failedRecordSummary.setReasonOfFailure(Collections.singletonList("quantity should be a number"));
+				failedRecordSummaryList.add(failedRecordSummary);
+			}
+		}
+		CsvBulkImportDataSummary csvBulkImportDataSummary = new CsvBulkImportDataSummary();
+		csvBulkImportDataSummary.setNumberOfCsvRows(rows.size());
+		csvBulkImportDataSummary.setNumberOfRowsProcessed(rows.size() - failedRecordSummaryList.size());
+		csvBulkImportDataSummary.setFailedRecordSummaryList(failedRecordSummaryList);
+		return csvBulkImportDataSummary;
+	}
+}
@@ -0,0 +1,129 @@
+package org.opensrp.web.serviceimpl;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.fileupload.FileItem;
+import org.apache.commons.fileupload.disk.DiskFileItemFactory;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.opensrp.dto.form.MultimediaDTO;
+import org.opensrp.service.MultimediaService;
+import org.springframework.mock.web.MockMultipartFile;
+import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.multipart.commons.CommonsMultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class MultimediaUploadServiceImplTest {
+
+	@Mock
+	private MultimediaService multimediaService;
+
+	private MultimediaUploadServiceImpl multimediaUploadService;
+
+	private final MultimediaDTO multimediaDTO = new MultimediaDTO("entity-id", "provider-id", "image/jpeg", null,
+			"profilepic");
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		multimediaUploadService = new MultimediaUploadServiceImpl(1024, 60);
+		multimediaUploadService.setMultimediaService(multimediaService);
+		doReturn("success").when(multimediaService).saveFile(any(MultimediaDTO.class), any(byte[].class), anyString());
+	}
+
+	@Test
+	public void testSaveFileReadsContentFromStream() throws IOException {
+		byte[] content = "image-content".getBytes();
+		MultipartFile file = new MockMultipartFile("file", "image.jpg", "image/jpeg", content);
+
+		assertEquals("success", multimediaUploadService.saveFile(multimediaDTO, file, "entity-id|profilepic"));
+
+		verify(multimediaService).saveFile(eq(multimediaDTO), eq(content), eq("image.jpg"));
+	}
+
+	@Test
+	public void testSaveFileUsesContentOfPartsHeldInMemory() throws IOException {
+		FileItem fileItem = new DiskFileItemFactory().createItem("file", "image/jpeg", false, "image.jpg");
+		try (OutputStream outputStream = fileItem.getOutputStream()) {
+			outputStream.write("image-content".getBytes());
+		}
+		ArgumentCaptor<byte[]> content = ArgumentCaptor.forClass(byte[].class);
+
+		multimediaUploadService.saveFile(multimediaDTO, new CommonsMultipartFile(fileItem), null);
+
+		verify(multimediaService).saveFile(eq(multimediaDTO), content.capture(), eq("image.jpg"));
+		assertSame(fileItem.get(), content.getValue());
+	}
+
+	@Test
+	public void testSaveFileSkipsOnlyIdenticalRepeatUploads() throws IOException {
+		MultipartFile file = new MockMultipartFile("file", "image.jpg", "image/jpeg", "first".getBytes());
+		MultipartFile changedFile = new MockMultipartFile("file", "image.jpg", "image/jpeg", "second".getBytes());
+
+		multimediaUploadService.saveFile(multimediaDTO, file, "entity-id|profilepic");
+		multimediaUploadService.saveFile(multimediaDTO, file, "entity-id|profilepic");
+		multimediaUploadService.saveFile(multimediaDTO, file, null);
+		multimediaUploadService.saveFile(multimediaDTO, changedFile, "entity-id|profilepic");
+
+		verify(multimediaService, times(2)).saveFile(eq(multimediaDTO), eq("first".getBytes()), eq("image.jpg"));
+		verify(multimediaService).saveFile(eq(multimediaDTO), eq("second".getBytes()), eq("image.jpg"));
+	}
+
+	@Test
+	public void testSaveFileRetriesFailedSaves() throws IOException {
+		MultipartFile file = new MockMultipartFile("file", "image.jpg", "image/jpeg", "first".getBytes());
+		doReturn("fail").doReturn("success").when(multimediaService)
+				.saveFile(any(MultimediaDTO.class), any(byte[].class), anyString());
+
+		assertEquals("fail", multimediaUploadService.saveFile(multimediaDTO, file, "entity-id|profilepic"));
+		assertEquals("success", multimediaUploadService.saveFile(multimediaDTO, file, "entity-id|profilepic"));
+		assertEquals("success", multimediaUploadService.saveFile(multimediaDTO, file, "entity-id|profilepic"));
+
+		verify(multimediaService, times(2)).saveFile(eq(multimediaDTO), eq("first".getBytes()), eq("image.jpg"));
+	}
+
+	@Test
+	public void testSaveFileAllowsUploadsLargerThanBufferLimit() throws IOException {
+		byte[] content = new byte[4096];
+		content[4095] = 1;
+		MultipartFile file = new MockMultipartFile("file", "video.mp4", "video/mp4", content);
+
+		multimediaUploadService.saveFile(multimediaDTO, file, null);
+
+		verify(multimediaService).saveFile(eq(multimediaDTO), eq(content), eq("video.mp4"));
+		assertArrayEquals(DigestUtils.sha256(content), DigestUtils.sha256(file.getInputStream()));
+	}
+
+	@Test(expected = IOException.class)
+	public void testSaveFileFailsForTruncatedUpload() throws IOException {
+		MultipartFile file = mock(MultipartFile.class);
+		when(file.getSize()).thenReturn(10L);
+		when(file.getOriginalFilename()).thenReturn("image.jpg");
+		when(file.getInputStream()).thenReturn(new ByteArrayInputStream("short".getBytes()));
+
+		try {
+			multimediaUploadService.saveFile(multimediaDTO, file, null);
+		}
+		finally {
+			verify(multimediaService, never()).saveFile(any(MultimediaDTO.class), any(byte[].class), anyString());
+		}
+	}
+}
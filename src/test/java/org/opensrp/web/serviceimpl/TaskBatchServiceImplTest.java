@@ -0,0 +1,195 @@
+package org.opensrp.web.serviceimpl;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.opensrp.domain.TaskUpdate;
+import org.opensrp.service.TaskService;
+import org.smartregister.domain.Task;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class TaskBatchServiceImplTest {
+
+	@Mock
+	private TaskService taskService;
+
+	@Mock
+	private PlatformTransactionManager transactionManager;
+
+	private MeterRegistry meterRegistry;
+
+	private TaskBatchServiceImpl taskBatchService;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		meterRegistry = new SimpleMeterRegistry();
+		taskBatchService = new TaskBatchServiceImpl();
+		taskBatchService.setTaskService(taskService);
+		taskBatchService.setMeterRegistry(meterRegistry);
+		taskBatchService.setBatchSize(2);
+	}
+
+	@Test
+	public void testSaveTasksWritesInChunks() {
+		when(taskService.saveTasks(anyList())).thenReturn(new HashSet<>());
+
+		Set<String> tasksWithErrors = taskBatchService.saveTasks(createTasks("t1", "t2", "t3", "t4", "t5"));
+
+		assertTrue(tasksWithErrors.isEmpty());
+		verify(taskService, times(3)).saveTasks(anyList());
+		assertEquals(5, meterRegistry.get(TaskBatchServiceImpl.ROWS_METRIC)
+				.tag(TaskBatchServiceImpl.OPERATION_TAG, TaskBatchServiceImpl.SAVE_OPERATION).counter().count(), 0);
+		assertEquals(3, meterRegistry.get(TaskBatchServiceImpl.THROUGHPUT_METRIC)
+				.tag(TaskBatchServiceImpl.OPERATION_TAG, TaskBatchServiceImpl.SAVE_OPERATION).summary().count());
+	}
+
+	@Test
+	public void testSaveTasksReplaysFailedChunkAndReportsFailedIdentifiers() {
+		List<TransactionStatus> transactionStatuses = new ArrayList<>();
+		when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenAnswer(invocation -> {
+			TransactionStatus transactionStatus = new SimpleTransactionStatus();
+			transactionStatuses.add(transactionStatus);
+			return transactionStatus;
+		});
+		taskBatchService.setTransactionTemplate(new TransactionTemplate(transactionManager));
+		when(taskService.saveTasks(anyList())).thenAnswer(invocation -> {
+			List<Task> tasks = invocation.getArgument(0);
+			return tasks.stream().map(Task::getIdentifier).filter("t2"::equals).collect(Collectors.toSet());
+		});
+
+		List<Task> tasks = createTasks("t1", "t2");
+		Set<String> tasksWithErrors = taskBatchService.saveTasks(tasks);
+
+		assertEquals(Collections.singleton("t2"), tasksWithErrors);
+		verify(taskService, times(3)).saveTasks(anyList());
+		verify(taskService).saveTasks(Collections.singletonList(tasks.get(0)));
+		assertTrue(transactionStatuses.get(0).isRollbackOnly());
+	}
+
+	@Test
+	public void testUpdateTaskStatusCommitsChunkWithUnknownTasks() {
+		TransactionStatus transactionStatus = new SimpleTransactionStatus();
+		when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(transactionStatus);
+		taskBatchService.setTransactionTemplate(new TransactionTemplate(transactionManager));
+		when(taskService.updateTaskStatus(anyList())).thenReturn(Collections.singletonList("t1"));
+
+		List<String> updatedTasks = taskBatchService.updateTaskStatus(createTaskUpdates("t1", "unknown"));
+
+		assertEquals(Collections.singletonList("t1"), updatedTasks);
+		verify(taskService).updateTaskStatus(anyList());
+		verify(transactionManager).commit(transactionStatus);
+	}
+
+	@Test
+	public void testUpdateTaskStatusReplaysChunkOneTaskAtATimeWhenItThrows() {
+		TransactionStatus transactionStatus = new SimpleTransactionStatus();
+		when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(transactionStatus);
+		taskBatchService.setTransactionTemplate(new TransactionTemplate(transactionManager));
+		when(taskService.updateTaskStatus(anyList())).thenAnswer(invocation -> {
+			List<TaskUpdate> taskUpdates = invocation.getArgument(0);
+			if (taskUpdates.size() > 1 || taskUpdates.get(0).getIdentifier().equals("t2")) {
+				throw new IllegalStateException("bad task");
+			}
+			return Collections.singletonList(taskUpdates.get(0).getIdentifier());
+		});
+
+		List<String> updatedTasks = taskBatchService.updateTaskStatus(createTaskUpdates("t1", "t2"));
+
+		assertEquals(Collections.singletonList("t1"), updatedTasks);
+		verify(taskService, times(3)).updateTaskStatus(anyList());
+	}
+
+	@Test
+	public void testUpdateTaskStatusReplaysChunkMarkedRollbackOnly() {
+		List<TransactionStatus> transactionStatuses = new ArrayList<>();
+		when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenAnswer(invocation -> {
+			TransactionStatus transactionStatus = new SimpleTransactionStatus();
+			transactionStatuses.add(transactionStatus);
+			return transactionStatus;
+		});
+		taskBatchService.setTransactionTemplate(new TransactionTemplate(transactionManager));
+		// the service catches the failure of t2, which still marks the transaction it ran in rollback-only
+		when(taskService.updateTaskStatus(anyList())).thenAnswer(invocation -> {
+			List<TaskUpdate> taskUpdates = invocation.getArgument(0);
+			List<String> updated = new ArrayList<>();
+			for (TaskUpdate taskUpdate : taskUpdates) {
+				if (taskUpdate.getIdentifier().equals("t2")) {
+					transactionStatuses.get(transactionStatuses.size() - 1).setRollbackOnly();
+				} else {
+					updated.add(taskUpdate.getIdentifier());
+				}
+			}
+			return updated;
+		});
+
+		List<String> updatedTasks = taskBatchService.updateTaskStatus(createTaskUpdates("t1", "t2"));
+
+		assertEquals(Collections.singletonList("t1"), updatedTasks);
+		verify(taskService, times(3)).updateTaskStatus(anyList());
+		assertEquals(3, transactionStatuses.size());
+		assertTrue(transactionStatuses.get(0).isRollbackOnly());
+		assertFalse(transactionStatuses.get(1).isRollbackOnly());
+	}
+
+	@Test
+	public void testUpdateTaskStatusCommitsSuccessfulChunks() {
+		TransactionStatus transactionStatus = new SimpleTransactionStatus();
+		when(transactionManager.getTransaction(any(TransactionDefinition.class))).thenReturn(transactionStatus);
+		taskBatchService.setTransactionTemplate(new TransactionTemplate(transactionManager));
+		when(taskService.updateTaskStatus(anyList())).thenReturn(Arrays.asList("t1", "t2"));
+
+		List<String> updatedTasks = taskBatchService.updateTaskStatus(createTaskUpdates("t1", "t2"));
+
+		assertEquals(Arrays.asList("t1", "t2"), updatedTasks);
+		verify(taskService).updateTaskStatus(anyList());
+		verify(transactionManager).commit(transactionStatus);
+		assertEquals(2, meterRegistry.get(TaskBatchServiceImpl.ROWS_METRIC)
+				.tag(TaskBatchServiceImpl.OPERATION_TAG, TaskBatchServiceImpl.UPDATE_STATUS_OPERATION).counter().count(),
+				0);
+	}
+
+	private List<Task> createTasks(String... identifiers) {
+		List<Task> tasks = new ArrayList<>();
+		for (String identifier : identifiers) {
+			Task task = new Task();
+			task.setIdentifier(identifier);
+			tasks.add(task);
+		}
+		return tasks;
+	}
+
+	private List<TaskUpdate> createTaskUpdates(String... identifiers) {
+		List<TaskUpdate> taskUpdates = new ArrayList<>();
+		for (String identifier : identifiers) {
+			TaskUpdate taskUpdate = new TaskUpdate();
+			taskUpdate.setIdentifier(identifier);
+			taskUpdates.add(taskUpdate);
+		}
+		return taskUpdates;
+	}
+}
@@ -0,0 +1,112 @@
+package org.opensrp.web.serviceimpl;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.opensrp.web.bean.UploadJobStatus;
+import org.opensrp.web.bean.UploadJobStatus.Status;
+import org.opensrp.web.exceptions.UploadQueueFullException;
+
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class UploadJobServiceImplTest {
+
+	private UploadJobServiceImpl uploadJobService;
+
+	@Before
+	public void setUp() {
+		uploadJobService = new UploadJobServiceImpl(1, 1, 1);
+	}
+
+	@After
+	public void tearDown() {
+		uploadJobService.shutdown();
+	}
+
+	@Test
+	public void testSubmitReportsProgressAndDetails() throws Exception {
+		CountDownLatch halfway = new CountDownLatch(1);
+		CountDownLatch resume = new CountDownLatch(1);
+		uploadJobService.submit("upload-1", "clients.csv", "admin", progress -> {
+			progress.setTotalRows(4);
+			progress.addProcessedRows(2);
+			halfway.countDown();
+			resume.await(5, TimeUnit.SECONDS);
+			progress.addProcessedRows(2);
+			return Collections.singletonMap("imported", "4");
+		});
+
+		assertTrue(halfway.await(5, TimeUnit.SECONDS));
+		UploadJobStatus jobStatus = uploadJobService.getStatus("upload-1");
+		assertEquals(Status.RUNNING, jobStatus.getStatus());
+		assertEquals(4, jobStatus.getTotalRows());
+		assertEquals(2, jobStatus.getProcessedRows());
+		assertEquals(1, uploadJobService.getIncompleteJobs("admin").size());
+
+		resume.countDown();
+		jobStatus = awaitCompletion("upload-1");
+		assertEquals(Status.COMPLETED, jobStatus.getStatus());
+		assertEquals(4, jobStatus.getProcessedRows());
+		assertEquals("4", jobStatus.getDetails().get("imported"));
+		assertTrue(jobStatus.getRowsPerSecond() > 0);
+		assertTrue(uploadJobService.getIncompleteJobs("admin").isEmpty());
+	}
+
+	@Test
+	public void testFailedJobReportsErrors() throws Exception {
+		uploadJobService.submit("upload-2", "clients.csv", "admin", progress -> {
+			throw new IllegalStateException("Invalid rows");
+		});
+
+		UploadJobStatus jobStatus = awaitCompletion("upload-2");
+		assertEquals(Status.FAILED, jobStatus.getStatus());
+		assertEquals("Invalid rows", jobStatus.getErrors());
+		assertEquals(1, uploadJobService.getIncompleteJobs("admin").size());
+	}
+
+	@Test
+	public void testSubmitRejectsUploadsWhenQueueIsFull() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch resume = new CountDownLatch(1);
+		uploadJobService.submit("upload-3", "clients.csv", "admin", progress -> {
+			started.countDown();
+			resume.await(5, TimeUnit.SECONDS);
+			return Collections.emptyMap();
+		});
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		uploadJobService.submit("upload-4", "clients.csv", "admin", progress -> Collections.emptyMap());
+
+		try {
+			uploadJobService.submit("upload-5", "clients.csv", "admin", progress -> Collections.emptyMap());
+			fail("Expected the upload to be rejected");
+		}
+		catch (UploadQueueFullException e) {
+			assertNull(uploadJobService.getStatus("upload-5"));
+		}
+		finally {
+			resume.countDown();
+		}
+		assertEquals(Status.COMPLETED, awaitCompletion("upload-4").getStatus());
+	}
+
+	@Test
+	public void testGetStatusOfUnknownJob() {
+		assertNull(uploadJobService.getStatus("unknown"));
+	}
+
+	private UploadJobStatus awaitCompletion(String identifier) throws InterruptedException {
+		UploadJobStatus jobStatus = uploadJobService.getStatus(identifier);
+		for (int i = 0; i < 100 && jobStatus.getCompletionDate() == null; i++) {
+			Thread.sleep(50);
+			jobStatus = uploadJobService.getStatus(identifier);
+		}
+		return jobStatus;
+	}
+}
@@ -0,0 +1,119 @@
+package org.opensrp.web.uniqueid;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.opensrp.domain.IdentifierSource;
+import org.opensrp.service.IdentifierSourceService;
+import org.opensrp.service.UniqueIdentifierService;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class UniqueIdentifierPoolTest {
+
+	@Mock
+	private UniqueIdentifierService uniqueIdentifierService;
+
+	@Mock
+	private IdentifierSourceService identifierSourceService;
+
+	private final IdentifierSource identifierSource = new IdentifierSource();
+
+	private final AtomicInteger nextId = new AtomicInteger();
+
+	private UniqueIdentifierPool identifierPool;
+
+	@Before
+	public void setUp() {
+		MockitoAnnotations.initMocks(this);
+		when(identifierSourceService.findByIdentifier("1")).thenReturn(identifierSource);
+		when(uniqueIdentifierService.generateIdentifiers(any(IdentifierSource.class), anyInt(), anyString()))
+				.thenAnswer(invocation -> {
+					List<String> ids = new ArrayList<>();
+					for (int i = 0; i < (int) invocation.getArgument(1); i++) {
+						ids.add(Integer.toString(nextId.incrementAndGet()));
+					}
+					return ids;
+				});
+		identifierPool = new UniqueIdentifierPool(uniqueIdentifierService, identifierSourceService, "1", "uploadService",
+				4, 10);
+	}
+
+	@After
+	public void tearDown() {
+		identifierPool.close();
+	}
+
+	@Test
+	public void testTakeInBulkGeneratesMissingIdentifiersAndFillsPoolInOneCall() {
+		List<String> ids = identifierPool.take(25);
+
+		assertEquals(25, ids.size());
+		assertEquals(25, new HashSet<>(ids).size());
+		assertEquals(10, identifierPool.getDepth());
+		assertEquals(1, identifierPool.getStalls());
+		verify(uniqueIdentifierService).generateIdentifiers(identifierSource, 35, "uploadService");
+	}
+
+	@Test
+	public void testTakeRefillsInBackgroundBelowLowWatermark() {
+		Set<String> ids = new HashSet<>();
+		for (int i = 0; i < 7; i++) {
+			ids.add(identifierPool.take());
+		}
+
+		assertEquals(7, ids.size());
+		verify(uniqueIdentifierService, timeout(5000)).generateIdentifiers(eq(identifierSource), eq(7),
+				eq("uploadService"));
+		assertEquals(1, identifierPool.getStalls());
+		assertEquals(10, identifierPool.getDepth());
+	}
+
+	@Test
+	public void testTakeWaitsForIdentifiersWhenPoolIsEmpty() {
+		String id = identifierPool.take();
+
+		assertEquals("1", id);
+		assertEquals(1, identifierPool.getStalls());
+		assertEquals(9, identifierPool.getDepth());
+		verify(uniqueIdentifierService, times(1)).generateIdentifiers(identifierSource, 10, "uploadService");
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testTakeFailsWhenSourceGeneratesNothing() {
+		when(uniqueIdentifierService.generateIdentifiers(any(IdentifierSource.class), anyInt(), anyString()))
+				.thenReturn(new ArrayList<>());
+
+		identifierPool.take();
+	}
+
+	@Test
+	public void testRegisterMetricsReportsCurrentPool() {
+		SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+		UniqueIdentifierPool.registerMetrics(meterRegistry, this, test -> test.identifierPool, "test", "1");
+
+		identifierPool.take();
+
+		assertTrue(meterRegistry.get(UniqueIdentifierPool.DEPTH_METRIC).gauge().value() >= 9);
+		assertEquals(1, meterRegistry.get(UniqueIdentifierPool.STALLS_METRIC).functionCounter().count(), 0);
+		assertTrue(meterRegistry.get(UniqueIdentifierPool.REFILL_METRIC).functionTimer().count() >= 1);
+	}
+}
@@ -0,0 +1,84 @@
+package org.opensrp.web.utils;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AsyncFileOutputStreamTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	private final ExecutorService executorService = Executors.newCachedThreadPool();
+
+	@After
+	public void tearDown() {
+		executorService.shutdownNow();
+	}
+
+	@Test
+	public void testWritesAllBytesToFile() throws Exception {
+		File file = new File(temporaryFolder.getRoot(), "archive.pdf");
+		StringBuilder expected = new StringBuilder();
+
+		AsyncFileOutputStream outputStream = new AsyncFileOutputStream(file, executorService);
+		for (int i = 0; i < AsyncFileOutputStream.QUEUE_CAPACITY * 4; i++) {
+			byte[] line = ("line " + i + "\n").getBytes(StandardCharsets.UTF_8);
+			outputStream.write(line, 0, line.length);
+			expected.append("line ").append(i).append('\n');
+		}
+		outputStream.write('!');
+		outputStream.close();
+		outputStream.getCompletion().get(5, TimeUnit.SECONDS);
+
+		assertEquals(expected.append('!').toString(), new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testWritesOnCallingThreadWhenExecutorRejects() throws Exception {
+		File file = new File(temporaryFolder.getRoot(), "archive.pdf");
+		executorService.shutdown();
+
+		AsyncFileOutputStream outputStream = new AsyncFileOutputStream(file, executorService);
+		outputStream.write("archived".getBytes(StandardCharsets.UTF_8), 0, 8);
+		outputStream.write('!');
+		outputStream.close();
+
+		assertTrue(outputStream.getCompletion().isDone());
+		outputStream.getCompletion().get();
+		assertEquals("archived!", new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testFailureCompletesExceptionallyWithoutBlockingWriter() throws Exception {
+		File file = new File(new File(temporaryFolder.getRoot(), "missing"), "archive.pdf");
+
+		AsyncFileOutputStream outputStream = new AsyncFileOutputStream(file, executorService);
+		byte[] chunk = new byte[1024];
+		for (int i = 0; i < AsyncFileOutputStream.QUEUE_CAPACITY * 4; i++) {
+			outputStream.write(chunk, 0, chunk.length);
+		}
+		outputStream.close();
+
+		try {
+			outputStream.getCompletion().get(5, TimeUnit.SECONDS);
+			fail("Expected the archive to fail");
+		}
+		catch (ExecutionException e) {
+			assertTrue(outputStream.getCompletion().isCompletedExceptionally());
+		}
+	}
+}
@@ -0,0 +1,156 @@
+package org.opensrp.web.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import javax.servlet.http.HttpServletResponse;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class FileServingUtilTest {
+
+	private static final String CONTENT = "0123456789abcdefghij";
+
+	private File file;
+
+	@Before
+	public void setUp() throws Exception {
+		file = File.createTempFile("file-serving", ".txt");
+		Files.write(file.toPath(), CONTENT.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		Files.deleteIfExists(file.toPath());
+	}
+
+	@Test
+	public void testParseRange() {
+		assertArrayEquals(new long[] { 0, 9 }, FileServingUtil.parseRange("bytes=0-9", 20));
+		assertArrayEquals(new long[] { 5, 19 }, FileServingUtil.parseRange("bytes=5-", 20));
+		assertArrayEquals(new long[] { 15, 19 }, FileServingUtil.parseRange("bytes=-5", 20));
+		assertArrayEquals(new long[] { 10, 19 }, FileServingUtil.parseRange("bytes=10-100", 20));
+		assertArrayEquals(new long[0], FileServingUtil.parseRange("bytes=0-1,5-6", 20));
+		assertArrayEquals(new long[0], FileServingUtil.parseRange("items=0-1", 20));
+		assertNull(FileServingUtil.parseRange("bytes=20-", 20));
+		assertNull(FileServingUtil.parseRange("bytes=9-5", 20));
+	}
+
+	@Test
+	public void testServeFileWritesWholeFile() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, new MockHttpServletRequest(), response);
+
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(CONTENT, response.getContentAsString());
+		assertEquals(CONTENT.length(), response.getContentLength());
+		assertEquals(FileServingUtil.BYTES_UNIT, response.getHeader(HttpHeaders.ACCEPT_RANGES));
+	}
+
+	@Test
+	public void testServeFileWritesRequestedRange() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(HttpHeaders.RANGE, "bytes=10-14");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, request, response);
+
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("abcde", response.getContentAsString());
+		assertEquals("bytes 10-14/20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+	}
+
+	@Test
+	public void testServeFileIgnoresRangeWhenIfRangeDoesNotMatch() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(HttpHeaders.RANGE, "bytes=10-14");
+		request.addHeader(HttpHeaders.IF_RANGE, "\"stale\"");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, request, response);
+
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(CONTENT, response.getContentAsString());
+	}
+
+	@Test
+	public void testServeFileIgnoresRangeWhenIfRangeIsWeakETag() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(HttpHeaders.RANGE, "bytes=10-14");
+		request.addHeader(HttpHeaders.IF_RANGE, FileServingUtil.getETag(file.length(), file.lastModified()));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, request, response);
+
+		assertEquals(HttpServletResponse.SC_OK, response.getStatus());
+		assertEquals(CONTENT, response.getContentAsString());
+	}
+
+	@Test
+	public void testServeFileWritesRangeWhenIfRangeDateMatches() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(HttpHeaders.RANGE, "bytes=10-14");
+		request.addHeader(HttpHeaders.IF_RANGE, file.lastModified());
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, request, response);
+
+		assertEquals(HttpServletResponse.SC_PARTIAL_CONTENT, response.getStatus());
+		assertEquals("abcde", response.getContentAsString());
+	}
+
+	@Test
+	public void testServeFileRejectsUnsatisfiableRange() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(HttpHeaders.RANGE, "bytes=50-60");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, request, response);
+
+		assertEquals(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE, response.getStatus());
+		assertEquals("bytes */20", response.getHeader(HttpHeaders.CONTENT_RANGE));
+	}
+
+	@Test
+	public void testServeFileReturnsNotModified() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.addHeader(HttpHeaders.IF_NONE_MATCH, FileServingUtil.getETag(file.length(), file.lastModified()));
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, request, response);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+
+		request = new MockHttpServletRequest();
+		request.addHeader(HttpHeaders.IF_MODIFIED_SINCE, file.lastModified() + 1000);
+		response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, request, response);
+		assertEquals(HttpServletResponse.SC_NOT_MODIFIED, response.getStatus());
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+
+	@Test
+	public void testServeFileUsesContainerSendfile() throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest();
+		request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		request.addHeader(HttpHeaders.RANGE, "bytes=-5");
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		FileServingUtil.serveFile(file, request, response);
+
+		assertEquals(file.getCanonicalPath(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals(15L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+		assertEquals(20L, request.getAttribute("org.apache.tomcat.sendfile.end"));
+		assertEquals(0, response.getContentAsByteArray().length);
+	}
+}
@@ -0,0 +1,81 @@
+package org.opensrp.web.utils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ImageRenditionUtilTest {
+
+	@Rule
+	public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+	@Test
+	public void testSelectSizeRoundsUpToConfiguredSize() {
+		TreeSet<Integer> sizes = ImageRenditionUtil.parseSizes(" 192, 48,96 ,");
+
+		assertEquals(48, ImageRenditionUtil.selectSize(10, sizes).intValue());
+		assertEquals(96, ImageRenditionUtil.selectSize(96, sizes).intValue());
+		assertEquals(192, ImageRenditionUtil.selectSize(97, sizes).intValue());
+		assertEquals(192, ImageRenditionUtil.selectSize(2000, sizes).intValue());
+		assertNull(ImageRenditionUtil.selectSize(96, ImageRenditionUtil.parseSizes("")));
+	}
+
+	@Test
+	public void testWriteRenditionScalesImageToFitSize() throws Exception {
+		File source = writeImage(1600, 800);
+		File target = new File(temporaryFolder.getRoot(), "rendition.jpg");
+
+		assertTrue(ImageRenditionUtil.writeRendition(source, target, 96));
+
+		BufferedImage rendition = ImageIO.read(target);
+		assertEquals(96, rendition.getWidth());
+		assertEquals(48, rendition.getHeight());
+		assertTrue(target.length() < source.length());
+	}
+
+	@Test
+	public void testWriteRenditionDoesNotScaleUpSmallImages() throws Exception {
+		File source = writeImage(40, 30);
+		File target = new File(temporaryFolder.getRoot(), "rendition.jpg");
+
+		assertTrue(ImageRenditionUtil.writeRendition(source, target, 96));
+
+		BufferedImage rendition = ImageIO.read(target);
+		assertEquals(40, rendition.getWidth());
+		assertEquals(30, rendition.getHeight());
+	}
+
+	@Test
+	public void testWriteRenditionReturnsFalseForFilesThatAreNotImages() throws Exception {
+		File source = temporaryFolder.newFile("video.mp4");
+		Files.write(source.toPath(), "not an image".getBytes(StandardCharsets.UTF_8));
+		File target = new File(temporaryFolder.getRoot(), "rendition.jpg");
+
+		assertFalse(ImageRenditionUtil.writeRendition(source, target, 96));
+		assertFalse(target.exists());
+	}
+
+	private File writeImage(int width, int height) throws Exception {
+		BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < width; x++) {
+			for (int y = 0; y < height; y++) {
+				image.setRGB(x, y, (x * 31 + y * 17) % 2 == 0 ? 0xff336699 : 0x80ffcc00);
+			}
+		}
+		File file = temporaryFolder.newFile("image-" + width + "x" + height + ".png");
+		ImageIO.write(image, "png", file);
+		return file;
+	}
+}
@@ -0,0 +1,37 @@
+package org.opensrp.web.utils;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertNull;
+
+public class JsonFieldAccessorTest {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void testExtractReadsNestedValues() throws Exception {
+		JsonNode root = objectMapper.readTree("{\"client\":{\"firstName\":\"Jane\",\"birthdateApprox\":false,"
+				+ "\"identifiers\":{\"opensrp_id\":\"123-4\"},\"attributes\":{\"age\":7}}}");
+
+		JsonFieldAccessor fieldAccessor = JsonFieldAccessor.compile(Arrays.asList("client.firstName",
+				"client.identifiers.opensrp_id", "client.attributes.age", "client.birthdateApprox", "client.lastName"));
+
+		assertArrayEquals(new String[] { "Jane", "123-4", "7", "false", "" }, fieldAccessor.extract(root));
+	}
+
+	@Test
+	public void testExtractReturnsNullForUnsupportedMappingsAndValues() throws Exception {
+		JsonNode root = objectMapper.readTree("{\"client\":{\"addresses\":[{\"cityVillage\":\"Lusaka\"}],"
+				+ "\"attributes\":{\"weight\":2.5}}}");
+
+		assertNull(JsonFieldAccessor.compile(Collections.singletonList("client.addresses[0].cityVillage")).extract(root));
+		assertNull(JsonFieldAccessor.compile(Collections.singletonList("client.addresses")).extract(root));
+		assertNull(JsonFieldAccessor.compile(Collections.singletonList("client.attributes.weight")).extract(root));
+	}
+}
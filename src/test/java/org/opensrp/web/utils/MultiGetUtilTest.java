@@ -0,0 +1,73 @@
+package org.opensrp.web.utils;
+
+import org.junit.Test;
+import org.smartregister.domain.Client;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class MultiGetUtilTest {
+
+	@Test
+	public void testFindAllLooksUpDistinctIdsInBatches() {
+		List<List<String>> batches = new ArrayList<>();
+		List<Client> found = new ArrayList<>();
+
+		List<String> missingIds = MultiGetUtil.findAll(Arrays.asList("1", "2", "1", " ", "3", "4", "5"), 2, ids -> {
+			batches.add(new ArrayList<>(ids));
+			return ids.stream().filter(id -> !id.equals("4")).map(Client::new).collect(Collectors.toList());
+		}, Client::getBaseEntityId, found::add);
+
+		assertEquals(Arrays.asList(Arrays.asList("1", "2"), Arrays.asList("3", "4"), Collections.singletonList("5")),
+				batches);
+		assertEquals(Arrays.asList("1", "2", "3", "5"),
+				found.stream().map(Client::getBaseEntityId).collect(Collectors.toList()));
+		assertEquals(Collections.singletonList("4"), missingIds);
+	}
+
+	@Test
+	public void testOneAtATimeSkipsIdsNotFound() {
+		List<Client> clients = MultiGetUtil.<Client>oneAtATime(id -> id.equals("2") ? null : new Client(id))
+				.apply(Arrays.asList("1", "2", "3"));
+
+		assertEquals(Arrays.asList("1", "3"), clients.stream().map(Client::getBaseEntityId).collect(Collectors.toList()));
+	}
+
+	@Test
+	public void testWriteStreamsFoundAndMissingIds() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+
+		MultiGetUtil.write(response, "clients", Client.class, Arrays.asList("1", "2"), 10,
+				ids -> Collections.singletonList(new Client("1")), Client::getBaseEntityId);
+
+		assertEquals(200, response.getStatus());
+		String content = response.getContentAsString();
+		assertTrue(content.startsWith("{\"clients\":[{"));
+		assertTrue(content.contains("\"baseEntityId\":\"1\""));
+		assertTrue(content.endsWith("],\"missing\":[\"2\"]}"));
+	}
+
+	@Test
+	public void testWriteRejectsEmptyAndTooManyIds() throws Exception {
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		MultiGetUtil.write(response, "clients", Client.class, new ArrayList<>(), 10, ids -> new ArrayList<Client>(),
+				Client::getBaseEntityId);
+		assertEquals(400, response.getStatus());
+
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i <= MultiGetUtil.MAX_IDS; i++) {
+			ids.add(String.valueOf(i));
+		}
+		response = new MockHttpServletResponse();
+		MultiGetUtil.write(response, "clients", Client.class, ids, 10, batch -> new ArrayList<Client>(),
+				Client::getBaseEntityId);
+		assertEquals(400, response.getStatus());
+	}
+}
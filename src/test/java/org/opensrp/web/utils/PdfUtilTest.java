@@ -1,10 +1,17 @@
 package org.opensrp.web.utils;
 
+import com.itextpdf.text.pdf.PdfReader;
 import org.junit.Test;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
 
 import static java.util.Arrays.asList;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class PdfUtilTest {
 
@@ -17,4 +24,40 @@ public class PdfUtilTest {
 		fileOutputStream.close();*/
 	}
 
+	@Test
+	public void testWritePdfStreamsPagesForManyCodes() throws Exception {
+		List<String> ids = new ArrayList<>();
+		for (int i = 0; i < PdfUtil.ENCODING_BATCH_SIZE + 50; i++) {
+			ids.add("ID-" + i);
+		}
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		PdfUtil.writePdf(ids, 140, 140, 1, 5, outputStream);
+
+		byte[] pdf = outputStream.toByteArray();
+		assertArrayEquals("%PDF".getBytes(), java.util.Arrays.copyOf(pdf, 4));
+		PdfReader reader = new PdfReader(pdf);
+		try {
+			assertTrue(reader.getNumberOfPages() > 1);
+		}
+		finally {
+			reader.close();
+		}
+	}
+
+	@Test
+	public void testWritePdfWritesNothingWhenAValueCannotBeEncoded() throws Exception {
+		List<String> ids = new ArrayList<>(asList("ID-1", "ID-2"));
+		ids.add(new String(new char[8000]).replace('\0', 'x'));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		try {
+			PdfUtil.writePdf(ids, 140, 140, 1, 5, outputStream);
+			fail("Expected the value to be too long to encode");
+		}
+		catch (IllegalArgumentException e) {
+			assertEquals(0, outputStream.size());
+		}
+	}
+
 }
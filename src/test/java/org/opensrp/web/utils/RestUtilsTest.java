@@ -1,28 +1,45 @@
 package org.opensrp.web.utils;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
 import org.junit.Test;
 import org.opensrp.common.AllConstants.Client;
 import org.opensrp.domain.Multimedia;
 import org.opensrp.service.multimedia.MultimediaFileManager;
+import org.opensrp.service.multimedia.S3MultimediaFileManager;
 import org.opensrp.web.rest.RestUtils;
 import org.springframework.mock.web.MockHttpServletRequest;
 
+import com.google.common.util.concurrent.Uninterruptibles;
+
 public class RestUtilsTest {
 	
 	@Test
@@ -58,7 +75,130 @@ public class RestUtilsTest {
 
 		RestUtils.zipFiles(zipOutputStream, multimediaFiles, fileManager);
 		verify(zipOutputStream, atLeastOnce()).putNextEntry(any(ZipEntry.class));
-		verify(zipOutputStream, atLeastOnce()).write(anyInt());
+		verify(zipOutputStream, atLeastOnce()).write(any(byte[].class), anyInt(), anyInt());
 		verify(zipOutputStream, atLeastOnce()).closeEntry();
 	}
+
+	@Test
+	public void testZipFilesShouldSkipMissingFilesAndStoreCompressedFiles() throws IOException {
+		final String ROOT_DIR = Paths.get("").toAbsolutePath().toString() + "/src/test/java/org/opensrp/web/utils/";
+		File image = File.createTempFile("image", ".png");
+		Files.write(image.toPath(), "not really a png".getBytes(StandardCharsets.UTF_8));
+
+		List<Multimedia> multimediaFiles = new ArrayList<>();
+		for (String filePath : new String[] { ROOT_DIR + "test_file_1", ROOT_DIR + "missing_file", ROOT_DIR + "test_file_1",
+				image.getAbsolutePath() }) {
+			Multimedia multimedia = new Multimedia();
+			multimedia.setFilePath(filePath);
+			multimediaFiles.add(multimedia);
+		}
+		MultimediaFileManager fileManager = mock(MultimediaFileManager.class);
+		doReturn(new File(ROOT_DIR + "test_file_1")).when(fileManager).retrieveFile(ROOT_DIR + "test_file_1");
+		doReturn(new File(ROOT_DIR + "missing_file")).when(fileManager).retrieveFile(ROOT_DIR + "missing_file");
+		doReturn(image).when(fileManager).retrieveFile(image.getAbsolutePath());
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+			RestUtils.zipFiles(zipOutputStream, multimediaFiles, fileManager);
+		}
+		Files.deleteIfExists(image.toPath());
+
+		List<ZipEntry> entries = new ArrayList<>();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+			for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+				entries.add(entry);
+			}
+		}
+		assertEquals(3, entries.size());
+		assertEquals("test_file_1", entries.get(0).getName());
+		assertEquals("test_file_1(1)", entries.get(1).getName());
+		assertEquals(ZipEntry.DEFLATED, entries.get(0).getMethod());
+		assertEquals(image.getName(), entries.get(2).getName());
+		assertEquals(ZipEntry.STORED, entries.get(2).getMethod());
+	}
+
+	@Test
+	public void testZipFilesShouldPrefetchAndDeleteS3Files() throws IOException {
+		List<Multimedia> multimediaFiles = new ArrayList<>();
+		List<File> downloadedFiles = new ArrayList<>();
+		S3MultimediaFileManager fileManager = mock(S3MultimediaFileManager.class);
+		for (int i = 0; i < MultimediaZipWriter.PREFETCH_SIZE * 2 + 1; i++) {
+			File file = File.createTempFile("s3_file_" + i + "_", ".txt");
+			Files.write(file.toPath(), ("file " + i).getBytes(StandardCharsets.UTF_8));
+			downloadedFiles.add(file);
+			Multimedia multimedia = new Multimedia();
+			multimedia.setFilePath("s3/file_" + i);
+			multimediaFiles.add(multimedia);
+			doReturn(file).when(fileManager).retrieveFile("s3/file_" + i);
+		}
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		ExecutorService prefetchExecutor = Executors.newFixedThreadPool(2);
+		try (ZipOutputStream zipOutputStream = new ZipOutputStream(outputStream)) {
+			RestUtils.zipFiles(zipOutputStream, multimediaFiles, fileManager, null, prefetchExecutor);
+		}
+		finally {
+			prefetchExecutor.shutdownNow();
+		}
+
+		List<String> entryNames = new ArrayList<>();
+		try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(outputStream.toByteArray()))) {
+			for (ZipEntry entry = zipInputStream.getNextEntry(); entry != null; entry = zipInputStream.getNextEntry()) {
+				entryNames.add(entry.getName());
+			}
+		}
+		for (int i = 0; i < downloadedFiles.size(); i++) {
+			assertEquals(downloadedFiles.get(i).getName(), entryNames.get(i));
+			assertFalse(downloadedFiles.get(i).exists());
+		}
+		assertEquals(downloadedFiles.size(), entryNames.size());
+	}
+
+	@Test
+	public void testZipFilesShouldDeleteS3FilesPrefetchedAfterArchiveFails() throws Exception {
+		List<Multimedia> multimediaFiles = new ArrayList<>();
+		List<File> downloadedFiles = new ArrayList<>();
+		S3MultimediaFileManager fileManager = mock(S3MultimediaFileManager.class);
+		CountDownLatch archiveFailed = new CountDownLatch(1);
+		for (int i = 0; i < MultimediaZipWriter.PREFETCH_SIZE; i++) {
+			File file = File.createTempFile("s3_file_" + i + "_", ".txt");
+			downloadedFiles.add(file);
+			file.delete();
+			Multimedia multimedia = new Multimedia();
+			multimedia.setFilePath("s3/file_" + i);
+			multimediaFiles.add(multimedia);
+			boolean first = i == 0;
+			// like an S3 download, retrieving the file carries on when its thread is interrupted
+			doAnswer(invocation -> {
+				if (!first) {
+					Uninterruptibles.awaitUninterruptibly(archiveFailed);
+				}
+				Files.write(file.toPath(), "file".getBytes(StandardCharsets.UTF_8));
+				return file;
+			}).when(fileManager).retrieveFile("s3/file_" + i);
+		}
+		OutputStream failingStream = new OutputStream() {
+			
+			@Override
+			public void write(int b) throws IOException {
+				throw new IOException("connection closed");
+			}
+		};
+
+		ExecutorService prefetchExecutor = Executors.newFixedThreadPool(MultimediaZipWriter.PREFETCH_SIZE);
+		try {
+			RestUtils.zipFiles(new ZipOutputStream(failingStream), multimediaFiles, fileManager, null, prefetchExecutor);
+		}
+		catch (IOException e) {
+			archiveFailed.countDown();
+		}
+		finally {
+			prefetchExecutor.shutdown();
+		}
+
+		assertTrue(prefetchExecutor.awaitTermination(10, TimeUnit.SECONDS));
+		for (File file : downloadedFiles) {
+			assertFalse(file.exists());
+		}
+	}
 }
@@ -266,4 +266,35 @@ public class SearchHelperTest {
 		Assert.assertEquals("2093980", result.get("NRC_Number"));
 	}
 
+	@Test
+	public void testProcessSearchResultMatchesRelationalIdsIgnoringCase() {
+		Client firstMother = new Client("MOTHER-1");
+		Client secondMother = new Client("mother-2");
+		Client firstChild = new Client("child-1");
+		firstChild.setRelationships(EasyMap.mapOf("Mother", Collections.singletonList("mother-1")));
+		Client secondChild = new Client("child-2");
+		secondChild.setRelationships(EasyMap.mapOf("mother", Collections.singletonList("Mother-2")));
+		Client orphan = new Client("child-3");
+
+		List<ChildMother> childMothers = SearchHelper.processSearchResult(Arrays.asList(firstChild, orphan, secondChild),
+				Arrays.asList(secondMother, firstMother), "mother");
+
+		Assert.assertEquals(2, childMothers.size());
+		Assert.assertEquals(firstChild, childMothers.get(0).getChild());
+		Assert.assertEquals(firstMother, childMothers.get(0).getMother());
+		Assert.assertEquals(secondChild, childMothers.get(1).getChild());
+		Assert.assertEquals(secondMother, childMothers.get(1).getMother());
+	}
+
+	@Test
+	public void testAddMissingSkipsClientsAlreadyInList() {
+		Client first = new Client("client-1");
+		Client second = new Client("client-2");
+		List<Client> clients = new ArrayList<>(Collections.singletonList(first));
+
+		SearchHelper.addMissing(clients, Arrays.asList(new Client("client-1"), second, new Client("client-2")));
+
+		Assert.assertEquals(Arrays.asList(first, second), clients);
+	}
+
 }
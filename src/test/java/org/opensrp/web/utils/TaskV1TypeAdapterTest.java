@@ -0,0 +1,80 @@
+package org.opensrp.web.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringWriter;
+
+import org.joda.time.DateTime;
+import org.junit.Test;
+import org.smartregister.domain.Period;
+import org.smartregister.domain.Task;
+import org.smartregister.domain.Task.TaskPriority;
+import org.smartregister.utils.PriorityOrdinalConverter;
+import org.smartregister.utils.TaskDateTimeTypeConverter;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
+import com.google.gson.stream.JsonWriter;
+
+public class TaskV1TypeAdapterTest {
+
+	private final Gson gson = new GsonBuilder().registerTypeAdapter(DateTime.class, new TaskDateTimeTypeConverter())
+	        .registerTypeAdapter(TaskPriority.class, new PriorityOrdinalConverter()).create();
+
+	@Test
+	public void testWriteReplacesExecutionPeriodWithStartAndEndDates() throws Exception {
+		Task task = new Task();
+		task.setIdentifier("task-1");
+		task.setPriority(TaskPriority.STAT);
+		task.setServerVersion(12l);
+		DateTime start = new DateTime(2021, 1, 1, 0, 0);
+		DateTime end = new DateTime(2021, 2, 1, 0, 0);
+		task.setExecutionPeriod(new Period(start, end));
+
+		JsonObject written = write(task);
+
+		JsonObject expected = gson.toJsonTree(task, Task.class).getAsJsonObject();
+		expected.remove("executionPeriod");
+		expected.add("executionStartDate", gson.toJsonTree(start, DateTime.class));
+		expected.add("executionEndDate", gson.toJsonTree(end, DateTime.class));
+		assertEquals(expected, written);
+	}
+
+	@Test
+	public void testWriteLeavesOutMissingExecutionPeriod() throws Exception {
+		Task task = new Task();
+		task.setIdentifier("task-1");
+
+		JsonObject written = write(task);
+
+		assertEquals(gson.toJsonTree(task, Task.class), written);
+		assertFalse(written.has("executionStartDate"));
+	}
+
+	@Test
+	public void testReadTurnsStartAndEndDatesIntoExecutionPeriod() throws Exception {
+		Task task = new Task();
+		task.setIdentifier("task-1");
+		task.setPriority(TaskPriority.STAT);
+		DateTime start = new DateTime(2021, 1, 1, 0, 0);
+		DateTime end = new DateTime(2021, 2, 1, 0, 0);
+		task.setExecutionPeriod(new Period(start, end));
+		TaskV1TypeAdapter adapter = new TaskV1TypeAdapter(gson);
+
+		Task read = adapter.fromJson(adapter.toJson(task));
+
+		assertEquals(gson.toJsonTree(task, Task.class), gson.toJsonTree(read, Task.class));
+		assertNull(adapter.fromJson("null"));
+	}
+
+	private JsonObject write(Task task) throws Exception {
+		StringWriter stringWriter = new StringWriter();
+		JsonWriter jsonWriter = gson.newJsonWriter(stringWriter);
+		new TaskV1TypeAdapter(gson).write(jsonWriter, task);
+		jsonWriter.flush();
+		return gson.fromJson(stringWriter.toString(), JsonObject.class);
+	}
+}